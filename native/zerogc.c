@@ -1,3 +1,7 @@
+#if defined(__linux__)
+#define _GNU_SOURCE
+#endif // defined(__linux__)
+
 #include <jni.h>
 
 #if defined(WIN32)
@@ -11,10 +15,19 @@
 #include <poll.h>
 #include <net/if.h>
 #include <netinet/in.h>
+#include <netinet/tcp.h>
+#include <sys/socket.h>
 #endif // defined(WIN32)
 
 #if defined(__linux__)
+#include <fcntl.h>
+#include <sched.h>
 #include <sys/epoll.h>
+#include <sys/eventfd.h>
+#include <sys/mman.h>
+#include <sys/syscall.h>
+#include <stdint.h>
+#include <unistd.h>
 #endif // defined(__linux__)
 
 #include <string.h>
@@ -86,6 +99,34 @@ Java_com_zerogc_util_Native_currentTimeMicros(JNIEnv *env, jclass clazz,
     return tv.tv_sec * 1000000LL + tv.tv_usec;
 }
 
+JNIEXPORT jlong JNICALL
+Java_com_zerogc_util_Native_currentMonotonicNanos(JNIEnv *env, jclass clazz)
+{
+#if defined(WIN32)
+    struct timeval tv;
+    gettimeofday(&tv, 0);
+    return tv.tv_sec * 1000000000LL + tv.tv_usec * 1000LL;
+#else
+    struct timespec ts;
+    clock_gettime(CLOCK_MONOTONIC, &ts);
+    return ts.tv_sec * 1000000000LL + ts.tv_nsec;
+#endif // defined(WIN32)
+}
+
+JNIEXPORT jlong JNICALL
+Java_com_zerogc_util_Native_currentRealtimeNanos(JNIEnv *env, jclass clazz)
+{
+#if defined(WIN32)
+    struct timeval tv;
+    gettimeofday(&tv, 0);
+    return tv.tv_sec * 1000000000LL + tv.tv_usec * 1000LL;
+#else
+    struct timespec ts;
+    clock_gettime(CLOCK_REALTIME, &ts);
+    return ts.tv_sec * 1000000000LL + ts.tv_nsec;
+#endif // defined(WIN32)
+}
+
 JNIEXPORT jint JNICALL
 Java_com_zerogc_util_Native_errno(JNIEnv *env, jclass clazz)
 {
@@ -169,6 +210,270 @@ Java_com_zerogc_util_Native_leaveMcastGroup(JNIEnv *env, jclass clazz,
 #endif // IGMPV3
 }
 
+JNIEXPORT jint JNICALL
+Java_com_zerogc_util_Native_setPktInfo(JNIEnv *env, jclass clazz,
+                                       jobject dco, jbyte on)
+{
+#if defined(__linux__)
+    int sock = (*env)->GetIntField(env, dco, datagramChannel_fdVal);
+    int val = on;
+    return setsockopt(sock, IPPROTO_IP, IP_PKTINFO, (void *)&val, sizeof(val));
+#else
+    return -1;
+#endif // defined(__linux__)
+}
+
+JNIEXPORT jint JNICALL
+Java_com_zerogc_util_Native_setTimestamp(JNIEnv *env, jclass clazz,
+                                         jobject dco, jbyte on)
+{
+#if defined(__linux__)
+    int sock = (*env)->GetIntField(env, dco, datagramChannel_fdVal);
+    int val = on;
+    return setsockopt(sock, SOL_SOCKET, SO_TIMESTAMP, (void *)&val, sizeof(val));
+#else
+    return -1;
+#endif // defined(__linux__)
+}
+
+JNIEXPORT jint JNICALL
+Java_com_zerogc_util_Native_setTimestampNs(JNIEnv *env, jclass clazz,
+                                           jint fd, jbyte on)
+{
+#if defined(__linux__)
+    int val = on;
+    return setsockopt(fd, SOL_SOCKET, SO_TIMESTAMPNS, (void *)&val, sizeof(val));
+#else
+    return -1;
+#endif // defined(__linux__)
+}
+
+JNIEXPORT jint JNICALL
+Java_com_zerogc_util_Native_setTcpCork(JNIEnv *env, jclass clazz,
+                                       jint fd, jbyte on)
+{
+#if defined(__linux__)
+    int val = on;
+    return setsockopt(fd, IPPROTO_TCP, TCP_CORK, (void *)&val, sizeof(val));
+#else
+    return -1;
+#endif // defined(__linux__)
+}
+
+JNIEXPORT jint JNICALL
+Java_com_zerogc_util_Native_setTimestamping(JNIEnv *env, jclass clazz,
+                                            jint fd, jint flags)
+{
+#if defined(__linux__)
+    int val = flags;
+    return setsockopt(fd, SOL_SOCKET, SO_TIMESTAMPING, (void *)&val, sizeof(val));
+#else
+    return -1;
+#endif // defined(__linux__)
+}
+
+/*************************************************************/
+
+#if defined(__linux__)
+// Layout of the message descriptors filled by recvmmsg and recvmsg, see Native.java
+#define MSG_LEN_OFFSET       0
+#define MSG_SRC_ADDR_OFFSET  4
+#define MSG_SRC_PORT_OFFSET  8
+#define MSG_DST_ADDR_OFFSET  12
+#define MSG_TIMESTAMP_OFFSET 16
+#define MSG_FLAGS_OFFSET     24
+#define MSG_SIZE             32
+
+#define RECVMMSG_MAX_VLEN     64
+#define RECVMMSG_CONTROL_SIZE 128
+#define SENDMMSG_MAX_VLEN     64
+
+static void fillMessage(char *msg, struct msghdr *hdr, int len)
+{
+    struct sockaddr *src = (struct sockaddr *)hdr->msg_name;
+    struct cmsghdr *cmsg;
+    jlong timestamp = 0;
+
+    *(jint *)(msg + MSG_LEN_OFFSET) = len;
+    if (src == NULL) {
+        // Connected stream socket
+        memset(msg + MSG_SRC_ADDR_OFFSET, 0, 4);
+        *(jint *)(msg + MSG_SRC_PORT_OFFSET) = 0;
+    } else if (src->sa_family == AF_INET6) {
+        // Java opens dual stack sockets, IPv4 sources are mapped in the last 4 bytes
+        struct sockaddr_in6 *src6 = (struct sockaddr_in6 *)src;
+        memcpy(msg + MSG_SRC_ADDR_OFFSET, &src6->sin6_addr.s6_addr[12], 4);
+        *(jint *)(msg + MSG_SRC_PORT_OFFSET) = ntohs(src6->sin6_port);
+    } else {
+        struct sockaddr_in *src4 = (struct sockaddr_in *)src;
+        memcpy(msg + MSG_SRC_ADDR_OFFSET, &src4->sin_addr.s_addr, 4);
+        *(jint *)(msg + MSG_SRC_PORT_OFFSET) = ntohs(src4->sin_port);
+    }
+    memset(msg + MSG_DST_ADDR_OFFSET, 0, 4);
+    for (cmsg = CMSG_FIRSTHDR(hdr); cmsg != NULL; cmsg = CMSG_NXTHDR(hdr, cmsg)) {
+        if (cmsg->cmsg_level == IPPROTO_IP && cmsg->cmsg_type == IP_PKTINFO) {
+            struct in_pktinfo *pktinfo = (struct in_pktinfo *)CMSG_DATA(cmsg);
+            memcpy(msg + MSG_DST_ADDR_OFFSET, &pktinfo->ipi_addr.s_addr, 4);
+        } else if (cmsg->cmsg_level == SOL_SOCKET && cmsg->cmsg_type == SCM_TIMESTAMP) {
+            struct timeval *tv = (struct timeval *)CMSG_DATA(cmsg);
+            timestamp = tv->tv_sec * 1000000000LL + tv->tv_usec * 1000LL;
+        } else if (cmsg->cmsg_level == SOL_SOCKET && cmsg->cmsg_type == SCM_TIMESTAMPNS) {
+            struct timespec *ts = (struct timespec *)CMSG_DATA(cmsg);
+            timestamp = ts->tv_sec * 1000000000LL + ts->tv_nsec;
+        } else if (cmsg->cmsg_level == SOL_SOCKET && cmsg->cmsg_type == SCM_TIMESTAMPING) {
+            // Software, deprecated and raw hardware timestamps, prefer the hardware one
+            struct timespec *ts = (struct timespec *)CMSG_DATA(cmsg);
+            if (ts[2].tv_sec != 0 || ts[2].tv_nsec != 0) {
+                timestamp = ts[2].tv_sec * 1000000000LL + ts[2].tv_nsec;
+            } else if (ts[0].tv_sec != 0 || ts[0].tv_nsec != 0) {
+                timestamp = ts[0].tv_sec * 1000000000LL + ts[0].tv_nsec;
+            }
+        }
+    }
+    *(jlong *)(msg + MSG_TIMESTAMP_OFFSET) = timestamp;
+    *(jint *)(msg + MSG_FLAGS_OFFSET) = hdr->msg_flags;
+}
+#endif // defined(__linux__)
+
+JNIEXPORT jint JNICALL
+Java_com_zerogc_util_Native_recvmmsg(JNIEnv *env, jclass clazz,
+                                     jint fd, jlong msgsAddress, jlong bufferAddress, jint bufferSize, jint vlen)
+{
+#if defined(__linux__)
+    struct mmsghdr msgs[RECVMMSG_MAX_VLEN];
+    struct iovec iovecs[RECVMMSG_MAX_VLEN];
+    struct sockaddr_in6 addrs[RECVMMSG_MAX_VLEN];
+    char controls[RECVMMSG_MAX_VLEN][RECVMMSG_CONTROL_SIZE];
+    int i;
+
+    if (vlen > RECVMMSG_MAX_VLEN) {
+        vlen = RECVMMSG_MAX_VLEN;
+    }
+    memset(msgs, 0, vlen * sizeof(struct mmsghdr));
+    for (i = 0; i < vlen; i++) {
+        iovecs[i].iov_base = (char *)bufferAddress + i * bufferSize;
+        iovecs[i].iov_len = bufferSize;
+        msgs[i].msg_hdr.msg_name = &addrs[i];
+        msgs[i].msg_hdr.msg_namelen = sizeof(struct sockaddr_in6);
+        msgs[i].msg_hdr.msg_iov = &iovecs[i];
+        msgs[i].msg_hdr.msg_iovlen = 1;
+        msgs[i].msg_hdr.msg_control = controls[i];
+        msgs[i].msg_hdr.msg_controllen = RECVMMSG_CONTROL_SIZE;
+    }
+
+    int status = recvmmsg(fd, msgs, vlen, MSG_DONTWAIT, NULL);
+    if (status == -1) {
+        if (errno == EAGAIN || errno == EWOULDBLOCK || errno == EINTR) {
+            status = 0;
+        }
+        return status;
+    }
+    for (i = 0; i < status; i++) {
+        fillMessage((char *)msgsAddress + i * MSG_SIZE, &msgs[i].msg_hdr, msgs[i].msg_len);
+    }
+    return status;
+#else
+    return -1;
+#endif // defined(__linux__)
+}
+
+#if defined(__linux__)
+static int receiveMessage(jint fd, char *buffer, jint length, jlong msgAddress)
+{
+    struct msghdr hdr;
+    struct iovec iov;
+    struct sockaddr_in6 addr;
+    char control[RECVMMSG_CONTROL_SIZE];
+    int status;
+
+    memset(&hdr, 0, sizeof(hdr));
+    iov.iov_base = buffer;
+    iov.iov_len = length;
+    hdr.msg_name = &addr;
+    hdr.msg_namelen = sizeof(addr);
+    hdr.msg_iov = &iov;
+    hdr.msg_iovlen = 1;
+    hdr.msg_control = control;
+    hdr.msg_controllen = sizeof(control);
+
+    status = recvmsg(fd, &hdr, MSG_DONTWAIT);
+    if (status == -1) {
+        if (errno == EAGAIN || errno == EWOULDBLOCK || errno == EINTR) {
+            status = 0;
+        }
+        return status;
+    } else if (status == 0 && length > 0) {
+        // End of stream
+        return -1;
+    }
+    if (hdr.msg_namelen == 0) {
+        hdr.msg_name = NULL;
+    }
+    fillMessage((char *)msgAddress, &hdr, status);
+    return status;
+}
+#endif // defined(__linux__)
+
+JNIEXPORT jint JNICALL
+Java_com_zerogc_util_Native_recvmsg(JNIEnv *env, jclass clazz,
+                                    jint fd, jbyteArray buffer, jint offset, jint length, jlong msgAddress)
+{
+#if defined(__linux__)
+    int status;
+
+    jbyte *bytes = (*env)->GetPrimitiveArrayCritical(env, buffer, NULL);
+    if (bytes == NULL) {
+        return -1;
+    }
+    status = receiveMessage(fd, (char *)bytes + offset, length, msgAddress);
+    (*env)->ReleasePrimitiveArrayCritical(env, buffer, bytes, 0);
+    return status;
+#else
+    return -1;
+#endif // defined(__linux__)
+}
+
+JNIEXPORT jint JNICALL
+Java_com_zerogc_util_Native_recvmsg_1direct(JNIEnv *env, jclass clazz,
+                                            jint fd, jlong bufferAddress, jint length, jlong msgAddress)
+{
+#if defined(__linux__)
+    return receiveMessage(fd, (char *)bufferAddress, length, msgAddress);
+#else
+    return -1;
+#endif // defined(__linux__)
+}
+
+JNIEXPORT jint JNICALL
+Java_com_zerogc_util_Native_sendmmsg(JNIEnv *env, jclass clazz,
+                                     jint fd, jlong lensAddress, jlong bufferAddress, jint bufferSize, jint vlen)
+{
+#if defined(__linux__)
+    struct mmsghdr msgs[SENDMMSG_MAX_VLEN];
+    struct iovec iovecs[SENDMMSG_MAX_VLEN];
+    int i;
+
+    if (vlen > SENDMMSG_MAX_VLEN) {
+        vlen = SENDMMSG_MAX_VLEN;
+    }
+    memset(msgs, 0, vlen * sizeof(struct mmsghdr));
+    for (i = 0; i < vlen; i++) {
+        iovecs[i].iov_base = (char *)bufferAddress + i * bufferSize;
+        iovecs[i].iov_len = ((jint *)lensAddress)[i];
+        msgs[i].msg_hdr.msg_iov = &iovecs[i];
+        msgs[i].msg_hdr.msg_iovlen = 1;
+    }
+
+    int status = sendmmsg(fd, msgs, vlen, MSG_DONTWAIT);
+    if (status == -1 && (errno == EAGAIN || errno == EWOULDBLOCK || errno == EINTR)) {
+        status = 0;
+    }
+    return status;
+#else
+    return -1;
+#endif // defined(__linux__)
+}
+
 /*************************************************************/
 
 JNIEXPORT jint JNICALL
@@ -326,6 +631,23 @@ Java_com_zerogc_util_Native_epoll_1ctl(JNIEnv *env, jclass clazz,
 #endif // defined(__linux__)
 }
 
+JNIEXPORT jint JNICALL
+Java_com_zerogc_util_Native_epoll_1ctl_1data(JNIEnv *env, jclass clazz,
+                                            jint epfd, jint opcode, jint fd, jint events, jlong data)
+{
+#if defined(__linux__)
+    struct epoll_event event;
+
+    event.events = events;
+    event.data.u64 = data;
+
+    int status = epoll_ctl(epfd, (int)opcode, (int)fd, &event);
+    return status;
+#else
+    return -1;
+#endif // defined(__linux__)
+}
+
 JNIEXPORT jint JNICALL
 Java_com_zerogc_util_Native_epoll_1wait(JNIEnv *env, jclass clazz,
                                         jint epfd, jlong eventsAddress, jint maxevents, jint timeout)
@@ -354,6 +676,176 @@ Java_com_zerogc_util_Native_getOffset_1epoll_1event_1epoll_1data_1fd(JNIEnv *env
 
 /*************************************************************/
 
+JNIEXPORT jint JNICALL
+Java_com_zerogc_util_Native_eventfd(JNIEnv *env, jclass clazz,
+                                    jint initval)
+{
+#if defined(__linux__)
+    return eventfd(initval, EFD_NONBLOCK | EFD_CLOEXEC);
+#else
+    return -1;
+#endif // defined(__linux__)
+}
+
+JNIEXPORT jint JNICALL
+Java_com_zerogc_util_Native_eventfd_1write(JNIEnv *env, jclass clazz,
+                                           jint fd, jlong value)
+{
+#if defined(__linux__)
+    return eventfd_write(fd, value);
+#else
+    return -1;
+#endif // defined(__linux__)
+}
+
+JNIEXPORT jlong JNICALL
+Java_com_zerogc_util_Native_eventfd_1read(JNIEnv *env, jclass clazz,
+                                          jint fd)
+{
+#if defined(__linux__)
+    eventfd_t value;
+    if (eventfd_read(fd, &value) == -1) {
+        return errno == EAGAIN ? 0 : -1;
+    }
+    return value;
+#else
+    return -1;
+#endif // defined(__linux__)
+}
+
+/*************************************************************/
+
+JNIEXPORT jint JNICALL
+Java_com_zerogc_util_Native_setAffinity(JNIEnv *env, jclass clazz,
+                                        jint cpu)
+{
+#if defined(__linux__)
+    cpu_set_t cpuset;
+    if (cpu < 0 || cpu >= CPU_SETSIZE) {
+        errno = EINVAL;
+        return -1;
+    }
+    CPU_ZERO(&cpuset);
+    CPU_SET(cpu, &cpuset);
+    // Pin the calling thread only
+    return sched_setaffinity(0, sizeof(cpuset), &cpuset);
+#else
+    return -1;
+#endif // defined(__linux__)
+}
+
+/*************************************************************/
+
+JNIEXPORT jint JNICALL
+Java_com_zerogc_util_Native_close(JNIEnv *env, jclass clazz,
+                                  jint fd)
+{
+#if defined(__linux__)
+    return close(fd);
+#else
+    return -1;
+#endif // defined(__linux__)
+}
+
+JNIEXPORT jint JNICALL
+Java_com_zerogc_util_Native_splice(JNIEnv *env, jclass clazz,
+                                   jint fdIn, jint fdOut, jint length, jint flags)
+{
+#if defined(__linux__)
+    ssize_t status = splice(fdIn, NULL, fdOut, NULL, length, flags);
+    if (status == -1) {
+        if (errno == EAGAIN || errno == EWOULDBLOCK || errno == EINTR) {
+            status = 0;
+        }
+        return status;
+    } else if (status == 0 && length > 0) {
+        // End of stream
+        return -1;
+    }
+    return status;
+#else
+    return -1;
+#endif // defined(__linux__)
+}
+
+JNIEXPORT jobject JNICALL
+Java_com_zerogc_util_Native_mmap(JNIEnv *env, jclass clazz,
+                                 jint fd, jlong offset, jint length)
+{
+#if defined(__linux__)
+    void *address = mmap(NULL, length, PROT_READ | PROT_WRITE, MAP_SHARED | MAP_POPULATE, fd, offset);
+    if (address == MAP_FAILED) {
+        return NULL;
+    }
+    return (*env)->NewDirectByteBuffer(env, address, length);
+#else
+    return NULL;
+#endif // defined(__linux__)
+}
+
+JNIEXPORT jint JNICALL
+Java_com_zerogc_util_Native_munmap(JNIEnv *env, jclass clazz,
+                                   jobject buffer)
+{
+#if defined(__linux__)
+    return munmap((*env)->GetDirectBufferAddress(env, buffer), (*env)->GetDirectBufferCapacity(env, buffer));
+#else
+    return -1;
+#endif // defined(__linux__)
+}
+
+/*************************************************************/
+
+#define IORING_ENTER_EXT_ARG_FLAG 8
+
+JNIEXPORT jint JNICALL
+Java_com_zerogc_util_Native_io_1uring_1setup(JNIEnv *env, jclass clazz,
+                                             jint entries, jlong paramsAddress)
+{
+#if defined(__linux__) && defined(__NR_io_uring_setup)
+    return syscall(__NR_io_uring_setup, entries, (void *)paramsAddress);
+#else
+    errno = ENOSYS;
+    return -1;
+#endif // defined(__linux__) && defined(__NR_io_uring_setup)
+}
+
+JNIEXPORT jint JNICALL
+Java_com_zerogc_util_Native_io_1uring_1enter(JNIEnv *env, jclass clazz,
+                                             jint fd, jint toSubmit, jint minComplete, jint flags, jlong timeoutNanos)
+{
+#if defined(__linux__) && defined(__NR_io_uring_enter)
+    // struct io_uring_getevents_arg
+    struct {
+        unsigned long long sigmask;
+        unsigned int sigmask_sz;
+        unsigned int pad;
+        unsigned long long ts;
+    } arg;
+    struct timespec ts;
+    int status;
+
+    if (timeoutNanos >= 0 && (flags & IORING_ENTER_EXT_ARG_FLAG) != 0) {
+        ts.tv_sec = timeoutNanos / 1000000000LL;
+        ts.tv_nsec = timeoutNanos % 1000000000LL;
+        memset(&arg, 0, sizeof(arg));
+        arg.ts = (unsigned long long)(uintptr_t)&ts;
+        status = syscall(__NR_io_uring_enter, fd, toSubmit, minComplete, flags, &arg, sizeof(arg));
+    } else {
+        status = syscall(__NR_io_uring_enter, fd, toSubmit, minComplete, flags & ~IORING_ENTER_EXT_ARG_FLAG, NULL, 0);
+    }
+    if (status == -1 && (errno == ETIME || errno == EINTR)) {
+        status = 0;
+    }
+    return status;
+#else
+    errno = ENOSYS;
+    return -1;
+#endif // defined(__linux__) && defined(__NR_io_uring_enter)
+}
+
+/*************************************************************/
+
 JNIEXPORT jint JNICALL
 Java_com_zerogc_test_JniPerf_callDirectByteBuffer(JNIEnv *env, jclass clazz,
                                                   jobject byteBuffer)
@@ -0,0 +1,318 @@
+/*
+ * Copyright 2016 Benoit Jardin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zerogc.book;
+
+import java.util.Arrays;
+
+import com.zerogc.collections.Comparator;
+import com.zerogc.collections.IntList;
+import com.zerogc.collections.LongIntHashMap;
+import com.zerogc.collections.LongTreeSet;
+import com.zerogc.constants.TestSide;
+import com.zerogc.logging.Level;
+import com.zerogc.logging.LogManager;
+import com.zerogc.logging.Logger;
+import com.zerogc.messages.TestEnterOrderRequest;
+
+/**
+ * Order by order (L3) limit order book of a single instrument.
+ * Price levels are kept in one {@link LongTreeSet} per side sharing a single store, bids are sorted in descending
+ * order so that the first entry of either side is the best price. Each level queues its orders in time priority in
+ * an {@link IntList} and all the levels share the same list store, an order entry is therefore a stable index into
+ * the order arrays until the order leaves the book.
+ * Level objects are pooled by level entry, once the stores and arrays have grown to the working set no further
+ * allocation takes place.
+ *
+ * @author Benoit Jardin
+ */
+public class OrderBook {
+    public static final int INITIAL_CAPACITY = 16;
+
+    /** Sorts bids from the highest to the lowest price. */
+    private static final Comparator.LongComparator DESCENDING = new Comparator.LongComparator() {
+        @Override
+        public boolean less(long left, long right) {
+            return left > right;
+        }
+        @Override
+        public int compare(long left, long right) {
+            return left > right ? -1 : (left == right ? 0 : 1);
+        }
+    };
+
+    /** Orders resting at one price, first entry has the highest time priority. */
+    public static final class PriceLevel extends IntList {
+        private final int entry;
+        private byte side;
+        private long quantity;
+
+        PriceLevel(String name, Store store, int entry) {
+            super(name, store);
+            this.entry = entry;
+        }
+
+        /** Returns the level entry in the tree of its side. */
+        public int getEntry() {
+            return this.entry;
+        }
+
+        public byte getSide() {
+            return this.side;
+        }
+
+        /** Returns the total quantity of the orders at this level. */
+        public long getQuantity() {
+            return this.quantity;
+        }
+
+        int remove(int entry) {
+            return removeEntry(entry);
+        }
+    }
+
+    private final Logger log;
+    private final String levelName;
+
+    private final LongTreeSet.Store levelStore;
+    private final LongTreeSet bids;
+    private final LongTreeSet asks;
+    private PriceLevel[] levels = new PriceLevel[0];
+
+    private final IntList.Store orderStore;
+    private final LongIntHashMap orders;
+    private long[] orderNumbers = new long[0];
+    private int[] orderQuantities = new int[0];
+    private int[] orderLevels = new int[0];
+
+    public OrderBook(String name) {
+        this(name, INITIAL_CAPACITY);
+    }
+
+    public OrderBook(String name, int initialCapacity) {
+        this.log = LogManager.getLogger(name);
+        this.levelName = name + ".level";
+
+        this.levelStore = new LongTreeSet.Store(name + ".levels", initialCapacity);
+        this.bids = new LongTreeSet(name + ".bids", this.levelStore);
+        this.bids.setComparator(DESCENDING);
+        this.asks = new LongTreeSet(name + ".asks", this.levelStore);
+
+        this.orderStore = new IntList.Store(name + ".queue", initialCapacity);
+        this.orders = new LongIntHashMap(name + ".orders", initialCapacity);
+        growLevels(this.levelStore.capacity());
+        growOrders(this.orderStore.capacity());
+    }
+
+    private void growLevels(int newCapacity) {
+        log.log(Level.WARN, log.getSB().append("Resizing levels to ").append(newCapacity));
+        this.levels = Arrays.copyOf(this.levels, newCapacity);
+    }
+
+    private void growOrders(int newCapacity) {
+        log.log(Level.WARN, log.getSB().append("Resizing orders to ").append(newCapacity));
+        this.orderNumbers = Arrays.copyOf(this.orderNumbers, newCapacity);
+        this.orderQuantities = Arrays.copyOf(this.orderQuantities, newCapacity);
+        this.orderLevels = Arrays.copyOf(this.orderLevels, newCapacity);
+    }
+
+    /** Returns the price levels of the buy side, the first entry is the best bid. */
+    public LongTreeSet getBids() {
+        return this.bids;
+    }
+
+    /** Returns the price levels of the sell side, the first entry is the best offer. */
+    public LongTreeSet getAsks() {
+        return this.asks;
+    }
+
+    public LongTreeSet getSide(byte side) {
+        if (side == TestSide.BUY) {
+            return this.bids;
+        } else if (side == TestSide.SELL) {
+            return this.asks;
+        }
+        throw new IllegalArgumentException("Illegal side: " + (char)side);
+    }
+
+    public PriceLevel getLevel(int levelEntry) {
+        return this.levels[levelEntry];
+    }
+
+    public long getPrice(int levelEntry) {
+        return getSide(this.levels[levelEntry].side).getKey(levelEntry);
+    }
+
+    /** Returns the number of orders in the book. */
+    public int size() {
+        return this.orders.size();
+    }
+
+    /** Returns the order entry of the specified order number or {@code -1} if it is not in the book. */
+    public int findOrder(long orderNumber) {
+        int entry = this.orders.find(orderNumber);
+        return entry == -1 ? -1 : this.orders.getValue(entry);
+    }
+
+    public long getOrderNumber(int orderEntry) {
+        return this.orderNumbers[orderEntry];
+    }
+
+    public int getOrderQuantity(int orderEntry) {
+        return this.orderQuantities[orderEntry];
+    }
+
+    public int getOrderLevel(int orderEntry) {
+        return this.orderLevels[orderEntry];
+    }
+
+    /** Add the order carried by an enter order message, the token is used as order number. */
+    public int onEnterOrder(TestEnterOrderRequest enterOrder) {
+        return add(enterOrder.getToken(), enterOrder.getSide(), enterOrder.getPrice(), enterOrder.getQuantity());
+    }
+
+    /**
+     * Add an order at the back of the queue of its price level.
+     * @return the order entry.
+     */
+    public int add(long orderNumber, byte side, long price, int quantity) {
+        if (quantity <= 0) {
+            throw new IllegalArgumentException("Illegal quantity: " + quantity);
+        }
+        LongTreeSet tree = getSide(side);
+        if (this.orders.find(orderNumber) != -1) {
+            throw new IllegalStateException("Duplicate order: " + orderNumber);
+        }
+        int orderEntry = enqueue(level(tree, side, price), orderNumber, quantity);
+        this.orders.insert(orderNumber, orderEntry);
+        return orderEntry;
+    }
+
+    /**
+     * Change the price and quantity of an order.
+     * The order keeps its time priority when only its quantity decreases, otherwise it moves to the back of the queue
+     * of its new price level.
+     * @return false if the order is not in the book.
+     */
+    public boolean modify(long orderNumber, long price, int quantity) {
+        if (quantity <= 0) {
+            throw new IllegalArgumentException("Illegal quantity: " + quantity);
+        }
+        int entry = this.orders.find(orderNumber);
+        if (entry == -1) {
+            return false;
+        }
+        int orderEntry = this.orders.getValue(entry);
+        PriceLevel level = this.levels[this.orderLevels[orderEntry]];
+        LongTreeSet tree = getSide(level.side);
+        if (tree.getKey(level.entry) == price && quantity <= this.orderQuantities[orderEntry]) {
+            level.quantity -= this.orderQuantities[orderEntry] - quantity;
+            this.orderQuantities[orderEntry] = quantity;
+            return true;
+        }
+        byte side = level.side;
+        dequeue(orderEntry);
+        this.orders.insert(orderNumber, enqueue(level(tree, side, price), orderNumber, quantity));
+        return true;
+    }
+
+    /**
+     * Remove an order from the book.
+     * @return false if the order is not in the book.
+     */
+    public boolean cancel(long orderNumber) {
+        int entry = this.orders.find(orderNumber);
+        if (entry == -1) {
+            return false;
+        }
+        dequeue(this.orders.getValue(entry));
+        this.orders.remove(orderNumber);
+        return true;
+    }
+
+    /**
+     * Execute part of an order, the order leaves the book once fully executed.
+     * @return false if the order is not in the book.
+     */
+    public boolean execute(long orderNumber, int quantity) {
+        int entry = this.orders.find(orderNumber);
+        if (entry == -1) {
+            return false;
+        }
+        int orderEntry = this.orders.getValue(entry);
+        int leavesQuantity = this.orderQuantities[orderEntry] - quantity;
+        if (quantity <= 0 || leavesQuantity < 0) {
+            throw new IllegalArgumentException("Illegal quantity: " + quantity);
+        }
+        if (leavesQuantity == 0) {
+            dequeue(orderEntry);
+            this.orders.remove(orderNumber);
+        } else {
+            this.levels[this.orderLevels[orderEntry]].quantity -= quantity;
+            this.orderQuantities[orderEntry] = leavesQuantity;
+        }
+        return true;
+    }
+
+    public void clear() {
+        for (int i=0; i < this.levelStore.highMark(); i++) {
+            if (this.levels[i] != null) {
+                this.levels[i].clear();
+            }
+        }
+        this.bids.clear();
+        this.asks.clear();
+        this.orders.clear();
+    }
+
+    private PriceLevel level(LongTreeSet tree, byte side, long price) {
+        int size = tree.size();
+        int levelEntry = tree.insert(price);
+        if (levelEntry >= this.levels.length) {
+            growLevels(this.levelStore.capacity());
+        }
+        PriceLevel level = this.levels[levelEntry];
+        if (tree.size() != size) {
+            if (level == null) {
+                level = new PriceLevel(this.levelName, this.orderStore, levelEntry);
+                this.levels[levelEntry] = level;
+            }
+            level.side = side;
+            level.quantity = 0;
+        }
+        return level;
+    }
+
+    private int enqueue(PriceLevel level, long orderNumber, int quantity) {
+        int orderEntry = level.addLast(level.entry);
+        if (orderEntry >= this.orderNumbers.length) {
+            growOrders(this.orderStore.capacity());
+        }
+        this.orderNumbers[orderEntry] = orderNumber;
+        this.orderQuantities[orderEntry] = quantity;
+        this.orderLevels[orderEntry] = level.entry;
+        level.quantity += quantity;
+        return orderEntry;
+    }
+
+    private void dequeue(int orderEntry) {
+        PriceLevel level = this.levels[this.orderLevels[orderEntry]];
+        level.quantity -= this.orderQuantities[orderEntry];
+        level.remove(orderEntry);
+        if (level.isEmpty()) {
+            getSide(level.side).removeEntry(level.entry);
+        }
+    }
+}
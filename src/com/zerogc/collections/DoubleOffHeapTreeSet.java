@@ -0,0 +1,775 @@
+/*
+ * Copyright 2016 Benoit Jardin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zerogc.collections;
+
+import com.zerogc.core.ByteStringBuilder;
+import com.zerogc.logging.Level;
+import com.zerogc.logging.LogManager;
+import com.zerogc.logging.Logger;
+
+/**
+ * @author Benoit Jardin
+ * Textbook implementation of RedBlack Tree.
+ * See: "Introduction to Algorithms" by Cormen, Leiserson, Rivest and Stein
+ * 
+ * This implementation allows to share storage across multiple trees.
+ *
+ * Same as DoubleTreeSet with the links and keys of the entries of the Store kept off-heap in an OffHeapStorage.
+ */
+
+public class DoubleOffHeapTreeSet {
+    protected static final byte RED = 0;
+    protected static final byte BLACK = 1;
+
+    protected final Logger log;
+
+    protected Store store;
+
+    private int size = 0;
+    private int root = -1;
+    private Comparator.DoubleComparator comparator = new Comparator.DoubleComparator(); 
+
+    public static class Store {
+        public static final int INITIAL_CAPACITY = 16;
+        public static final float GROWTH_FACTOR = 2.0f;
+
+        // Record layout
+        protected static final int LEFT = 0;
+        protected static final int RIGHT = 4;
+        protected static final int PARENT = 8;
+        protected static final int COLOR = 12;
+        protected static final int KEY = 16;
+        protected static final int RECORD_SIZE = KEY + 8;
+
+        protected final Logger log;
+
+        private float growthFactor = GROWTH_FACTOR;
+
+        private int freeEntry = -1;
+        private int highMark = 0;
+        private int size = 0;
+
+        protected final OffHeapStorage storage = new OffHeapStorage(RECORD_SIZE);
+
+        public Store() {
+            this(Store.class.getSimpleName(), INITIAL_CAPACITY, GROWTH_FACTOR);
+        }
+
+        public Store(String name) {
+            this(name, INITIAL_CAPACITY, GROWTH_FACTOR);
+        }
+
+        public Store(String name, int initialCapacity) {
+            this(name, initialCapacity, GROWTH_FACTOR);
+        }
+
+        public Store(String name, int initialCapacity, float growthFactor) {
+            this.log = LogManager.getLogger(name);
+
+            if (initialCapacity < 0) {
+                throw new IllegalArgumentException("Illegal Capacity: " + initialCapacity);
+            }
+            if (growthFactor <= 0 || Float.isNaN(growthFactor)) {
+                throw new IllegalArgumentException("Illegal GrowthFactor: " + growthFactor);
+            }
+            if (initialCapacity == 0) {
+                initialCapacity = 1;
+            }
+            this.growthFactor = growthFactor;
+
+            grow(0, initialCapacity);
+        }
+
+        public int highMark() {
+            return this.highMark;
+        }
+
+        public int capacity() {
+            return this.storage.capacity();
+        }
+
+        public int size() {
+            return this.size;
+        }
+
+        protected void grow(int capacity, int newCapacity) {
+            log.log(Level.WARN, log.getSB().append("Resizing to ").append(newCapacity));
+
+            this.storage.grow(newCapacity);
+        }
+
+        public final double getKey(int entry) {
+            return this.storage.getDouble(entry, KEY);
+        }
+
+        protected final void setKey(int entry, double key) {
+            this.storage.putDouble(entry, KEY, key);
+        }
+
+        protected final int getLeft(int entry) {
+            return this.storage.getInt(entry, LEFT);
+        }
+
+        protected final void setLeft(int entry, int left) {
+            this.storage.putInt(entry, LEFT, left);
+        }
+
+        protected final int getRight(int entry) {
+            return this.storage.getInt(entry, RIGHT);
+        }
+
+        protected final void setRight(int entry, int right) {
+            this.storage.putInt(entry, RIGHT, right);
+        }
+
+        protected final int getParent(int entry) {
+            return this.storage.getInt(entry, PARENT);
+        }
+
+        protected final void setParent(int entry, int parent) {
+            this.storage.putInt(entry, PARENT, parent);
+        }
+
+        protected final byte getColor(int entry) {
+            return this.storage.getByte(entry, COLOR);
+        }
+
+        protected final void setColor(int entry, byte color) {
+            this.storage.putByte(entry, COLOR, color);
+        }
+
+        private void clear() {
+            this.freeEntry = -1;
+            this.highMark = 0;
+            this.size = 0;
+        }
+
+        protected int newEntry() {
+            int entry = this.freeEntry;
+            if (entry != -1) {
+                this.freeEntry = getParent(entry);
+            } else {
+                int capacity = this.storage.capacity();
+                if (highMark >= capacity) {
+                    // Grow the storage
+                    int newCapacity = this.storage.adjustCapacity((int)(capacity * this.growthFactor));
+                    grow(capacity, newCapacity);
+                }
+                entry = highMark++;
+            }
+
+            setLeft(entry, -1);
+            setRight(entry, -1);
+
+            this.size++;
+            return entry;
+        }
+
+        protected void removeEntry(int entry) {
+            setParent(entry, this.freeEntry);
+            this.freeEntry = entry;
+            this.size--;
+        }
+    }
+
+    public DoubleOffHeapTreeSet() {
+        this(DoubleOffHeapTreeSet.class.getSimpleName(), Store.INITIAL_CAPACITY, Store.GROWTH_FACTOR);
+    }
+
+    public DoubleOffHeapTreeSet(String name) {
+        this(name, Store.INITIAL_CAPACITY, Store.GROWTH_FACTOR);
+    }
+
+    public DoubleOffHeapTreeSet(String name, int initialCapacity) {
+        this(name, initialCapacity, Store.GROWTH_FACTOR);
+    }
+
+    public DoubleOffHeapTreeSet(String name, int initialCapacity, float growthFactor) {
+        this(name, new Store(name, initialCapacity, growthFactor));
+    }
+
+    public DoubleOffHeapTreeSet(String name, Store store) {
+        this.log = LogManager.getLogger(name);
+        this.store = store;
+    }
+
+    public void setComparator(Comparator.DoubleComparator comparator) {
+        if (!this.isEmpty()) {
+            throw new IllegalStateException("Collection not empty!");
+        }
+        this.comparator = comparator;
+    }
+
+    public int highMark() {
+        return this.store.highMark();
+    }
+
+    public int capacity() {
+        return this.store.capacity();
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    public void clear() {
+        // Release entries in post order, the parent link of released entries is reused by the free list
+        int entry = root;
+        while (entry != -1) {
+            if (store.getLeft(entry) != -1) {
+                entry = store.getLeft(entry);
+            } else if (store.getRight(entry) != -1) {
+                entry = store.getRight(entry);
+            } else {
+                int parent = store.getParent(entry);
+                if (parent != -1) {
+                    if (store.getLeft(parent) == entry) {
+                        store.setLeft(parent, -1);
+                    } else {
+                        store.setRight(parent, -1);
+                    }
+                }
+                store.removeEntry(entry);
+                entry = parent;
+            }
+        }
+        this.root = -1;
+        this.size = 0;
+    }
+
+    public double getKey(int entry) {
+        return this.store.getKey(entry);
+    }
+
+    private int newEntry() {
+        this.size++;
+        return store.newEntry();
+    }
+
+    /** Returns the first entry in the collection or {@code -1} if it is empty. */
+    public int firstEntry() {
+        int entry = root;
+        if (entry != -1) {
+            while (store.getLeft(entry) != -1) {
+                entry = store.getLeft(entry);
+            }
+        }
+        return entry;
+    }
+
+    /** Returns the last entry in the collection or {@code -1} if it is empty. */
+    public int lastEntry() {
+        int entry = root;
+        if (entry != -1) {
+            while (store.getRight(entry) != -1) {
+                entry = store.getRight(entry);
+            }
+        }
+        return entry;
+    }
+
+    /** Returns the previous entry in the collection or {@code -1} when the beginning is reached. */
+    public int prevEntry(int entry) {
+        if (store.getLeft(entry) != -1) {
+            entry = store.getLeft(entry);
+            while (store.getRight(entry) != -1) {
+                entry = store.getRight(entry);
+            }
+        } else {
+            int parent = this.store.getParent(entry);
+            while (parent != -1 && entry == store.getLeft(parent)) {
+                entry = parent;
+                parent = this.store.getParent(entry);
+            }
+            entry = parent;
+        }
+        return entry;
+    }
+
+    /** Returns the next entry in the collection or {@code -1} when the end is reached. */
+    public int nextEntry(int entry) {
+        if (store.getRight(entry) != -1) {
+            entry = store.getRight(entry);
+            while (store.getLeft(entry) != -1) {
+                entry = store.getLeft(entry);
+            }
+        } else {
+            int parent = this.store.getParent(entry);
+            while (parent != -1 && entry == store.getRight(parent)) {
+                entry = parent;
+                parent = this.store.getParent(entry);
+            }
+            entry = parent;
+        }
+        return entry;
+    }
+
+    /**
+     * Returns an entry of the key in the collection.
+     * @param key the key to find.
+     * @return the entry of the key or {@code -1} if not found.
+     */
+    public int find(double key) {
+        int x = root;
+        while (x != -1) {
+            int cmp = comparator.compare(key, this.store.getKey(x));
+            if (cmp < (cmp^cmp)) { // Faster than if (cmp < 0) with Sun jdk1.6
+                x = store.getLeft(x);
+            } else if (cmp != 0) {
+                x = store.getRight(x);
+            } else {
+                break;
+            }
+        }
+        return x;
+    }
+
+    /**
+     * Returns the first entry of the key in the collection.
+     * @param key the key to find.
+     * @return the entry of the key or {@code -1} if not found.
+     */
+    public int findFirst(double key) {
+        int x = root;
+        int entry = -1;
+        while (x != -1) {
+            //if (!(comparator.compare(this.treeStore.key[x], key) < 0)) {
+            if (!comparator.less(this.store.getKey(x), key)) {
+                entry = x; // treeStore.key[x] >= key
+                x = store.getLeft(x);
+            } else {
+                x = store.getRight(x);
+            }
+        }
+        //return (entry == -1) || (comparator.compare(key, this.treeStore.key[entry]) < 0) ? -1 : entry;
+        return (entry == -1) || comparator.less(key, this.store.getKey(entry)) ? -1 : entry;
+    }
+
+    /**
+     * Returns the entry of the greatest key in the collection that is less than or equal to the given key, or {@code -1} if there is no such key.
+     * @param key the key to find.
+     * @return the entry of the key or {@code -1} if there is no such key.
+     * */
+    public int floor(double key) {
+        int x = root;
+        int entry = -1;
+        while (x != -1) {
+            if (comparator.compare(key, this.store.getKey(x)) < 0) {
+                x = store.getLeft(x);  // treeStore.key[x] > key
+            } else {
+                entry = x; // treeStore.key[x] <= key, this is a candidate
+                x = store.getRight(x);
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * Returns the entry of the least element in the collection that is greater than or equal to the given element, or {@code -1} if there is no such key.
+     * @param key the key to find.
+     * @return the entry of the key or {@code -1} if there is no such key.
+     * */
+    public int ceiling(double key) {
+        int x = root;
+        int entry = -1;
+        while (x != -1) {
+            if (comparator.compare(key, this.store.getKey(x)) <= 0) {
+                entry = x; // treeStore.key[x] >= key, this is a candidate
+                x = store.getLeft(x);  // treeStore.key[x] < key
+            } else {
+                x = store.getRight(x); // treeStore.key[x] < key
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * Insert a key in the collection.
+     * If the collection already contained the key, the existing entry is returned.
+     * @param key the key to insert.
+     * @return the entry of the key that was inserted.
+     */
+    public int insert(double key) {
+        int parent = -1;
+        int entry = root;
+        int cmp = 0;
+
+        while (entry != -1) {
+            parent = entry;
+            cmp = comparator.compare(key, this.store.getKey(entry));
+            if (cmp < (cmp^cmp)) { // Faster than if (cmp < 0) with Sun jdk1.6
+                entry = store.getLeft(entry);
+            } else if (cmp != 0) {
+                entry = store.getRight(entry);
+            } else {
+                return entry;
+            }
+        }
+
+        entry = newEntry();
+        this.store.setKey(entry, key);
+        this.store.setParent(entry, parent);
+        if (parent == -1) {
+            root = entry;
+            store.setColor(root, BLACK);
+        } else {
+            if (cmp < (cmp^cmp)) { // Faster than if (cmp < 0) with Sun jdk1.6
+                store.setLeft(parent, entry);
+            } else {
+                store.setRight(parent, entry);
+            }
+            rebalanceRemove(entry);
+        }
+        return entry;
+    }
+
+    /**
+     * Insert a key in the collection.
+     * If the collection already contained the key, a new entry is created after the last instance of the key.
+     * @param key the key to insert.
+     * @return the entry of the key that was inserted.
+     */
+    public int insertMulti(double key) {
+        int parent = -1;
+        int entry = root;
+        int cmp = 0;
+
+        while (entry != -1) {
+            parent = entry;
+            cmp = comparator.compare(key, this.store.getKey(entry));
+            if (cmp < (cmp^cmp)) { // Faster than if (cmp < 0) with Sun jdk1.6
+                entry = store.getLeft(entry);
+            } else {
+                entry = store.getRight(entry);
+            }
+        }
+
+        entry = newEntry();
+        this.store.setKey(entry, key);
+        this.store.setParent(entry, parent);
+        if (parent == -1) {
+            root = entry;
+            store.setColor(root, BLACK);
+        } else {
+            if (cmp < (cmp^cmp)) { // Faster than if (cmp < 0) with Sun jdk1.6
+                store.setLeft(parent, entry);
+            } else {
+                store.setRight(parent, entry);
+            }
+            rebalanceRemove(entry);
+        }
+        return entry;
+    }
+
+    /** 
+     * Remove the specified entry from the collection.
+     * @param entry to remove.
+     * @return the next entry.
+     */
+    public int removeEntry(int entry) {
+        int next = nextEntry(entry);
+        int spliceEntry = (store.getLeft(entry) == -1 || store.getRight(entry) == -1) ? entry : next;
+        // if entry != -1 then spliceEntry != -1
+        // If entry has a treeStore.right child then entry's successor can't have a treeStore.left child  
+        int spliceChild = (store.getLeft(spliceEntry) != -1) ? store.getLeft(spliceEntry) : store.getRight(spliceEntry);
+        int spliceParent = store.getParent(spliceEntry);
+        if (spliceChild != -1) {
+            store.setParent(spliceChild, spliceParent);
+        }
+        if (spliceParent == -1) {
+            this.root = spliceChild;
+        } else if (spliceEntry == store.getLeft(spliceParent)) {
+            store.setLeft(spliceParent, spliceChild);
+        } else {
+            store.setRight(spliceParent, spliceChild);
+        }
+        int spliceColor = this.store.getColor(spliceEntry);
+        if (spliceEntry != entry) {
+            // Replace entry to remove in the tree with spliceEntry
+            this.store.setColor(spliceEntry, this.store.getColor(entry));
+
+            int right = this.store.getRight(entry);
+            this.store.setRight(spliceEntry, right);
+            if (right != -1) {
+                store.setParent(right, spliceEntry);
+            }
+            int left = this.store.getLeft(entry);
+            this.store.setLeft(spliceEntry, left);
+            if (left != -1) {
+                store.setParent(left, spliceEntry);
+            }
+            int parent = this.store.getParent(entry);
+            this.store.setParent(spliceEntry, parent);
+            if (parent == -1) {
+                this.root = spliceEntry;
+            } else if (entry == this.store.getLeft(parent)) {
+                this.store.setLeft(parent, spliceEntry);
+            } else {
+                this.store.setRight(parent, spliceEntry);
+            }
+
+            if (spliceParent == entry) {
+                spliceParent = spliceEntry;
+            }
+        }
+        if (spliceColor == BLACK) {
+            rebalanceRemove(spliceParent, spliceChild);
+        }
+
+        store.removeEntry(entry);
+        this.size--;
+
+        return next;
+    }
+
+    //   x            y
+    //  / \          / \
+    // a   y   -->  x   c
+    //    / \      / \
+    //   b   c    a   b
+    private int rotateLeft(int x) {
+        int y = store.getRight(x);
+        store.setRight(x, store.getLeft(y));
+        if (store.getLeft(y) != -1) {
+            store.setParent(store.getLeft(y), x);
+        }
+        store.setParent(y, store.getParent(x));
+        if (store.getParent(x) == -1) {
+            this.root = y;
+        } else if (x == store.getLeft(store.getParent(x))) {
+            store.setLeft(store.getParent(x), y);
+        } else {
+            store.setRight(store.getParent(x), y);
+        }
+        store.setLeft(y, x);
+        store.setParent(x, y);
+        return y;
+    }
+
+    //     x           y
+    //    / \         / \
+    //   y   c  -->  a   x
+    //  / \             / \
+    // a   b           b   c
+    private int rotateRight(int x) {
+        int y = store.getLeft(x);
+        store.setLeft(x, store.getRight(y));
+        if (store.getRight(y) != -1) {
+            store.setParent(store.getRight(y), x);
+        }
+        store.setParent(y, store.getParent(x));
+        if (store.getParent(x) == -1) {
+            this.root = y;
+        } else if (x == store.getRight(store.getParent(x))) {
+            store.setRight(store.getParent(x), y);
+        } else {
+            store.setLeft(store.getParent(x), y);
+        }
+        store.setRight(y, x);
+        store.setParent(x, y);
+        return y;
+    }
+
+    private void rebalanceRemove(int entry) {
+        store.setColor(entry, RED);
+        int parent = this.store.getParent(entry);
+        while (entry != root && store.getColor(parent) == RED) {
+            int grandParent = this.store.getParent(parent);
+            if (grandParent == -1) {
+                // Just need to make the parent/root black
+                break;
+            } else if (parent == store.getLeft(grandParent)) {
+                int uncle = store.getRight(grandParent);
+                if (uncle != -1 && store.getColor(uncle) == RED) {
+                    store.setColor(parent, BLACK);
+                    store.setColor(uncle, BLACK);
+                    store.setColor(grandParent, RED);
+                    entry = grandParent;
+                    parent = this.store.getParent(entry);
+                } else {
+                    if (entry == store.getRight(parent)) {
+                        // operation swaps entry and parent while grandParent stays the same  
+                        entry = parent;
+                        parent = rotateLeft(parent);
+                    }
+                    store.setColor(parent, BLACK); // Break the loop
+                    store.setColor(grandParent, RED);
+                    // operation does not change parent
+                    rotateRight(grandParent);
+                }
+            } else {
+                int uncle = store.getLeft(grandParent);
+                if (uncle != -1 && store.getColor(uncle) == RED) {
+                    store.setColor(parent, BLACK);
+                    store.setColor(uncle, BLACK);
+                    store.setColor(grandParent, RED);
+                    entry = grandParent;
+                    parent = this.store.getParent(entry);
+                } else {
+                    if (entry == store.getLeft(parent)) {
+                        // operation swaps entry and parent while grandParent stays the same  
+                        entry = parent;
+                        parent = rotateRight(parent);
+                    }
+                    store.setColor(parent, BLACK); // Break the loop
+                    store.setColor(grandParent, RED);
+                    // operation does not change parent
+                    rotateLeft(grandParent);
+                }
+            }
+        }
+        store.setColor(root, BLACK);
+    }
+
+    private void rebalanceRemove(int entry, int child) {
+        // It is possible that child == -1
+        // parent == -1 only when child == root
+        while (child != this.root && (child == -1 || store.getColor(child) == BLACK)) {
+            // parent != -1 since child != root
+            if (child == store.getLeft(entry)) {
+                int sibling = store.getRight(entry);
+                if (sibling == -1) {
+                    child = entry;
+                    entry = this.store.getParent(child);
+                } else {
+                    if (store.getColor(sibling) == RED) {
+                        store.setColor(sibling, BLACK);  // sibling becomes grandParent after rotation
+                        store.setColor(entry, RED);
+                        rotateLeft(entry);
+                        sibling = store.getRight(entry);
+                        // sibling != -1
+                    }
+                    // treeStore.color[sibling] == BLACK
+                    int leftNephew = store.getLeft(sibling);
+                    int rightNephew = store.getRight(sibling);
+                    if ((leftNephew == -1 || store.getColor(leftNephew) == BLACK) &&
+                            (rightNephew == -1 || store.getColor(rightNephew) == BLACK)) {
+                        store.setColor(sibling, RED);
+                        child = entry;
+                        entry = this.store.getParent(child);
+                    } else {
+                        if (rightNephew == -1 || store.getColor(rightNephew) == BLACK) {
+                            // treeStore.color[leftNephew] == RED
+                            store.setColor(leftNephew, BLACK); // leftNephew becomes sibling after rotation
+                            store.setColor(sibling, RED); // sibling becomes rightNephew after rotation
+                            rightNephew = sibling;
+                            sibling = rotateRight(sibling);
+                        }
+                        // treeStore.color[rightNephew] == RED
+                        store.setColor(sibling, store.getColor(entry));
+                        store.setColor(entry, BLACK);
+                        store.setColor(rightNephew, BLACK);
+                        rotateLeft(entry);
+                        child = this.root; // End the loop
+                    }
+                }
+            } else {
+                int sibling = store.getLeft(entry);
+                if (sibling == -1) {
+                    child = entry;
+                    entry = this.store.getParent(child);
+                } else {
+                    if (sibling != -1 && store.getColor(sibling) == RED) {
+                        store.setColor(sibling, BLACK); // sibling becomes grandParent after rotation
+                        store.setColor(entry, RED);
+                        rotateRight(entry);
+                        sibling = store.getLeft(entry);
+                        // sibling != -1
+                    }
+                    // treeStore.color[sibling] == BLACK
+                    int leftNephew = store.getLeft(sibling);
+                    int rightNephew = store.getRight(sibling);
+                    if ((leftNephew == -1 || store.getColor(leftNephew) == BLACK) &&
+                            (rightNephew == -1 || store.getColor(rightNephew) == BLACK)) {
+                        store.setColor(sibling, RED);
+                        child = entry;
+                        entry = this.store.getParent(child);
+                    } else {
+                        if (leftNephew == -1 || store.getColor(leftNephew) == BLACK) {
+                            // treeStore.color[rightNephew] == RED
+                            store.setColor(rightNephew, BLACK);
+                            store.setColor(sibling, RED);
+                            leftNephew = sibling;
+                            sibling = rotateLeft(sibling);
+                        }
+                        // treeStore.color[leftNephew] == RED
+                        store.setColor(sibling, store.getColor(entry));
+                        store.setColor(entry, BLACK);
+                        store.setColor(leftNephew, BLACK);
+                        rotateRight(entry);
+                        child = this.root;  // End the loop
+                    }
+                }
+            }
+        }
+        if (child != -1) {
+            store.setColor(child, BLACK);
+        }
+    }
+
+    public ByteStringBuilder toString(ByteStringBuilder sb) {
+        for (int entry = firstEntry(); entry != -1; entry = nextEntry(entry)) {
+            sb.append("[entry=").append(entry).append("]");
+            sb.append("[key=").append(store.getKey(entry)).append("]");
+            sb.append("[parent=").append(store.getParent(entry)).append("]");
+            sb.append("[left=").append(store.getLeft(entry)).append("]");
+            sb.append("[right=").append(store.getRight(entry)).append("]");
+            sb.append("\n");
+        }
+        return sb;
+    }
+
+    public EntryIterator entryIterator(EntryIterator entryIterator) {
+        entryIterator.init(this);
+        return entryIterator;
+    }
+
+    public static class EntryIterator {
+        private DoubleOffHeapTreeSet rbTree;
+        private int entry;
+        private int nextEntry;
+
+        /** Initialize the iterator at the beginning of the collection. */
+        public void init(DoubleOffHeapTreeSet rbTree) {
+            this.rbTree = rbTree;
+            entry = -1;
+            nextEntry = rbTree.firstEntry();
+        }
+
+        /** Returns {@code true} if the iteration has more elements.
+         * {@link #hasNext} returning true guarantees that {@link #nextEntry} will not return -1.*/
+        public boolean hasNext() {
+            return nextEntry != -1;
+        }
+
+        /** Returns the next entry in the collection or {@code -1} if the iterator has reached the end. */
+        public int nextEntry() {
+            entry = nextEntry;
+            nextEntry = rbTree.nextEntry(nextEntry);
+            return entry;
+        }
+
+        /** Remove from the iteration's current entry from the underlying collection. */
+        public void remove() {
+            rbTree.removeEntry(entry);
+            entry = -1;
+        }
+    }
+}
@@ -0,0 +1,354 @@
+/*
+ * Copyright 2016 Benoit Jardin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zerogc.collections;
+
+import com.zerogc.logging.Level;
+import com.zerogc.logging.LogManager;
+import com.zerogc.logging.Logger;
+
+/**
+ * Hash map with open addressing and linear probing.
+ * Where IntLongHashMap follows bucket[] then next[] to reach a key, a lookup here probes consecutive
+ * slots of the key array, keys and values being interleaved in a single array when they have the same type.
+ * Removing a key shifts the following keys of its probe sequence back instead of leaving a tombstone.
+ * Entries are slot indexes, an entry is only stable until the next removal.
+ * Primitive keys use 0 to mark free slots and the key 0 is kept in the extra entry capacity(), null keys are not supported.
+ */
+public class IntLongOpenHashMap {
+    public static final int INITIAL_CAPACITY = 16;
+    public static final int MAXIMUM_CAPACITY = 1 << 30;
+    public static final float LOAD_FACTOR = 0.5f;
+    public static final float GROWTH_FACTOR = 2.0f;
+
+    private static final int FREE_KEY = 0;
+
+    protected final Logger log;
+
+    private float growthFactor;
+    private float loadFactor;
+    private int size = 0;
+    private int capacity = 0;
+    private int mask;
+    private int threshold;
+    private boolean hasFreeKey = false;
+
+    private int[] key;
+    private long[] value;
+    protected Comparator.IntComparator comparator = new Comparator.IntComparator();
+
+    public IntLongOpenHashMap() {
+        this(IntLongOpenHashMap.class.getSimpleName(), INITIAL_CAPACITY, GROWTH_FACTOR, LOAD_FACTOR);
+    }
+
+    public IntLongOpenHashMap(String name) {
+        this(name, INITIAL_CAPACITY, GROWTH_FACTOR, LOAD_FACTOR);
+    }
+
+    public IntLongOpenHashMap(String name, int initialCapacity) {
+        this(name, initialCapacity, GROWTH_FACTOR, LOAD_FACTOR);
+    }
+
+    public IntLongOpenHashMap(String name, int initialCapacity, float growthFactor) {
+        this(name, initialCapacity, growthFactor, LOAD_FACTOR);
+    }
+
+    public IntLongOpenHashMap(String name, int initialCapacity, float growthFactor, float loadFactor) {
+        this.log = LogManager.getLogger(name);
+
+        if (initialCapacity < 0) {
+            throw new IllegalArgumentException("Illegal initial capacity: " + initialCapacity);
+        }
+        if (initialCapacity > MAXIMUM_CAPACITY) {
+            initialCapacity = MAXIMUM_CAPACITY;
+        }
+        if (initialCapacity < 2) {
+            initialCapacity = 2;
+        }
+        if (growthFactor <= 1 || Float.isNaN(growthFactor)) {
+            throw new IllegalArgumentException("Illegal GrowthFactor: " + growthFactor);
+        }
+        if (loadFactor <= 0 || loadFactor >= 1 || Float.isNaN(loadFactor)) {
+            throw new IllegalArgumentException("Illegal load factor: " + loadFactor);
+        }
+        this.growthFactor = growthFactor;
+        this.loadFactor = loadFactor;
+        grow(0, initialCapacity);
+    }
+
+    public void setComparator(Comparator.IntComparator comparator) {
+        if (!this.isEmpty()) {
+            throw new IllegalStateException("Collection not empty!");
+        }
+        this.comparator = comparator;
+    }
+
+    /** Returns the number of slots, the key 0 of primitive maps is the extra entry capacity(). */
+    public int capacity() {
+        return this.capacity;
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    protected void grow(int capacity, int newCapacity) {
+        log.log(Level.WARN, log.getSB().append("Resizing to ").append(newCapacity));
+
+        int[] oldKey = this.key;
+        long[] oldValue = this.value;
+        int adjustedCapacity = 1;
+        while (adjustedCapacity < newCapacity) {
+            adjustedCapacity <<= 1;
+        }
+        this.capacity = adjustedCapacity;
+        this.mask = adjustedCapacity - 1;
+        // Keep at least one free slot to terminate the probe sequences
+        this.threshold = Math.min((int)(adjustedCapacity * loadFactor), adjustedCapacity - 1);
+        // One extra entry for the key 0
+        this.key = new int[adjustedCapacity + 1];
+        this.value = new long[adjustedCapacity + 1];
+
+        if (capacity > 0) {
+            // Transfer entries to the resized table
+            for (int i=0; i < capacity; i++) {
+                int key = oldKey[i];
+                if (key != FREE_KEY) {
+                    int slot = freeSlot(key);
+                    this.key[slot] = key;
+                    this.value[slot] = oldValue[i];
+                }
+            }
+            this.key[adjustedCapacity] = oldKey[capacity];
+            this.value[adjustedCapacity] = oldValue[capacity];
+        }
+    }
+
+    public void clear() {
+        for (int i=0; i <= this.capacity; i++) {
+            setKey(i, FREE_KEY);
+        }
+        this.hasFreeKey = false;
+        this.size = 0;
+    }
+
+    public final int getKey(int entry) {
+        return this.key[entry];
+    }
+
+    public final long getValue(int entry) {
+        return this.value[entry];
+    }
+
+    public final void setValue(int entry, long value) {
+        this.value[entry] = value;
+    }
+
+    private void setKey(int slot, int key) {
+        this.key[slot] = key;
+    }
+
+    private int slotFor(int h) {
+        // Multiplicative hash, consecutive hash codes would otherwise fill consecutive slots and cluster
+        h *= 0x9E3779B9;
+        return (h ^ (h >>> 16)) & this.mask;
+    }
+
+    // Returns the first free slot of the probe sequence of a key known not to be in the map
+    private int freeSlot(int key) {
+        int slot = slotFor(comparator.hashCode(key));
+        while (getKey(slot) != FREE_KEY) {
+            slot = (slot + 1) & this.mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Find a key in the collection.
+     * @param key the key to find.
+     * @return the entry of the key or {@code -1} if key is not found.
+     */
+    public int find(int key) {
+        if (key == FREE_KEY) {
+            return this.hasFreeKey ? this.capacity : -1;
+        }
+        for (int slot = slotFor(comparator.hashCode(key)); ; slot = (slot + 1) & this.mask) {
+            int slotKey = getKey(slot);
+            if (slotKey == FREE_KEY) {
+                return -1;
+            }
+            if (comparator.equals(key, slotKey)) {
+                return slot;
+            }
+        }
+    }
+
+    public final long get(int key) {
+        return getValue(find(key));
+    }
+
+    /**
+     * Insert a key in the collection.
+     * If the collection already contained the key, the existing entry is returned.
+     * @param key the key to insert.
+     * @return the entry of the key that was inserted.
+     */
+    public int insert(int key) {
+        if (key == FREE_KEY) {
+            if (!this.hasFreeKey) {
+                this.hasFreeKey = true;
+                setKey(this.capacity, key);
+                this.size++;
+            }
+            return this.capacity;
+        }
+        int slot = slotFor(comparator.hashCode(key));
+        for (int slotKey; (slotKey = getKey(slot)) != FREE_KEY; slot = (slot + 1) & this.mask) {
+            if (comparator.equals(key, slotKey)) {
+                return slot;
+            }
+        }
+        if (this.size >= this.threshold) {
+            grow(this.capacity, (int)(this.capacity * this.growthFactor));
+            slot = freeSlot(key);
+        }
+        setKey(slot, key);
+        this.size++;
+        return slot;
+    }
+
+    public final int insert(int key, long value) {
+        int entry = insert(key);
+        setValue(entry, value);
+        return entry;
+    }
+
+    /**
+     * Remove a key from the collection.
+     * The keys following the removed key in its probe sequence may be moved to other entries.
+     * @param key the key to remove.
+     * @return the entry of the key that was removed or {@code -1} if key is not found.
+     */
+    public int remove(int key) {
+        int entry = find(key);
+        if (entry != -1) {
+            removeEntry(entry);
+        }
+        return entry;
+    }
+
+    /**
+     * Remove the key at entry from the collection.
+     * @return the entry left free, other than entry if a key was moved to it.
+     */
+    public int removeEntry(int entry) {
+        this.size--;
+        if (entry == this.capacity) {
+            this.hasFreeKey = false;
+            return entry;
+        }
+        // Backward shift deletion
+        int slot = entry;
+        while (true) {
+            int last = slot;
+            int slotKey;
+            while (true) {
+                slot = (slot + 1) & this.mask;
+                slotKey = getKey(slot);
+                if (slotKey == FREE_KEY) {
+                    setKey(last, FREE_KEY);
+                    return last;
+                }
+                int home = slotFor(comparator.hashCode(slotKey));
+                // Move the key back unless its home is cyclically within (last, slot]
+                if (last <= slot ? last >= home || home > slot : last >= home && home > slot) {
+                    break;
+                }
+            }
+            setKey(last, slotKey);
+            setValue(last, getValue(slot));
+        }
+    }
+
+    public EntryIterator entryIterator(EntryIterator entryIterator) {
+        entryIterator.init(this);
+        return entryIterator;
+    }
+
+    /**
+     * Iterate the slots starting past a free slot, probe sequences never wrap around it so that
+     * removing the current entry only moves keys not visited yet.
+     */
+    public static class EntryIterator {
+        private IntLongOpenHashMap hashTable;
+        private int start;
+        private int position;
+        private int entry;
+        private int nextEntry;
+
+        public EntryIterator() {
+        }
+
+        public void init(IntLongOpenHashMap hashTable) {
+            this.hashTable = hashTable;
+            this.start = 0;
+            for (int i=0; i < hashTable.capacity; i++) {
+                if (hashTable.getKey(i) == FREE_KEY) {
+                    this.start = (i + 1) & hashTable.mask;
+                    break;
+                }
+            }
+            this.position = 0;
+            this.entry = -1;
+            this.nextEntry = advance();
+        }
+
+        private int advance() {
+            while (this.position < this.hashTable.capacity) {
+                int slot = (this.start + this.position++) & this.hashTable.mask;
+                if (this.hashTable.getKey(slot) != FREE_KEY) {
+                    return slot;
+                }
+            }
+            if (this.position++ == this.hashTable.capacity && this.hashTable.hasFreeKey) {
+                return this.hashTable.capacity;
+            }
+            return -1;
+        }
+
+        public boolean hasNext() {
+            return this.nextEntry != -1;
+        }
+
+        public int nextEntry() {
+            this.entry = this.nextEntry;
+            this.nextEntry = advance();
+            return this.entry;
+        }
+
+        public void remove() {
+            if (this.hashTable.removeEntry(this.entry) != this.entry) {
+                // A key not visited yet moved to the entry, visit it again
+                this.position = ((this.entry - this.start) & this.hashTable.mask) + 1;
+                this.nextEntry = this.entry;
+            }
+            this.entry = -1;
+        }
+    }
+}
@@ -0,0 +1,353 @@
+/*
+ * Copyright 2016 Benoit Jardin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zerogc.collections;
+
+import com.zerogc.logging.Level;
+import com.zerogc.logging.LogManager;
+import com.zerogc.logging.Logger;
+
+/**
+ * @author Benoit Jardin
+ * Textbook implementation of Heap.
+ * See: "Introduction to Algorithms" by Cormen, Leiserson, Rivest and Stein
+ *
+ * Same as IntHeap with the nodes and keys stored off-heap in an OffHeapStorage.
+ */
+
+public class IntOffHeapHeap {
+    public static final int INITIAL_CAPACITY = 16;
+    public static final float GROWTH_FACTOR = 2.0f;
+
+    // Record layout, the node of a heap position and the position and key of an entry share the same record index
+    protected static final int NODE = 0;
+    protected static final int ENTRY = 4;
+    protected static final int KEY = 8;
+    protected static final int RECORD_SIZE = KEY + 4;
+
+    protected final Logger log;
+
+    private float growthFactor = GROWTH_FACTOR;
+    private int size = 0;
+
+    private int freeEntry = -1;
+    private int highMark = 0;
+
+    protected final OffHeapStorage storage = new OffHeapStorage(RECORD_SIZE);
+
+    protected Comparator.IntComparator comparator = new Comparator.IntComparator(); 
+
+    public IntOffHeapHeap() {
+        this(IntOffHeapHeap.class.getSimpleName(), INITIAL_CAPACITY, GROWTH_FACTOR);
+    }
+
+    public IntOffHeapHeap(String name) {
+        this(name, INITIAL_CAPACITY, GROWTH_FACTOR);
+    }
+
+    public IntOffHeapHeap(String name, int initialCapacity) {
+        this(name, initialCapacity, GROWTH_FACTOR);
+    }
+
+    public IntOffHeapHeap(String name, int initialCapacity, float growthFactor) {
+        this.log = LogManager.getLogger(name);
+
+        if (initialCapacity < 0) {
+            throw new IllegalArgumentException("Illegal Capacity: " + initialCapacity);
+        }
+        if (growthFactor <= 0 || Float.isNaN(growthFactor)) {
+            throw new IllegalArgumentException("Illegal GrowthFactor: " + growthFactor);
+        }
+        if (initialCapacity == 0) {
+            initialCapacity = 1;
+        }
+        this.growthFactor = growthFactor;
+
+        grow(0, initialCapacity);
+    }
+
+    public void setComparator(Comparator.IntComparator comparator) {
+            if (!this.isEmpty()) {
+                    throw new IllegalStateException("Collection not empty!");
+            }
+            this.comparator = comparator;
+    }
+
+    public int highMark() {
+        return this.highMark;
+    }
+
+    public int capacity() {
+        return this.storage.capacity();
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    protected void grow(int capacity, int newCapacity) {
+        log.log(Level.WARN, log.getSB().append("Resizing to ").append(newCapacity));
+
+        this.storage.grow(newCapacity);
+    }
+
+    public void clear() {
+        this.size = 0;
+        this.freeEntry = -1;
+        this.highMark = 0;
+    }
+
+    public final int getKey(int entry) {
+        return this.storage.getInt(entry, KEY);
+    }
+
+    protected final void setKey(int entry, int key) {
+        this.storage.putInt(entry, KEY, key);
+    }
+
+    /** Returns the entry at a node of the heap. */
+    protected final int getNode(int node) {
+        return this.storage.getInt(node, NODE);
+    }
+
+    protected final void setNode(int node, int entry) {
+        this.storage.putInt(node, NODE, entry);
+    }
+
+    /** Returns the node of an entry in the heap. */
+    protected final int getEntry(int entry) {
+        return this.storage.getInt(entry, ENTRY);
+    }
+
+    protected final void setEntry(int entry, int node) {
+        this.storage.putInt(entry, ENTRY, node);
+    }
+
+    private int newEntry() {
+        int entry = this.freeEntry;
+        if (entry != -1) {
+            this.freeEntry = getEntry(entry);
+        } else {
+            int capacity = this.storage.capacity();
+            if (highMark >= capacity) {
+                // Grow the storage
+                int newCapacity = this.storage.adjustCapacity((int)(capacity * this.growthFactor));
+                grow(capacity, newCapacity);
+            }
+            entry = highMark++;
+        }
+
+        setEntry(entry, this.size);
+        setNode(this.size, entry);
+
+        this.size++;
+        return entry;
+    }
+
+    /** Returns the first entry in the collection or {@code -1} if it is empty. */
+    public int firstEntry() {
+        return getNode(0);
+    }
+
+    /** Returns the last entry in the collection or {@code -1} if it is empty. */
+    public int lastEntry() {
+        return (this.size > 0) ? getNode(this.size-1) : -1;
+    }
+
+    /** Returns the previous entry in the collection or {@code -1} when the beginning is reached. */
+    public int prevEntry(int entry) {
+        int node = getEntry(entry);
+        return --node >= 0 ? getNode(node) : -1;
+    }
+
+    /** Returns the next entry in the collection or {@code -1} when the end is reached. */
+    public int nextEntry(int entry) {
+        int node = getEntry(entry);
+        return ++node < this.size ? getNode(node) : -1;
+    }
+
+    /**
+     * Returns an entry of the key in the collection.
+     * @param key
+     * @return
+     */
+/*
+    public int find(int key) {
+        int node = 0;
+        int entry = -1;
+        while (node < size) {
+                int nodeEntry = getNode(node);
+            int cmp = comparator.compare(key, getKey(nodeEntry));
+            if (cmp > (cmp^cmp)) { // Faster than if (cmp < 0) with Sun jdk1.6
+                    // Left child
+                    int left = (node << 1) + 1;
+                    if (left < size) {
+                            node = left;
+                            continue;
+                    }
+            } else if (cmp == 0){
+                    entry = nodeEntry;
+                    break;
+            }
+                // Next right sibling or ancestor's right sibling
+            // Left nodes are odd, right nodes are even
+            while ((node & 0x01) == 0) {
+                    node = (node - 1) >> 1;
+                    if (node <= 0) {
+                            return -1;
+                }
+            }
+            node++;
+        }
+        return entry;
+    }
+*/
+    /**
+     * Insert a key in the collection.
+     * If the collection already contained the key, the existing entry is returned.
+     * @param key the key to insert.
+     * @return the entry of the key that was inserted.
+     */
+    public int insert(int key) {
+        int node = size;
+        int entry = newEntry();
+        setKey(entry, key);
+
+        node = bubleUp(node, key);
+
+        setNode(node, entry);
+        setEntry(entry, node);
+        return entry;
+    }
+
+    /**
+     * Move a node in the heap
+     * @param to
+     * @param from
+     */
+    protected void move(int to, int from) {
+        int fromEntry = getNode(from);
+        setNode(to, fromEntry);
+        setEntry(fromEntry, to);
+    }
+
+    /** 
+     * Remove the specified entry from the collection.
+     * @param entry to remove.
+     * @return the next entry.
+     */
+    public int removeEntry(int entry) {
+        int nextEntry = nextEntry(entry); 
+        int node = getEntry(entry);
+        int lastEntry = getNode(--size);
+        int lastKey = getKey(lastEntry);
+
+        node = bubleDown(node, lastKey);
+        setNode(node, lastEntry);
+        setEntry(lastEntry, node);
+
+        setNode(size, -1);
+        setEntry(entry, this.freeEntry);
+        this.freeEntry = entry;
+
+        return nextEntry;
+    }
+
+    /**
+     * Find position of key in the heap at or above a given node.
+     * @param node the original node.
+     * @param key for which we are looking for a node. 
+     * @return the node where to store the key.
+     */
+    private int bubleUp(int node, int key) {
+        while (node != 0) {
+            int parent = (node -1) >> 1;
+            if (comparator.compare(getKey(getNode(parent)), key) <= 0) {
+                break;
+            }
+            move(node, parent);
+            node = parent;
+        }
+        return node;
+    }
+
+    /**
+     * Find position of key in the heap at or below a given node.
+     * @param node the original node.
+     * @param key for which we are looking for a node. 
+     * @return the node where to store the key.
+     */
+    private int bubleDown(int node, int key) {
+        int child;
+        while ((child = (node << 1)+1) < this.size) {
+            // Find smallest child
+            int childKey = getKey(getNode(child));
+            if (child+1 < this.size) {
+                int rightChildKey = getKey(getNode(child+1));
+                if (comparator.compare(childKey, rightChildKey) > 0) {
+                    // Adjust smallest child
+                    ++child;
+                    childKey = rightChildKey;
+                }
+            }
+            if (comparator.compare(key, childKey) <= 0) {
+                break;
+            }
+            move(node, child);
+            node = child;
+        }
+        return node;
+    }
+
+    public EntryIterator entryIterator(EntryIterator entryIterator) {
+        entryIterator.init(this);
+        return entryIterator;
+    }
+
+    public static class EntryIterator {
+        private IntOffHeapHeap heap;
+        private int node;
+        private int nextNode;
+
+        /** Initialize the iterator at the beginning of the collection. */
+        public void init(IntOffHeapHeap heap) {
+            this.heap = heap;
+            node = -1;
+            nextNode = 0;
+        }
+
+        /** Returns {@code true} if the iteration has more elements.
+         * {@link #hasNext} returning true guarantees that {@link #nextNode} will not return -1.*/
+        public boolean hasNext() {
+            return nextNode < heap.size();
+        }
+
+        /** Returns the next entry in the collection or {@code -1} if the iterator has reached the end. */
+        public int nextEntry() {
+            node = nextNode++;
+            return heap.getNode(node);
+        }
+
+        /** Remove from the iteration's current entry from the underlying collection. */
+        public void remove() {
+            nextNode = heap.removeEntry(heap.getNode(node));
+            node = -1;
+        }
+    }
+}
@@ -0,0 +1,694 @@
+/*
+ * Copyright 2016 Benoit Jardin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zerogc.collections;
+
+import com.zerogc.core.ByteStringBuilder;
+import com.zerogc.logging.Level;
+import com.zerogc.logging.LogManager;
+import com.zerogc.logging.Logger;
+
+/**
+ * @author Benoit Jardin
+ * Textbook implementation of RedBlack Tree.
+ * See: "Introduction to Algorithms" by Cormen, Leiserson, Rivest and Stein
+ *
+ * Same as IntRbTree with the links and keys of the entries stored off-heap in an OffHeapStorage.
+ */
+
+public class IntOffHeapRbTree {
+    public static final int INITIAL_CAPACITY = 16;
+    public static final float GROWTH_FACTOR = 2.0f;
+
+    protected static final byte RED = 0;
+    protected static final byte BLACK = 1;
+
+    // Record layout
+    protected static final int LEFT = 0;
+    protected static final int RIGHT = 4;
+    protected static final int PARENT = 8;
+    protected static final int COLOR = 12;
+    protected static final int KEY = 16;
+    protected static final int RECORD_SIZE = KEY + 4;
+
+    protected final Logger log;
+
+    private float growthFactor = GROWTH_FACTOR;
+    private int size = 0;
+
+    protected int root = -1;
+    private int freeEntry = -1;
+    private int highMark = 0;
+
+    protected final OffHeapStorage storage = new OffHeapStorage(RECORD_SIZE);
+    protected Comparator.IntComparator comparator = new Comparator.IntComparator(); 
+
+    public IntOffHeapRbTree() {
+        this(IntOffHeapRbTree.class.getSimpleName(), INITIAL_CAPACITY, GROWTH_FACTOR);
+    }
+
+    public IntOffHeapRbTree(String name) {
+        this(name, INITIAL_CAPACITY, GROWTH_FACTOR);
+    }
+
+    public IntOffHeapRbTree(String name, int initialCapacity) {
+        this(name, initialCapacity, GROWTH_FACTOR);
+    }
+
+    public IntOffHeapRbTree(String name, int initialCapacity, float growthFactor) {
+        this.log = LogManager.getLogger(name);
+
+        if (initialCapacity < 0) {
+            throw new IllegalArgumentException("Illegal Capacity: " + initialCapacity);
+        }
+        if (growthFactor <= 0 || Float.isNaN(growthFactor)) {
+            throw new IllegalArgumentException("Illegal GrowthFactor: " + growthFactor);
+        }
+        if (initialCapacity == 0) {
+            initialCapacity = 1;
+        }
+        this.growthFactor = growthFactor;
+
+        grow(0, initialCapacity);
+    }
+
+    public void setComparator(Comparator.IntComparator comparator) {
+        if (!this.isEmpty()) {
+            throw new IllegalStateException("Collection not empty!");
+        }
+        this.comparator = comparator;
+    }
+
+    public int highMark() {
+        return this.highMark;
+    }
+
+    public int capacity() {
+        return this.storage.capacity();
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    protected void grow(int capacity, int newCapacity) {
+        log.log(Level.WARN, log.getSB().append("Resizing to ").append(newCapacity));
+
+        this.storage.grow(newCapacity);
+    }
+
+    public void clear() {
+        this.freeEntry = -1;
+        this.highMark = 0;
+        this.root = -1;
+        this.size = 0;
+    }
+
+    public final int getKey(int entry) {
+        return this.storage.getInt(entry, KEY);
+    }
+
+    protected final void setKey(int entry, int key) {
+        this.storage.putInt(entry, KEY, key);
+    }
+
+    protected final int getLeft(int entry) {
+        return this.storage.getInt(entry, LEFT);
+    }
+
+    protected final void setLeft(int entry, int left) {
+        this.storage.putInt(entry, LEFT, left);
+    }
+
+    protected final int getRight(int entry) {
+        return this.storage.getInt(entry, RIGHT);
+    }
+
+    protected final void setRight(int entry, int right) {
+        this.storage.putInt(entry, RIGHT, right);
+    }
+
+    protected final int getParent(int entry) {
+        return this.storage.getInt(entry, PARENT);
+    }
+
+    protected final void setParent(int entry, int parent) {
+        this.storage.putInt(entry, PARENT, parent);
+    }
+
+    protected final byte getColor(int entry) {
+        return this.storage.getByte(entry, COLOR);
+    }
+
+    protected final void setColor(int entry, byte color) {
+        this.storage.putByte(entry, COLOR, color);
+    }
+
+    private int newEntry() {
+        int entry = this.freeEntry;
+        if (entry != -1) {
+            this.freeEntry = getParent(entry);
+        } else {
+            int capacity = this.storage.capacity();
+            if (highMark >= capacity) {
+                // Grow the storage
+                int newCapacity = this.storage.adjustCapacity((int)(capacity * this.growthFactor));
+                grow(capacity, newCapacity);
+            }
+            entry = highMark++;
+        }
+
+        setLeft(entry, -1);
+        setRight(entry, -1);
+
+        this.size++;
+        return entry;
+    }
+
+    /** Returns the first entry in the collection or {@code -1} if it is empty. */
+    public int firstEntry() {
+        int entry = root;
+        if (entry != -1) {
+            while (getLeft(entry) != -1) {
+                entry = getLeft(entry);
+            }
+        }
+        return entry;
+    }
+
+    /** Returns the last entry in the collection or {@code -1} if it is empty. */
+    public int lastEntry() {
+        int entry = root;
+        if (entry != -1) {
+            while (getRight(entry) != -1) {
+                entry = getRight(entry);
+            }
+        }
+        return entry;
+    }
+
+    /** Returns the previous entry in the collection or {@code -1} when the beginning is reached. */
+    public int prevEntry(int entry) {
+        if (getLeft(entry) != -1) {
+            entry = getLeft(entry);
+            while (getRight(entry) != -1) {
+                entry = getRight(entry);
+            }
+        } else {
+            int parent = getParent(entry);
+            while (parent != -1 && entry == getLeft(parent)) {
+                entry = parent;
+                parent = getParent(entry);
+            }
+            entry = parent;
+        }
+        return entry;
+    }
+
+    /** Returns the next entry in the collection or {@code -1} when the end is reached. */
+    public int nextEntry(int entry) {
+        if (getRight(entry) != -1) {
+            entry = getRight(entry);
+            while (getLeft(entry) != -1) {
+                entry = getLeft(entry);
+            }
+        } else {
+            int parent = getParent(entry);
+            while (parent != -1 && entry == getRight(parent)) {
+                entry = parent;
+                parent = getParent(entry);
+            }
+            entry = parent;
+        }
+        return entry;
+    }
+
+    /**
+     * Returns an entry of the key in the collection.
+     * @param key the key to find.
+     * @return the entry of the key or {@code -1} if not found.
+     */
+    public int find(int key) {
+        int x = root;
+        while (x != -1) {
+            int cmp = comparator.compare(key, getKey(x));
+            if (cmp < (cmp^cmp)) { // Faster than if (cmp < 0) with Sun jdk1.6
+                x = getLeft(x);
+            } else if (cmp != 0) {
+                x = getRight(x);
+            } else {
+                break;
+            }
+        }
+        return x;
+    }
+
+    /**
+     * Returns the first entry of the key in the collection.
+     * @param key the key to find.
+     * @return the entry of the key or {@code -1} if not found.
+     */
+    public int findFirst(int key) {
+        int x = root;
+        int entry = -1;
+        while (x != -1) {
+            //if (!(comparator.compare(this.key[x], key) < 0)) {
+            if (!comparator.less(getKey(x), key)) {
+                entry = x; // key[x] >= key
+                x = getLeft(x);
+            } else {
+                x = getRight(x);
+            }
+        }
+        //return (entry == -1) || (comparator.compare(key, this.key[entry]) < 0) ? -1 : entry;
+        return (entry == -1) || comparator.less(key, getKey(entry)) ? -1 : entry;
+    }
+
+    /**
+     * Returns the entry of the greatest key in the collection that is less than or equal to the given key, or {@code -1} if there is no such key.
+     * @param key the key to find.
+     * @return the entry of the key or {@code -1} if there is no such key.
+     * */
+    public int floor(int key) {
+        int x = root;
+        int entry = -1;
+        while (x != -1) {
+            if (comparator.compare(key, getKey(x)) < 0) {
+                x = getLeft(x);  // key[x] > key
+            } else {
+                entry = x; // key[x] <= key, this is a candidate
+                x = getRight(x);
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * Returns the entry of the least element in the collection that is greater than or equal to the given element, or {@code -1} if there is no such key.
+     * @param key the key to find.
+     * @return the entry of the key or {@code -1} if there is no such key.
+     * */
+    public int ceiling(int key) {
+        int x = root;
+        int entry = -1;
+        while (x != -1) {
+            if (comparator.compare(key, getKey(x)) <= 0) {
+                entry = x; // key[x] >= key, this is a candidate
+                x = getLeft(x);  // key[x] < key
+            } else {
+                x = getRight(x); // key[x] < key
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * Insert a key in the collection.
+     * If the collection already contained the key, the existing entry is returned.
+     * @param key the key to insert.
+     * @return the entry of the key that was inserted.
+     */
+    public int insert(int key) {
+        int parent = -1;
+        int entry = root;
+        int cmp = 0;
+
+        while (entry != -1) {
+            parent = entry;
+            cmp = comparator.compare(key, getKey(entry));
+            if (cmp < (cmp^cmp)) { // Faster than if (cmp < 0) with Sun jdk1.6
+                entry = getLeft(entry);
+            } else if (cmp != 0) {
+                entry = getRight(entry);
+            } else {
+                return entry;
+            }
+        }
+
+        entry = newEntry();
+        setKey(entry, key);
+        setParent(entry, parent);
+        if (parent == -1) {
+            root = entry;
+            setColor(root, BLACK);
+        } else {
+            if (cmp < (cmp^cmp)) { // Faster than if (cmp < 0) with Sun jdk1.6
+                setLeft(parent, entry);
+            } else {
+                setRight(parent, entry);
+            }
+            rebalanceRemove(entry);
+        }
+        return entry;
+    }
+
+    /**
+     * Insert a key in the collection.
+     * If the collection already contained the key, a new entry is created after the last instance of the key.
+     * @param key the key to insert.
+     * @return the entry of the key that was inserted.
+     */
+    public int insertMulti(int key) {
+        int parent = -1;
+        int entry = root;
+        int cmp = 0;
+
+        while (entry != -1) {
+            parent = entry;
+            cmp = comparator.compare(key, getKey(entry));
+            if (cmp < (cmp^cmp)) { // Faster than if (cmp < 0) with Sun jdk1.6
+                entry = getLeft(entry);
+            } else {
+                entry = getRight(entry);
+            }
+        }
+
+        entry = newEntry();
+        setKey(entry, key);
+        setParent(entry, parent);
+        if (parent == -1) {
+            root = entry;
+            setColor(root, BLACK);
+        } else {
+            if (cmp < (cmp^cmp)) { // Faster than if (cmp < 0) with Sun jdk1.6
+                setLeft(parent, entry);
+            } else {
+                setRight(parent, entry);
+            }
+            rebalanceRemove(entry);
+        }
+        return entry;
+    }
+
+    /** 
+     * Remove the specified entry from the collection.
+     * @param entry to remove.
+     * @return the next entry.
+     */
+    public int removeEntry(int entry) {
+        int next = nextEntry(entry);
+        int spliceEntry = (getLeft(entry) == -1 || getRight(entry) == -1) ? entry : next;
+        // if entry != -1 then spliceEntry != -1
+        // If entry has a right child then entry's successor can't have a left child  
+        int spliceChild = (getLeft(spliceEntry) != -1) ? getLeft(spliceEntry) : getRight(spliceEntry);
+        int spliceParent = getParent(spliceEntry);
+        if (spliceChild != -1) {
+            setParent(spliceChild, spliceParent);
+        }
+        if (spliceParent == -1) {
+            this.root = spliceChild;
+        } else if (spliceEntry == getLeft(spliceParent)) {
+            setLeft(spliceParent, spliceChild);
+        } else {
+            setRight(spliceParent, spliceChild);
+        }
+        int spliceColor = getColor(spliceEntry);
+        if (spliceEntry != entry) {
+            // Replace entry to remove in the tree with spliceEntry
+            setColor(spliceEntry, getColor(entry));
+
+            int right = getRight(entry);
+            setRight(spliceEntry, right);
+            if (right != -1) {
+                setParent(right, spliceEntry);
+            }
+            int left = getLeft(entry);
+            setLeft(spliceEntry, left);
+            if (left != -1) {
+                setParent(left, spliceEntry);
+            }
+            int parent = getParent(entry);
+            setParent(spliceEntry, parent);
+            if (parent == -1) {
+                this.root = spliceEntry;
+            } else if (entry == getLeft(parent)) {
+                setLeft(parent, spliceEntry);
+            } else {
+                setRight(parent, spliceEntry);
+            }
+
+            if (spliceParent == entry) {
+                spliceParent = spliceEntry;
+            }
+        }
+        if (spliceColor == BLACK) {
+            rebalanceRemove(spliceParent, spliceChild);
+        }
+
+        setParent(entry, this.freeEntry);
+        this.freeEntry = entry;
+        this.size--;
+
+        return next;
+    }
+
+    //   x            y
+    //  / \          / \
+    // a   y   -->  x   c
+    //    / \      / \
+    //   b   c    a   b
+    private int rotateLeft(int x) {
+        int y = getRight(x);
+        setRight(x, getLeft(y));
+        if (getLeft(y) != -1) {
+            setParent(getLeft(y), x);
+        }
+        setParent(y, getParent(x));
+        if (getParent(x) == -1) {
+            this.root = y;
+        } else if (x == getLeft(getParent(x))) {
+            setLeft(getParent(x), y);
+        } else {
+            setRight(getParent(x), y);
+        }
+        setLeft(y, x);
+        setParent(x, y);
+        return y;
+    }
+
+    //     x           y
+    //    / \         / \
+    //   y   c  -->  a   x
+    //  / \             / \
+    // a   b           b   c
+    private int rotateRight(int x) {
+        int y = getLeft(x);
+        setLeft(x, getRight(y));
+        if (getRight(y) != -1) {
+            setParent(getRight(y), x);
+        }
+        setParent(y, getParent(x));
+        if (getParent(x) == -1) {
+            this.root = y;
+        } else if (x == getRight(getParent(x))) {
+            setRight(getParent(x), y);
+        } else {
+            setLeft(getParent(x), y);
+        }
+        setRight(y, x);
+        setParent(x, y);
+        return y;
+    }
+
+    private void rebalanceRemove(int entry) {
+        setColor(entry, RED);
+        int parent = getParent(entry);
+        while (entry != root && getColor(parent) == RED) {
+            int grandParent = getParent(parent);
+            if (grandParent == -1) {
+                // Just need to make the parent/root black
+                break;
+            } else if (parent == getLeft(grandParent)) {
+                int uncle = getRight(grandParent);
+                if (uncle != -1 && getColor(uncle) == RED) {
+                    setColor(parent, BLACK);
+                    setColor(uncle, BLACK);
+                    setColor(grandParent, RED);
+                    entry = grandParent;
+                    parent = getParent(entry);
+                } else {
+                    if (entry == getRight(parent)) {
+                        // operation swaps entry and parent while grandParent stays the same  
+                        entry = parent;
+                        parent = rotateLeft(parent);
+                    }
+                    setColor(parent, BLACK); // Break the loop
+                    setColor(grandParent, RED);
+                    // operation does not change parent
+                    rotateRight(grandParent);
+                }
+            } else {
+                int uncle = getLeft(grandParent);
+                if (uncle != -1 && getColor(uncle) == RED) {
+                    setColor(parent, BLACK);
+                    setColor(uncle, BLACK);
+                    setColor(grandParent, RED);
+                    entry = grandParent;
+                    parent = getParent(entry);
+                } else {
+                    if (entry == getLeft(parent)) {
+                        // operation swaps entry and parent while grandParent stays the same  
+                        entry = parent;
+                        parent = rotateRight(parent);
+                    }
+                    setColor(parent, BLACK); // Break the loop
+                    setColor(grandParent, RED);
+                    // operation does not change parent
+                    rotateLeft(grandParent);
+                }
+            }
+        }
+        setColor(root, BLACK);
+    }
+
+    private void rebalanceRemove(int entry, int child) {
+        // It is possible that child == -1
+        // parent == -1 only when child == root
+        while (child != this.root && (child == -1 || getColor(child) == BLACK)) {
+            // parent != -1 since child != root
+            if (child == getLeft(entry)) {
+                int sibling = getRight(entry);
+                if (sibling == -1) {
+                    child = entry;
+                    entry = getParent(child);
+                } else {
+                    if (getColor(sibling) == RED) {
+                        setColor(sibling, BLACK);  // sibling becomes grandParent after rotation
+                        setColor(entry, RED);
+                        rotateLeft(entry);
+                        sibling = getRight(entry);
+                        // sibling != -1
+                    }
+                    // color[sibling] == BLACK
+                    int leftNephew = getLeft(sibling);
+                    int rightNephew = getRight(sibling);
+                    if ((leftNephew == -1 || getColor(leftNephew) == BLACK) &&
+                            (rightNephew == -1 || getColor(rightNephew) == BLACK)) {
+                        setColor(sibling, RED);
+                        child = entry;
+                        entry = getParent(child);
+                    } else {
+                        if (rightNephew == -1 || getColor(rightNephew) == BLACK) {
+                            // color[leftNephew] == RED
+                            setColor(leftNephew, BLACK); // leftNephew becomes sibling after rotation
+                            setColor(sibling, RED); // sibling becomes rightNephew after rotation
+                            rightNephew = sibling;
+                            sibling = rotateRight(sibling);
+                        }
+                        // color[rightNephew] == RED
+                        setColor(sibling, getColor(entry));
+                        setColor(entry, BLACK);
+                        setColor(rightNephew, BLACK);
+                        rotateLeft(entry);
+                        child = this.root; // End the loop
+                    }
+                }
+            } else {
+                int sibling = getLeft(entry);
+                if (sibling == -1) {
+                    child = entry;
+                    entry = getParent(child);
+                } else {
+                    if (sibling != -1 && getColor(sibling) == RED) {
+                        setColor(sibling, BLACK); // sibling becomes grandParent after rotation
+                        setColor(entry, RED);
+                        rotateRight(entry);
+                        sibling = getLeft(entry);
+                        // sibling != -1
+                    }
+                    // color[sibling] == BLACK
+                    int leftNephew = getLeft(sibling);
+                    int rightNephew = getRight(sibling);
+                    if ((leftNephew == -1 || getColor(leftNephew) == BLACK) &&
+                            (rightNephew == -1 || getColor(rightNephew) == BLACK)) {
+                        setColor(sibling, RED);
+                        child = entry;
+                        entry = getParent(child);
+                    } else {
+                        if (leftNephew == -1 || getColor(leftNephew) == BLACK) {
+                            // color[rightNephew] == RED
+                            setColor(rightNephew, BLACK);
+                            setColor(sibling, RED);
+                            leftNephew = sibling;
+                            sibling = rotateLeft(sibling);
+                        }
+                        // color[leftNephew] == RED
+                        setColor(sibling, getColor(entry));
+                        setColor(entry, BLACK);
+                        setColor(leftNephew, BLACK);
+                        rotateRight(entry);
+                        child = this.root;  // End the loop
+                    }
+                }
+            }
+        }
+        if (child != -1) {
+            setColor(child, BLACK);
+        }
+    }
+
+    public ByteStringBuilder toString(ByteStringBuilder sb) {
+        for (int entry = firstEntry(); entry != -1; entry = nextEntry(entry)) {
+            sb.append("[entry=").append(entry).append("]");
+            sb.append("[key=").append(getKey(entry)).append("]");
+            sb.append("[parent=").append(getParent(entry)).append("]");
+            sb.append("[left=").append(getLeft(entry)).append("]");
+            sb.append("[right=").append(getRight(entry)).append("]");
+            sb.append("\n");
+        }
+        return sb;
+    }
+
+    public EntryIterator entryIterator(EntryIterator entryIterator) {
+        entryIterator.init(this);
+        return entryIterator;
+    }
+
+    public static class EntryIterator {
+        private IntOffHeapRbTree rbTree;
+        private int entry;
+        private int nextEntry;
+
+        /** Initialize the iterator at the beginning of the collection. */
+        public void init(IntOffHeapRbTree rbTree) {
+            this.rbTree = rbTree;
+            entry = -1;
+            nextEntry = rbTree.firstEntry();
+        }
+
+        /** Returns {@code true} if the iteration has more elements.
+         * {@link #hasNext} returning true guarantees that {@link #nextEntry} will not return -1.*/
+        public boolean hasNext() {
+            return nextEntry != -1;
+        }
+
+        /** Returns the next entry in the collection or {@code -1} if the iterator has reached the end. */
+        public int nextEntry() {
+            entry = nextEntry;
+            nextEntry = rbTree.nextEntry(nextEntry);
+            return entry;
+        }
+
+        /** Remove from the iteration's current entry from the underlying collection. */
+        public void remove() {
+            rbTree.removeEntry(entry);
+            entry = -1;
+        }
+    }
+}
@@ -25,6 +25,8 @@ public class LongHashSet {
     public static final int MAXIMUM_CAPACITY = 1 << 30;
     public static final float LOAD_FACTOR = 0.75f;
     public static final float GROWTH_FACTOR = 2.0f;
+    // Buckets migrated per operation while rehashing incrementally, enough to complete before the next resize
+    public static final int REHASH_STEP = 4;
 
     protected final Logger log;
 
@@ -36,6 +38,10 @@ public class LongHashSet {
 
     private int[] next;
     private int[] bucket;
+    private boolean incrementalRehash = false;
+    // Buckets of the previous table which chains are not migrated yet, null when not rehashing
+    private int[] oldBucket;
+    private int rehashIndex;
     private long[] key;
     protected Comparator.LongComparator comparator = new Comparator.LongComparator(); 
 
@@ -81,6 +87,19 @@ public class LongHashSet {
         this.comparator = comparator;
     }
 
+    /**
+     * Resize without rehashing every entry in the insert which triggered it.
+     * The entries of the previous table are migrated a few buckets per operation while being looked up
+     * in both tables, the key arrays are still copied in place when resizing.
+     */
+    public void setIncrementalRehash(boolean incrementalRehash) {
+        this.incrementalRehash = incrementalRehash;
+    }
+
+    public boolean isRehashing() {
+        return this.oldBucket != null;
+    }
+
     public int highMark() {
         return this.highMark;
     }
@@ -98,7 +117,15 @@ public class LongHashSet {
     }
 
     protected void grow(int capacity, int newCapacity) {
-        log.log(Level.WARN, log.getSB().append("Resizing to ").append(newCapacity));
+        if (this.oldBucket != null) {
+            // Complete the previous migration, chains of both tables can't be mixed
+            rehash(this.oldBucket.length);
+        }
+        if (this.incrementalRehash) {
+            log.log(Level.INFO, log.getSB().append("Resizing incrementally to ").append(newCapacity));
+        } else {
+            log.log(Level.WARN, log.getSB().append("Resizing to ").append(newCapacity));
+        }
 
         int[] oldNext = this.next;
         int[] oldBucket = this.bucket;
@@ -120,7 +147,12 @@ public class LongHashSet {
             bucket[i] = -1;
         }
 
-        if (capacity > 0) {
+        if (capacity > 0 && this.incrementalRehash) {
+            // Entries keep their index, chains of the previous table are walked until migrated
+            System.arraycopy(oldNext, 0, this.next, 0, oldNext.length);
+            this.oldBucket = oldBucket;
+            this.rehashIndex = 0;
+        } else if (capacity > 0) {
             // Transfer entries to the resized hashtable
             for (int i=0; i < oldBucket.length; i++) {
                 for (int entry = oldBucket[i]; entry != -1; entry = oldNext[entry]) {
@@ -134,11 +166,35 @@ public class LongHashSet {
         }
     }
 
+    // Migrate the chains of the next buckets of the previous table
+    private void rehash(int steps) {
+        int[] oldBucket = this.oldBucket;
+        int end = Math.min(this.rehashIndex + steps, oldBucket.length);
+        for (int i=this.rehashIndex; i < end; i++) {
+            int entry = oldBucket[i];
+            while (entry != -1) {
+                int nextEntry = this.next[entry];
+                int hash;
+                hash = comparator.hashCode(this.key[entry]);
+                int bucket = bucketFor(hash);
+                this.next[entry] = this.bucket[bucket];
+                this.bucket[bucket] = entry;
+                entry = nextEntry;
+            }
+            oldBucket[i] = -1;
+        }
+        this.rehashIndex = end;
+        if (end == oldBucket.length) {
+            this.oldBucket = null;
+        }
+    }
+
     public void clear() {
         for (int i=0; i < bucket.length; i++) {
             bucket[i] = -1;
         }
         this.next[this.next.length-1] = -1;
+        this.oldBucket = null;
         this.freeEntry = -1;
         this.highMark = 0;
         this.size = 0;
@@ -167,6 +223,10 @@ public class LongHashSet {
     }
 
     private int bucketFor(int h) {
+        return bucketFor(h, this.bucket.length);
+    }
+
+    private static int bucketFor(int h, int length) {
         //int bucket = hash & 0x7FFFFFFF % this.bucket.length;
         // Modulo operation is quite expensive
         // With a bucket size at a power of 2 this is 20% faster
@@ -176,14 +236,26 @@ public class LongHashSet {
         // number of collisions (approximately 8 at default load factor).
         h ^= (h >>> 20) ^ (h >>> 12);
         h ^= (h >>> 7) ^ (h >>> 4);
-        int bucket = h & (this.bucket.length -1);
+        int bucket = h & (length -1);
         return bucket;
     }
 
     public int find(long key) {
-        int hash = comparator.hashCode(key);
-        int bucket = bucketFor(hash);
-        int entry = this.bucket[bucket];
+        return find(comparator.hashCode(key), key);
+    }
+
+    private int find(int hash, long key) {
+        if (this.oldBucket != null) {
+            rehash(REHASH_STEP);
+        }
+        int entry = findInChain(this.bucket[bucketFor(hash)], key);
+        if (entry == -1 && this.oldBucket != null) {
+            entry = findInChain(this.oldBucket[bucketFor(hash, this.oldBucket.length)], key);
+        }
+        return entry;
+    }
+
+    private int findInChain(int entry, long key) {
         for (; entry != -1; entry = this.next[entry]) {
             if (comparator.equals(key, this.key[entry]))
             {
@@ -201,21 +273,14 @@ public class LongHashSet {
      */
     public int insert(long key) {
         int hash = comparator.hashCode(key);
-        int bucket = bucketFor(hash);
-        int entry = this.bucket[bucket];
-        for (; entry != -1; entry = next[entry]) {
-            if (comparator.equals(key, this.key[entry]))
-            {
-                return entry;
-            }
+        int entry = find(hash, key);
+        if (entry != -1) {
+            return entry;
         }
 
-        if (freeEntry == -1) {
-            entry = newEntry();
-            bucket = bucketFor(hash);
-        } else {
-            entry = newEntry();
-        }
+        entry = newEntry();
+        // New keys always go to the current table, which may have been resized
+        int bucket = bucketFor(hash);
         this.key[entry] = key;
         next[entry] = this.bucket[bucket];
           this.bucket[bucket] = entry;
@@ -231,14 +296,24 @@ public class LongHashSet {
      */
     public int remove(long key) {
         int hash = comparator.hashCode(key);
-        int bucket = bucketFor(hash);
-        int entry = this.bucket[bucket];
+        if (this.oldBucket != null) {
+            rehash(REHASH_STEP);
+        }
+        int entry = remove(this.bucket, bucketFor(hash), key);
+        if (entry == -1 && this.oldBucket != null) {
+            entry = remove(this.oldBucket, bucketFor(hash, this.oldBucket.length), key);
+        }
+        return entry;
+    }
+
+    private int remove(int[] buckets, int bucket, long key) {
+        int entry = buckets[bucket];
         int prevEntry = -1;
         for (; entry != -1; prevEntry = entry, entry = next[entry]) {
             if (comparator.equals(key, this.key[entry]))
             {
                 if (prevEntry == -1) {
-                    this.bucket[bucket] = next[entry];
+                    buckets[bucket] = next[entry];
                 } else {
                     next[prevEntry] = next[entry];
                 }
@@ -270,6 +345,10 @@ public class LongHashSet {
         }
 
         public void init(LongHashSet hashTable) {
+            if (hashTable.oldBucket != null) {
+                // Iterating is linear in the capacity anyway, complete the migration
+                hashTable.rehash(hashTable.oldBucket.length);
+            }
             this.hashTable = hashTable;
             bucket = -1;
             entry = -1;
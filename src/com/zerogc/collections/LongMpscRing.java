@@ -0,0 +1,112 @@
+/*
+ * Copyright 2016 Benoit Jardin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zerogc.collections;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded multi producer single consumer ring buffer.
+ * Producers claim a slot with a CAS on the tail, kept on its own cache line, then publish it by
+ * setting the sequence of the slot, the consumer releases the slot for the next lap the same way.
+ * offer() may be called from any thread and isEmpty(), peek() and poll() from a single consumer thread.
+ */
+public class LongMpscRing {
+    // Longs per cache line, the tail is spaced by two lines against adjacent line prefetching
+    private static final int PAD = 16;
+    private static final int TAIL = PAD - 1;
+
+    private final int capacity;
+    private final int mask;
+    private final long[] elements;
+    // The element in slot i is published when its sequence is the position of the slot + 1
+    private final AtomicLongArray sequences;
+    private final AtomicLongArray tail = new AtomicLongArray(2*PAD);
+    private long head = 0;
+
+    /**
+     * @param capacity the maximum number of elements, rounded up to a power of 2.
+     */
+    public LongMpscRing(int capacity) {
+        if (capacity <= 0 || capacity > (1 << 30)) {
+            throw new IllegalArgumentException("Illegal Capacity: " + capacity);
+        }
+        int adjustedCapacity = 1;
+        while (adjustedCapacity < capacity) {
+            adjustedCapacity <<= 1;
+        }
+        this.capacity = adjustedCapacity;
+        this.mask = adjustedCapacity - 1;
+        this.elements = new long[adjustedCapacity];
+        this.sequences = new AtomicLongArray(adjustedCapacity);
+        for (int i=0; i < adjustedCapacity; i++) {
+            this.sequences.set(i, i);
+        }
+    }
+
+    public int capacity() {
+        return this.capacity;
+    }
+
+    /** Returns an estimate of the number of elements claimed by producers, exact from a quiescent ring only. */
+    public int size() {
+        return (int)(this.tail.get(TAIL) - this.head);
+    }
+
+    // --------------------- Producers ---------------------
+
+    /**
+     * Append a value from any thread.
+     * @return false if the ring is full.
+     */
+    public boolean offer(long value) {
+        while (true) {
+            long position = this.tail.get(TAIL);
+            int index = (int)position & this.mask;
+            long sequence = this.sequences.get(index);
+            if (sequence < position) {
+                // The consumer didn't release the slot yet
+                return false;
+            }
+            if (sequence == position && this.tail.compareAndSet(TAIL, position, position + 1)) {
+                this.elements[index] = value;
+                this.sequences.set(index, position + 1);
+                return true;
+            }
+        }
+    }
+
+    // --------------------- Consumer ---------------------
+
+    /** Returns true if no element is published at the head, to be called from the consumer thread only. */
+    public boolean isEmpty() {
+        return this.sequences.get((int)this.head & this.mask) != this.head + 1;
+    }
+
+    /** Returns the oldest value, the ring must not be empty, to be called from the consumer thread only. */
+    public long peek() {
+        return this.elements[(int)this.head & this.mask];
+    }
+
+    /** Removes and returns the oldest value, the ring must not be empty, to be called from the consumer thread only. */
+    public long poll() {
+        int index = (int)this.head & this.mask;
+        long value = this.elements[index];
+        // Release the slot for the next lap
+        this.sequences.lazySet(index, this.head + this.capacity);
+        this.head++;
+        return value;
+    }
+}
@@ -0,0 +1,401 @@
+/*
+ * Copyright 2016 Benoit Jardin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zerogc.collections;
+
+import com.zerogc.logging.Level;
+import com.zerogc.logging.LogManager;
+import com.zerogc.logging.Logger;
+
+/**
+ * Same as LongHashSet with the buckets and the links and keys of the entries stored off-heap in OffHeapStorage.
+ * Entries are never moved when resizing, buckets hold the entry + 1 so that fresh storage reads as empty.
+ */
+public class LongOffHeapHashSet {
+    public static final int INITIAL_CAPACITY = 16;
+    public static final int MAXIMUM_CAPACITY = 1 << 30;
+    public static final float LOAD_FACTOR = 0.75f;
+    public static final float GROWTH_FACTOR = 2.0f;
+    // Buckets migrated per operation while rehashing incrementally, enough to complete before the next resize
+    public static final int REHASH_STEP = 4;
+
+    // Record layout
+    protected static final int NEXT = 0;
+    protected static final int KEY = 8;
+    protected static final int RECORD_SIZE = KEY + 8;
+
+    protected final Logger log;
+
+    private float growthFactor;
+    private float loadFactor;
+    private int size = 0;
+    private int freeEntry = -1;
+    private int highMark = 0;
+
+    protected final OffHeapStorage storage = new OffHeapStorage(RECORD_SIZE);
+    private OffHeapStorage bucket;
+    private boolean incrementalRehash = false;
+    // Buckets of the previous table which chains are not migrated yet, null when not rehashing
+    private OffHeapStorage oldBucket;
+    private int rehashIndex;
+    protected Comparator.LongComparator comparator = new Comparator.LongComparator();
+
+    public LongOffHeapHashSet() {
+        this(LongOffHeapHashSet.class.getSimpleName(), INITIAL_CAPACITY, GROWTH_FACTOR, LOAD_FACTOR);
+    }
+    public LongOffHeapHashSet(String name) {
+        this(name, INITIAL_CAPACITY, GROWTH_FACTOR, LOAD_FACTOR);
+    }
+
+    public LongOffHeapHashSet(String name, int initialCapacity) {
+        this(name, initialCapacity, GROWTH_FACTOR, LOAD_FACTOR);
+    }
+
+    public LongOffHeapHashSet(String name, int initialCapacity, float growthFactor) {
+        this(name, initialCapacity, growthFactor, LOAD_FACTOR);
+    }
+
+    public LongOffHeapHashSet(String name, int initialCapacity, float growthFactor, float loadFactor) {
+        this.log = LogManager.getLogger(name);
+
+        if (initialCapacity < 0)
+            throw new IllegalArgumentException("Illegal initial capacity: " +
+                                               initialCapacity);
+        if (initialCapacity > MAXIMUM_CAPACITY) {
+            initialCapacity = MAXIMUM_CAPACITY;
+        }
+        if (growthFactor <= 0 || Float.isNaN(growthFactor)) {
+            throw new IllegalArgumentException("Illegal GrowthFactor: " + growthFactor);
+        }
+        if (loadFactor <= 0 || Float.isNaN(loadFactor))
+            throw new IllegalArgumentException("Illegal load factor: " +
+                                               loadFactor);
+        this.growthFactor = growthFactor;
+        this.loadFactor = loadFactor;
+        grow(0, initialCapacity);
+    }
+
+    public void setComparator(Comparator.LongComparator comparator) {
+        if (!this.isEmpty()) {
+            throw new IllegalStateException("Collection not empty!");
+        }
+        this.comparator = comparator;
+    }
+
+    /**
+     * Resize without rehashing every entry in the insert which triggered it.
+     * The entries of the previous table are migrated a few buckets per operation while being looked up in both tables.
+     */
+    public void setIncrementalRehash(boolean incrementalRehash) {
+        this.incrementalRehash = incrementalRehash;
+    }
+
+    public boolean isRehashing() {
+        return this.oldBucket != null;
+    }
+
+    public int highMark() {
+        return this.highMark;
+    }
+
+    public int capacity() {
+        return this.bucket.capacity();
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    protected void grow(int capacity, int newCapacity) {
+        if (this.oldBucket != null) {
+            // Complete the previous migration, chains of both tables can't be mixed
+            rehash(this.oldBucket.capacity());
+        }
+        if (this.incrementalRehash) {
+            log.log(Level.INFO, log.getSB().append("Resizing incrementally to ").append(newCapacity));
+        } else {
+            log.log(Level.WARN, log.getSB().append("Resizing to ").append(newCapacity));
+        }
+
+        OffHeapStorage oldBucket = this.bucket;
+        int adjustedCapacity = 1;
+        while (adjustedCapacity < newCapacity) {
+            adjustedCapacity <<= 1;
+        }
+        int threshold = (int)(adjustedCapacity * loadFactor);
+        this.storage.grow(this.storage.adjustCapacity(threshold));
+        this.bucket = new OffHeapStorage(4);
+        this.bucket.grow(adjustedCapacity);
+
+        if (capacity > 0 && this.incrementalRehash) {
+            // Chains of the previous table are walked until migrated
+            this.oldBucket = oldBucket;
+            this.rehashIndex = 0;
+        } else if (capacity > 0) {
+            // Transfer entries to the resized hashtable
+            for (int i=0; i < oldBucket.capacity(); i++) {
+                int entry = getBucket(oldBucket, i);
+                while (entry != -1) {
+                    int nextEntry = getNext(entry);
+                    int bucket = bucketFor(comparator.hashCode(getKey(entry)));
+                    setNext(entry, getBucket(this.bucket, bucket));
+                    setBucket(this.bucket, bucket, entry);
+                    entry = nextEntry;
+                }
+            }
+        }
+    }
+
+    // Migrate the chains of the next buckets of the previous table
+    private void rehash(int steps) {
+        OffHeapStorage oldBucket = this.oldBucket;
+        int end = Math.min(this.rehashIndex + steps, oldBucket.capacity());
+        for (int i=this.rehashIndex; i < end; i++) {
+            int entry = getBucket(oldBucket, i);
+            while (entry != -1) {
+                int nextEntry = getNext(entry);
+                int bucket = bucketFor(comparator.hashCode(getKey(entry)));
+                setNext(entry, getBucket(this.bucket, bucket));
+                setBucket(this.bucket, bucket, entry);
+                entry = nextEntry;
+            }
+            setBucket(oldBucket, i, -1);
+        }
+        this.rehashIndex = end;
+        if (end == oldBucket.capacity()) {
+            this.oldBucket = null;
+        }
+    }
+
+    public void clear() {
+        for (int i=0; i < this.bucket.capacity(); i++) {
+            setBucket(this.bucket, i, -1);
+        }
+        this.oldBucket = null;
+        this.freeEntry = -1;
+        this.highMark = 0;
+        this.size = 0;
+    }
+
+    public final long getKey(int entry) {
+        return this.storage.getLong(entry, KEY);
+    }
+
+    private void setKey(int entry, long key) {
+        this.storage.putLong(entry, KEY, key);
+    }
+
+    private int getNext(int entry) {
+        return this.storage.getInt(entry, NEXT);
+    }
+
+    private void setNext(int entry, int next) {
+        this.storage.putInt(entry, NEXT, next);
+    }
+
+    private static int getBucket(OffHeapStorage buckets, int bucket) {
+        return buckets.getInt(bucket, 0) - 1;
+    }
+
+    private static void setBucket(OffHeapStorage buckets, int bucket, int entry) {
+        buckets.putInt(bucket, 0, entry + 1);
+    }
+
+    private int newEntry() {
+        int entry = this.freeEntry;
+        if (entry != -1) {
+            this.freeEntry = getNext(entry);
+        } else {
+            int capacity = this.storage.capacity();
+            if (highMark >= capacity) {
+                // Grow the storage
+                int newCapacity = (int) (capacity * this.growthFactor);
+                grow(capacity, newCapacity);
+            }
+            entry = highMark++;
+        }
+
+        this.size++;
+        return entry;
+    }
+
+    private int bucketFor(int h) {
+        return bucketFor(h, this.bucket.capacity());
+    }
+
+    private static int bucketFor(int h, int length) {
+        // Same supplemental hash as LongHashSet
+        h ^= (h >>> 20) ^ (h >>> 12);
+        h ^= (h >>> 7) ^ (h >>> 4);
+        int bucket = h & (length -1);
+        return bucket;
+    }
+
+    public int find(long key) {
+        return find(comparator.hashCode(key), key);
+    }
+
+    private int find(int hash, long key) {
+        if (this.oldBucket != null) {
+            rehash(REHASH_STEP);
+        }
+        int entry = findInChain(getBucket(this.bucket, bucketFor(hash)), key);
+        if (entry == -1 && this.oldBucket != null) {
+            entry = findInChain(getBucket(this.oldBucket, bucketFor(hash, this.oldBucket.capacity())), key);
+        }
+        return entry;
+    }
+
+    private int findInChain(int entry, long key) {
+        for (; entry != -1; entry = getNext(entry)) {
+            if (comparator.equals(key, getKey(entry))) {
+                break;
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * Insert a key in the collection.
+     * If the collection already contained the key, the existing entry is returned.
+     * @param key the key to insert.
+     * @return the entry of the key that was inserted.
+     */
+    public int insert(long key) {
+        int hash = comparator.hashCode(key);
+        int entry = find(hash, key);
+        if (entry != -1) {
+            return entry;
+        }
+
+        entry = newEntry();
+        // New keys always go to the current table, which may have been resized
+        int bucket = bucketFor(hash);
+        setKey(entry, key);
+        setNext(entry, getBucket(this.bucket, bucket));
+        setBucket(this.bucket, bucket, entry);
+        return entry;
+    }
+
+    /**
+     * Remove a key from the collection.
+     * If the collection contains the key, the existing entry is returned.
+     * @param key the key to remove.
+     * @return the entry of the key that was removed or {@code -1} if key is not found.
+     */
+    public int remove(long key) {
+        int hash = comparator.hashCode(key);
+        if (this.oldBucket != null) {
+            rehash(REHASH_STEP);
+        }
+        int entry = remove(this.bucket, bucketFor(hash), key);
+        if (entry == -1 && this.oldBucket != null) {
+            entry = remove(this.oldBucket, bucketFor(hash, this.oldBucket.capacity()), key);
+        }
+        return entry;
+    }
+
+    private int remove(OffHeapStorage buckets, int bucket, long key) {
+        int entry = getBucket(buckets, bucket);
+        int prevEntry = -1;
+        for (; entry != -1; prevEntry = entry, entry = getNext(entry)) {
+            if (comparator.equals(key, getKey(entry))) {
+                if (prevEntry == -1) {
+                    setBucket(buckets, bucket, getNext(entry));
+                } else {
+                    setNext(prevEntry, getNext(entry));
+                }
+                setNext(entry, freeEntry);
+                freeEntry = entry;
+                size--;
+                break;
+            }
+        }
+        return entry;
+    }
+
+    public EntryIterator entryIterator(EntryIterator entryIterator) {
+        entryIterator.init(this);
+        return entryIterator;
+    }
+
+    public static class EntryIterator {
+        private LongOffHeapHashSet hashTable;
+        private int bucket;
+        private int entry;
+        private int prevEntry;
+
+        private int nextBucket;
+        private int nextEntry;
+        private int nextPrevEntry;
+
+        public EntryIterator() {
+        }
+
+        public void init(LongOffHeapHashSet hashTable) {
+            if (hashTable.oldBucket != null) {
+                // Iterating is linear in the capacity anyway, complete the migration
+                hashTable.rehash(hashTable.oldBucket.capacity());
+            }
+            this.hashTable = hashTable;
+            bucket = -1;
+            entry = -1;
+            prevEntry = -1;
+
+            nextBucket = -1;
+            nextEntry = -1;
+            nextPrevEntry = -1;
+            while (nextEntry == -1 && ++nextBucket < hashTable.bucket.capacity()) {
+                nextEntry = getBucket(hashTable.bucket, nextBucket);
+            }
+        }
+
+        public boolean hasNext() {
+            return nextEntry != -1;
+        }
+
+        public int nextEntry() {
+            bucket = nextBucket;
+            entry = nextEntry;
+            prevEntry = nextPrevEntry;
+            nextPrevEntry = nextEntry;
+            nextEntry = hashTable.getNext(nextEntry);
+            while (nextEntry == -1 && ++nextBucket < hashTable.bucket.capacity()) {
+                nextEntry = getBucket(hashTable.bucket, nextBucket);
+                nextPrevEntry = -1;
+            }
+            return entry;
+        }
+
+        public void remove() {
+            if (prevEntry == -1) {
+                setBucket(hashTable.bucket, bucket, hashTable.getNext(entry));
+            } else {
+                hashTable.setNext(prevEntry, hashTable.getNext(entry));
+            }
+            hashTable.setNext(entry, hashTable.freeEntry);
+            hashTable.freeEntry = entry;
+            hashTable.size--;
+
+            bucket = -1;
+            entry = -1;
+            prevEntry = -1;
+        }
+    }
+}
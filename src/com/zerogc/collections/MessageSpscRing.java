@@ -0,0 +1,177 @@
+/*
+ * Copyright 2016 Benoit Jardin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zerogc.collections;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.zerogc.core.ByteSlice;
+import com.zerogc.core.ByteUtils;
+
+/**
+ * Bounded single producer single consumer ring of variable length byte messages.
+ * Messages are stored in place as records made of a 4 bytes length followed by the message, aligned on 4 bytes.
+ * A record never wraps around, the space left at the end of the buffer is skipped with a padding record.
+ * The producer claims space, writes the message in the buffer and commits it, the consumer reads the message
+ * in place and releases it, positions are published like in LongSpscRing.
+ */
+public class MessageSpscRing {
+    private static final int PAD = 16;
+    private static final int HEAD = PAD - 1;
+    private static final int TAIL = 2*PAD - 1;
+    private static final int HEADER_SIZE = 4;
+    private static final int PADDING = -1;
+
+    private final int capacity;
+    private final int mask;
+    private final int maxLength;
+    private final byte[] buffer;
+    private final AtomicLongArray positions = new AtomicLongArray(3*PAD);
+    // Consumer: head, cached tail and head past the message read
+    // Producer: tail, cached head and tail past the message claimed
+    private final long[] cache = new long[3*PAD + 2];
+
+    /**
+     * @param capacity the size of the buffer in bytes, rounded up to a power of 2.
+     */
+    public MessageSpscRing(int capacity) {
+        if (capacity < 4*HEADER_SIZE || capacity > (1 << 30)) {
+            throw new IllegalArgumentException("Illegal Capacity: " + capacity);
+        }
+        int adjustedCapacity = 1;
+        while (adjustedCapacity < capacity) {
+            adjustedCapacity <<= 1;
+        }
+        this.capacity = adjustedCapacity;
+        this.mask = adjustedCapacity - 1;
+        // Half the buffer, a record which doesn't fit at the end always fits at the start once the ring is drained
+        this.maxLength = adjustedCapacity/2 - HEADER_SIZE;
+        this.buffer = new byte[adjustedCapacity];
+    }
+
+    public int capacity() {
+        return this.capacity;
+    }
+
+    public int maxLength() {
+        return this.maxLength;
+    }
+
+    /** The buffer messages are written to and read from. */
+    public byte[] buffer() {
+        return this.buffer;
+    }
+
+    private static int recordSize(int length) {
+        return (HEADER_SIZE + length + 3) & ~3;
+    }
+
+    // --------------------- Producer ---------------------
+
+    /**
+     * Claim space for a message, to be called from the producer thread only.
+     * The message is written to the buffer at the returned offset and published with commit().
+     * @return the offset of the message in the buffer or -1 if the ring is full.
+     */
+    public int claim(int length) {
+        if (length < 0 || length > this.maxLength) {
+            throw new IllegalArgumentException("Illegal message length: " + length);
+        }
+        long tail = this.cache[TAIL];
+        int index = (int)tail & this.mask;
+        int recordSize = recordSize(length);
+        int toEnd = this.capacity - index;
+        int required = recordSize <= toEnd ? recordSize : toEnd + recordSize;
+        if (this.capacity - (tail - this.cache[TAIL + 1]) < required) {
+            this.cache[TAIL + 1] = this.positions.get(HEAD);
+            if (this.capacity - (tail - this.cache[TAIL + 1]) < required) {
+                return -1;
+            }
+        }
+        if (recordSize > toEnd) {
+            ByteUtils.putIntLE(this.buffer, index, PADDING);
+            tail += toEnd;
+            index = 0;
+        }
+        ByteUtils.putIntLE(this.buffer, index, length);
+        this.cache[TAIL + 2] = tail + recordSize;
+        return index + HEADER_SIZE;
+    }
+
+    /** Publish the message claimed last. */
+    public void commit() {
+        long tail = this.cache[TAIL + 2];
+        this.cache[TAIL] = tail;
+        this.positions.lazySet(TAIL, tail);
+    }
+
+    /**
+     * Copy and publish a message.
+     * @return false if the ring is full.
+     */
+    public boolean write(byte[] src, int offset, int length) {
+        int position = claim(length);
+        if (position == -1) {
+            return false;
+        }
+        System.arraycopy(src, offset, this.buffer, position, length);
+        commit();
+        return true;
+    }
+
+    // --------------------- Consumer ---------------------
+
+    /** Returns true if the ring is empty, to be called from the consumer thread only. */
+    public boolean isEmpty() {
+        long head = this.cache[HEAD];
+        if (head == this.cache[HEAD + 1]) {
+            this.cache[HEAD + 1] = this.positions.get(TAIL);
+            return head == this.cache[HEAD + 1];
+        }
+        return false;
+    }
+
+    /**
+     * Point the slice to the oldest message, to be called from the consumer thread only.
+     * The message stays in the buffer until released with release().
+     * @return false if the ring is empty.
+     */
+    public boolean read(ByteSlice slice) {
+        if (isEmpty()) {
+            return false;
+        }
+        long head = this.cache[HEAD];
+        int index = (int)head & this.mask;
+        int length = ByteUtils.getIntLE(this.buffer, index);
+        if (length == PADDING) {
+            // Padding records are committed along with the next message
+            head += this.capacity - index;
+            index = 0;
+            length = ByteUtils.getIntLE(this.buffer, index);
+        }
+        this.cache[HEAD + 2] = head + recordSize(length);
+        slice.set(this.buffer, index + HEADER_SIZE, length);
+        return true;
+    }
+
+    /** Release the message read last. */
+    public void release() {
+        long head = this.cache[HEAD + 2];
+        if (head > this.cache[HEAD]) {
+            this.cache[HEAD] = head;
+            this.positions.lazySet(HEAD, head);
+        }
+    }
+}
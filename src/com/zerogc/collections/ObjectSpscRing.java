@@ -0,0 +1,120 @@
+/*
+ * Copyright 2016 Benoit Jardin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zerogc.collections;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded single producer single consumer ring buffer.
+ * The producer and consumer positions are kept a cache line apart in a padded array and
+ * published with ordered writes, each side caches the position of the other one so that it
+ * only reads the shared counter when the ring looks full or empty.
+ * offer() must only be called from one thread and isEmpty(), peek() and poll() from another one.
+ */
+public class ObjectSpscRing {
+    // Longs per cache line, counters are spaced by two lines against adjacent line prefetching
+    private static final int PAD = 16;
+    private static final int HEAD = PAD - 1;
+    private static final int TAIL = 2*PAD - 1;
+
+    private final int capacity;
+    private final int mask;
+    private final Object[] elements;
+    // Shared positions, the consumer publishes the head and the producer the tail
+    private final AtomicLongArray positions = new AtomicLongArray(3*PAD);
+    // Positions private to each side, HEAD is the consumer head and cached tail, TAIL the producer tail and cached head
+    private final long[] cache = new long[3*PAD + 1];
+
+    /**
+     * @param capacity the maximum number of elements, rounded up to a power of 2.
+     */
+    public ObjectSpscRing(int capacity) {
+        if (capacity <= 0 || capacity > (1 << 30)) {
+            throw new IllegalArgumentException("Illegal Capacity: " + capacity);
+        }
+        int adjustedCapacity = 1;
+        while (adjustedCapacity < capacity) {
+            adjustedCapacity <<= 1;
+        }
+        this.capacity = adjustedCapacity;
+        this.mask = adjustedCapacity - 1;
+        this.elements = new Object[adjustedCapacity];
+    }
+
+    public int capacity() {
+        return this.capacity;
+    }
+
+    /** Returns an estimate of the number of elements, exact from a quiescent ring only. */
+    public int size() {
+        return (int)(this.positions.get(TAIL) - this.positions.get(HEAD));
+    }
+
+    // --------------------- Producer ---------------------
+
+    /**
+     * Append a value, to be called from the producer thread only.
+     * @return false if the ring is full.
+     */
+    public boolean offer(Object value) {
+        long tail = this.cache[TAIL];
+        if (tail - this.cache[TAIL + 1] == this.capacity) {
+            this.cache[TAIL + 1] = this.positions.get(HEAD);
+            if (tail - this.cache[TAIL + 1] == this.capacity) {
+                return false;
+            }
+        }
+        this.elements[(int)tail & this.mask] = value;
+        this.cache[TAIL] = tail + 1;
+        // Ordered write, the element is visible before the position
+        this.positions.lazySet(TAIL, tail + 1);
+        return true;
+    }
+
+    // --------------------- Consumer ---------------------
+
+    /** Returns true if the ring is empty, to be called from the consumer thread only. */
+    public boolean isEmpty() {
+        long head = this.cache[HEAD];
+        if (head == this.cache[HEAD + 1]) {
+            this.cache[HEAD + 1] = this.positions.get(TAIL);
+            return head == this.cache[HEAD + 1];
+        }
+        return false;
+    }
+
+    /** Returns the oldest value or null if the ring is empty, to be called from the consumer thread only. */
+    public Object peek() {
+        if (isEmpty()) {
+            return null;
+        }
+        return this.elements[(int)this.cache[HEAD] & this.mask];
+    }
+
+    /** Removes and returns the oldest value or null if the ring is empty, to be called from the consumer thread only. */
+    public Object poll() {
+        if (isEmpty()) {
+            return null;
+        }
+        long head = this.cache[HEAD];
+        int index = (int)head & this.mask;
+        Object value = this.elements[index];
+        this.elements[index] = null;
+        this.cache[HEAD] = head + 1;
+        this.positions.lazySet(HEAD, head + 1);
+        return value;
+    }
+}
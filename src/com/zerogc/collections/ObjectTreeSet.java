@@ -202,8 +202,25 @@ public class ObjectTreeSet {
     }
 
     public void clear() {
-        for (int entry = firstEntry(); entry != -1; entry = nextEntry(entry)) {
-            store.removeEntry(entry);
+        // Release entries in post order, the parent link of released entries is reused by the free list
+        int entry = root;
+        while (entry != -1) {
+            if (store.left[entry] != -1) {
+                entry = store.left[entry];
+            } else if (store.right[entry] != -1) {
+                entry = store.right[entry];
+            } else {
+                int parent = store.parent[entry];
+                if (parent != -1) {
+                    if (store.left[parent] == entry) {
+                        store.left[parent] = -1;
+                    } else {
+                        store.right[parent] = -1;
+                    }
+                }
+                store.removeEntry(entry);
+                entry = parent;
+            }
         }
         this.root = -1;
         this.size = 0;
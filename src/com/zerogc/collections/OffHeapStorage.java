@@ -0,0 +1,133 @@
+/*
+ * Copyright 2016 Benoit Jardin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zerogc.collections;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Fixed size records indexed by entry, stored in pages of direct memory.
+ * The collector only sees the page array, the records themselves are not scanned nor copied.
+ * Once past the first page, growing allocates new pages and never moves existing records, the capacity is bound by the
+ * number of pages rather than by the 2GB limit of a single ByteBuffer.
+ */
+public final class OffHeapStorage {
+    public static final int DEFAULT_PAGE_SHIFT = 16;
+
+    private final int recordSize;
+    private final int pageShift;
+    private final int pageMask;
+    private ByteBuffer[] pages = new ByteBuffer[0];
+    private int capacity = 0;
+
+    /**
+     * @param recordSize the size of a record in bytes.
+     * @param pageShift log2 of the number of records per page.
+     */
+    public OffHeapStorage(int recordSize, int pageShift) {
+        if (recordSize <= 0 || ((long)recordSize << pageShift) > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Illegal record size: " + recordSize);
+        }
+        this.recordSize = recordSize;
+        this.pageShift = pageShift;
+        this.pageMask = (1 << pageShift) - 1;
+    }
+
+    public OffHeapStorage(int recordSize) {
+        this(recordSize, DEFAULT_PAGE_SHIFT);
+    }
+
+    public int recordSize() {
+        return this.recordSize;
+    }
+
+    public int capacity() {
+        return this.capacity;
+    }
+
+    /** Returns the capacity grow(newCapacity) results in, small stores use a single page just large enough. */
+    public int adjustCapacity(int newCapacity) {
+        return newCapacity <= (1 << this.pageShift) ? newCapacity : ((newCapacity + this.pageMask) >>> this.pageShift) << this.pageShift;
+    }
+
+    /** Make room for at least newCapacity records, rounded up to whole pages beyond the first one. */
+    public void grow(int newCapacity) {
+        if (newCapacity <= this.capacity) {
+            return;
+        }
+        int pageCount = ((newCapacity - 1) >>> this.pageShift) + 1;
+        int pageRecords = pageCount == 1 ? newCapacity : 1 << this.pageShift;
+        ByteBuffer[] newPages = new ByteBuffer[pageCount];
+        System.arraycopy(this.pages, 0, newPages, 0, this.pages.length);
+        if (this.pages.length == 1 && this.capacity < pageRecords) {
+            // Reallocate the partial first page
+            newPages[0] = allocate(pageRecords);
+            ByteBuffer src = this.pages[0].duplicate();
+            src.clear();
+            newPages[0].put(src);
+            newPages[0].clear();
+        }
+        for (int i=this.pages.length; i < pageCount; i++) {
+            newPages[i] = allocate(pageRecords);
+        }
+        this.pages = newPages;
+        this.capacity = pageCount == 1 ? pageRecords : pageCount << this.pageShift;
+    }
+
+    private ByteBuffer allocate(int records) {
+        return ByteBuffer.allocateDirect(records * this.recordSize).order(ByteOrder.nativeOrder());
+    }
+
+    private ByteBuffer page(int entry) {
+        return this.pages[entry >>> this.pageShift];
+    }
+
+    private int position(int entry, int offset) {
+        return (entry & this.pageMask) * this.recordSize + offset;
+    }
+
+    public byte getByte(int entry, int offset) {
+        return page(entry).get(position(entry, offset));
+    }
+
+    public void putByte(int entry, int offset, byte value) {
+        page(entry).put(position(entry, offset), value);
+    }
+
+    public int getInt(int entry, int offset) {
+        return page(entry).getInt(position(entry, offset));
+    }
+
+    public void putInt(int entry, int offset, int value) {
+        page(entry).putInt(position(entry, offset), value);
+    }
+
+    public long getLong(int entry, int offset) {
+        return page(entry).getLong(position(entry, offset));
+    }
+
+    public void putLong(int entry, int offset, long value) {
+        page(entry).putLong(position(entry, offset), value);
+    }
+
+    public double getDouble(int entry, int offset) {
+        return page(entry).getDouble(position(entry, offset));
+    }
+
+    public void putDouble(int entry, int offset, double value) {
+        page(entry).putDouble(position(entry, offset), value);
+    }
+}
@@ -25,7 +25,6 @@ import java.nio.channels.SelectionKey;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
 
-import com.zerogc.collections.IntRbTree;
 import com.zerogc.collections.LongHeap;
 import com.zerogc.collections.LongObjectHeap;
 import com.zerogc.logging.Level;
@@ -41,24 +40,55 @@ public class EPollEventLoop implements EventLoop {
     final Logger log = LogManager.getLogger(EPollEventLoop.class.getSimpleName());
 
     private static final int CLOCK_GRANULARITY = 10;
+    /** Maximum number of tasks queued with execute() pending on the loop. */
+    public static final int TASK_QUEUE_CAPACITY = 1024;
+
+    /** Readiness is reported as long as the condition holds, the default. */
+    public static final int LEVEL_TRIGGERED = 0;
+    /**
+     * Readiness is reported once per transition: listeners must read or write until the channel
+     * returns 0 (EAGAIN) or else they will not be notified again.
+     * Dropping interest does not cost a system call while adding interest reports any pending readiness.
+     */
+    public static final int EDGE_TRIGGERED = Native.EPOLLET;
+    /** The channel is disarmed after each event and listeners re-arm it by setting interestOps. */
+    public static final int ONE_SHOT = Native.EPOLLONESHOT;
 
     private final int epfd;
     private final ByteBuffer eventsByteBuffer;
-    private boolean open = false;
+    private volatile boolean open = false; // Closed from other threads by EventLoopGroup
 
     private LongObjectHeap timers = new LongObjectHeap();
+    private TimerWheel timerWheel = null;
+    private SpinPolicy spinPolicy = null;
+    private final TaskQueue taskQueue;
+    private long currentNanos;
+    private long currentRealtimeNanos;
+    private final long clockOffsetNanos;
     private long currentMicros;
     private long currentMillis;
 
-    private SelectionKeys selectionKeys = new SelectionKeys(SelectionKeys.class.getSimpleName(), Native.MAX_SELECTABLE_FDS);
+    // Live selection keys indexed by file descriptor
+    private EPollSelectionKey[] selectionKeys = null;
+    private int selectionKeyCount = 0;
+    private int generation = 0;
+    // Pre-allocated keys recycled first in first out, delaying the reuse of a key a caller may still hold
+    private EPollSelectionKey freeKeyHead = null;
+    private EPollSelectionKey freeKeyTail = null;
+    private int keyCount = 0;
     EventLoopListener selectEventHandler = null;
+    private int triggerMode = LEVEL_TRIGGERED;
 
     private class EPollSelectionKey implements EventLoopSelectionKey {
         SelectableChannel selectableChannel;
         int fd;
+        int generation;
         int interestOps;
-        short eventType;
+        int triggerMode;
+        int eventType;
+        boolean registered;
         EventLoopListener eventHandler;
+        EPollSelectionKey nextFreeKey;
 
         @Override
         public int interestOps() {
@@ -66,7 +96,12 @@ public class EPollEventLoop implements EventLoop {
         }
         private void interestOpsInt(int ops) {
             this.interestOps = ops;
-            this.eventType = 0;
+            if (this.triggerMode == EDGE_TRIGGERED) {
+                // Always listen to both directions, events are filtered against interestOps when dispatched
+                this.eventType = Native.EPOLLIN | Native.EPOLLOUT | Native.EPOLLET;
+                return;
+            }
+            this.eventType = this.triggerMode;
             if ((ops & (SelectionKey.OP_READ | SelectionKey.OP_ACCEPT)) != 0) {
                 this.eventType |= Native.EPOLLIN;
             }
@@ -74,68 +109,60 @@ public class EPollEventLoop implements EventLoop {
                 this.eventType |= Native.EPOLLOUT;
             }
         }
+        private boolean isLive(int generation) {
+            return this.registered && this.generation == generation;
+        }
         @Override
         public void interestOps(int ops) {
+            if (!this.registered) {
+                return;
+            }
+            int addedOps = ops & ~this.interestOps;
+            int eventType = this.eventType;
             interestOpsInt(ops);
-            Native.epoll_ctl(epfd, Native.EPOLL_CTL_MOD, fd, this.eventType);
-        }
-
-        @Override
-        public void cancel() {
-            // Mark the selection key for later removal
-            this.interestOps = 0;
-            this.eventType = 0;
-            this.eventHandler = null;
-            if (Native.epoll_ctl(epfd, Native.EPOLL_CTL_DEL, fd, this.eventType) != 0) {
-                 log.log(Level.ERROR, log.getSB().append("epoll_ctl failed"));
+            if (this.triggerMode == EDGE_TRIGGERED) {
+                // Dropping interest is free, adding interest re-arms the fd to report a readiness already signaled
+                if (addedOps == 0) {
+                    return;
+                }
+            } else if (this.triggerMode == LEVEL_TRIGGERED && this.eventType == eventType) {
+                return;
+            }
+            // One shot keys are re-armed on every call
+            if (Native.epoll_ctl_data(epfd, Native.EPOLL_CTL_MOD, fd, this.eventType, data()) != 0) {
+                log.log(Level.ERROR, log.getSB().append("epoll_ctl failed"));
             }
         }
 
-    };
-
-    // Map between file descriptor to selection key
-    class SelectionKeys extends IntRbTree {
-        private EPollSelectionKey[] value;
-
-        public SelectionKeys() {
-            super(SelectionKeys.class.getSimpleName(), INITIAL_CAPACITY, GROWTH_FACTOR);
-        }
-
-        public SelectionKeys(String name) {
-            super(name, INITIAL_CAPACITY, GROWTH_FACTOR);
-        }
-
-        public SelectionKeys(String name, int initialCapacity) {
-            super(name, initialCapacity, GROWTH_FACTOR);
-        }
-
-        public SelectionKeys(String name, int initialCapacity, float growthFactor) {
-            super(name, initialCapacity, growthFactor);
+        // Events carry the generation to discard those of a cancelled key whose fd got reused
+        private long data() {
+            return ((long)this.generation << 32) | this.fd;
         }
 
         @Override
-        protected void grow(int capacity, int newCapacity) {
-            super.grow(capacity, newCapacity);
-
-            EPollSelectionKey[] newValue = new EPollSelectionKey[newCapacity];
-            if (capacity > 0) {
-                System.arraycopy(this.value, 0, newValue, 0, capacity);
+        public void cancel() {
+            if (!this.registered) {
+                return;
             }
-            for (int i=capacity; i<newCapacity; i++) {
-                newValue[i] = new EPollSelectionKey();
+            selectionKeyCount--;
+            selectionKeys[this.fd] = null;
+            release();
+            if (Native.epoll_ctl(epfd, Native.EPOLL_CTL_DEL, fd, this.eventType) != 0) {
+                 log.log(Level.ERROR, log.getSB().append("epoll_ctl failed"));
             }
-            this.value = newValue;
         }
 
-        public EPollSelectionKey getValue(int entry) {
-            return this.value[entry];
+        // Pending events are discarded and the key goes back to the pool
+        private void release() {
+            this.registered = false;
+            this.interestOps = 0;
+            this.eventType = 0;
+            this.eventHandler = null;
+            this.selectableChannel = null;
+            freeKey(this);
         }
 
-        public int put(int key) {
-            int entry = insert(key);
-            return entry;
-        }
-    }
+    };
 
     // Multimap between timer expiry and EventHandler
     static class TimerEvents extends LongHeap {
@@ -164,18 +191,82 @@ public class EPollEventLoop implements EventLoop {
     }
 
     public EPollEventLoop() {
-        currentMicros = Native.currentTimeMicros();
-        currentMillis = currentMicros/1000;
+        this(null);
+    }
+
+    /**
+     * @param timerWheel the timing wheel scheduling timers or {@code null} to use a heap.
+     */
+    public EPollEventLoop(TimerWheel timerWheel) {
+        clockOffsetNanos = Native.currentRealtimeNanos() - Native.currentMonotonicNanos();
+        updateTime();
         eventsByteBuffer = ByteBuffer.allocateDirect(Native.MAX_SELECTABLE_FDS * Native.EPOLLEVENT_SIZE);
         eventsByteBuffer.order(ByteOrder.nativeOrder());
+        growSelectionKeys(0, Native.MAX_SELECTABLE_FDS);
+        growKeys(Native.MAX_SELECTABLE_FDS);
         epfd = Native.epoll_create(256);
         if (epfd < 0) {
             log.log(Level.ERROR, log.getSB().append("epoll_create failed"));
         }
+        taskQueue = new TaskQueue(TASK_QUEUE_CAPACITY, Native.eventfd(0));
+        registerImpl(null, taskQueue.getWakeupFd(), SelectionKey.OP_READ, taskQueue);
+        if (timerWheel != null) {
+            this.timerWheel = timerWheel;
+            this.timerWheel.advance(currentMillis);
+        }
+    }
+
+    private void growSelectionKeys(int capacity, int newCapacity) {
+        log.log(Level.WARN, log.getSB().append("Resizing selection keys to ").append(newCapacity));
+
+        EPollSelectionKey[] newSelectionKeys = new EPollSelectionKey[newCapacity];
+        if (capacity > 0) {
+            System.arraycopy(this.selectionKeys, 0, newSelectionKeys, 0, capacity);
+        }
+        this.selectionKeys = newSelectionKeys;
+    }
+
+    private void growKeys(int count) {
+        log.log(Level.WARN, log.getSB().append("Allocating ").append(count).append(" selection keys"));
+
+        for (int i=0; i < count; i++) {
+            freeKey(new EPollSelectionKey());
+        }
+        this.keyCount += count;
+    }
+
+    private void freeKey(EPollSelectionKey selectionKey) {
+        selectionKey.nextFreeKey = null;
+        if (this.freeKeyTail == null) {
+            this.freeKeyHead = selectionKey;
+        } else {
+            this.freeKeyTail.nextFreeKey = selectionKey;
+        }
+        this.freeKeyTail = selectionKey;
+    }
+
+    private EPollSelectionKey allocateKey() {
+        if (this.freeKeyHead == null) {
+            growKeys(this.keyCount);
+        }
+        EPollSelectionKey selectionKey = this.freeKeyHead;
+        this.freeKeyHead = selectionKey.nextFreeKey;
+        if (this.freeKeyHead == null) {
+            this.freeKeyTail = null;
+        }
+        selectionKey.nextFreeKey = null;
+        return selectionKey;
     }
 
     // --------------------- Basic event loop ---------------------
 
+    private void updateTime() {
+        currentNanos = Native.currentMonotonicNanos();
+        currentRealtimeNanos = Native.currentRealtimeNanos();
+        currentMicros = (currentNanos + clockOffsetNanos)/1000;
+        currentMillis = currentMicros/1000;
+    }
+
     @Override
     public long currentMicros() {
         return this.currentMicros;
@@ -186,13 +277,61 @@ public class EPollEventLoop implements EventLoop {
         return this.currentMillis;
     }
 
+    @Override
+    public long currentNanos() {
+        return this.currentNanos;
+    }
+
+    @Override
+    public long currentRealtimeNanos() {
+        return this.currentRealtimeNanos;
+    }
+
+    public int getTriggerMode() {
+        return this.triggerMode;
+    }
+
+    /**
+     * Set the trigger mode of channels registered from now on.
+     * @param triggerMode one of LEVEL_TRIGGERED, EDGE_TRIGGERED or ONE_SHOT.
+     */
+    public void setTriggerMode(int triggerMode) {
+        if (triggerMode != LEVEL_TRIGGERED && triggerMode != EDGE_TRIGGERED && triggerMode != ONE_SHOT) {
+            throw new IllegalArgumentException("Illegal trigger mode: " + triggerMode);
+        }
+        this.triggerMode = triggerMode;
+    }
+
+    public SpinPolicy getSpinPolicy() {
+        return this.spinPolicy;
+    }
+
+    /**
+     * Set the polling policy, by default the loop blocks in the kernel.
+     * @param spinPolicy the spin policy or {@code null} to block.
+     */
+    public void setSpinPolicy(SpinPolicy spinPolicy) {
+        this.spinPolicy = spinPolicy;
+    }
+
     @Override
     public void open() {
+        open = true;
     }
 
     @Override
     public void close() {
         open = false;
+        this.taskQueue.wakeup();
+    }
+
+    /**
+     * Queue a task to run on the thread of the loop, may be called from any thread.
+     * The loop is only woken up if blocked in the kernel.
+     * @return false if the task queue is full.
+     */
+    public boolean execute(Runnable task) {
+        return this.taskQueue.offer(task);
     }
 
     @Override
@@ -226,16 +365,28 @@ public class EPollEventLoop implements EventLoop {
     }
 
     private EventLoopSelectionKey registerImpl(SelectableChannel selectableChannel, int fd, int ops, EventLoopListener eventHandler) {
-        int entry = this.selectionKeys.put(fd);
+        if (fd >= this.selectionKeys.length) {
+            growSelectionKeys(this.selectionKeys.length, Math.max(fd + 1, 2 * this.selectionKeys.length));
+        }
 
-        log.log(Level.DEBUG, log.getSB().append("Register fd: ").append(fd).append(" at entry: ").append(entry).append(" for ops: ").append(ops));
+        log.log(Level.DEBUG, log.getSB().append("Register fd: ").append(fd).append(" for ops: ").append(ops));
 
-        EPollSelectionKey selectionKey = this.selectionKeys.getValue(entry);
+        // A key left registered on a closed fd is released, the kernel dropped it from the epoll set on close
+        if (this.selectionKeys[fd] == null) {
+            selectionKeyCount++;
+        } else {
+            this.selectionKeys[fd].release();
+        }
+        EPollSelectionKey selectionKey = allocateKey();
+        this.selectionKeys[fd] = selectionKey;
+        selectionKey.registered = true;
         selectionKey.fd = fd;
+        selectionKey.generation = ++this.generation;
         selectionKey.selectableChannel = selectableChannel;
         selectionKey.eventHandler = eventHandler;
+        selectionKey.triggerMode = this.triggerMode;
         selectionKey.interestOpsInt(ops);
-        if (Native.epoll_ctl(epfd, Native.EPOLL_CTL_ADD, fd, selectionKey.eventType) != 0) {
+        if (Native.epoll_ctl_data(epfd, Native.EPOLL_CTL_ADD, fd, selectionKey.eventType, selectionKey.data()) != 0) {
             log.log(Level.ERROR, log.getSB().append("epoll_ctl failed"));
         }
         return selectionKey;
@@ -252,13 +403,20 @@ public class EPollEventLoop implements EventLoop {
     @Override
     public int addTimer(long when, TimerListener timerHandler) {
         log.log(Level.DEBUG, "addTimer");
+        if (this.timerWheel != null) {
+            return this.timerWheel.insert(when, timerHandler);
+        }
         return this.timers.insert(when, timerHandler);
     }
 
     @Override
     public void cancelTimer(int entry) {
         log.log(Level.DEBUG, "cancelTimer");
-        this.timers.removeEntry(entry);
+        if (this.timerWheel != null) {
+            this.timerWheel.removeEntry(entry);
+        } else {
+            this.timers.removeEntry(entry);
+        }
     }
 
     @Override
@@ -268,33 +426,34 @@ public class EPollEventLoop implements EventLoop {
         while (open) {
             try {
                 long nextTimer = Long.MIN_VALUE;
-                while (!this.timers.isEmpty()) {
-                    int entry = this.timers.firstEntry();
-                    nextTimer = this.timers.getKey(entry);
-                    if (nextTimer - currentMillis < CLOCK_GRANULARITY) {
-                        // Callbacks may change the timer map, remove timer entry beforehand
-                        TimerListener timerHandler = (TimerListener)this.timers.getValue(entry);
-                        this.timers.removeEntry(entry);
+                if (this.timerWheel != null) {
+                    // Expire timers within the clock granularity like the heap does
+                    this.timerWheel.advance(currentMillis + CLOCK_GRANULARITY - 1);
+                    for (int entry = this.timerWheel.firstExpiredEntry(); entry != -1; entry = this.timerWheel.firstExpiredEntry()) {
+                        // Callbacks may change the timer wheel, remove timer entry beforehand
+                        TimerListener timerHandler = this.timerWheel.getValue(entry);
+                        this.timerWheel.removeEntry(entry);
                         timerHandler.onTimer(entry, currentMillis);
-                        nextTimer = Long.MIN_VALUE;
-                    } else {
-                        break;
                     }
-                }
-
-                for (int entry = this.selectionKeys.firstEntry(), i = 0; entry != -1; i++) {
-                    EPollSelectionKey selectionKey = this.selectionKeys.getValue(entry);
-                    if (selectionKey.eventHandler == null) {
-                        log.log(Level.DEBUG, log.getSB().append("Remove selectionKey for fd: ").append(selectionKey.fd).append(" at entry: ").append(entry));
-                        entry = selectionKeys.removeEntry(entry);
-                    } else {
-                        entry = selectionKeys.nextEntry(entry);
+                    nextTimer = this.timerWheel.nextExpiry();
+                } else {
+                    while (!this.timers.isEmpty()) {
+                        int entry = this.timers.firstEntry();
+                        nextTimer = this.timers.getKey(entry);
+                        if (nextTimer - currentMillis < CLOCK_GRANULARITY) {
+                            // Callbacks may change the timer map, remove timer entry beforehand
+                            TimerListener timerHandler = (TimerListener)this.timers.getValue(entry);
+                            this.timers.removeEntry(entry);
+                            timerHandler.onTimer(entry, currentMillis);
+                            nextTimer = Long.MIN_VALUE;
+                        } else {
+                            break;
+                        }
                     }
                 }
 
                 // Callbacks may have been running for some non neglectable time, update current time before calculating timeout
-                currentMicros = Native.currentTimeMicros();
-                currentMillis = currentMicros/1000;
+                updateTime();
                 long timeout = (int)(nextTimer - currentMillis);
                 if (nextTimer == Long.MIN_VALUE) {
                     timeout = -1;
@@ -302,21 +461,32 @@ public class EPollEventLoop implements EventLoop {
                     timeout = 0;
                 }
                 int intTimeout = timeout > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int)timeout;
+                if (this.spinPolicy != null) {
+                    intTimeout = this.spinPolicy.timeout(intTimeout);
+                }
 
                 if (selectEventHandler != null) {
                     selectEventHandler.onSelect();
                 }
+                this.taskQueue.run();
                 if (!open) {
                     break;
                 }
+                if (intTimeout != 0 && !this.taskQueue.park()) {
+                    // Tasks were queued meanwhile
+                    intTimeout = 0;
+                }
 
-                log.log(Level.DEBUG, log.getSB().append("EPoll ").append(this.selectionKeys.size()).append(" files with timeout: ").append(timeout));
+                log.log(Level.DEBUG, log.getSB().append("EPoll ").append(this.selectionKeyCount).append(" files with timeout: ").append(timeout));
                 this.eventsByteBuffer.clear();
-                int nfds = Native.epoll_wait(epfd, ((sun.nio.ch.DirectBuffer)eventsByteBuffer).address(), this.selectionKeys.size(), intTimeout);
+                int nfds = Native.epoll_wait(epfd, ((sun.nio.ch.DirectBuffer)eventsByteBuffer).address(), Native.MAX_SELECTABLE_FDS, intTimeout);
+                this.taskQueue.unpark();
                 log.log(Level.DEBUG, log.getSB().append("EPoll returned with nfds: ").append(nfds));
+                if (this.spinPolicy != null) {
+                    this.spinPolicy.polled(nfds);
+                }
 
-                currentMicros = Native.currentTimeMicros();
-                currentMillis = currentMicros/1000;
+                updateTime();
                 if (nfds == 0) {
                     // A timer expired
                     continue;
@@ -326,24 +496,27 @@ public class EPollEventLoop implements EventLoop {
                 }
                 for (int i=0; i < nfds; i++) {
                     int offset = i*Native.EPOLLEVENT_SIZE;
-                    int fd = eventsByteBuffer.getInt(offset + Native.EPOLLEVENT_FD_OFFSET);
+                    long data = eventsByteBuffer.getLong(offset + Native.EPOLLEVENT_DATA_OFFSET);
                     int events = eventsByteBuffer.getInt(offset + Native.EPOLLEVENT_EVENTS_OFFSET);
-                    int entry = this.selectionKeys.find(fd);
-                    EPollSelectionKey selectionKey = this.selectionKeys.getValue(entry);
-                    log.log(Level.DEBUG, log.getSB().append("events: ").append(events).append(" available for fd: ").append(fd).append(" at entry: ").append(entry).append(" interestOps: ").append(selectionKey.interestOps));
-                    if (selectionKey.eventHandler == null) {
+                    int fd = (int)data;
+                    EPollSelectionKey selectionKey = this.selectionKeys[fd];
+                    int generation = (int)(data >>> 32);
+                    if (selectionKey == null || selectionKey.generation != generation) {
+                        // Key cancelled by a previous callback
                         continue;
                     }
+                    log.log(Level.DEBUG, log.getSB().append("events: ").append(events).append(" available for fd: ").append(fd).append(" interestOps: ").append(selectionKey.interestOps));
                     if ((events & Native.EPOLLIN) != 0) {
-                        log.log(Level.DEBUG, log.getSB().append("POLLIN available for fd: ").append(fd).append(" at entry: ").append(entry).append(" interestOps: ").append(selectionKey.interestOps));
+                        log.log(Level.DEBUG, log.getSB().append("POLLIN available for fd: ").append(fd).append(" interestOps: ").append(selectionKey.interestOps));
                         if ((selectionKey.interestOps & SelectionKey.OP_READ) != 0) {
                             selectionKey.eventHandler.onRead(selectionKey.selectableChannel);
                         } else if ((selectionKey.interestOps & SelectionKey.OP_ACCEPT) != 0) {
                             selectionKey.eventHandler.onAccept(selectionKey.selectableChannel);
                         }
                     }
-                    if ((events & Native.EPOLLOUT) != 0) {
-                        log.log(Level.DEBUG, log.getSB().append("POLLOUT available for fd: ").append(fd).append(" at entry: ").append(entry).append(" interestOps: ").append(selectionKey.interestOps));
+                    // Callbacks may cancel the key and recycle it for another registration
+                    if ((events & Native.EPOLLOUT) != 0 && selectionKey.isLive(generation)) {
+                        log.log(Level.DEBUG, log.getSB().append("POLLOUT available for fd: ").append(fd).append(" interestOps: ").append(selectionKey.interestOps));
                         if ((selectionKey.interestOps & SelectionKey.OP_WRITE) != 0) {
                             selectionKey.eventHandler.onWrite(selectionKey.selectableChannel);
                         } else if ((selectionKey.interestOps & SelectionKey.OP_CONNECT) != 0) {
@@ -351,7 +524,7 @@ public class EPollEventLoop implements EventLoop {
                         }
                     }
                     // Socket is in an error state
-                    if ((events & ~(Native.EPOLLIN | Native.EPOLLOUT)) != 0 ) {
+                    if ((events & ~(Native.EPOLLIN | Native.EPOLLOUT)) != 0 && selectionKey.isLive(generation)) {
                         log.log(Level.ERROR, "Socket is in an error state");
                         selectionKey.eventHandler.onClose(selectionKey.selectableChannel);
                     }
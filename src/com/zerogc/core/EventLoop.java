@@ -34,7 +34,16 @@ public interface EventLoop {
         public void onClose(SelectableChannel selectableChannel);
         public void onAccept(SelectableChannel selectableChannel);
         public void onConnect(SelectableChannel selectableChannel);
+        /**
+         * Invoked when the channel is readable.
+         * With edge triggered event loops the channel must be read until it returns 0 (EAGAIN),
+         * a short read of a TCP channel means its receive queue was drained.
+         */
         public void onRead(SelectableChannel selectableChannel);
+        /**
+         * Invoked when the channel is writable.
+         * With edge triggered event loops the listener is only notified again after a write did not complete.
+         */
         public void onWrite(SelectableChannel selectableChannel);
         public void onSelect();
     }
@@ -48,8 +57,18 @@ public interface EventLoop {
     public void open();
     public void close();
 
+    /**
+     * The loop clock is sampled once per iteration, before the callbacks are invoked.
+     * currentMicros() and currentMillis() follow the monotonic clock from the wall clock time at which the loop
+     * was created so that timers don't drift when the wall clock jumps. Handlers needing a fresh reading should
+     * call Native.currentMonotonicNanos() or Native.currentRealtimeNanos() directly.
+     */
     public long currentMicros();
     public long currentMillis();
+    /** Returns the CLOCK_MONOTONIC time in nanoseconds of the current iteration. */
+    public long currentNanos();
+    /** Returns the CLOCK_REALTIME time in nanoseconds since the epoch of the current iteration. */
+    public long currentRealtimeNanos();
 
     public EventLoopSelectionKey register(ServerSocketChannel serverSocketChannel, int ops, EventLoopListener eventhandler);
     public EventLoopSelectionKey register(SocketChannel socketChannel, int ops, EventLoopListener eventhandler);
@@ -0,0 +1,201 @@
+/*
+ * Copyright 2016 Benoit Jardin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zerogc.core;
+
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.Pipe.SinkChannel;
+import java.nio.channels.Pipe.SourceChannel;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+import com.zerogc.logging.Level;
+import com.zerogc.logging.LogManager;
+import com.zerogc.logging.Logger;
+
+/**
+ * Group of event loops, each one running on its own thread optionally pinned to a cpu.
+ * Channels are assigned to a loop by policy: round-robin, hash of the file descriptor so that a channel
+ * always maps to the same loop, or explicitly by index with {@link #getEventLoop(int)}.
+ * Event loops are not thread safe, channels and timers must be registered before the group is opened
+ * or from the thread of the loop they are assigned to, for instance from a task passed to EPollEventLoop.execute().
+ */
+public class EventLoopGroup {
+    private static final Logger log = LogManager.getLogger(EventLoopGroup.class.getSimpleName());
+
+    /** Assign channels to the loops in turn. */
+    public static final int ROUND_ROBIN = 0;
+    /** Assign channels to the loop indexed by their file descriptor modulo the size of the group. */
+    public static final int FD_HASH = 1;
+
+    /** The thread of the loop is not pinned. */
+    public static final int NO_AFFINITY = -1;
+
+    /** Create the event loops of a group, for instance with another implementation or a timer wheel. */
+    public interface EventLoopFactory {
+        EventLoop newEventLoop(int index);
+    }
+
+    /** Create EPollEventLoops scheduling timers with a heap. */
+    public static final EventLoopFactory EPOLL = new EventLoopFactory() {
+        @Override
+        public EventLoop newEventLoop(int index) {
+            return new EPollEventLoop();
+        }
+    };
+
+    private final String name;
+    private final EventLoop[] eventLoops;
+    private final int[] cpus;
+    private final Thread[] threads;
+    private int policy = ROUND_ROBIN;
+    private int next = 0;
+
+    /**
+     * @param name the prefix of the thread names.
+     * @param size the number of event loops.
+     */
+    public EventLoopGroup(String name, int size) {
+        this(name, size, EPOLL);
+    }
+
+    /**
+     * @param name the prefix of the thread names.
+     * @param size the number of event loops.
+     * @param factory creates the event loops.
+     */
+    public EventLoopGroup(String name, int size, EventLoopFactory factory) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("Illegal size: " + size);
+        }
+        this.name = name;
+        this.eventLoops = new EventLoop[size];
+        this.cpus = new int[size];
+        this.threads = new Thread[size];
+        for (int i=0; i < size; i++) {
+            this.eventLoops[i] = factory.newEventLoop(i);
+            this.cpus[i] = NO_AFFINITY;
+        }
+    }
+
+    // --------------------- Configuration ---------------------
+
+    public int size() {
+        return this.eventLoops.length;
+    }
+
+    public int getPolicy() {
+        return this.policy;
+    }
+    /**
+     * Set the policy used by {@link #select(SelectableChannel)}.
+     * @param policy one of ROUND_ROBIN or FD_HASH.
+     */
+    public void setPolicy(int policy) {
+        if (policy != ROUND_ROBIN && policy != FD_HASH) {
+            throw new IllegalArgumentException("Illegal policy: " + policy);
+        }
+        this.policy = policy;
+    }
+
+    public int getAffinity(int index) {
+        return this.cpus[index];
+    }
+    /**
+     * Pin the thread of the loop at index to a cpu when the group is opened.
+     * @param cpu the cpu number or NO_AFFINITY.
+     */
+    public void setAffinity(int index, int cpu) {
+        if (cpu < NO_AFFINITY) {
+            throw new IllegalArgumentException("Illegal cpu: " + cpu);
+        }
+        this.cpus[index] = cpu;
+    }
+
+    // --------------------- Assignment ---------------------
+
+    public EventLoop getEventLoop(int index) {
+        return this.eventLoops[index];
+    }
+
+    /** Returns the event loop to register the channel with according to the policy. */
+    public EventLoop select(SelectableChannel selectableChannel) {
+        if (this.policy == FD_HASH) {
+            return this.eventLoops[fd(selectableChannel) % this.eventLoops.length];
+        }
+        EventLoop eventLoop = this.eventLoops[this.next];
+        if (++this.next == this.eventLoops.length) {
+            this.next = 0;
+        }
+        return eventLoop;
+    }
+
+    private static int fd(SelectableChannel selectableChannel) {
+        if (selectableChannel instanceof SocketChannel) {
+            return Native.getFdVal_SocketChannel((SocketChannel)selectableChannel);
+        } else if (selectableChannel instanceof ServerSocketChannel) {
+            return Native.getFdVal_ServerSocketChannel((ServerSocketChannel)selectableChannel);
+        } else if (selectableChannel instanceof DatagramChannel) {
+            return Native.getFdVal_DatagramChannel((DatagramChannel)selectableChannel);
+        } else if (selectableChannel instanceof SourceChannel) {
+            return Native.getFdVal_SourceChannel((SourceChannel)selectableChannel);
+        } else if (selectableChannel instanceof SinkChannel) {
+            return Native.getFdVal_SinkChannel((SinkChannel)selectableChannel);
+        }
+        throw new IllegalArgumentException("Unsupported channel: " + selectableChannel);
+    }
+
+    // --------------------- Life cycle ---------------------
+
+    /** Open the event loops and run each of them on a new thread. */
+    public void open() {
+        for (int i=0; i < this.eventLoops.length; i++) {
+            final EventLoop eventLoop = this.eventLoops[i];
+            final int cpu = this.cpus[i];
+            eventLoop.open();
+            this.threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    if (cpu != NO_AFFINITY) {
+                        if (Native.setAffinity(cpu) != 0) {
+                            log.log(Level.ERROR, log.getSB().append("Failed to pin ").append(Thread.currentThread().getName()).append(" to cpu ").append(cpu).append(", errno: ").append(Native.errno()));
+                        } else {
+                            log.log(Level.INFO, log.getSB().append("Pinned ").append(Thread.currentThread().getName()).append(" to cpu ").append(cpu));
+                        }
+                    }
+                    eventLoop.run();
+                }
+            }, this.name + "-" + i);
+            this.threads[i].start();
+        }
+    }
+
+    /** Request the event loops to stop, EPollEventLoop and IoUringEventLoop are woken up if blocked. */
+    public void close() {
+        for (int i=0; i < this.eventLoops.length; i++) {
+            this.eventLoops[i].close();
+        }
+    }
+
+    /** Wait for the threads of the event loops to exit. */
+    public void join() throws InterruptedException {
+        for (int i=0; i < this.threads.length; i++) {
+            if (this.threads[i] != null) {
+                this.threads[i].join();
+            }
+        }
+    }
+}
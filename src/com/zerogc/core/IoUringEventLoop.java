@@ -0,0 +1,637 @@
+/*
+ * Copyright 2016 Benoit Jardin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zerogc.core;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.Pipe.SinkChannel;
+import java.nio.channels.Pipe.SourceChannel;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+import com.zerogc.collections.LongObjectHeap;
+import com.zerogc.logging.Level;
+import com.zerogc.logging.LogManager;
+import com.zerogc.logging.Logger;
+
+/**
+ * GC free event loop based on the Linux io_uring interface.
+ * Readiness of the channels is requested with poll operations queued in the submission ring which is shared
+ * with the kernel, registrations, interest changes and re-arms don't cost any system call and are submitted
+ * along with the wait in a single io_uring_enter per iteration. Completions are dispatched to the
+ * EventLoopListener callbacks with the level triggered semantic of EPollEventLoop.
+ * Use {@link #newEventLoop(TimerWheel)} to fall back to EPollEventLoop on kernels without io_uring.
+ */
+public class IoUringEventLoop implements EventLoop {
+    final static Logger log = LogManager.getLogger(IoUringEventLoop.class.getSimpleName());
+
+    private static final int CLOCK_GRANULARITY = 10;
+    /** Maximum number of tasks queued with execute() pending on the loop. */
+    public static final int TASK_QUEUE_CAPACITY = 1024;
+
+    // Completions of poll removals are ignored
+    private static final long REMOVE_USER_DATA = -1L;
+
+    private static Boolean available = null;
+
+    private final int ringFd;
+    private volatile boolean open = false; // Closed from other threads by EventLoopGroup
+
+    private final ByteBuffer sqRing;
+    private final ByteBuffer cqRing;
+    private final ByteBuffer sqes;
+    private final int sqHeadOffset;
+    private final int sqTailOffset;
+    private final int sqMask;
+    private final int sqEntries;
+    private final int cqHeadOffset;
+    private final int cqTailOffset;
+    private final int cqMask;
+    private final int cqesOffset;
+    private int sqTail = 0;
+    private boolean released = false; // Rings unmapped and ringFd closed when run() exits
+    private int cqHead = 0;
+
+    private LongObjectHeap timers = new LongObjectHeap();
+    private TimerWheel timerWheel = null;
+    private SpinPolicy spinPolicy = null;
+    private final TaskQueue taskQueue;
+    private long currentNanos;
+    private long currentRealtimeNanos;
+    private final long clockOffsetNanos;
+    private long currentMicros;
+    private long currentMillis;
+
+    // Live selection keys indexed by file descriptor
+    private IoUringSelectionKey[] selectionKeys = null;
+    private int selectionKeyCount = 0;
+    private int generation = 0;
+    private int sequence = 0;
+    // Pre-allocated keys recycled first in first out, delaying the reuse of a key a caller may still hold
+    private IoUringSelectionKey freeKeyHead = null;
+    private IoUringSelectionKey freeKeyTail = null;
+    private int keyCount = 0;
+    EventLoopListener selectEventHandler = null;
+
+    private class IoUringSelectionKey implements EventLoopSelectionKey {
+        SelectableChannel selectableChannel;
+        int fd;
+        int generation;
+        int sequence;
+        int interestOps;
+        int armedEvents; // Events of the pending poll, 0 if none
+        boolean registered;
+        EventLoopListener eventHandler;
+        IoUringSelectionKey nextFreeKey;
+
+        @Override
+        public int interestOps() {
+            return this.interestOps;
+        }
+        private boolean isLive(int generation) {
+            return this.registered && this.generation == generation;
+        }
+        @Override
+        public void interestOps(int ops) {
+            if (!this.registered) {
+                return;
+            }
+            this.interestOps = ops;
+            int events = events(ops);
+            // Dropping interest is free, events are filtered against interestOps when dispatched
+            if (events == 0 || (events & ~this.armedEvents) == 0) {
+                return;
+            }
+            if (this.armedEvents != 0) {
+                disarm();
+            }
+            arm();
+        }
+
+        // Completions carry the sequence to discard those of a superseded poll or of a cancelled key whose fd got reused
+        private long userData() {
+            return ((long)this.sequence << 32) | this.fd;
+        }
+
+        private void arm() {
+            this.sequence = ++IoUringEventLoop.this.sequence;
+            this.armedEvents = events(this.interestOps);
+            if (released) {
+                return;
+            }
+            int offset = nextSqe();
+            sqes.put(offset + Native.IO_URING_SQE_OPCODE_OFFSET, Native.IORING_OP_POLL_ADD);
+            sqes.putInt(offset + Native.IO_URING_SQE_FD_OFFSET, this.fd);
+            sqes.putInt(offset + Native.IO_URING_SQE_EVENTS_OFFSET, this.armedEvents);
+            sqes.putLong(offset + Native.IO_URING_SQE_USER_DATA_OFFSET, userData());
+        }
+
+        private void disarm() {
+            if (!released) {
+                int offset = nextSqe();
+                sqes.put(offset + Native.IO_URING_SQE_OPCODE_OFFSET, Native.IORING_OP_POLL_REMOVE);
+                sqes.putInt(offset + Native.IO_URING_SQE_FD_OFFSET, -1);
+                sqes.putLong(offset + Native.IO_URING_SQE_ADDR_OFFSET, userData());
+                sqes.putLong(offset + Native.IO_URING_SQE_USER_DATA_OFFSET, REMOVE_USER_DATA);
+            }
+            this.armedEvents = 0;
+            this.sequence = ++IoUringEventLoop.this.sequence;
+        }
+
+        @Override
+        public void cancel() {
+            if (!this.registered) {
+                return;
+            }
+            selectionKeyCount--;
+            selectionKeys[this.fd] = null;
+            if (this.armedEvents != 0) {
+                disarm();
+            }
+            release();
+        }
+
+        // Pending completions are discarded and the key goes back to the pool
+        private void release() {
+            this.registered = false;
+            this.interestOps = 0;
+            this.armedEvents = 0;
+            this.eventHandler = null;
+            this.selectableChannel = null;
+            freeKey(this);
+        }
+    };
+
+    private static int events(int ops) {
+        int events = 0;
+        if ((ops & (SelectionKey.OP_READ | SelectionKey.OP_ACCEPT)) != 0) {
+            events |= Native.POLLIN;
+        }
+        if ((ops & (SelectionKey.OP_WRITE | SelectionKey.OP_CONNECT)) != 0) {
+            events |= Native.POLLOUT;
+        }
+        return events;
+    }
+
+    /** Returns whether the kernel supports io_uring with the features required by this event loop. */
+    public static synchronized boolean isAvailable() {
+        if (available == null) {
+            available = Boolean.FALSE;
+            try {
+                ByteBuffer params = ByteBuffer.allocateDirect(Native.IO_URING_PARAMS_SIZE).order(ByteOrder.nativeOrder());
+                int fd = Native.io_uring_setup(2, ((sun.nio.ch.DirectBuffer)params).address());
+                if (fd < 0) {
+                    log.log(Level.INFO, log.getSB().append("io_uring_setup failed, errno: ").append(Native.errno()));
+                } else {
+                    Native.close(fd);
+                    if ((params.getInt(Native.IO_URING_PARAMS_FEATURES_OFFSET) & Native.IORING_FEAT_EXT_ARG) == 0) {
+                        log.log(Level.INFO, "io_uring lacks IORING_FEAT_EXT_ARG");
+                    } else {
+                        available = Boolean.TRUE;
+                    }
+                }
+            } catch (UnsatisfiedLinkError e) {
+                log.log(Level.INFO, "Native library lacks io_uring");
+            }
+        }
+        return available.booleanValue();
+    }
+
+    /**
+     * Returns an IoUringEventLoop if the kernel supports io_uring or else an EPollEventLoop.
+     * @param timerWheel the timing wheel scheduling timers or {@code null} to use a heap.
+     */
+    public static EventLoop newEventLoop(TimerWheel timerWheel) {
+        if (isAvailable()) {
+            return new IoUringEventLoop(timerWheel);
+        }
+        log.log(Level.WARN, "io_uring not available, falling back to epoll");
+        return new EPollEventLoop(timerWheel);
+    }
+
+    public IoUringEventLoop() {
+        this(null);
+    }
+
+    /**
+     * @param timerWheel the timing wheel scheduling timers or {@code null} to use a heap.
+     */
+    public IoUringEventLoop(TimerWheel timerWheel) {
+        clockOffsetNanos = Native.currentRealtimeNanos() - Native.currentMonotonicNanos();
+        updateTime();
+        growSelectionKeys(0, Native.MAX_SELECTABLE_FDS);
+        growKeys(Native.MAX_SELECTABLE_FDS);
+
+        ByteBuffer params = ByteBuffer.allocateDirect(Native.IO_URING_PARAMS_SIZE).order(ByteOrder.nativeOrder());
+        ringFd = Native.io_uring_setup(Native.MAX_SELECTABLE_FDS, ((sun.nio.ch.DirectBuffer)params).address());
+        if (ringFd < 0) {
+            throw new IllegalStateException("io_uring_setup failed, errno: " + Native.errno());
+        }
+        sqEntries = params.getInt(Native.IO_URING_PARAMS_SQ_ENTRIES_OFFSET);
+        int cqEntries = params.getInt(Native.IO_URING_PARAMS_CQ_ENTRIES_OFFSET);
+        int sqOff = Native.IO_URING_PARAMS_SQ_OFF_OFFSET;
+        int cqOff = Native.IO_URING_PARAMS_CQ_OFF_OFFSET;
+        sqHeadOffset = params.getInt(sqOff);
+        sqTailOffset = params.getInt(sqOff + 4);
+        int sqArrayOffset = params.getInt(sqOff + 24);
+        cqHeadOffset = params.getInt(cqOff);
+        cqTailOffset = params.getInt(cqOff + 4);
+        cqesOffset = params.getInt(cqOff + 20);
+
+        ByteBuffer sqRing = Native.mmap(ringFd, Native.IORING_OFF_SQ_RING, sqArrayOffset + sqEntries*4);
+        ByteBuffer cqRing = Native.mmap(ringFd, Native.IORING_OFF_CQ_RING, cqesOffset + cqEntries*Native.IO_URING_CQE_SIZE);
+        ByteBuffer sqes = Native.mmap(ringFd, Native.IORING_OFF_SQES, sqEntries*Native.IO_URING_SQE_SIZE);
+        if (sqRing == null || cqRing == null || sqes == null) {
+            throw new IllegalStateException("io_uring mmap failed, errno: " + Native.errno());
+        }
+        this.sqRing = sqRing.order(ByteOrder.nativeOrder());
+        this.cqRing = cqRing.order(ByteOrder.nativeOrder());
+        this.sqes = sqes.order(ByteOrder.nativeOrder());
+        sqMask = this.sqRing.getInt(params.getInt(sqOff + 8));
+        cqMask = this.cqRing.getInt(params.getInt(cqOff + 8));
+        sqTail = this.sqRing.getInt(sqTailOffset);
+        cqHead = this.cqRing.getInt(cqHeadOffset);
+        // Submission queue entries are used in ring order
+        for (int i=0; i < sqEntries; i++) {
+            this.sqRing.putInt(sqArrayOffset + i*4, i);
+        }
+        taskQueue = new TaskQueue(TASK_QUEUE_CAPACITY, Native.eventfd(0));
+        registerImpl(null, taskQueue.getWakeupFd(), SelectionKey.OP_READ, taskQueue);
+
+        if (timerWheel != null) {
+            this.timerWheel = timerWheel;
+            this.timerWheel.advance(currentMillis);
+        }
+    }
+
+    private void growSelectionKeys(int capacity, int newCapacity) {
+        log.log(Level.WARN, log.getSB().append("Resizing selection keys to ").append(newCapacity));
+
+        IoUringSelectionKey[] newSelectionKeys = new IoUringSelectionKey[newCapacity];
+        if (capacity > 0) {
+            System.arraycopy(this.selectionKeys, 0, newSelectionKeys, 0, capacity);
+        }
+        this.selectionKeys = newSelectionKeys;
+    }
+
+    private void growKeys(int count) {
+        log.log(Level.WARN, log.getSB().append("Allocating ").append(count).append(" selection keys"));
+
+        for (int i=0; i < count; i++) {
+            freeKey(new IoUringSelectionKey());
+        }
+        this.keyCount += count;
+    }
+
+    private void freeKey(IoUringSelectionKey selectionKey) {
+        selectionKey.nextFreeKey = null;
+        if (this.freeKeyTail == null) {
+            this.freeKeyHead = selectionKey;
+        } else {
+            this.freeKeyTail.nextFreeKey = selectionKey;
+        }
+        this.freeKeyTail = selectionKey;
+    }
+
+    private IoUringSelectionKey allocateKey() {
+        if (this.freeKeyHead == null) {
+            growKeys(this.keyCount);
+        }
+        IoUringSelectionKey selectionKey = this.freeKeyHead;
+        this.freeKeyHead = selectionKey.nextFreeKey;
+        if (this.freeKeyHead == null) {
+            this.freeKeyTail = null;
+        }
+        selectionKey.nextFreeKey = null;
+        return selectionKey;
+    }
+
+    /** Returns the offset of a cleared submission queue entry, submitting the queue if full. */
+    private int nextSqe() {
+        if (this.sqTail - this.sqRing.getInt(this.sqHeadOffset) == this.sqEntries) {
+            log.log(Level.WARN, "Submission queue full");
+            submit(0, -1);
+        }
+        int offset = (this.sqTail & this.sqMask)*Native.IO_URING_SQE_SIZE;
+        for (int i=0; i < Native.IO_URING_SQE_SIZE; i+=8) {
+            this.sqes.putLong(offset + i, 0);
+        }
+        this.sqTail++;
+        return offset;
+    }
+
+    private int submit(int minComplete, long timeoutNanos) {
+        int toSubmit = this.sqTail - this.sqRing.getInt(this.sqHeadOffset);
+        this.sqRing.putInt(this.sqTailOffset, this.sqTail);
+        return Native.io_uring_enter(this.ringFd, toSubmit, minComplete, Native.IORING_ENTER_GETEVENTS | Native.IORING_ENTER_EXT_ARG, timeoutNanos);
+    }
+
+    // --------------------- Basic event loop ---------------------
+
+    private void updateTime() {
+        currentNanos = Native.currentMonotonicNanos();
+        currentRealtimeNanos = Native.currentRealtimeNanos();
+        currentMicros = (currentNanos + clockOffsetNanos)/1000;
+        currentMillis = currentMicros/1000;
+    }
+
+    @Override
+    public long currentMicros() {
+        return this.currentMicros;
+    }
+
+    @Override
+    public long currentMillis() {
+        return this.currentMillis;
+    }
+
+    @Override
+    public long currentNanos() {
+        return this.currentNanos;
+    }
+
+    @Override
+    public long currentRealtimeNanos() {
+        return this.currentRealtimeNanos;
+    }
+
+    public SpinPolicy getSpinPolicy() {
+        return this.spinPolicy;
+    }
+
+    /**
+     * Set the polling policy, by default the loop blocks in the kernel.
+     * @param spinPolicy the spin policy or {@code null} to block.
+     */
+    public void setSpinPolicy(SpinPolicy spinPolicy) {
+        this.spinPolicy = spinPolicy;
+    }
+
+    @Override
+    public void open() {
+        open = true;
+    }
+
+    @Override
+    public void close() {
+        open = false;
+        this.taskQueue.wakeup();
+    }
+
+    /**
+     * Queue a task to run on the thread of the loop, may be called from any thread.
+     * The loop is only woken up if blocked in the kernel.
+     * @return false if the task queue is full.
+     */
+    public boolean execute(Runnable task) {
+        return this.taskQueue.offer(task);
+    }
+
+    @Override
+    public EventLoopSelectionKey register(ServerSocketChannel serverSocketChannel, int ops, EventLoopListener eventHandler) {
+        int fd = Native.getFdVal_ServerSocketChannel(serverSocketChannel);
+        return registerImpl(serverSocketChannel, fd, ops, eventHandler);
+    }
+
+    @Override
+    public EventLoopSelectionKey register(SocketChannel socketChannel, int ops, EventLoopListener eventHandler) {
+        int fd = Native.getFdVal_SocketChannel(socketChannel);
+        return registerImpl(socketChannel, fd, ops, eventHandler);
+    }
+
+    @Override
+    public EventLoopSelectionKey register(DatagramChannel datagramChannel, int ops, EventLoopListener eventHandler) {
+        int fd = Native.getFdVal_DatagramChannel(datagramChannel);
+        return registerImpl(datagramChannel, fd, ops, eventHandler);
+    }
+
+    @Override
+    public EventLoopSelectionKey register(SourceChannel sourceChannel, int ops, EventLoopListener eventhandler) {
+        int fd = Native.getFdVal_SourceChannel(sourceChannel);
+        return registerImpl(sourceChannel, fd, ops, eventhandler);
+    }
+
+    @Override
+    public EventLoopSelectionKey register(SinkChannel sinkChannel, int ops, EventLoopListener eventhandler) {
+        int fd = Native.getFdVal_SinkChannel(sinkChannel);
+        return registerImpl(sinkChannel, fd, ops, eventhandler);
+    }
+
+    private EventLoopSelectionKey registerImpl(SelectableChannel selectableChannel, int fd, int ops, EventLoopListener eventHandler) {
+        if (fd >= this.selectionKeys.length) {
+            growSelectionKeys(this.selectionKeys.length, Math.max(fd + 1, 2 * this.selectionKeys.length));
+        }
+
+        log.log(Level.DEBUG, log.getSB().append("Register fd: ").append(fd).append(" for ops: ").append(ops));
+
+        // A key left registered on a closed fd is released, the completion of its pending poll is discarded by sequence
+        if (this.selectionKeys[fd] == null) {
+            selectionKeyCount++;
+        } else {
+            this.selectionKeys[fd].release();
+        }
+        IoUringSelectionKey selectionKey = allocateKey();
+        this.selectionKeys[fd] = selectionKey;
+        selectionKey.registered = true;
+        selectionKey.fd = fd;
+        selectionKey.generation = ++this.generation;
+        selectionKey.selectableChannel = selectableChannel;
+        selectionKey.eventHandler = eventHandler;
+        selectionKey.interestOps(ops);
+        return selectionKey;
+    }
+
+    @Override
+    public EventLoopListener registerSelect(EventLoopListener eventhandler)
+    {
+        EventLoopListener oldEventhandler = selectEventHandler;
+        selectEventHandler = eventhandler;
+        return oldEventhandler;
+    }
+
+    @Override
+    public int addTimer(long when, TimerListener timerHandler) {
+        log.log(Level.DEBUG, "addTimer");
+        if (this.timerWheel != null) {
+            return this.timerWheel.insert(when, timerHandler);
+        }
+        return this.timers.insert(when, timerHandler);
+    }
+
+    @Override
+    public void cancelTimer(int entry) {
+        log.log(Level.DEBUG, "cancelTimer");
+        if (this.timerWheel != null) {
+            this.timerWheel.removeEntry(entry);
+        } else {
+            this.timers.removeEntry(entry);
+        }
+    }
+
+    @Override
+    public void run() {
+        if (released) {
+            throw new IllegalStateException("EventLoop already exited");
+        }
+        log.log(Level.INFO, "Starting EventLoop");
+        while (open) {
+            try {
+                long nextTimer = Long.MIN_VALUE;
+                if (this.timerWheel != null) {
+                    // Expire timers within the clock granularity like the heap does
+                    this.timerWheel.advance(currentMillis + CLOCK_GRANULARITY - 1);
+                    for (int entry = this.timerWheel.firstExpiredEntry(); entry != -1; entry = this.timerWheel.firstExpiredEntry()) {
+                        // Callbacks may change the timer wheel, remove timer entry beforehand
+                        TimerListener timerHandler = this.timerWheel.getValue(entry);
+                        this.timerWheel.removeEntry(entry);
+                        timerHandler.onTimer(entry, currentMillis);
+                    }
+                    nextTimer = this.timerWheel.nextExpiry();
+                } else {
+                    while (!this.timers.isEmpty()) {
+                        int entry = this.timers.firstEntry();
+                        nextTimer = this.timers.getKey(entry);
+                        if (nextTimer - currentMillis < CLOCK_GRANULARITY) {
+                            // Callbacks may change the timer map, remove timer entry beforehand
+                            TimerListener timerHandler = (TimerListener)this.timers.getValue(entry);
+                            this.timers.removeEntry(entry);
+                            timerHandler.onTimer(entry, currentMillis);
+                            nextTimer = Long.MIN_VALUE;
+                        } else {
+                            break;
+                        }
+                    }
+                }
+
+                // Callbacks may have been running for some non neglectable time, update current time before calculating timeout
+                updateTime();
+                long timeout = (int)(nextTimer - currentMillis);
+                if (nextTimer == Long.MIN_VALUE) {
+                    timeout = -1;
+                } else if (timeout < CLOCK_GRANULARITY) {
+                    timeout = 0;
+                }
+                int intTimeout = timeout > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int)timeout;
+                if (this.spinPolicy != null) {
+                    intTimeout = this.spinPolicy.timeout(intTimeout);
+                }
+
+                if (selectEventHandler != null) {
+                    selectEventHandler.onSelect();
+                }
+                this.taskQueue.run();
+                if (!open) {
+                    break;
+                }
+                if (intTimeout != 0 && !this.taskQueue.park()) {
+                    // Tasks were queued meanwhile
+                    intTimeout = 0;
+                }
+
+                log.log(Level.DEBUG, log.getSB().append("io_uring ").append(this.selectionKeyCount).append(" files with timeout: ").append(timeout));
+                // Submit the pending polls and wait for completions in a single system call
+                int status;
+                if (intTimeout == 0 || this.cqRing.getInt(this.cqTailOffset) != this.cqHead) {
+                    status = submit(0, -1);
+                } else {
+                    status = submit(1, intTimeout < 0 ? -1 : intTimeout*1000000L);
+                }
+                this.taskQueue.unpark();
+                int cqTail = this.cqRing.getInt(this.cqTailOffset);
+                int nfds = cqTail - this.cqHead;
+                log.log(Level.DEBUG, log.getSB().append("io_uring returned with completions: ").append(nfds));
+                if (this.spinPolicy != null) {
+                    this.spinPolicy.polled(nfds);
+                }
+
+                updateTime();
+                if (status == -1) {
+                    log.log(Level.ERROR, log.getSB().append("EventLoop io_uring_enter failed, errno: ").append(Native.errno()));
+                    break;
+                }
+                for (; this.cqHead != cqTail; this.cqHead++) {
+                    int offset = this.cqesOffset + (this.cqHead & this.cqMask)*Native.IO_URING_CQE_SIZE;
+                    long userData = this.cqRing.getLong(offset + Native.IO_URING_CQE_USER_DATA_OFFSET);
+                    int events = this.cqRing.getInt(offset + Native.IO_URING_CQE_RES_OFFSET);
+                    // Release the completion queue entry before invoking callbacks
+                    this.cqRing.putInt(this.cqHeadOffset, this.cqHead + 1);
+                    if (userData == REMOVE_USER_DATA) {
+                        continue;
+                    }
+                    int fd = (int)userData;
+                    IoUringSelectionKey selectionKey = this.selectionKeys[fd];
+                    if (selectionKey == null || selectionKey.sequence != (int)(userData >>> 32)) {
+                        // Key cancelled or poll superseded by a previous callback
+                        continue;
+                    }
+                    int generation = selectionKey.generation;
+                    log.log(Level.DEBUG, log.getSB().append("events: ").append(events).append(" available for fd: ").append(fd).append(" interestOps: ").append(selectionKey.interestOps));
+                    // The poll is one shot, callbacks changing interestOps re-arm it
+                    selectionKey.armedEvents = 0;
+                    if (events < 0) {
+                        log.log(Level.ERROR, log.getSB().append("Poll failed for fd: ").append(fd).append(", errno: ").append(-events));
+                        selectionKey.eventHandler.onClose(selectionKey.selectableChannel);
+                        continue;
+                    }
+                    if ((events & Native.POLLIN) != 0) {
+                        log.log(Level.DEBUG, log.getSB().append("POLLIN available for fd: ").append(fd).append(" interestOps: ").append(selectionKey.interestOps));
+                        if ((selectionKey.interestOps & SelectionKey.OP_READ) != 0) {
+                            selectionKey.eventHandler.onRead(selectionKey.selectableChannel);
+                        } else if ((selectionKey.interestOps & SelectionKey.OP_ACCEPT) != 0) {
+                            selectionKey.eventHandler.onAccept(selectionKey.selectableChannel);
+                        }
+                    }
+                    // Callbacks may cancel the key and recycle it for another registration
+                    if ((events & Native.POLLOUT) != 0 && selectionKey.isLive(generation)) {
+                        log.log(Level.DEBUG, log.getSB().append("POLLOUT available for fd: ").append(fd).append(" interestOps: ").append(selectionKey.interestOps));
+                        if ((selectionKey.interestOps & SelectionKey.OP_WRITE) != 0) {
+                            selectionKey.eventHandler.onWrite(selectionKey.selectableChannel);
+                        } else if ((selectionKey.interestOps & SelectionKey.OP_CONNECT) != 0) {
+                            selectionKey.eventHandler.onConnect(selectionKey.selectableChannel);
+                        }
+                    }
+                    // Socket is in an error state
+                    if ((events & ~(Native.POLLIN | Native.POLLOUT)) != 0 && selectionKey.isLive(generation)) {
+                        log.log(Level.ERROR, "Socket is in an error state");
+                        selectionKey.eventHandler.onClose(selectionKey.selectableChannel);
+                    }
+                    // Re-arm for the next iteration unless a callback did
+                    if (selectionKey.isLive(generation) && selectionKey.armedEvents == 0 && events(selectionKey.interestOps) != 0) {
+                        selectionKey.arm();
+                    }
+                }
+            } catch (Throwable e) {
+                log.log(Level.INFO, "EventLoop caught: ", e);
+            }
+        }
+        release();
+        log.log(Level.INFO, "Exiting EventLoop");
+    }
+
+    // Keys may still be cancelled once the rings are gone, arm() and disarm() no longer touch them
+    private void release() {
+        this.released = true;
+        if (Native.munmap(this.sqes) != 0 || Native.munmap(this.cqRing) != 0 || Native.munmap(this.sqRing) != 0) {
+            log.log(Level.ERROR, log.getSB().append("io_uring munmap failed, errno: ").append(Native.errno()));
+        }
+        if (Native.close(this.ringFd) != 0) {
+            log.log(Level.ERROR, log.getSB().append("io_uring close failed, errno: ").append(Native.errno()));
+        }
+    }
+}
@@ -15,6 +15,7 @@
  */
 package com.zerogc.core;
 
+import java.nio.ByteBuffer;
 import java.nio.channels.DatagramChannel;
 import java.nio.channels.Pipe.SinkChannel;
 import java.nio.channels.Pipe.SourceChannel;
@@ -71,6 +72,7 @@ public class Native {
     // Miscellaneous constants
     static final int EPOLLEVENT_EVENTS_OFFSET    = 0;
     static final int EPOLLEVENT_FD_OFFSET;
+    static final int EPOLLEVENT_DATA_OFFSET;
     static final int EPOLLEVENT_SIZE;
 
     //typedef union epoll_data {
@@ -85,9 +87,97 @@ public class Native {
     //    epoll_data_t data;      /* User data variable */
     //};
 
+    // io_uring
+    static final int IORING_OFF_SQ_RING       = 0;
+    static final int IORING_OFF_CQ_RING       = 0x8000000;
+    static final int IORING_OFF_SQES          = 0x10000000;
+    static final int IORING_ENTER_GETEVENTS   = (1 << 0);
+    static final int IORING_ENTER_EXT_ARG     = (1 << 3);
+    static final int IORING_FEAT_EXT_ARG      = (1 << 8);
+    static final byte IORING_OP_POLL_ADD      = 6;
+    static final byte IORING_OP_POLL_REMOVE   = 7;
+
+    //struct io_uring_params {
+    //    __u32 sq_entries;
+    //    __u32 cq_entries;
+    //    __u32 flags;
+    //    __u32 sq_thread_cpu;
+    //    __u32 sq_thread_idle;
+    //    __u32 features;
+    //    __u32 wq_fd;
+    //    __u32 resv[3];
+    //    struct io_sqring_offsets sq_off; /* head, tail, ring_mask, ring_entries, flags, dropped, array, resv1, user_addr */
+    //    struct io_cqring_offsets cq_off; /* head, tail, ring_mask, ring_entries, overflow, cqes, flags, resv1, user_addr */
+    //};
+    static final int IO_URING_PARAMS_SQ_ENTRIES_OFFSET = 0;
+    static final int IO_URING_PARAMS_CQ_ENTRIES_OFFSET = 4;
+    static final int IO_URING_PARAMS_FEATURES_OFFSET   = 20;
+    static final int IO_URING_PARAMS_SQ_OFF_OFFSET     = 40;
+    static final int IO_URING_PARAMS_CQ_OFF_OFFSET     = 80;
+    static final int IO_URING_PARAMS_SIZE              = 120;
+
+    //struct io_uring_sqe {
+    //    __u8  opcode;
+    //    __u8  flags;
+    //    __u16 ioprio;
+    //    __s32 fd;
+    //    __u64 off;
+    //    __u64 addr;
+    //    __u32 len;
+    //    __u32 poll32_events; /* union of the operation flags */
+    //    __u64 user_data;
+    //    ...
+    //};
+    static final int IO_URING_SQE_OPCODE_OFFSET    = 0;
+    static final int IO_URING_SQE_FD_OFFSET        = 4;
+    static final int IO_URING_SQE_ADDR_OFFSET      = 16;
+    static final int IO_URING_SQE_EVENTS_OFFSET    = 28;
+    static final int IO_URING_SQE_USER_DATA_OFFSET = 32;
+    static final int IO_URING_SQE_SIZE             = 64;
+
+    //struct io_uring_cqe {
+    //    __u64 user_data;
+    //    __s32 res;
+    //    __u32 flags;
+    //};
+    static final int IO_URING_CQE_USER_DATA_OFFSET = 0;
+    static final int IO_URING_CQE_RES_OFFSET       = 8;
+    static final int IO_URING_CQE_SIZE             = 16;
+
+    // Message descriptor filled by recvmmsg and recvmsg in native byte order
+    public static final int MSG_LEN_OFFSET       = 0;  // int
+    public static final int MSG_SRC_ADDR_OFFSET  = 4;  // 4 bytes in network order
+    public static final int MSG_SRC_PORT_OFFSET  = 8;  // int
+    public static final int MSG_DST_ADDR_OFFSET  = 12; // 4 bytes in network order, from IP_PKTINFO
+    public static final int MSG_TIMESTAMP_OFFSET = 16; // long nanoseconds, from SO_TIMESTAMP(NS|ING) or 0
+    public static final int MSG_FLAGS_OFFSET     = 24; // int msg_flags
+    public static final int MSG_SIZE             = 32;
+    // msg_flags set when the datagram was larger than the buffer and got truncated
+    public static final int MSG_TRUNC            = 0x20;
+    public static final int RECVMMSG_MAX_VLEN    = 64;
+    public static final int SENDMMSG_MAX_VLEN    = 64;
+
+    // SO_TIMESTAMPING flags
+    public static final int SOF_TIMESTAMPING_TX_HARDWARE  = (1 << 0);
+    public static final int SOF_TIMESTAMPING_TX_SOFTWARE  = (1 << 1);
+    public static final int SOF_TIMESTAMPING_RX_HARDWARE  = (1 << 2);
+    public static final int SOF_TIMESTAMPING_RX_SOFTWARE  = (1 << 3);
+    public static final int SOF_TIMESTAMPING_SOFTWARE     = (1 << 4);
+    public static final int SOF_TIMESTAMPING_SYS_HARDWARE = (1 << 5);
+    public static final int SOF_TIMESTAMPING_RAW_HARDWARE = (1 << 6);
+
+    // splice flags
+    public static final int SPLICE_F_MOVE     = 1;
+    public static final int SPLICE_F_NONBLOCK = 2;
+    public static final int SPLICE_F_MORE     = 4;
+
     static native void initIDs();
 
     public static native long currentTimeMicros();
+    /** Returns the CLOCK_MONOTONIC time in nanoseconds, unaffected by wall clock jumps. */
+    public static native long currentMonotonicNanos();
+    /** Returns the CLOCK_REALTIME time in nanoseconds since the epoch. */
+    public static native long currentRealtimeNanos();
 
     public static native int errno();
 
@@ -103,19 +193,70 @@ public class Native {
 
     public static native int epoll_create(int size);
     public static native int epoll_ctl(int epfd, int opcode, int fd, int events);
+    /** Same as epoll_ctl but with a user defined epoll_data.u64 instead of the fd. */
+    public static native int epoll_ctl_data(int epfd, int opcode, int fd, int events, long data);
     public static native int epoll_wait(int epfd, long eventsAddress, int maxevents, int timeout);
     public static native int getOffset_epoll_event_epoll_data_fd();
 
+    /** Create a non blocking eventfd. */
+    public static native int eventfd(int initval);
+    public static native int eventfd_write(int fd, long value);
+    /** Returns the counter of the eventfd and resets it, 0 if not signaled or -1 on error. */
+    public static native long eventfd_read(int fd);
+
+    /** Pin the calling thread to the cpu, returns 0 on success. */
+    public static native int setAffinity(int cpu);
+
+    public static native int close(int fd);
+    /**
+     * Move up to length bytes between two file descriptors inside the kernel, one of them must be a pipe.
+     * Returns the number of bytes moved, 0 if none or -1 at end of stream or on error.
+     */
+    public static native int splice(int fdIn, int fdOut, int length, int flags);
+    /** Map length bytes of the file at offset, returns null on failure. */
+    public static native ByteBuffer mmap(int fd, long offset, int length);
+    public static native int munmap(ByteBuffer buffer);
+
+    public static native int io_uring_setup(int entries, long paramsAddress);
+    /** Submit and wait for completions, a non negative timeout requires IORING_ENTER_EXT_ARG. Returns 0 on timeout. */
+    public static native int io_uring_enter(int fd, int toSubmit, int minComplete, int flags, long timeoutNanos);
+
     public static native int setMcastTtl(DatagramChannel datagramChannel, byte ttl);
     public static native int setMcastLoop(DatagramChannel datagramChannel, byte loop);
     public static native int setMcastIf(DatagramChannel datagramChannel, int ifaddr);
     public static native int joinMcastGroup(DatagramChannel datagramChannel, int mcastaddr, int ifaddr);
     public static native int leaveMcastGroup(DatagramChannel datagramChannel, int mcastaddr, int ifaddr);
+    public static native int setPktInfo(DatagramChannel datagramChannel, byte on);
+    public static native int setTimestamp(DatagramChannel datagramChannel, byte on);
+    public static native int setTimestampNs(int fd, byte on);
+    /** Toggle TCP_CORK, partial segments are held back while on and pushed when turned off. */
+    public static native int setTcpCork(int fd, byte on);
+    /** Enable SO_TIMESTAMPING with a combination of SOF_TIMESTAMPING flags, hardware timestamps need the NIC to be configured beforehand. */
+    public static native int setTimestamping(int fd, int flags);
+
+    /**
+     * Receive up to vlen datagrams, datagram i is stored at bufferAddress + i*bufferSize and
+     * described at msgsAddress + i*MSG_SIZE. Returns the number of datagrams received, 0 if none.
+     */
+    public static native int recvmmsg(int fd, long msgsAddress, long bufferAddress, int bufferSize, int vlen);
+    /**
+     * Receive up to length bytes at offset of the buffer and describe them at msgAddress.
+     * Returns the number of bytes received, 0 if none or -1 at end of stream or on error.
+     */
+    public static native int recvmsg(int fd, byte[] buffer, int offset, int length, long msgAddress);
+    /** Same as recvmsg into the direct memory at bufferAddress. */
+    public static native int recvmsg_direct(int fd, long bufferAddress, int length, long msgAddress);
+    /**
+     * Send vlen datagrams on a connected socket, datagram i is stored at bufferAddress + i*bufferSize
+     * and its length is the int at lensAddress + i*4. Returns the number of datagrams sent, 0 if none.
+     */
+    public static native int sendmmsg(int fd, long lensAddress, long bufferAddress, int bufferSize, int vlen);
 
     static {
         System.loadLibrary("zerogc");
         Native.initIDs();
         EPOLLEVENT_FD_OFFSET        = Native.getOffset_epoll_event_epoll_data_fd();
+        EPOLLEVENT_DATA_OFFSET      = EPOLLEVENT_FD_OFFSET; // epoll_data is a union
         EPOLLEVENT_SIZE             = EPOLLEVENT_FD_OFFSET + 8;
     }
 }
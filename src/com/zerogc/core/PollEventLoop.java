@@ -43,9 +43,14 @@ public class PollEventLoop implements EventLoop {
     private static final int CLOCK_GRANULARITY = 10;
 
     private final ByteBuffer fdsByteBuffer;
-    private boolean open = false;
+    private volatile boolean open = false; // Closed from other threads by EventLoopGroup
 
     private LongObjectHeap timers = new LongObjectHeap();
+    private TimerWheel timerWheel = null;
+    private SpinPolicy spinPolicy = null;
+    private long currentNanos;
+    private long currentRealtimeNanos;
+    private final long clockOffsetNanos;
     private long currentMicros;
     private long currentMillis;
 
@@ -162,13 +167,31 @@ public class PollEventLoop implements EventLoop {
     }
 
     public PollEventLoop() {
-        currentMicros = Native.currentTimeMicros();
-        currentMillis = currentMicros/1000;
+        this(null);
+    }
+
+    /**
+     * @param timerWheel the timing wheel scheduling timers or {@code null} to use a heap.
+     */
+    public PollEventLoop(TimerWheel timerWheel) {
+        clockOffsetNanos = Native.currentRealtimeNanos() - Native.currentMonotonicNanos();
+        updateTime();
         fdsByteBuffer = ByteBuffer.allocateDirect(Native.MAX_SELECTABLE_FDS * Native.POLL_SIZE);
         fdsByteBuffer.order(ByteOrder.nativeOrder());
+        if (timerWheel != null) {
+            this.timerWheel = timerWheel;
+            this.timerWheel.advance(currentMillis);
+        }
     }
     // --------------------- Basic event loop ---------------------
 
+    private void updateTime() {
+        currentNanos = Native.currentMonotonicNanos();
+        currentRealtimeNanos = Native.currentRealtimeNanos();
+        currentMicros = (currentNanos + clockOffsetNanos)/1000;
+        currentMillis = currentMicros/1000;
+    }
+
     @Override
     public long currentMicros() {
         return this.currentMicros;
@@ -179,6 +202,28 @@ public class PollEventLoop implements EventLoop {
         return this.currentMillis;
     }
 
+    @Override
+    public long currentNanos() {
+        return this.currentNanos;
+    }
+
+    @Override
+    public long currentRealtimeNanos() {
+        return this.currentRealtimeNanos;
+    }
+
+    public SpinPolicy getSpinPolicy() {
+        return this.spinPolicy;
+    }
+
+    /**
+     * Set the polling policy, by default the loop blocks in the kernel.
+     * @param spinPolicy the spin policy or {@code null} to block.
+     */
+    public void setSpinPolicy(SpinPolicy spinPolicy) {
+        this.spinPolicy = spinPolicy;
+    }
+
     @Override
     public void open() {
         open = true;
@@ -244,6 +289,9 @@ public class PollEventLoop implements EventLoop {
     @Override
     public int addTimer(long whenMillis, TimerListener timerHandler) {
         log.log(Level.DEBUG, "addTimer");
+        if (this.timerWheel != null) {
+            return this.timerWheel.insert(whenMillis, timerHandler);
+        }
         return this.timers.insert(whenMillis, timerHandler);
     }
 
@@ -252,7 +300,11 @@ public class PollEventLoop implements EventLoop {
     @Override
     public void cancelTimer(int entry) {
         log.log(Level.DEBUG, "cancelTimer");
-        this.timers.removeEntry(entry);
+        if (this.timerWheel != null) {
+            this.timerWheel.removeEntry(entry);
+        } else {
+            this.timers.removeEntry(entry);
+        }
     }
 
     @Override
@@ -262,17 +314,29 @@ public class PollEventLoop implements EventLoop {
         while (open) {
             try {
                 long nextTimer = Long.MIN_VALUE;
-                while (!this.timers.isEmpty()) {
-                    int entry = this.timers.firstEntry();
-                    nextTimer = this.timers.getKey(entry);
-                    if (nextTimer - currentMillis < CLOCK_GRANULARITY) {
-                        // Callbacks may change the timer map, remove timer entry beforehand
-                        TimerListener timerHandler = (TimerListener)this.timers.getValue(entry);
-                        this.timers.removeEntry(entry);
+                if (this.timerWheel != null) {
+                    // Expire timers within the clock granularity like the heap does
+                    this.timerWheel.advance(currentMillis + CLOCK_GRANULARITY - 1);
+                    for (int entry = this.timerWheel.firstExpiredEntry(); entry != -1; entry = this.timerWheel.firstExpiredEntry()) {
+                        // Callbacks may change the timer wheel, remove timer entry beforehand
+                        TimerListener timerHandler = this.timerWheel.getValue(entry);
+                        this.timerWheel.removeEntry(entry);
                         timerHandler.onTimer(entry, currentMillis);
-                        nextTimer = Long.MIN_VALUE;
-                    } else {
-                        break;
+                    }
+                    nextTimer = this.timerWheel.nextExpiry();
+                } else {
+                    while (!this.timers.isEmpty()) {
+                        int entry = this.timers.firstEntry();
+                        nextTimer = this.timers.getKey(entry);
+                        if (nextTimer - currentMillis < CLOCK_GRANULARITY) {
+                            // Callbacks may change the timer map, remove timer entry beforehand
+                            TimerListener timerHandler = (TimerListener)this.timers.getValue(entry);
+                            this.timers.removeEntry(entry);
+                            timerHandler.onTimer(entry, currentMillis);
+                            nextTimer = Long.MIN_VALUE;
+                        } else {
+                            break;
+                        }
                     }
                 }
 
@@ -293,8 +357,7 @@ public class PollEventLoop implements EventLoop {
                 }
 
                 // Callbacks may have been running for some non neglectable time, update current time before calculating timeout
-                currentMicros = Native.currentTimeMicros();
-                currentMillis = currentMicros/1000;
+                updateTime();
                 long timeout = (int)(nextTimer - currentMillis);
                 if (nextTimer == Long.MIN_VALUE) {
                     timeout = -1;
@@ -302,7 +365,9 @@ public class PollEventLoop implements EventLoop {
                     timeout = 0;
                 }
                 int intTimeout = timeout > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int)timeout;
-                //intTimeout = 0;
+                if (this.spinPolicy != null) {
+                    intTimeout = this.spinPolicy.timeout(intTimeout);
+                }
 
                 if (selectEventHandler != null) {
                     selectEventHandler.onSelect();
@@ -314,9 +379,11 @@ public class PollEventLoop implements EventLoop {
                 log.log(Level.DEBUG, log.getSB().append("Poll ").append(this.selectionKeys.size()).append(" files with timeout: ").append(timeout));
                 int nfds = Native.poll(((sun.nio.ch.DirectBuffer)fdsByteBuffer).address(), this.selectionKeys.size(), intTimeout);
                 log.log(Level.DEBUG, log.getSB().append("Poll returned with nfds: ").append(nfds));
+                if (this.spinPolicy != null) {
+                    this.spinPolicy.polled(nfds);
+                }
 
-                currentMicros = Native.currentTimeMicros();
-                currentMillis = currentMicros/1000;
+                updateTime();
                 if (nfds == 0) {
                     // A timer expired
                     continue;
@@ -47,6 +47,10 @@ public class SelectEventLoop implements EventLoop {
     private boolean open = false;
 
     private LongObjectHeap timers = new LongObjectHeap();
+    private TimerWheel timerWheel = null;
+    private long currentNanos;
+    private long currentRealtimeNanos;
+    private final long clockOffsetNanos;
     private long currentMicros;
     private long currentMillis;
 
@@ -151,17 +155,35 @@ public class SelectEventLoop implements EventLoop {
 
 
     public SelectEventLoop() {
-        currentMicros = Native.currentTimeMicros();
-        currentMillis = currentMicros/1000;
+        this(null);
+    }
+
+    /**
+     * @param timerWheel the timing wheel scheduling timers or {@code null} to use a heap.
+     */
+    public SelectEventLoop(TimerWheel timerWheel) {
+        clockOffsetNanos = Native.currentRealtimeNanos() - Native.currentMonotonicNanos();
+        updateTime();
         readfdsByteBuffer = ByteBuffer.allocateDirect(Native.MAX_SELECTABLE_FDS/Byte.SIZE);
         readfdsByteBuffer.order(ByteOrder.nativeOrder());
         writefdsByteBuffer = ByteBuffer.allocateDirect(Native.MAX_SELECTABLE_FDS/Byte.SIZE);
         writefdsByteBuffer.order(ByteOrder.nativeOrder());
         exceptfdsByteBuffer = ByteBuffer.allocateDirect(Native.MAX_SELECTABLE_FDS/Byte.SIZE);
         exceptfdsByteBuffer.order(ByteOrder.nativeOrder());
+        if (timerWheel != null) {
+            this.timerWheel = timerWheel;
+            this.timerWheel.advance(currentMillis);
+        }
     }
     // --------------------- Basic event loop ---------------------
 
+    private void updateTime() {
+        currentNanos = Native.currentMonotonicNanos();
+        currentRealtimeNanos = Native.currentRealtimeNanos();
+        currentMicros = (currentNanos + clockOffsetNanos)/1000;
+        currentMillis = currentMicros/1000;
+    }
+
     @Override
     public long currentMicros() {
         return this.currentMicros;
@@ -172,6 +194,16 @@ public class SelectEventLoop implements EventLoop {
         return this.currentMillis;
     }
 
+    @Override
+    public long currentNanos() {
+        return this.currentNanos;
+    }
+
+    @Override
+    public long currentRealtimeNanos() {
+        return this.currentRealtimeNanos;
+    }
+
     @Override
     public void open() {
         open = true;
@@ -236,6 +268,9 @@ public class SelectEventLoop implements EventLoop {
     @Override
     public int addTimer(long whenMillis, TimerListener timerHandler) {
         log.log(Level.DEBUG, "addTimer");
+        if (this.timerWheel != null) {
+            return this.timerWheel.insert(whenMillis, timerHandler);
+        }
         return this.timers.insert(whenMillis, timerHandler);
     }
 
@@ -244,7 +279,11 @@ public class SelectEventLoop implements EventLoop {
     @Override
     public void cancelTimer(int entry) {
         log.log(Level.DEBUG, "cancelTimer");
-        this.timers.removeEntry(entry);
+        if (this.timerWheel != null) {
+            this.timerWheel.removeEntry(entry);
+        } else {
+            this.timers.removeEntry(entry);
+        }
     }
 
     @Override
@@ -254,17 +293,29 @@ public class SelectEventLoop implements EventLoop {
         while (open) {
             try {
                 long nextTimer = Long.MIN_VALUE;
-                while (!this.timers.isEmpty()) {
-                    int entry = this.timers.firstEntry();
-                    nextTimer = this.timers.getKey(entry);
-                    if (nextTimer - currentMillis < CLOCK_GRANULARITY) {
-                        // Callbacks may change the timer map, remove timer entry beforehand
-                        TimerListener timerHandler = (TimerListener)this.timers.getValue(entry);
-                        this.timers.removeEntry(entry);
+                if (this.timerWheel != null) {
+                    // Expire timers within the clock granularity like the heap does
+                    this.timerWheel.advance(currentMillis + CLOCK_GRANULARITY - 1);
+                    for (int entry = this.timerWheel.firstExpiredEntry(); entry != -1; entry = this.timerWheel.firstExpiredEntry()) {
+                        // Callbacks may change the timer wheel, remove timer entry beforehand
+                        TimerListener timerHandler = this.timerWheel.getValue(entry);
+                        this.timerWheel.removeEntry(entry);
                         timerHandler.onTimer(entry, currentMillis);
-                        nextTimer = Long.MIN_VALUE;
-                    } else {
-                        break;
+                    }
+                    nextTimer = this.timerWheel.nextExpiry();
+                } else {
+                    while (!this.timers.isEmpty()) {
+                        int entry = this.timers.firstEntry();
+                        nextTimer = this.timers.getKey(entry);
+                        if (nextTimer - currentMillis < CLOCK_GRANULARITY) {
+                            // Callbacks may change the timer map, remove timer entry beforehand
+                            TimerListener timerHandler = (TimerListener)this.timers.getValue(entry);
+                            this.timers.removeEntry(entry);
+                            timerHandler.onTimer(entry, currentMillis);
+                            nextTimer = Long.MIN_VALUE;
+                        } else {
+                            break;
+                        }
                     }
                 }
 
@@ -297,8 +348,7 @@ public class SelectEventLoop implements EventLoop {
                 }
 
                 // Callbacks may have been running for some non neglectable time, update current time before calculating timeout
-                currentMicros = Native.currentTimeMicros();
-                currentMillis = currentMicros/1000;
+                updateTime();
                 long timeout = (int)(nextTimer - currentMillis);
                 if (nextTimer == Long.MIN_VALUE) {
                     timeout = Long.MIN_VALUE;
@@ -317,8 +367,7 @@ public class SelectEventLoop implements EventLoop {
                 int nfds = Native.select(_nfds, ((sun.nio.ch.DirectBuffer)readfdsByteBuffer).address(), ((sun.nio.ch.DirectBuffer)writefdsByteBuffer).address(), ((sun.nio.ch.DirectBuffer)exceptfdsByteBuffer).address(), timeout);
                 log.log(Level.DEBUG, log.getSB().append("Select returned with nfds: ").append(nfds));
 
-                currentMicros = Native.currentTimeMicros();
-                currentMillis = currentMicros/1000;
+                updateTime();
                 if (nfds == 0) {
                     // A timer expired
                     continue;
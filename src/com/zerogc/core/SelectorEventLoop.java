@@ -47,7 +47,11 @@ public class SelectorEventLoop implements EventLoop {
 
     private Selector selector;
     private LongObjectHeap timers = new LongObjectHeap();
-    private long now = System.currentTimeMillis();
+    private TimerWheel timerWheel = null;
+    private final long clockOffsetNanos = System.currentTimeMillis()*1000000 - System.nanoTime();
+    private long currentNanos;
+    private long currentRealtimeNanos;
+    private long now;
     EventLoopListener selectEventHandler = null;
 
     static class TimerEvents extends LongHeap {
@@ -103,11 +107,33 @@ public class SelectorEventLoop implements EventLoop {
         }
 
     }
+
+    public SelectorEventLoop() {
+        this(null);
+    }
+
+    /**
+     * @param timerWheel the timing wheel scheduling timers or {@code null} to use a heap.
+     */
+    public SelectorEventLoop(TimerWheel timerWheel) {
+        updateTime();
+        if (timerWheel != null) {
+            this.timerWheel = timerWheel;
+            this.timerWheel.advance(now);
+        }
+    }
+
     // --------------------- Basic event loop ---------------------
 
+    private void updateTime() {
+        currentNanos = System.nanoTime();
+        currentRealtimeNanos = System.currentTimeMillis()*1000000;
+        now = (currentNanos + clockOffsetNanos)/1000000;
+    }
+
     @Override
     public long currentMicros() {
-        return now*1000;
+        return (currentNanos + clockOffsetNanos)/1000;
     }
 
     @Override
@@ -115,6 +141,16 @@ public class SelectorEventLoop implements EventLoop {
         return now;
     }
 
+    @Override
+    public long currentNanos() {
+        return currentNanos;
+    }
+
+    @Override
+    public long currentRealtimeNanos() {
+        return currentRealtimeNanos;
+    }
+
     @Override
     public void open() {
         try {
@@ -180,13 +216,20 @@ public class SelectorEventLoop implements EventLoop {
 
     @Override
     public int addTimer(long when, TimerListener timerHandler) {
+        if (this.timerWheel != null) {
+            return this.timerWheel.insert(when, timerHandler);
+        }
         return this.timers.insert(when, timerHandler);
     }
 
     @Override
     public void cancelTimer(int entry) {
         log.log(Level.DEBUG, "cancelTimer");
-        this.timers.removeEntry(entry);
+        if (this.timerWheel != null) {
+            this.timerWheel.removeEntry(entry);
+        } else {
+            this.timers.removeEntry(entry);
+        }
     }
 
 
@@ -197,21 +240,33 @@ public class SelectorEventLoop implements EventLoop {
         while (true) {
             try {
                 long nextTimer = Long.MIN_VALUE;
-                while (!this.timers.isEmpty()) {
-                    int entry = this.timers.firstEntry();
-                    nextTimer = this.timers.getKey(entry);
-                    if (nextTimer - now < CLOCK_GRANULARITY) {
-                        // Callbacks may change the timer map, remove timer entry beforehand
-                        TimerListener timerHandler = (TimerListener)this.timers.getValue(entry);
-                        this.timers.removeEntry(entry);
+                if (this.timerWheel != null) {
+                    // Expire timers within the clock granularity like the heap does
+                    this.timerWheel.advance(now + CLOCK_GRANULARITY - 1);
+                    for (int entry = this.timerWheel.firstExpiredEntry(); entry != -1; entry = this.timerWheel.firstExpiredEntry()) {
+                        // Callbacks may change the timer wheel, remove timer entry beforehand
+                        TimerListener timerHandler = this.timerWheel.getValue(entry);
+                        this.timerWheel.removeEntry(entry);
                         timerHandler.onTimer(entry, now);
-                        nextTimer = Long.MIN_VALUE;
-                    } else {
-                        break;
+                    }
+                    nextTimer = this.timerWheel.nextExpiry();
+                } else {
+                    while (!this.timers.isEmpty()) {
+                        int entry = this.timers.firstEntry();
+                        nextTimer = this.timers.getKey(entry);
+                        if (nextTimer - now < CLOCK_GRANULARITY) {
+                            // Callbacks may change the timer map, remove timer entry beforehand
+                            TimerListener timerHandler = (TimerListener)this.timers.getValue(entry);
+                            this.timers.removeEntry(entry);
+                            timerHandler.onTimer(entry, now);
+                            nextTimer = Long.MIN_VALUE;
+                        } else {
+                            break;
+                        }
                     }
                 }
                 // Callbacks may have been running for some non neglectable time, update current time before calculating timeout
-                now = System.currentTimeMillis();
+                updateTime();
                 long timeout = nextTimer - now;
                 if (nextTimer == Long.MIN_VALUE) {
                     timeout = 0;
@@ -227,7 +282,7 @@ public class SelectorEventLoop implements EventLoop {
                 }
 
                 int keys = this.selector.select(timeout);
-                now = System.currentTimeMillis();
+                updateTime();
                 if (keys > 0) {
                     Set<SelectionKey> keySet = this.selector.selectedKeys();
                     Iterator<SelectionKey> it = keySet.iterator();
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2016 Benoit Jardin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zerogc.core;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+/**
+ * Polling policy of an event loop.
+ * A blocking loop waits in the kernel until a channel is ready or the next timer expires.
+ * A spinning loop polls with a zero timeout and never enters the scheduler, trading a core for wakeup latency.
+ * A hybrid loop spins and parks in the kernel after a number of consecutive empty polls,
+ * it spins again as soon as an event is received.
+ * It is meant for loops pinned to an isolated core.
+ */
+public class SpinPolicy {
+    /** Never spin, always block in the kernel. */
+    public static final int BLOCKING = 0;
+    /** Always spin, never block in the kernel. */
+    public static final int BUSY_SPIN = -1;
+
+    // Thread.onSpinWait() is only available since Java 9
+    private static final MethodHandle ON_SPIN_WAIT;
+    static {
+        MethodHandle onSpinWait = null;
+        try {
+            onSpinWait = MethodHandles.lookup().findStatic(Thread.class, "onSpinWait", MethodType.methodType(void.class));
+        } catch (Exception e) {
+        }
+        ON_SPIN_WAIT = onSpinWait;
+    }
+
+    private final int spinIterations;
+    private final boolean spinWait;
+    private int emptyPolls = 0;
+
+    /**
+     * @param spinIterations the number of consecutive empty polls before parking, BLOCKING or BUSY_SPIN.
+     * @param spinWait whether to hint the processor with Thread.onSpinWait() between empty polls, when available.
+     */
+    public SpinPolicy(int spinIterations, boolean spinWait) {
+        if (spinIterations < BUSY_SPIN) {
+            throw new IllegalArgumentException("Illegal spin iterations: " + spinIterations);
+        }
+        this.spinIterations = spinIterations;
+        this.spinWait = spinWait && ON_SPIN_WAIT != null;
+    }
+
+    public int spinIterations() {
+        return this.spinIterations;
+    }
+
+    public boolean spinWait() {
+        return this.spinWait;
+    }
+
+    /**
+     * Returns the timeout to poll with.
+     * @param timeout the timeout in milliseconds until the next timer expires or {@code -1} if none.
+     */
+    public int timeout(int timeout) {
+        if (timeout == 0 || (this.spinIterations != BUSY_SPIN && this.emptyPolls >= this.spinIterations)) {
+            return timeout;
+        }
+        if (this.spinWait && this.emptyPolls > 0) {
+            try {
+                ON_SPIN_WAIT.invokeExact();
+            } catch (Throwable e) {
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Account for the result of the last poll.
+     * @param nfds the number of ready channels returned by the poll.
+     */
+    public void polled(int nfds) {
+        if (nfds != 0) {
+            this.emptyPolls = 0;
+        } else if (this.emptyPolls != Integer.MAX_VALUE) {
+            this.emptyPolls++;
+        }
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2016 Benoit Jardin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zerogc.core;
+
+import java.nio.channels.SelectableChannel;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.zerogc.collections.ObjectMpscRing;
+import com.zerogc.core.EventLoop.EventLoopListener;
+import com.zerogc.logging.Level;
+import com.zerogc.logging.LogManager;
+import com.zerogc.logging.Logger;
+
+/**
+ * Bounded multi producer single consumer queue of tasks to run on an event loop thread.
+ * Tasks are stored in a pre-allocated ObjectMpscRing, producers never lock nor allocate.
+ * The loop parks the queue before blocking in the kernel and unparks it once awake,
+ * producers only signal the wakeup file descriptor while the queue is parked.
+ * The queue listens to its wakeup file descriptor to reset it.
+ */
+public class TaskQueue implements EventLoopListener {
+    private static final Logger log = LogManager.getLogger(TaskQueue.class.getSimpleName());
+
+    private static final int AWAKE = 0;
+    private static final int PARKED = 1;
+
+    private final ObjectMpscRing tasks;
+
+    private final int wakeupFd;
+    private final AtomicInteger state = new AtomicInteger(AWAKE);
+
+    /**
+     * @param capacity the maximum number of pending tasks, rounded up to a power of 2.
+     * @param wakeupFd the eventfd signaled to wake the loop up or -1 if the loop never blocks.
+     */
+    public TaskQueue(int capacity, int wakeupFd) {
+        this.tasks = new ObjectMpscRing(capacity);
+        this.wakeupFd = wakeupFd;
+    }
+
+    public int capacity() {
+        return this.tasks.capacity();
+    }
+
+    public int getWakeupFd() {
+        return this.wakeupFd;
+    }
+
+    // --------------------- Producers ---------------------
+
+    /**
+     * Queue a task from any thread.
+     * @return false if the queue is full.
+     */
+    public boolean offer(Runnable task) {
+        if (!this.tasks.offer(task)) {
+            return false;
+        }
+        // Checked after publishing the task, see park()
+        if (this.state.get() == PARKED && this.state.compareAndSet(PARKED, AWAKE) && this.wakeupFd != -1) {
+            Native.eventfd_write(this.wakeupFd, 1);
+        }
+        return true;
+    }
+
+    // --------------------- Consumer ---------------------
+
+    /** Returns the next task or null if none, to be called from the loop thread only. */
+    public Runnable poll() {
+        return (Runnable)this.tasks.poll();
+    }
+
+    public boolean isEmpty() {
+        return this.tasks.isEmpty();
+    }
+
+    /**
+     * Run the pending tasks, at most capacity of them so that producers can't starve the loop.
+     * @return the number of tasks run.
+     */
+    public int run() {
+        int count = 0;
+        for (Runnable task; count < this.tasks.capacity() && (task = poll()) != null; count++) {
+            try {
+                task.run();
+            } catch (Throwable e) {
+                log.log(Level.ERROR, "Task caught: ", e);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Called by the loop before blocking.
+     * The state is published before checking for tasks while producers publish tasks before checking
+     * the state, a task queued concurrently is either seen here or signals the wakeup file descriptor.
+     * @return false if tasks are pending and the loop must not block.
+     */
+    public boolean park() {
+        this.state.set(PARKED);
+        if (!isEmpty()) {
+            this.state.set(AWAKE);
+            return false;
+        }
+        return true;
+    }
+
+    /** Called by the loop once awake, producers stop signaling. */
+    public void unpark() {
+        this.state.lazySet(AWAKE);
+    }
+
+    /** Signal the wakeup file descriptor whatever the state of the queue. */
+    public void wakeup() {
+        if (this.wakeupFd != -1) {
+            Native.eventfd_write(this.wakeupFd, 1);
+        }
+    }
+
+    // --------------------- IOHandler ---------------------
+
+    @Override
+    public void onRead(SelectableChannel selectableChannel) {
+        // Reset the wakeup file descriptor, the loop runs the tasks before blocking again
+        Native.eventfd_read(this.wakeupFd);
+    }
+
+    @Override
+    public void onWrite(SelectableChannel selectableChannel) {
+    }
+
+    @Override
+    public void onSelect() {
+    }
+
+    @Override
+    public void onConnect(SelectableChannel selectableChannel) {
+    }
+
+    @Override
+    public void onAccept(SelectableChannel selectableChannel) {
+    }
+
+    @Override
+    public void onClose(SelectableChannel selectableChannel) {
+    }
+}
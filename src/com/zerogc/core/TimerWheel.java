@@ -0,0 +1,379 @@
+/*
+ * Copyright 2016 Benoit Jardin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zerogc.core;
+
+import com.zerogc.core.EventLoop.TimerListener;
+import com.zerogc.logging.Level;
+import com.zerogc.logging.LogManager;
+import com.zerogc.logging.Logger;
+
+/**
+ * GC free hierarchical timing wheel.
+ * Timers hang off pre-allocated slots in intrusive doubly linked lists so that
+ * insertion and cancellation are O(1), as opposed to O(log n) for a heap.
+ * Each of the LEVELS wheels has SLOTS slots, a slot of level n covering SLOTS^n ticks.
+ * Timers of upper levels are cascaded down when the lower level wraps around and
+ * expired timers are moved to a due list drained with {@link #firstExpiredEntry()}.
+ * Entries are the timer ids handed out by {@link EventLoop#addTimer(long, TimerListener)}.
+ */
+public class TimerWheel {
+    public static final int INITIAL_CAPACITY = 16;
+    public static final float GROWTH_FACTOR = 2.0f;
+    public static final int TICK_MILLIS = 1;
+
+    private static final int SLOT_BITS = 8;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = SLOTS - 1;
+    private static final int LEVELS = 4;
+    private static final int BITMAP_WORDS = SLOTS / Long.SIZE;
+    // Pseudo slot holding expired timers
+    private static final int DUE = LEVELS * SLOTS;
+
+    protected final Logger log;
+
+    private float growthFactor = GROWTH_FACTOR;
+    private final int tickMillis;
+    private int size = 0;
+
+    private int freeEntry = -1;
+    private int highMark = 0;
+
+    private long currentTick = 0;
+
+    private final int[] head = new int[LEVELS * SLOTS + 1];
+    private final int[] tail = new int[LEVELS * SLOTS + 1];
+    private final long[] occupied = new long[LEVELS * BITMAP_WORDS]; // Non empty slots
+
+    private int[] next;
+    private int[] prev;
+    private int[] slot;
+    private long[] expiry;
+    private TimerListener[] value;
+
+    public TimerWheel() {
+        this(TimerWheel.class.getSimpleName(), INITIAL_CAPACITY, GROWTH_FACTOR, TICK_MILLIS);
+    }
+
+    public TimerWheel(String name) {
+        this(name, INITIAL_CAPACITY, GROWTH_FACTOR, TICK_MILLIS);
+    }
+
+    public TimerWheel(String name, int initialCapacity) {
+        this(name, initialCapacity, GROWTH_FACTOR, TICK_MILLIS);
+    }
+
+    public TimerWheel(String name, int initialCapacity, float growthFactor, int tickMillis) {
+        this.log = LogManager.getLogger(name);
+
+        if (initialCapacity < 0) {
+            throw new IllegalArgumentException("Illegal Capacity: " + initialCapacity);
+        }
+        if (growthFactor <= 0 || Float.isNaN(growthFactor)) {
+            throw new IllegalArgumentException("Illegal GrowthFactor: " + growthFactor);
+        }
+        if (tickMillis <= 0) {
+            throw new IllegalArgumentException("Illegal tick: " + tickMillis);
+        }
+        if (initialCapacity == 0) {
+            initialCapacity = 1;
+        }
+        this.growthFactor = growthFactor;
+        this.tickMillis = tickMillis;
+
+        for (int i=0; i < head.length; i++) {
+            head[i] = -1;
+            tail[i] = -1;
+        }
+        grow(0, initialCapacity);
+    }
+
+    public int highMark() {
+        return this.highMark;
+    }
+
+    public int capacity() {
+        return this.next.length;
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    public int tickMillis() {
+        return this.tickMillis;
+    }
+
+    protected void grow(int capacity, int newCapacity) {
+        log.log(Level.WARN, log.getSB().append("Resizing to ").append(newCapacity));
+
+        int[] newNext = new int[newCapacity];
+        int[] newPrev = new int[newCapacity];
+        int[] newSlot = new int[newCapacity];
+        long[] newExpiry = new long[newCapacity];
+        TimerListener[] newValue = new TimerListener[newCapacity];
+
+        if (capacity > 0) {
+            System.arraycopy(this.next, 0, newNext, 0, capacity);
+            System.arraycopy(this.prev, 0, newPrev, 0, capacity);
+            System.arraycopy(this.slot, 0, newSlot, 0, capacity);
+            System.arraycopy(this.expiry, 0, newExpiry, 0, capacity);
+            System.arraycopy(this.value, 0, newValue, 0, capacity);
+        }
+
+        this.next = newNext;
+        this.prev = newPrev;
+        this.slot = newSlot;
+        this.expiry = newExpiry;
+        this.value = newValue;
+    }
+
+    public void clear() {
+        for (int i=0; i < head.length; i++) {
+            head[i] = -1;
+            tail[i] = -1;
+        }
+        for (int i=0; i < occupied.length; i++) {
+            occupied[i] = 0;
+        }
+        for (int i=0; i < this.highMark; i++) {
+            this.value[i] = null;
+        }
+        this.size = 0;
+        this.freeEntry = -1;
+        this.highMark = 0;
+    }
+
+    /** Returns the expiry time in milliseconds of the timer. */
+    public long getKey(int entry) {
+        return this.expiry[entry];
+    }
+
+    public TimerListener getValue(int entry) {
+        return this.value[entry];
+    }
+
+    private int newEntry() {
+        int entry = this.freeEntry;
+        if (entry != -1) {
+            this.freeEntry = this.next[entry];
+        } else {
+            int capacity = this.next.length;
+            if (highMark >= capacity) {
+                // Grow the arrays
+                int newCapacity = (int) (capacity * this.growthFactor);
+                grow(capacity, newCapacity);
+            }
+            entry = highMark++;
+        }
+
+        this.size++;
+        return entry;
+    }
+
+    /**
+     * Schedule a timer.
+     * @param when the expiry time in milliseconds.
+     * @param timerListener the listener to notify.
+     * @return the entry of the timer.
+     */
+    public int insert(long when, TimerListener timerListener) {
+        int entry = newEntry();
+        this.expiry[entry] = when;
+        this.value[entry] = timerListener;
+        place(entry);
+        return entry;
+    }
+
+    /**
+     * Cancel a pending timer or release an expired one.
+     * @param entry the entry of the timer to remove.
+     */
+    public void removeEntry(int entry) {
+        unlink(entry);
+        this.value[entry] = null;
+        this.next[entry] = this.freeEntry;
+        this.freeEntry = entry;
+        this.size--;
+    }
+
+    /** Returns the first expired entry or {@code -1} if no timer expired. */
+    public int firstExpiredEntry() {
+        return this.head[DUE];
+    }
+
+    /**
+     * Returns the time in milliseconds at which the wheel must be advanced next, this is the expiry of
+     * the next timer or the time its upper level slot must be cascaded, or {@code Long.MIN_VALUE} if empty.
+     */
+    public long nextExpiry() {
+        if (this.head[DUE] != -1) {
+            return this.currentTick * this.tickMillis;
+        }
+        long tick = nextTick();
+        return tick == Long.MAX_VALUE ? Long.MIN_VALUE : tick * this.tickMillis;
+    }
+
+    /**
+     * Advance the wheel up to the given time, moving the timers expiring until then to the due list.
+     * @param now the current time in milliseconds.
+     */
+    public void advance(long now) {
+        long nowTick = now / this.tickMillis;
+        while (this.currentTick < nowTick) {
+            // Jump over empty slots
+            long tick = nextTick();
+            if (tick > nowTick) {
+                this.currentTick = nowTick;
+                break;
+            }
+            this.currentTick = tick;
+            for (int level = LEVELS - 1; level > 0; level--) {
+                int shift = level * SLOT_BITS;
+                if ((tick & ((1L << shift) - 1)) == 0) {
+                    cascade(level * SLOTS + (int)((tick >> shift) & SLOT_MASK));
+                }
+            }
+            int expiredSlot = (int)(tick & SLOT_MASK);
+            for (int entry = this.head[expiredSlot]; entry != -1;) {
+                int nextEntry = this.next[entry];
+                linkDue(entry);
+                entry = nextEntry;
+            }
+            clearSlot(expiredSlot);
+        }
+    }
+
+    private void cascade(int slot) {
+        int entry = this.head[slot];
+        clearSlot(slot);
+        while (entry != -1) {
+            int nextEntry = this.next[entry];
+            place(entry);
+            entry = nextEntry;
+        }
+    }
+
+    private void place(int entry) {
+        long tick = (this.expiry[entry] + this.tickMillis - 1) / this.tickMillis;
+        if (tick <= this.currentTick) {
+            linkDue(entry);
+            return;
+        }
+        for (int level = 0;; level++) {
+            int shift = level * SLOT_BITS;
+            long distance = (tick >> shift) - (this.currentTick >> shift);
+            if (distance < SLOTS) {
+                link(entry, level * SLOTS + (int)((tick >> shift) & SLOT_MASK));
+                return;
+            } else if (level == LEVELS - 1) {
+                // Beyond the wheel range, park in the farthest slot to be cascaded again
+                link(entry, level * SLOTS + (int)(((this.currentTick >> shift) + SLOT_MASK) & SLOT_MASK));
+                return;
+            }
+        }
+    }
+
+    /**
+     * Append to the slot so that timers keep their insertion order through cascades and expiry.
+     * Timers sharing a tick are not sorted by their expiry in milliseconds: with a tick longer than
+     * 1ms they expire in the order they were inserted, timers of different ticks expire in tick order.
+     */
+    private void link(int entry, int slot) {
+        int last = this.tail[slot];
+        this.slot[entry] = slot;
+        this.prev[entry] = last;
+        this.next[entry] = -1;
+        if (last != -1) {
+            this.next[last] = entry;
+        } else {
+            this.head[slot] = entry;
+            if (slot != DUE) {
+                this.occupied[slot >> 6] |= 1L << slot;
+            }
+        }
+        this.tail[slot] = entry;
+    }
+
+    private void linkDue(int entry) {
+        link(entry, DUE);
+    }
+
+    private void unlink(int entry) {
+        int slot = this.slot[entry];
+        int prevEntry = this.prev[entry];
+        int nextEntry = this.next[entry];
+        if (prevEntry != -1) {
+            this.next[prevEntry] = nextEntry;
+        } else {
+            this.head[slot] = nextEntry;
+        }
+        if (nextEntry != -1) {
+            this.prev[nextEntry] = prevEntry;
+        } else {
+            this.tail[slot] = prevEntry;
+        }
+        if (slot != DUE && this.head[slot] == -1) {
+            this.occupied[slot >> 6] &= ~(1L << slot);
+        }
+    }
+
+    private void clearSlot(int slot) {
+        this.head[slot] = -1;
+        this.tail[slot] = -1;
+        this.occupied[slot >> 6] &= ~(1L << slot);
+    }
+
+    /** Returns the next tick at which a slot must be expired or cascaded or {@code Long.MAX_VALUE} if the wheel is empty. */
+    private long nextTick() {
+        long nextTick = Long.MAX_VALUE;
+        for (int level = 0; level < LEVELS; level++) {
+            int shift = level * SLOT_BITS;
+            long bucket = this.currentTick >> shift;
+            int distance = nextOccupied(level, (int)((bucket + 1) & SLOT_MASK));
+            if (distance != -1) {
+                long tick = (bucket + 1 + distance) << shift;
+                if (tick < nextTick) {
+                    nextTick = tick;
+                }
+            }
+        }
+        return nextTick;
+    }
+
+    /** Returns the distance from index to the next non empty slot of the level wrapping around or {@code -1} if the level is empty. */
+    private int nextOccupied(int level, int index) {
+        int base = level * BITMAP_WORDS;
+        int firstWord = index >> 6;
+        for (int i=0; i <= BITMAP_WORDS; i++) {
+            int word = (firstWord + i) % BITMAP_WORDS;
+            long bits = this.occupied[base + word];
+            if (i == 0) {
+                bits &= -1L << index;
+            } else if (i == BITMAP_WORDS) {
+                bits &= ~(-1L << index);
+            }
+            if (bits != 0) {
+                int found = (word << 6) + Long.numberOfTrailingZeros(bits);
+                return (found - index) & SLOT_MASK;
+            }
+        }
+        return -1;
+    }
+}
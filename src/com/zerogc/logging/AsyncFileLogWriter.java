@@ -6,15 +6,16 @@ import com.zerogc.core.ByteStringBuilder;
 
 public class AsyncFileLogWriter extends FileLogWriter implements Runnable {
 
+    // Messages are appended to one buffer while the writer thread writes the other one
     private final ByteStringBuilder[] flipflop;
     private int index = 0;
-    private ByteStringBuilder writerSb = null;
+    private volatile ByteStringBuilder writerSb = null;
 
     public AsyncFileLogWriter(String name) {
         super(name);
         flipflop = new ByteStringBuilder[2];
-        flipflop[0] = this.sb;
-        flipflop[1] = new ByteStringBuilder(this.sb.getCapacity());
+        flipflop[0] = new ByteStringBuilder(BUFFER_SIZE);
+        flipflop[1] = new ByteStringBuilder(BUFFER_SIZE);
 
         Thread thread = new Thread(this);
         thread.setDaemon(true);
@@ -42,14 +43,12 @@ public class AsyncFileLogWriter extends FileLogWriter implements Runnable {
     }
 
     @Override
-    public void write(ByteStringBuilder sb) {
-        assert(sb == this.sb);
+    public synchronized void write(ByteStringBuilder sb) {
+        flipflop[index].append(sb);
+        sb.setLength(0);
         if (writerSb == null) {
             writerSb = flipflop[index];
-            assert(writerSb == this.sb);
             index ^= 1;
-            this.sb = flipflop[index];
-            assert(writerSb != this.sb);
         }
     }
 }
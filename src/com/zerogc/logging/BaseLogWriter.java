@@ -6,9 +6,17 @@ import java.io.OutputStream;
 import com.zerogc.core.ByteStringBuilder;
 
 public abstract class BaseLogWriter implements LogWriter {
+    public static final int BUFFER_SIZE = 4096;
+
     protected OutputStream stream;
     protected boolean immediateFlush = false;
-    protected ByteStringBuilder sb = new ByteStringBuilder(4096);
+    // Each thread formats its messages in its own builder, only writes to the stream are serialized
+    private final ThreadLocal<ByteStringBuilder> threadSb = new ThreadLocal<ByteStringBuilder>() {
+        @Override
+        protected ByteStringBuilder initialValue() {
+            return new ByteStringBuilder(BUFFER_SIZE);
+        }
+    };
 
     @Override
     public void close() throws IOException {
@@ -17,12 +25,11 @@ public abstract class BaseLogWriter implements LogWriter {
 
     @Override
     public ByteStringBuilder getSB() {
-        return this.sb;
+        return this.threadSb.get();
     }
 
     @Override
-    public void write(ByteStringBuilder sb) {
-        assert(sb == this.sb);
+    public synchronized void write(ByteStringBuilder sb) {
         try {
             stream.write(sb.getBuffer(), 0, sb.getLength());
             if (immediateFlush) {
@@ -33,9 +33,18 @@ public class Logger {
     private byte[] name;
     private int level = Level.INFO;
     private LogWriter logWriter;
-    private int headerPos = 0;
 
-    private Calendar calendar = Calendar.getInstance();
+    // Loggers are shared by the threads of an EventLoopGroup, the message being formatted is per thread
+    private static class Context {
+        private final Calendar calendar = Calendar.getInstance();
+        private int headerPos = 0;
+    }
+    private static final ThreadLocal<Context> context = new ThreadLocal<Context>() {
+        @Override
+        protected Context initialValue() {
+            return new Context();
+        }
+    };
 
     public Logger(byte[] name, LogWriter logWriter) {
         this.name = name;
@@ -56,7 +65,7 @@ public class Logger {
 
     public ByteStringBuilder getSB() {
         ByteStringBuilder sb = logWriter.getSB();
-        headerPos = sb.getLength();
+        context.get().headerPos = sb.getLength();
         sb.ensureCapacity(sb.getLength() + HEADER_LENGTH);
         // Reserve space for header
         sb.setLength(sb.getLength() + HEADER_LENGTH);
@@ -68,6 +77,11 @@ public class Logger {
     }
 
     public void addHeader(ByteStringBuilder sb) {
+        addHeader(sb, context.get());
+    }
+
+    private void addHeader(ByteStringBuilder sb, Context context) {
+        Calendar calendar = context.calendar;
         calendar.setTimeInMillis(System.currentTimeMillis());
         int hour = calendar.get(Calendar.HOUR_OF_DAY);
         int minute = calendar.get(Calendar.MINUTE);
@@ -75,7 +89,7 @@ public class Logger {
         int millisecond = calendar.get(Calendar.MILLISECOND);
 
         // Format: "HH:mm:ss.ccc: "
-        int offset = headerPos;
+        int offset = context.headerPos;
         byte[] buffer = sb.getBuffer();
         buffer[offset++] = (byte)('0' + hour/10);
         buffer[offset++] = (byte)('0' + hour%10);
@@ -117,49 +131,53 @@ public class Logger {
 
     public void log(int level, String message) {
         ByteStringBuilder sb = getSB();
+        Context context = Logger.context.get();
         if (level <= this.level) {
-            addHeader(sb);
+            addHeader(sb, context);
             sb.append(message);
             sb.append('\n');
             logWriter.write(sb);
         } else {
-            sb.setLength(headerPos);
+            sb.setLength(context.headerPos);
         }
     }
 
     public void log(int level, String message, Throwable t) {
         ByteStringBuilder sb = getSB();
+        Context context = Logger.context.get();
         if (level <= this.level) {
-            addHeader(sb);
+            addHeader(sb, context);
             sb.append(message);
             sb.append('\n');
             sb.append(t.getMessage());
             sb.append(t.getStackTrace()); // TODO: remove allocation
             logWriter.write(sb);
         } else {
-            sb.setLength(headerPos);
+            sb.setLength(context.headerPos);
         }
     }
 
     public void log(int level, ByteStringBuilder sb) {
+        Context context = Logger.context.get();
         if (level <= this.level) {
-            addHeader(sb);
+            addHeader(sb, context);
             sb.append('\n');
             logWriter.write(sb);
         } else {
-            sb.setLength(headerPos);
+            sb.setLength(context.headerPos);
         }
     }
 
     public void log(int level, ByteStringBuilder sb, Throwable t) {
+        Context context = Logger.context.get();
         if (level <= this.level) {
-            addHeader(sb);
+            addHeader(sb, context);
             sb.append('\n');
             sb.append(t.getMessage());
             sb.append(t.getStackTrace()); // TODO: remove allocation
             logWriter.write(sb);
         } else {
-            sb.setLength(headerPos);
+            sb.setLength(context.headerPos);
         }
     }
 }
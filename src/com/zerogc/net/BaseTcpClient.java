@@ -3,6 +3,7 @@ package com.zerogc.net;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.channels.SelectableChannel;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.SocketChannel;
@@ -12,11 +13,16 @@ import com.zerogc.core.EventLoop;
 import com.zerogc.core.EventLoop.EventLoopListener;
 import com.zerogc.core.EventLoop.EventLoopSelectionKey;
 import com.zerogc.core.EventLoop.TimerListener;
+import com.zerogc.core.Native;
 import com.zerogc.logging.Level;
 import com.zerogc.logging.LogManager;
 import com.zerogc.logging.Logger;
 
 public class BaseTcpClient implements EventLoopListener, TimerListener, MessageSource  {
+    public static final int BUFFER_SIZE = 32*1024;
+    // Maximum number of buffers sent by a single gathering write, bufferOut included
+    public static final int GATHER_SIZE = 16;
+
     protected final Logger log;
 
     protected final EventLoop eventLoop;
@@ -25,33 +31,69 @@ public class BaseTcpClient implements EventLoopListener, TimerListener, MessageS
     private int destIndex = 0;
 
     private SocketChannel socketChannel = null;
+    private int fd = -1;
     private EventLoopSelectionKey selectionKey = null;
+    // Incremented on close() so that callbacks notice the listener closed the connection
+    private int generation = 0;
 
     private MessageListener messageListener;
     private ConnectionListener connectionListener;
+    private Framer framer = null;
 
     private int connectTimeout = 5000;
     private int connectTimer = -1;
     private int reconnectTimeout = 15000;
     private int reconnectTimer = -1;
 
+    private boolean kernelTimestamps = false;
+
+    // Messages sent while a batch is open are queued in bufferOut until flush() or the end of the loop iteration
+    private boolean batch = false;
+    private boolean cork = false;
+    private boolean selectRegistered = false;
+    private EventLoopListener selectEventHandler = null;
+    // Descriptor of the last read filled by recvmsg
+    private final ByteBuffer msg;
+    private final long msgAddress;
+
     private long sendTime;
 
     private byte[] name;
     private long captureTime;
+    private long captureTimeNanos;
     private byte[] srcAddrBytes;
     private int srcPort;
     private byte[] dstAddrBytes;
     private int dstPort;
     private final ByteBuffer bufferIn;
+    private final long bufferInAddress;
     private final ByteBuffer bufferOut;
+    private final ByteBuffer[] gatherBuffers = new ByteBuffer[GATHER_SIZE];
 
     public BaseTcpClient(EventLoop eventLoop, byte[] name) {
+        this(eventLoop, name, BUFFER_SIZE, true);
+    }
+
+    /**
+     * @param bufferSize the size of the receive and send buffers.
+     * @param direct allocate the buffers in direct memory, otherwise the channel copies every read and write through
+     * a temporary direct buffer of the JDK.
+     */
+    public BaseTcpClient(EventLoop eventLoop, byte[] name, int bufferSize, boolean direct) {
         this.log = LogManager.getLogger(name);
         this.eventLoop = eventLoop;
         this.name = name;
-        this.bufferIn = ByteBuffer.allocate(32*1024);
-        this.bufferOut = ByteBuffer.allocate(32*1024);
+        if (direct) {
+            this.bufferIn = ByteBuffer.allocateDirect(bufferSize);
+            this.bufferInAddress = ((sun.nio.ch.DirectBuffer)this.bufferIn).address();
+            this.bufferOut = ByteBuffer.allocateDirect(bufferSize);
+        } else {
+            this.bufferIn = ByteBuffer.allocate(bufferSize);
+            this.bufferInAddress = 0;
+            this.bufferOut = ByteBuffer.allocate(bufferSize);
+        }
+        this.msg = ByteBuffer.allocateDirect(Native.MSG_SIZE).order(ByteOrder.nativeOrder());
+        this.msgAddress = ((sun.nio.ch.DirectBuffer)this.msg).address();
     }
 
     // --------------------- Configuration ---------------------
@@ -63,6 +105,14 @@ public class BaseTcpClient implements EventLoopListener, TimerListener, MessageS
         this.messageListener = messageListener;
     }
 
+    public Framer getFramer() {
+        return framer;
+    }
+    /** Dispatch one frame at a time to the message listener, without a framer the listener gets all the bytes read. */
+    public void setFramer(Framer framer) {
+        this.framer = framer;
+    }
+
     public ConnectionListener getConnectionListener() {
         return connectionListener;
     }
@@ -77,6 +127,22 @@ public class BaseTcpClient implements EventLoopListener, TimerListener, MessageS
         this.destInetSocketAddress = destInetSocketAddress;
     }
 
+    public boolean isKernelTimestamps() {
+        return kernelTimestamps;
+    }
+    /** Read with recvmsg to get SO_TIMESTAMPNS receive timestamps from the kernel, set before open(). */
+    public void setKernelTimestamps(boolean kernelTimestamps) {
+        this.kernelTimestamps = kernelTimestamps;
+    }
+
+    public boolean isCork() {
+        return cork;
+    }
+    /** Toggle TCP_CORK around batches so that a batch written with several system calls still leaves in full segments. */
+    public void setCork(boolean cork) {
+        this.cork = cork;
+    }
+
     private void configureTcpChannel(SocketChannel socketChannel) throws IOException {
         socketChannel.socket().setReceiveBufferSize(1024*1024);
         socketChannel.socket().setSendBufferSize(1024*1024);
@@ -94,6 +160,10 @@ public class BaseTcpClient implements EventLoopListener, TimerListener, MessageS
             this.socketChannel = SocketChannel.open();
             this.socketChannel.configureBlocking(false);
             configureTcpChannel(this.socketChannel);
+            this.fd = Native.getFdVal_SocketChannel(this.socketChannel);
+            if (this.kernelTimestamps && Native.setTimestampNs(this.fd, (byte)1) != 0) {
+                log.log(Level.WARN, log.getSB().append("Failed to enable SO_TIMESTAMPNS, errno: ").append(Native.errno()));
+            }
             if (this.socketChannel.connect(this.destInetSocketAddress[destIndex])) {
                 onConnect(this.socketChannel);
             } else {
@@ -116,6 +186,8 @@ public class BaseTcpClient implements EventLoopListener, TimerListener, MessageS
     }
 
     public void close() {
+        this.generation++;
+        this.batch = false;
         if (this.selectionKey != null) {
             this.selectionKey.cancel();
             this.selectionKey = null;
@@ -157,6 +229,10 @@ public class BaseTcpClient implements EventLoopListener, TimerListener, MessageS
         return this.captureTime;
     }
     @Override
+    public long getCaptureTimeNanos() {
+        return this.captureTimeNanos;
+    }
+    @Override
     public byte[] getSrcAddrBytes() {
         return srcAddrBytes;
     }
@@ -186,6 +262,7 @@ public class BaseTcpClient implements EventLoopListener, TimerListener, MessageS
     public void onConnect(SelectableChannel selectableChannel) {
         log.log(Level.INFO, "onConnect()");
         try {
+            this.captureTimeNanos = eventLoop.currentRealtimeNanos();
             this.captureTime = eventLoop.currentMillis();
             if (connectTimer != -1) {
                 eventLoop.cancelTimer(connectTimer);
@@ -221,16 +298,48 @@ public class BaseTcpClient implements EventLoopListener, TimerListener, MessageS
     public void onRead(SelectableChannel selectableChannel) {
         log.log(Level.DEBUG, "onRead()");
         try {
-            int len = socketChannel.read(bufferIn);
-            if (len < 0) {
-                log.log(Level.ERROR, log.getSB().append("Detected failure of TCP connection"));
-                reconnect();
-                return;
-            } else {
-                log.log(Level.DEBUG, log.getSB().append("Read ").append(len).append(" bytes"));
-            }
-            this.captureTime = eventLoop.currentMillis();
-            dispatch();
+            // Edge triggered event loops won't notify pending data again, keep reading while reads fill up the buffer.
+            // A short read drains the socket, see epoll(7), and a read of 0 bytes is EAGAIN.
+            int generation = this.generation;
+            boolean full;
+            do {
+                int len;
+                if (this.kernelTimestamps) {
+                    if (this.bufferInAddress != 0) {
+                        len = Native.recvmsg_direct(this.fd, this.bufferInAddress + bufferIn.position(), bufferIn.remaining(), this.msgAddress);
+                    } else {
+                        len = Native.recvmsg(this.fd, bufferIn.array(), bufferIn.arrayOffset() + bufferIn.position(), bufferIn.remaining(), this.msgAddress);
+                    }
+                    if (len > 0) {
+                        bufferIn.position(bufferIn.position() + len);
+                    }
+                } else {
+                    len = socketChannel.read(bufferIn);
+                }
+                if (len < 0) {
+                    log.log(Level.ERROR, log.getSB().append("Detected failure of TCP connection"));
+                    reconnect();
+                    return;
+                } else if (len == 0) {
+                    break;
+                } else {
+                    log.log(Level.DEBUG, log.getSB().append("Read ").append(len).append(" bytes"));
+                }
+                full = !bufferIn.hasRemaining();
+                long timestamp = this.kernelTimestamps ? this.msg.getLong(Native.MSG_TIMESTAMP_OFFSET) : 0;
+                this.captureTimeNanos = timestamp != 0 ? timestamp : eventLoop.currentRealtimeNanos();
+                this.captureTime = this.captureTimeNanos/1000000;
+                dispatch();
+                if (generation != this.generation) {
+                    // Closed by the listener
+                    return;
+                }
+                if (!bufferIn.hasRemaining()) {
+                    // Reading again would return 0 and leave the pending bytes in the socket
+                    throw new IllegalStateException("Receive buffer of " + bufferIn.capacity() + " bytes full, nothing consumed by the listener");
+                }
+            } while (full);
+            rearm();
         } catch (Throwable e) {
             log.log(Level.ERROR, log.getSB().append("onRead() caught: "), e);
             reconnect();
@@ -239,10 +348,65 @@ public class BaseTcpClient implements EventLoopListener, TimerListener, MessageS
 
     @Override
     public void onWrite(SelectableChannel selectableChannel) {
-        sendBufferOut();
+        writeBufferOut();
+        rearm();
+    }
+
+    // One shot keys are disarmed after each event and re-armed by setting interestOps, a no-op for other keys
+    private void rearm() {
+        if (this.selectionKey != null) {
+            this.selectionKey.interestOps(this.selectionKey.interestOps());
+        }
     }
 
+    /**
+     * Queue the messages sent until flush() and write them with a single system call.
+     * The batch is flushed from onSelect() at the end of the event loop iteration if flush() was not called before,
+     * the client then chains the onSelect() of the select listener registered before it.
+     */
+    public void beginBatch() {
+        if (this.batch) {
+            return;
+        }
+        if (!this.selectRegistered) {
+            this.selectEventHandler = this.eventLoop.registerSelect(this);
+            this.selectRegistered = true;
+        }
+        this.batch = true;
+        if (this.cork && Native.setTcpCork(this.fd, (byte)1) != 0) {
+            log.log(Level.WARN, log.getSB().append("Failed to set TCP_CORK, errno: ").append(Native.errno()));
+        }
+    }
+
+    public boolean isBatch() {
+        return this.batch;
+    }
+
+    /** Close the current batch and write the queued messages, returns the number of bytes written. */
+    public int flush() {
+        if (!this.batch) {
+            return 0;
+        }
+        this.batch = false;
+        int len = this.bufferOut.position() > 0 ? writeBufferOut() : 0;
+        if (this.cork && this.socketChannel.isOpen()) {
+            Native.setTcpCork(this.fd, (byte)0);
+        }
+        return len;
+    }
+
+    /**
+     * Write the content of bufferOut, or only queue it while a batch is open and bufferOut is less than half full.
+     * @return the number of bytes written, 0 if queued and -1 on error.
+     */
     public int sendBufferOut() {
+        if (this.batch && bufferOut.position() < (bufferOut.capacity() >> 1)) {
+            return 0;
+        }
+        return writeBufferOut();
+    }
+
+    private int writeBufferOut() {
         int len = -1;
         try {
             bufferOut.flip();
@@ -251,31 +415,100 @@ public class BaseTcpClient implements EventLoopListener, TimerListener, MessageS
             if (len < 0) {
                 log.log(Level.ERROR, log.getSB().append("Detected failure of TCP connection"));
                 reconnect();
-            } else {
-                log.log(Level.DEBUG, log.getSB().append("Sent ").append(len).append(" bytes"));
+                return len;
             }
+            log.log(Level.DEBUG, log.getSB().append("Sent ").append(len).append(" bytes"));
             bufferOut.compact();
-            int ops = this.selectionKey.interestOps();
-            if (this.bufferOut.position() > 0) {
-                if ((ops & ~SelectionKey.OP_WRITE) == 0) {
-                    this.selectionKey.interestOps(ops | SelectionKey.OP_WRITE);
-                }
-            } else {
-                if ((ops & ~SelectionKey.OP_WRITE) != 0) {
-                    this.selectionKey.interestOps(ops & ~SelectionKey.OP_WRITE);
-                }
+            updateWriteInterest();
+        } catch (Throwable e) {
+            log.log(Level.ERROR, log.getSB().append("send() caught: "), e);
+            reconnect();
+        }
+        return len;
+    }
+
+    /**
+     * Send the pending bytes of bufferOut followed by the remaining bytes of the buffers with a single gathering write,
+     * for instance a header and a payload without first copying them together.
+     * What the socket does not accept is queued in bufferOut, the buffers can be reused on return.
+     * While a batch is open the buffers are only copied to bufferOut as long as it stays less than half full.
+     * @return the number of bytes written, 0 if queued and -1 on error. Nothing is sent and -1 is returned if the
+     * buffers would not fit in bufferOut should the socket accept none of them.
+     */
+    public long sendBuffers(ByteBuffer[] buffers, int offset, int length) {
+        if (length >= GATHER_SIZE) {
+            throw new IllegalArgumentException("Illegal length: " + length);
+        }
+        int remaining = 0;
+        for (int i=offset; i < offset + length; i++) {
+            remaining += buffers[i].remaining();
+        }
+        if (remaining > bufferOut.remaining()) {
+            log.log(Level.ERROR, log.getSB().append("Cannot send ").append(remaining).append(" bytes, only ").append(bufferOut.remaining()).append(" bytes left in bufferOut"));
+            return -1;
+        }
+        if (this.batch && bufferOut.position() + remaining < (bufferOut.capacity() >> 1)) {
+            for (int i=offset; i < offset + length; i++) {
+                bufferOut.put(buffers[i]);
+            }
+            return 0;
+        }
+        long len = -1;
+        try {
+            bufferOut.flip();
+            this.gatherBuffers[0] = bufferOut;
+            System.arraycopy(buffers, offset, this.gatherBuffers, 1, length);
+            len = socketChannel.write(this.gatherBuffers, 0, length + 1);
+            this.sendTime = eventLoop.currentMillis();
+            if (len < 0) {
+                log.log(Level.ERROR, log.getSB().append("Detected failure of TCP connection"));
+                reconnect();
+                return len;
             }
+            log.log(Level.DEBUG, log.getSB().append("Sent ").append(len).append(" bytes"));
+            bufferOut.compact();
+            for (int i=1; i <= length; i++) {
+                bufferOut.put(this.gatherBuffers[i]);
+            }
+            updateWriteInterest();
         } catch (Throwable e) {
             log.log(Level.ERROR, log.getSB().append("send() caught: "), e);
             reconnect();
+        } finally {
+            for (int i=1; i <= length; i++) {
+                this.gatherBuffers[i] = null;
+            }
         }
         return len;
     }
 
+    private void updateWriteInterest() {
+        // Only toggle OP_WRITE on transitions, each change may cost a system call
+        int ops = this.selectionKey.interestOps();
+        if (this.bufferOut.position() > 0) {
+            if ((ops & SelectionKey.OP_WRITE) == 0) {
+                this.selectionKey.interestOps(ops | SelectionKey.OP_WRITE);
+            }
+        } else {
+            if ((ops & SelectionKey.OP_WRITE) != 0) {
+                this.selectionKey.interestOps(ops & ~SelectionKey.OP_WRITE);
+            }
+        }
+    }
+
     @Override
     public void dispatch() {
+        int generation = this.generation;
         bufferIn.flip();
-        this.messageListener.onMessage(this, bufferIn);
+        if (this.framer == null) {
+            this.messageListener.onMessage(this, bufferIn);
+        } else {
+            dispatchFrames(generation);
+        }
+        if (generation != this.generation) {
+            // Closed by the listener, the bytes left belong to the previous connection
+            return;
+        }
         if (bufferIn.hasRemaining()) {
             bufferIn.compact();
         } else {
@@ -283,8 +516,34 @@ public class BaseTcpClient implements EventLoopListener, TimerListener, MessageS
         }
     }
 
+    private void dispatchFrames(int generation) {
+        int limit = bufferIn.limit();
+        int offset = bufferIn.position();
+        int length;
+        while ((length = this.framer.frameLength(bufferIn, offset, limit)) != -1) {
+            bufferIn.limit(offset + length);
+            bufferIn.position(offset);
+            this.messageListener.onMessage(this, bufferIn);
+            if (generation != this.generation) {
+                return;
+            }
+            bufferIn.limit(limit);
+            offset += length;
+        }
+        bufferIn.position(offset);
+        if (offset == 0 && limit == bufferIn.capacity()) {
+            throw new IllegalStateException("Frame larger than the receive buffer of " + bufferIn.capacity() + " bytes");
+        }
+    }
+
     @Override
     public void onSelect() {
+        if (this.batch) {
+            flush();
+        }
+        if (this.selectEventHandler != null) {
+            this.selectEventHandler.onSelect();
+        }
     }
 
     @Override
@@ -0,0 +1,98 @@
+package com.zerogc.net;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Splits a byte stream into frames.
+ * The framer only looks at the bytes in place, the caller hands each complete frame to the listener as a view of
+ * the receive buffer bounded by position and limit and compacts the buffer once the complete frames are consumed.
+ */
+public interface Framer {
+    /**
+     * Returns the length of the frame starting at offset, header included, or {@code -1} if the bytes up to limit
+     * do not hold a complete frame yet.
+     */
+    int frameLength(ByteBuffer buffer, int offset, int limit);
+
+    /** Frames of a constant length. */
+    public static class FixedLength implements Framer {
+        private final int length;
+
+        public FixedLength(int length) {
+            if (length <= 0) {
+                throw new IllegalArgumentException("Illegal length: " + length);
+            }
+            this.length = length;
+        }
+
+        @Override
+        public int frameLength(ByteBuffer buffer, int offset, int limit) {
+            return limit - offset >= this.length ? this.length : -1;
+        }
+    }
+
+    /** Frames starting with a 1 to 4 bytes unsigned length, which may or may not count the prefix itself. */
+    public static class LengthPrefix implements Framer {
+        private final int prefixLength;
+        private final boolean bigEndian;
+        private final int adjustment;
+
+        public LengthPrefix(int prefixLength, ByteOrder order, boolean inclusive) {
+            if (prefixLength < 1 || prefixLength > 4) {
+                throw new IllegalArgumentException("Illegal prefix length: " + prefixLength);
+            }
+            this.prefixLength = prefixLength;
+            this.bigEndian = order == ByteOrder.BIG_ENDIAN;
+            this.adjustment = inclusive ? 0 : prefixLength;
+        }
+
+        @Override
+        public int frameLength(ByteBuffer buffer, int offset, int limit) {
+            if (limit - offset < this.prefixLength) {
+                return -1;
+            }
+            long length = 0;
+            if (this.bigEndian) {
+                for (int i=0; i < this.prefixLength; i++) {
+                    length = (length << 8) | (buffer.get(offset + i) & 0xFF);
+                }
+            } else {
+                for (int i=this.prefixLength-1; i >= 0; i--) {
+                    length = (length << 8) | (buffer.get(offset + i) & 0xFF);
+                }
+            }
+            length += this.adjustment;
+            if (length < this.prefixLength || length > Integer.MAX_VALUE) {
+                throw new IllegalStateException("Illegal frame length: " + length);
+            }
+            return limit - offset >= length ? (int)length : -1;
+        }
+    }
+
+    /** SoupBinTCP packets, a 2 bytes big endian length not counting itself followed by the packet type and payload. */
+    public static class SoupBinTcp extends LengthPrefix {
+        public SoupBinTcp() {
+            super(2, ByteOrder.BIG_ENDIAN, false);
+        }
+    }
+
+    /** Frames terminated by a delimiter byte, the delimiter is part of the frame. */
+    public static class Delimiter implements Framer {
+        private final byte delimiter;
+
+        public Delimiter(byte delimiter) {
+            this.delimiter = delimiter;
+        }
+
+        @Override
+        public int frameLength(ByteBuffer buffer, int offset, int limit) {
+            for (int i=offset; i < limit; i++) {
+                if (buffer.get(i) == this.delimiter) {
+                    return i - offset + 1;
+                }
+            }
+            return -1;
+        }
+    }
+}
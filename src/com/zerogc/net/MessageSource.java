@@ -11,6 +11,8 @@ public interface MessageSource {
     byte[] getDstAddrBytes();
     int getDstPort();
     long getCaptureTime();
+    /** Returns the receive time in nanoseconds since the epoch, from the kernel when available. */
+    long getCaptureTimeNanos();
     ByteBuffer getBufferIn();
     void dispatch();
 }
@@ -0,0 +1,314 @@
+package com.zerogc.net;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+
+import com.zerogc.core.EventLoop;
+import com.zerogc.core.EventLoop.EventLoopListener;
+import com.zerogc.core.EventLoop.EventLoopSelectionKey;
+import com.zerogc.core.Native;
+import com.zerogc.logging.Level;
+import com.zerogc.logging.LogManager;
+import com.zerogc.logging.Logger;
+
+/**
+ * Publish UDP multicast datagrams in batches with sendmmsg.
+ * Messages are queued in a pre-allocated direct buffer, one packetSize slot per datagram, and
+ * flushed from onSelect() once the event loop is done with the callbacks of the iteration,
+ * so that a burst of messages costs a single system call.
+ * The publisher chains the onSelect() of the select listener registered before it.
+ */
+public class MulticastPublisher implements EventLoopListener {
+    public static final int BATCH_SIZE = 64;
+    public static final int PACKET_SIZE = 1472; // Ethernet MTU minus IP and UDP headers
+
+    protected final Logger log;
+
+    protected final EventLoop eventLoop;
+
+    private InetSocketAddress groupInetSocketAddress = null;
+    private InetAddress ifInetAddress = null;
+    private byte ttl = 1;
+    private boolean loop = true;
+    private int sendBufferSize = 4*1024*1024;
+
+    private DatagramChannel datagramChannel = null;
+    private EventLoopSelectionKey selectionKey = null;
+    private boolean selectRegistered = false;
+    private EventLoopListener selectEventHandler = null;
+    private int fd = -1;
+
+    private final int batchSize;
+    private final int packetSize;
+
+    // Queued datagrams are in slots [head, tail)
+    private final ByteBuffer bufferOut;
+    private final ByteBuffer lens;
+    private final long bufferOutAddress;
+    private final long lensAddress;
+    private int head = 0;
+    private int tail = 0;
+
+    public MulticastPublisher(EventLoop eventLoop, byte[] name) {
+        this(eventLoop, name, BATCH_SIZE, PACKET_SIZE);
+    }
+
+    public MulticastPublisher(EventLoop eventLoop, byte[] name, int batchSize, int packetSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Illegal batch size: " + batchSize);
+        }
+        if (packetSize <= 0) {
+            throw new IllegalArgumentException("Illegal packet size: " + packetSize);
+        }
+        this.log = LogManager.getLogger(name);
+        this.eventLoop = eventLoop;
+        this.batchSize = batchSize;
+        this.packetSize = packetSize;
+        this.bufferOut = ByteBuffer.allocateDirect(batchSize*packetSize);
+        this.lens = ByteBuffer.allocateDirect(batchSize*4).order(ByteOrder.nativeOrder());
+        this.bufferOutAddress = ((sun.nio.ch.DirectBuffer)this.bufferOut).address();
+        this.lensAddress = ((sun.nio.ch.DirectBuffer)this.lens).address();
+    }
+
+    // --------------------- Configuration ---------------------
+
+    public InetSocketAddress getGroupInetSocketAddress() {
+        return groupInetSocketAddress;
+    }
+    public void setGroupInetSocketAddress(InetSocketAddress groupInetSocketAddress) {
+        this.groupInetSocketAddress = groupInetSocketAddress;
+    }
+
+    public InetAddress getIfInetAddress() {
+        return ifInetAddress;
+    }
+    /** The interface to publish on, the default multicast interface if null. */
+    public void setIfInetAddress(InetAddress ifInetAddress) {
+        this.ifInetAddress = ifInetAddress;
+    }
+
+    public byte getTtl() {
+        return ttl;
+    }
+    public void setTtl(byte ttl) {
+        this.ttl = ttl;
+    }
+
+    public boolean isLoop() {
+        return loop;
+    }
+    public void setLoop(boolean loop) {
+        this.loop = loop;
+    }
+
+    public int getSendBufferSize() {
+        return sendBufferSize;
+    }
+    public void setSendBufferSize(int sendBufferSize) {
+        this.sendBufferSize = sendBufferSize;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+    public int getPacketSize() {
+        return packetSize;
+    }
+
+    /** Returns the number of queued datagrams. */
+    public int pending() {
+        return this.tail - this.head;
+    }
+
+    private static int toInt(InetAddress inetAddress) {
+        if (inetAddress == null) {
+            return 0;
+        }
+        byte[] address = inetAddress.getAddress();
+        return ((address[0] & 0xff) << 24) | ((address[1] & 0xff) << 16) | ((address[2] & 0xff) << 8) | (address[3] & 0xff);
+    }
+
+    public void open() throws IOException {
+        log.log(Level.INFO, log.getSB().append("Open publisher to ").append(this.groupInetSocketAddress));
+
+        this.head = this.tail = 0;
+        this.datagramChannel = DatagramChannel.open();
+        this.datagramChannel.configureBlocking(false);
+        this.datagramChannel.socket().setSendBufferSize(this.sendBufferSize);
+        this.fd = Native.getFdVal_DatagramChannel(this.datagramChannel);
+        if (this.groupInetSocketAddress.getAddress().isMulticastAddress()) {
+            if (this.ifInetAddress != null && Native.setMcastIf(this.datagramChannel, toInt(this.ifInetAddress)) != 0) {
+                log.log(Level.WARN, log.getSB().append("Failed to set the multicast interface, errno: ").append(Native.errno()));
+            }
+            Native.setMcastTtl(this.datagramChannel, this.ttl);
+            Native.setMcastLoop(this.datagramChannel, this.loop ? (byte)1 : (byte)0);
+        }
+        // Connect so that sendmmsg doesn't need any destination address
+        this.datagramChannel.connect(this.groupInetSocketAddress);
+
+        this.selectionKey = this.eventLoop.register(this.datagramChannel, 0, this);
+        // Chained once, the publisher stays in the select chain when closed and reopened
+        if (!this.selectRegistered) {
+            this.selectEventHandler = this.eventLoop.registerSelect(this);
+            this.selectRegistered = true;
+        }
+    }
+
+    public boolean isOpen() {
+        return this.datagramChannel != null && this.datagramChannel.isOpen();
+    }
+
+    public void close() {
+        if (this.selectionKey != null) {
+            this.selectionKey.cancel();
+            this.selectionKey = null;
+        }
+        if (this.datagramChannel != null && this.datagramChannel.isOpen()) {
+            log.log(Level.INFO, log.getSB().append("Close publisher to ").append(this.groupInetSocketAddress));
+            try {
+                this.datagramChannel.close();
+            } catch (IOException e) {
+                log.log(Level.INFO, "IOException", e);
+            }
+        }
+        this.fd = -1;
+        this.head = this.tail = 0;
+    }
+
+    // --------------------- Publisher ---------------------
+
+    /**
+     * Returns the buffer to write the next datagram to, between its position and limit,
+     * or null if the queue is full and can't be flushed. Call endMessage() once written.
+     */
+    public ByteBuffer beginMessage() {
+        if (this.tail == this.batchSize) {
+            flush();
+            if (this.tail == this.batchSize) {
+                log.log(Level.WARN, log.getSB().append("Send queue full, ").append(pending()).append(" datagrams pending"));
+                return null;
+            }
+        }
+        int position = this.tail*this.packetSize;
+        this.bufferOut.clear();
+        this.bufferOut.position(position);
+        this.bufferOut.limit(position + this.packetSize);
+        return this.bufferOut;
+    }
+
+    /** Queue the datagram written to the buffer returned by beginMessage(). */
+    public void endMessage() {
+        this.lens.putInt(this.tail*4, this.bufferOut.position() - this.tail*this.packetSize);
+        this.tail++;
+    }
+
+    /**
+     * Queue a copy of the remaining bytes of the buffer.
+     * @return false if the queue is full or the datagram is too large.
+     */
+    public boolean send(ByteBuffer buffer) {
+        if (buffer.remaining() > this.packetSize) {
+            log.log(Level.ERROR, log.getSB().append("Datagram of ").append(buffer.remaining()).append(" bytes exceeds packet size"));
+            return false;
+        }
+        ByteBuffer message = beginMessage();
+        if (message == null) {
+            return false;
+        }
+        message.put(buffer);
+        endMessage();
+        return true;
+    }
+
+    /**
+     * Send the queued datagrams, the ones the socket can't take are kept queued and
+     * OP_WRITE is enabled to send them once the socket becomes writable.
+     * @return the number of datagrams sent.
+     */
+    public int flush() {
+        int sent = 0;
+        while (this.head < this.tail && this.fd != -1) {
+            int vlen = this.tail - this.head;
+            if (vlen > Native.SENDMMSG_MAX_VLEN) {
+                vlen = Native.SENDMMSG_MAX_VLEN;
+            }
+            int count = Native.sendmmsg(this.fd, this.lensAddress + this.head*4, this.bufferOutAddress + this.head*this.packetSize, this.packetSize, vlen);
+            if (count < 0) {
+                log.log(Level.ERROR, log.getSB().append("sendmmsg failed, errno: ").append(Native.errno()));
+                // Drop the datagram that failed
+                count = 1;
+            } else if (count == 0) {
+                break;
+            }
+            log.log(Level.DEBUG, log.getSB().append("Sent ").append(count).append(" datagrams"));
+            this.head += count;
+            sent += count;
+        }
+
+        if (this.head == this.tail) {
+            this.head = this.tail = 0;
+        } else if (this.head > 0) {
+            // Move the pending datagrams to the front to make room
+            this.bufferOut.limit(this.tail*this.packetSize).position(this.head*this.packetSize);
+            this.bufferOut.compact();
+            this.lens.limit(this.tail*4).position(this.head*4);
+            this.lens.compact();
+            this.tail -= this.head;
+            this.head = 0;
+        }
+
+        // Only toggle OP_WRITE on transitions, each change may cost a system call
+        if (this.selectionKey != null) {
+            int ops = this.selectionKey.interestOps();
+            if (this.head < this.tail) {
+                if ((ops & SelectionKey.OP_WRITE) == 0) {
+                    this.selectionKey.interestOps(ops | SelectionKey.OP_WRITE);
+                }
+            } else if ((ops & SelectionKey.OP_WRITE) != 0) {
+                this.selectionKey.interestOps(ops & ~SelectionKey.OP_WRITE);
+            }
+        }
+        return sent;
+    }
+
+    // --------------------- IOHandler ---------------------
+
+    @Override
+    public void onSelect() {
+        if (this.head < this.tail) {
+            flush();
+        }
+        if (this.selectEventHandler != null) {
+            this.selectEventHandler.onSelect();
+        }
+    }
+
+    @Override
+    public void onWrite(SelectableChannel selectableChannel) {
+        flush();
+    }
+
+    @Override
+    public void onRead(SelectableChannel selectableChannel) {
+    }
+
+    @Override
+    public void onConnect(SelectableChannel selectableChannel) {
+    }
+
+    @Override
+    public void onAccept(SelectableChannel selectableChannel) {
+    }
+
+    @Override
+    public void onClose(SelectableChannel selectableChannel) {
+        log.log(Level.INFO, "onClose");
+        close();
+    }
+}
@@ -0,0 +1,311 @@
+package com.zerogc.net;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+
+import com.zerogc.core.ByteSlice;
+import com.zerogc.core.EventLoop;
+import com.zerogc.core.EventLoop.EventLoopListener;
+import com.zerogc.core.EventLoop.EventLoopSelectionKey;
+import com.zerogc.core.Native;
+import com.zerogc.logging.Level;
+import com.zerogc.logging.LogManager;
+import com.zerogc.logging.Logger;
+
+/**
+ * Receive UDP multicast datagrams in batches with recvmmsg.
+ * Each onRead pulls up to batchSize datagrams in a pre-allocated direct buffer, one packetSize slot
+ * per datagram, and dispatches them one by one with the source, destination and kernel timestamp
+ * of the datagram exposed through the MessageSource getters.
+ * Datagrams larger than packetSize are truncated by the kernel, they are dropped and counted.
+ */
+public class MulticastReceiver implements EventLoopListener, MessageSource {
+    public static final int BATCH_SIZE = 32;
+    public static final int PACKET_SIZE = 2048;
+    // Maximum number of full batches read by a single onRead
+    public static final int MAX_BATCHES = 8;
+
+    protected final Logger log;
+
+    protected final EventLoop eventLoop;
+
+    private InetSocketAddress groupInetSocketAddress = null;
+    private InetAddress ifInetAddress = null;
+    private int receiveBufferSize = 4*1024*1024;
+
+    private DatagramChannel datagramChannel = null;
+    private EventLoopSelectionKey selectionKey = null;
+    private int fd = -1;
+
+    private MessageListener messageListener;
+
+    private final int batchSize;
+    private final int packetSize;
+    private int maxBatches = MAX_BATCHES;
+    private long truncatedCount = 0;
+
+    private byte[] name;
+    private long captureTime;
+    private long captureTimeNanos;
+    private final byte[] srcAddrBytes = new byte[4];
+    private int srcPort;
+    private final byte[] dstAddrBytes = new byte[4];
+    private int dstPort;
+    // Datagram slots and their descriptors filled by recvmmsg
+    private final ByteBuffer bufferIn;
+    private final ByteBuffer msgs;
+    private final long bufferInAddress;
+    private final long msgsAddress;
+    private int msgIndex = 0;
+
+    public MulticastReceiver(EventLoop eventLoop, byte[] name) {
+        this(eventLoop, name, BATCH_SIZE, PACKET_SIZE);
+    }
+
+    public MulticastReceiver(EventLoop eventLoop, byte[] name, int batchSize, int packetSize) {
+        if (batchSize <= 0 || batchSize > Native.RECVMMSG_MAX_VLEN) {
+            throw new IllegalArgumentException("Illegal batch size: " + batchSize);
+        }
+        if (packetSize <= 0) {
+            throw new IllegalArgumentException("Illegal packet size: " + packetSize);
+        }
+        this.log = LogManager.getLogger(name);
+        this.eventLoop = eventLoop;
+        this.name = name;
+        this.batchSize = batchSize;
+        this.packetSize = packetSize;
+        this.bufferIn = ByteBuffer.allocateDirect(batchSize*packetSize);
+        this.msgs = ByteBuffer.allocateDirect(batchSize*Native.MSG_SIZE).order(ByteOrder.nativeOrder());
+        this.bufferInAddress = ((sun.nio.ch.DirectBuffer)this.bufferIn).address();
+        this.msgsAddress = ((sun.nio.ch.DirectBuffer)this.msgs).address();
+    }
+
+    // --------------------- Configuration ---------------------
+
+    public MessageListener getMessageListener() {
+        return messageListener;
+    }
+    public void setMessageListener(MessageListener messageListener) {
+        this.messageListener = messageListener;
+    }
+
+    public InetSocketAddress getGroupInetSocketAddress() {
+        return groupInetSocketAddress;
+    }
+    /** The multicast group and port to receive from, a unicast address only binds the port. */
+    public void setGroupInetSocketAddress(InetSocketAddress groupInetSocketAddress) {
+        this.groupInetSocketAddress = groupInetSocketAddress;
+    }
+
+    public InetAddress getIfInetAddress() {
+        return ifInetAddress;
+    }
+    /** The interface to join the group on, any interface if null. */
+    public void setIfInetAddress(InetAddress ifInetAddress) {
+        this.ifInetAddress = ifInetAddress;
+    }
+
+    public int getReceiveBufferSize() {
+        return receiveBufferSize;
+    }
+    public void setReceiveBufferSize(int receiveBufferSize) {
+        this.receiveBufferSize = receiveBufferSize;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+    public int getPacketSize() {
+        return packetSize;
+    }
+
+    public int getMaxBatches() {
+        return maxBatches;
+    }
+    /** Bound the datagrams read by a single onRead to maxBatches*batchSize so that a sustained flow does not starve timers and other channels. */
+    public void setMaxBatches(int maxBatches) {
+        if (maxBatches <= 0) {
+            throw new IllegalArgumentException("Illegal max batches: " + maxBatches);
+        }
+        this.maxBatches = maxBatches;
+    }
+
+    /** Returns the number of datagrams dropped because they were larger than packetSize. */
+    public long getTruncatedCount() {
+        return truncatedCount;
+    }
+
+    private static int toInt(InetAddress inetAddress) {
+        if (inetAddress == null) {
+            return 0;
+        }
+        byte[] address = inetAddress.getAddress();
+        return ((address[0] & 0xff) << 24) | ((address[1] & 0xff) << 16) | ((address[2] & 0xff) << 8) | (address[3] & 0xff);
+    }
+
+    public void open() throws IOException {
+        log.log(Level.INFO, log.getSB().append("Open receiver on ").append(this.groupInetSocketAddress));
+
+        this.datagramChannel = DatagramChannel.open();
+        this.datagramChannel.configureBlocking(false);
+        this.datagramChannel.socket().setReuseAddress(true);
+        this.datagramChannel.socket().setReceiveBufferSize(this.receiveBufferSize);
+        this.datagramChannel.socket().bind(new InetSocketAddress(this.groupInetSocketAddress.getPort()));
+        this.fd = Native.getFdVal_DatagramChannel(this.datagramChannel);
+
+        if (Native.setPktInfo(this.datagramChannel, (byte)1) != 0) {
+            log.log(Level.WARN, log.getSB().append("Failed to enable IP_PKTINFO, errno: ").append(Native.errno()));
+        }
+        if (Native.setTimestampNs(this.fd, (byte)1) != 0) {
+            log.log(Level.WARN, log.getSB().append("Failed to enable SO_TIMESTAMPNS, errno: ").append(Native.errno()));
+        }
+        InetAddress groupInetAddress = this.groupInetSocketAddress.getAddress();
+        if (groupInetAddress.isMulticastAddress()) {
+            if (Native.joinMcastGroup(this.datagramChannel, toInt(groupInetAddress), toInt(this.ifInetAddress)) != 0) {
+                close();
+                throw new IOException("Failed to join " + groupInetAddress + ", errno: " + Native.errno());
+            }
+        }
+        this.dstPort = this.datagramChannel.socket().getLocalPort();
+
+        this.selectionKey = this.eventLoop.register(this.datagramChannel, SelectionKey.OP_READ, this);
+    }
+
+    public boolean isOpen() {
+        return this.datagramChannel != null && this.datagramChannel.isOpen();
+    }
+
+    public void close() {
+        if (this.selectionKey != null) {
+            this.selectionKey.cancel();
+            this.selectionKey = null;
+        }
+        if (this.datagramChannel != null && this.datagramChannel.isOpen()) {
+            log.log(Level.INFO, log.getSB().append("Close receiver on ").append(this.groupInetSocketAddress));
+            try {
+                this.datagramChannel.close();
+            } catch (IOException e) {
+                log.log(Level.INFO, "IOException", e);
+            }
+        }
+        this.fd = -1;
+    }
+
+    // --------------------- MessageSource ---------------------
+
+    @Override
+    public ByteSlice getName(ByteSlice slice) {
+        return slice.set(name, 0, name.length);
+    }
+    @Override
+    public long getCaptureTime() {
+        return this.captureTime;
+    }
+    @Override
+    public long getCaptureTimeNanos() {
+        return this.captureTimeNanos;
+    }
+    @Override
+    public byte[] getSrcAddrBytes() {
+        return srcAddrBytes;
+    }
+    @Override
+    public int getSrcPort() {
+        return srcPort;
+    }
+    @Override
+    public byte[] getDstAddrBytes() {
+        return dstAddrBytes;
+    }
+    @Override
+    public int getDstPort() {
+        return dstPort;
+    }
+    @Override
+    public ByteBuffer getBufferIn() {
+        return bufferIn;
+    }
+
+    // --------------------- IOHandler ---------------------
+
+    @Override
+    public void onRead(SelectableChannel selectableChannel) {
+        // Keep reading while batches are full, edge triggered event loops won't notify pending datagrams again
+        int count;
+        int batches = 0;
+        do {
+            count = Native.recvmmsg(this.fd, this.msgsAddress, this.bufferInAddress, this.packetSize, this.batchSize);
+            if (count < 0) {
+                // Re-arm anyway, returning would leave a one shot key disarmed for good
+                log.log(Level.ERROR, log.getSB().append("recvmmsg failed, errno: ").append(Native.errno()));
+                break;
+            }
+            log.log(Level.DEBUG, log.getSB().append("Received ").append(count).append(" datagrams"));
+            for (this.msgIndex = 0; this.msgIndex < count && this.fd != -1; this.msgIndex++) {
+                dispatch();
+            }
+        } while (count == this.batchSize && this.fd != -1 && ++batches < this.maxBatches);
+
+        if (this.selectionKey != null) {
+            if (count == this.batchSize || count < 0) {
+                // Datagrams may be left in the socket, adding the interest back makes edge triggered loops report them again
+                this.selectionKey.interestOps(0);
+            }
+            // Also re-arms one shot keys
+            this.selectionKey.interestOps(SelectionKey.OP_READ);
+        }
+    }
+
+    /** Dispatch the current datagram of the batch. */
+    @Override
+    public void dispatch() {
+        int offset = this.msgIndex*Native.MSG_SIZE;
+        if ((this.msgs.getInt(offset + Native.MSG_FLAGS_OFFSET) & Native.MSG_TRUNC) != 0) {
+            this.truncatedCount++;
+            log.log(Level.WARN, log.getSB().append("Dropped datagram larger than ").append(this.packetSize).append(" bytes, total dropped: ").append(this.truncatedCount));
+            return;
+        }
+        for (int i=0; i < 4; i++) {
+            this.srcAddrBytes[i] = this.msgs.get(offset + Native.MSG_SRC_ADDR_OFFSET + i);
+            this.dstAddrBytes[i] = this.msgs.get(offset + Native.MSG_DST_ADDR_OFFSET + i);
+        }
+        this.srcPort = this.msgs.getInt(offset + Native.MSG_SRC_PORT_OFFSET);
+        long timestamp = this.msgs.getLong(offset + Native.MSG_TIMESTAMP_OFFSET);
+        this.captureTimeNanos = timestamp != 0 ? timestamp : eventLoop.currentRealtimeNanos();
+        this.captureTime = this.captureTimeNanos/1000000;
+
+        int position = this.msgIndex*this.packetSize;
+        this.bufferIn.clear();
+        this.bufferIn.position(position);
+        this.bufferIn.limit(position + this.msgs.getInt(offset + Native.MSG_LEN_OFFSET));
+        this.messageListener.onMessage(this, this.bufferIn);
+    }
+
+    @Override
+    public void onWrite(SelectableChannel selectableChannel) {
+    }
+
+    @Override
+    public void onSelect() {
+    }
+
+    @Override
+    public void onConnect(SelectableChannel selectableChannel) {
+    }
+
+    @Override
+    public void onAccept(SelectableChannel selectableChannel) {
+    }
+
+    @Override
+    public void onClose(SelectableChannel selectableChannel) {
+        log.log(Level.INFO, "onClose");
+        close();
+    }
+}
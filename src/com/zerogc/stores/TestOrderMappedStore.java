@@ -0,0 +1,267 @@
+/*
+ * PLEASE DO NOT EDIT!
+ *
+ * This code has been automatically generated.
+ * Generator: com.zerogc.messages.GeneratorStores
+ * Schema: tools/resources/TestStores.xsd
+ */
+
+
+package com.zerogc.stores;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import com.zerogc.core.ByteSlice;
+import com.zerogc.core.ByteStringBuilder;
+import com.zerogc.core.ByteUtils;
+import com.zerogc.logging.Level;
+import com.zerogc.logging.LogManager;
+import com.zerogc.logging.Logger;
+
+/**
+ * Order records kept in a memory mapped file.
+ * A restarted process re-attaches to the records of the previous run instead of rebuilding them,
+ * the header records the capacity, the high mark and a hash of the record layout.
+ */
+public class TestOrderMappedStore {
+    protected final Logger log;
+
+    public static final long MAGIC = 0x5A65726F47435354L;
+    public static final long SCHEMA_HASH = 0xB84A09522868D3F5L;
+
+    public static class HeaderOffsets {
+        public static final int magic = 0;
+        public static final int schemaHash = 8;
+        public static final int capacity = 16;
+        public static final int highMark = 20;
+        // First free slot plus one so that a new file starts with no free slot
+        public static final int freeSlot = 24;
+        public static final int size = 28;
+        public static final int end = 64;
+    }
+
+    public static class RecordLengths {
+        public static final int insertDateTime = 8;
+        public static final int orderNumber = 8;
+        public static final int Price = 8;
+        public static final int instrument = 4;
+        public static final int quantity = 4;
+        public static final int side = 1;
+    }
+
+    public static class RecordOffsets {
+        public static final int insertDateTime = 0;
+        public static final int orderNumber = 8;
+        public static final int Price = 16;
+        public static final int instrument = 24;
+        public static final int quantity = 28;
+        public static final int side = 32;
+        public static final int end = 40;
+    }
+
+    private final String path;
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private MappedByteBuffer buffer;
+
+    protected int capacity = 0;
+    private int[] generations;
+
+    private final ByteSlice emptySlice = new ByteSlice(new byte[0], 0, 0);
+    private final ByteSlice slice = new ByteSlice();
+
+    /**
+     * Attach to the records in path, the file is created if it does not exist.
+     * @throws IOException if the file was written with another record layout.
+     */
+    public TestOrderMappedStore(String name, String path, int initialCapacity) throws IOException {
+        log = LogManager.getLogger(name);
+        this.path = path;
+        this.file = new RandomAccessFile(path, "rw");
+        this.channel = file.getChannel();
+        if (channel.size() >= HeaderOffsets.end) {
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HeaderOffsets.end);
+            buffer.order(ByteOrder.nativeOrder());
+            if (buffer.getLong(HeaderOffsets.magic) != MAGIC || buffer.getLong(HeaderOffsets.schemaHash) != SCHEMA_HASH) {
+                channel.close();
+                file.close();
+                throw new IOException("Incompatible TestOrderMappedStore in " + path);
+            }
+            capacity = buffer.getInt(HeaderOffsets.capacity);
+            map(capacity);
+            log.log(Level.INFO, log.getSB().append("Attached TestOrderMappedStore to ").append(path).append(" with high mark ").append(getHighMark()));
+        }
+        if (capacity < initialCapacity) {
+            grow(initialCapacity);
+        }
+    }
+
+    public String getPath() {
+       return path;
+    }
+
+    public int getCapacity() {
+       return capacity;
+    }
+
+    private void map(int capacity) throws IOException {
+        if ((long)capacity*RecordOffsets.end + HeaderOffsets.end > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Illegal Capacity: " + capacity);
+        }
+        // Mapping past the end extends the file with zeros
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HeaderOffsets.end + capacity*RecordOffsets.end);
+        buffer.order(ByteOrder.nativeOrder());
+
+        int[] newGenerations = new int[capacity];
+        if (generations != null) {
+            System.arraycopy(generations, 0, newGenerations, 0, generations.length);
+        }
+        generations = newGenerations;
+    }
+
+    protected void grow(int newCapacity) throws IOException {
+        if (capacity > 0) {
+            log.log(Level.WARN, log.getSB().append("Resizing TestOrderMappedStore from ").append(capacity).append(" to ").append(newCapacity));
+        }
+        map(newCapacity);
+        buffer.putLong(HeaderOffsets.schemaHash, SCHEMA_HASH);
+        buffer.putInt(HeaderOffsets.capacity, newCapacity);
+        buffer.putLong(HeaderOffsets.magic, MAGIC);
+        capacity = newCapacity;
+    }
+
+    /** Write the records through to the file, the OS does it anyway unless the machine itself goes down. */
+    public void force() {
+        buffer.force();
+    }
+
+    public void close() throws IOException {
+        force();
+        channel.close();
+        file.close();
+    }
+
+    /** @return the number of slots used so far, persisted with the records. */
+    public int getHighMark() {
+        return buffer.getInt(HeaderOffsets.highMark);
+    }
+
+    /** @return the number of allocated slots. */
+    public int size() {
+        return buffer.getInt(HeaderOffsets.size);
+    }
+
+    /** @return a cleared slot, growing the store when every slot up to the capacity is allocated. */
+    public int allocate() throws IOException {
+        int slot = buffer.getInt(HeaderOffsets.freeSlot) - 1;
+        if (slot != -1) {
+            buffer.putInt(HeaderOffsets.freeSlot, getLink(slot) + 1);
+            clear(slot);
+        } else {
+            slot = buffer.getInt(HeaderOffsets.highMark);
+            if (slot == capacity) {
+                grow(capacity == 0 ? 16 : 2*capacity);
+            }
+            buffer.putInt(HeaderOffsets.highMark, slot + 1);
+        }
+        buffer.putInt(HeaderOffsets.size, buffer.getInt(HeaderOffsets.size) + 1);
+        return slot;
+    }
+
+    /** Return the slot to the free list, its first long or int is overwritten with the link to the next free slot. */
+    public void free(int slot) {
+        generations[slot]++;
+        setLink(slot, buffer.getInt(HeaderOffsets.freeSlot) - 1);
+        buffer.putInt(HeaderOffsets.freeSlot, slot + 1);
+        buffer.putInt(HeaderOffsets.size, buffer.getInt(HeaderOffsets.size) - 1);
+    }
+
+    private int getLink(int slot) {
+        return this.buffer.getInt(HeaderOffsets.end + slot*RecordOffsets.end);
+    }
+
+    private void setLink(int slot, int next) {
+        this.buffer.putInt(HeaderOffsets.end + slot*RecordOffsets.end, next);
+    }
+
+    /** @return a handle to the slot which turns stale once the slot is freed. */
+    public long getHandle(int slot) {
+        return ((long)generations[slot] << 32) | slot;
+    }
+
+    public boolean isValid(long handle) {
+        int slot = (int)handle;
+        return slot >= 0 && slot < buffer.getInt(HeaderOffsets.highMark) && generations[slot] == (int)(handle >>> 32);
+    }
+
+    /** @throws IllegalStateException if the slot was freed since the handle was taken. */
+    public int getSlot(long handle) {
+        if (!isValid(handle)) {
+            throw new IllegalStateException("Stale handle: " + handle);
+        }
+        return (int)handle;
+    }
+
+    public void setInsertDateTime(int slot, long value) {
+        this.buffer.putLong(HeaderOffsets.end + slot*RecordOffsets.end + RecordOffsets.insertDateTime, value);
+    }
+    public long getInsertDateTime(int slot) {
+        return this.buffer.getLong(HeaderOffsets.end + slot*RecordOffsets.end + RecordOffsets.insertDateTime);
+    }
+    public void setOrderNumber(int slot, long value) {
+        this.buffer.putLong(HeaderOffsets.end + slot*RecordOffsets.end + RecordOffsets.orderNumber, value);
+    }
+    public long getOrderNumber(int slot) {
+        return this.buffer.getLong(HeaderOffsets.end + slot*RecordOffsets.end + RecordOffsets.orderNumber);
+    }
+    public void setPrice(int slot, long value) {
+        this.buffer.putLong(HeaderOffsets.end + slot*RecordOffsets.end + RecordOffsets.Price, value);
+    }
+    public long getPrice(int slot) {
+        return this.buffer.getLong(HeaderOffsets.end + slot*RecordOffsets.end + RecordOffsets.Price);
+    }
+    public void setInstrument(int slot, int value) {
+        this.buffer.putInt(HeaderOffsets.end + slot*RecordOffsets.end + RecordOffsets.instrument, value);
+    }
+    public int getInstrument(int slot) {
+        return this.buffer.getInt(HeaderOffsets.end + slot*RecordOffsets.end + RecordOffsets.instrument);
+    }
+    public void setQuantity(int slot, int value) {
+        this.buffer.putInt(HeaderOffsets.end + slot*RecordOffsets.end + RecordOffsets.quantity, value);
+    }
+    public int getQuantity(int slot) {
+        return this.buffer.getInt(HeaderOffsets.end + slot*RecordOffsets.end + RecordOffsets.quantity);
+    }
+    public void setSide(int slot, byte value) {
+        this.buffer.put(HeaderOffsets.end + slot*RecordOffsets.end + RecordOffsets.side, value);
+    }
+    public byte getSide(int slot) {
+        return this.buffer.get(HeaderOffsets.end + slot*RecordOffsets.end + RecordOffsets.side);
+    }
+
+    public void clear(int slot) {
+        setInsertDateTime(slot, 0);
+        setOrderNumber(slot, 0);
+        setPrice(slot, 0);
+        setInstrument(slot, 0);
+        setQuantity(slot, 0);
+        setSide(slot, (byte)0);
+    }
+
+
+    public ByteStringBuilder toString(ByteStringBuilder sb, int slot) {
+        sb.append("TestOrderMappedStore");
+        sb.append("[insertDateTime=").append(getInsertDateTime(slot)).append(']');
+        sb.append("[orderNumber=").append(getOrderNumber(slot)).append(']');
+        sb.append("[Price=").append(getPrice(slot)).append(']');
+        sb.append("[instrument=").append(getInstrument(slot)).append(']');
+        sb.append("[quantity=").append(getQuantity(slot)).append(']');
+        sb.append("[side=").append(getSide(slot)).append(']');
+        sb.append("\n");
+        return sb;
+    }
+}
@@ -0,0 +1,356 @@
+/*
+ * PLEASE DO NOT EDIT!
+ *
+ * This code has been automatically generated.
+ * Generator: com.zerogc.messages.GeneratorStores
+ * Schema: tools/resources/TestStores.xsd
+ */
+
+
+package com.zerogc.stores;
+
+import java.util.Arrays;
+
+import com.zerogc.collections.IntRbTree;
+import com.zerogc.collections.LongIntHashMap;
+import com.zerogc.collections.LongRbTree;
+import com.zerogc.core.ByteSlice;
+import com.zerogc.core.ByteStringBuilder;
+import com.zerogc.core.ByteUtils;
+import com.zerogc.logging.Level;
+import com.zerogc.logging.LogManager;
+import com.zerogc.logging.Logger;
+
+/**
+ * Order records packed in rows of a single long array.
+ * Reading a whole record touches one cache line rather than one per column type array.
+ */
+public class TestOrderRowStore {
+    protected final Logger log;
+
+    public static class RecordLengths {
+        public static final int insertDateTime = 8;
+        public static final int orderNumber = 8;
+        public static final int Price = 8;
+        public static final int instrument = 4;
+        public static final int quantity = 4;
+        public static final int side = 1;
+    }
+
+    public static class RecordOffsets {
+        public static final int insertDateTime = 0;
+        public static final int orderNumber = 8;
+        public static final int Price = 16;
+        public static final int instrument = 24;
+        public static final int quantity = 28;
+        public static final int side = 32;
+        public static final int end = 40;
+    }
+
+    public static class InstrumentIndex extends IntRbTree {
+        private int[] slot;
+
+        public InstrumentIndex(String name) {
+            super(name);
+        }
+
+        @Override
+        protected void grow(int capacity, int newCapacity) {
+            super.grow(capacity, newCapacity);
+
+            int[] newSlot = new int[newCapacity];
+            if (capacity > 0) {
+                System.arraycopy(this.slot, 0, newSlot, 0, capacity);
+            }
+            this.slot = newSlot;
+        }
+
+        public int getSlot(int entry) {
+            return this.slot[entry];
+        }
+
+        void setSlot(int entry, int slot) {
+            this.slot[entry] = slot;
+        }
+    }
+
+    public static class PriceIndex extends LongRbTree {
+        private int[] slot;
+
+        public PriceIndex(String name) {
+            super(name);
+        }
+
+        @Override
+        protected void grow(int capacity, int newCapacity) {
+            super.grow(capacity, newCapacity);
+
+            int[] newSlot = new int[newCapacity];
+            if (capacity > 0) {
+                System.arraycopy(this.slot, 0, newSlot, 0, capacity);
+            }
+            this.slot = newSlot;
+        }
+
+        public int getSlot(int entry) {
+            return this.slot[entry];
+        }
+
+        void setSlot(int entry, int slot) {
+            this.slot[entry] = slot;
+        }
+    }
+
+    private long[] longs;
+
+    protected int capacity = 0;
+    protected int highMark = 0;
+    protected int size = 0;
+    private int freeSlot = -1;
+    private int[] generations;
+    private final LongIntHashMap orderNumberIndex;
+    private final InstrumentIndex instrumentIndex;
+    private int[] instrumentEntries;
+    private final PriceIndex priceIndex;
+    private int[] priceEntries;
+
+    private final ByteSlice emptySlice = new ByteSlice(new byte[0], 0, 0);
+    private final ByteSlice slice = new ByteSlice();
+
+    public TestOrderRowStore(String name, int initialCapacity) {
+        log = LogManager.getLogger(name);
+        orderNumberIndex = new LongIntHashMap(name + ".orderNumber");
+        instrumentIndex = new InstrumentIndex(name + ".instrument");
+        priceIndex = new PriceIndex(name + ".Price");
+        grow(initialCapacity);
+    }
+
+    public int getCapacity() {
+       return capacity;
+    }
+
+    protected void grow(int newCapacity) {
+        if (capacity > 0) {
+            log.log(Level.WARN, log.getSB().append("Resizing TestOrderRowStore from ").append(capacity).append(" to ").append(newCapacity));
+        }
+        long[] newLongs = new long[newCapacity*(RecordOffsets.end >> 3)];
+        if (capacity > 0) {
+            System.arraycopy(longs, 0, newLongs, 0, capacity*(RecordOffsets.end >> 3));
+        }
+        longs = newLongs;
+        int[] newGenerations = new int[newCapacity];
+        if (capacity > 0) {
+            System.arraycopy(generations, 0, newGenerations, 0, capacity);
+        }
+        generations = newGenerations;
+        int[] newInstrumentEntries = new int[newCapacity];
+        Arrays.fill(newInstrumentEntries, capacity, newCapacity, -1);
+        if (capacity > 0) {
+            System.arraycopy(instrumentEntries, 0, newInstrumentEntries, 0, capacity);
+        }
+        instrumentEntries = newInstrumentEntries;
+        int[] newPriceEntries = new int[newCapacity];
+        Arrays.fill(newPriceEntries, capacity, newCapacity, -1);
+        if (capacity > 0) {
+            System.arraycopy(priceEntries, 0, newPriceEntries, 0, capacity);
+        }
+        priceEntries = newPriceEntries;
+        capacity = newCapacity;
+    }
+
+    /** @return the number of slots used so far. */
+    public int getHighMark() {
+        return highMark;
+    }
+
+    /** @return the number of allocated slots. */
+    public int size() {
+        return size;
+    }
+
+    /** @return a cleared slot, growing the store when every slot up to the capacity is allocated. */
+    public int allocate() {
+        int slot = freeSlot;
+        if (slot != -1) {
+            freeSlot = getLink(slot);
+            clear(slot);
+        } else {
+            slot = highMark;
+            if (slot == capacity) {
+                grow(capacity == 0 ? 16 : 2*capacity);
+            }
+            highMark++;
+        }
+        size++;
+        return slot;
+    }
+
+    /** Return the slot to the free list, its first long or int is overwritten with the link to the next free slot. */
+    public void free(int slot) {
+        unindexOrderNumber(slot);
+        unindexInstrument(slot);
+        unindexPrice(slot);
+        generations[slot]++;
+        setLink(slot, freeSlot);
+        freeSlot = slot;
+        size--;
+    }
+
+    private int getLink(int slot) {
+        return (int)this.longs[slot*(RecordOffsets.end >> 3)];
+    }
+
+    private void setLink(int slot, int next) {
+        this.longs[slot*(RecordOffsets.end >> 3)] = next;
+    }
+
+    /** @return a handle to the slot which turns stale once the slot is freed. */
+    public long getHandle(int slot) {
+        return ((long)generations[slot] << 32) | slot;
+    }
+
+    public boolean isValid(long handle) {
+        int slot = (int)handle;
+        return slot >= 0 && slot < highMark && generations[slot] == (int)(handle >>> 32);
+    }
+
+    /** @throws IllegalStateException if the slot was freed since the handle was taken. */
+    public int getSlot(long handle) {
+        if (!isValid(handle)) {
+            throw new IllegalStateException("Stale handle: " + handle);
+        }
+        return (int)handle;
+    }
+
+    public void setInsertDateTime(int slot, long value) {
+        this.longs[slot*(RecordOffsets.end >> 3) + (RecordOffsets.insertDateTime >> 3)] = value;
+    }
+    public long getInsertDateTime(int slot) {
+        return this.longs[slot*(RecordOffsets.end >> 3) + (RecordOffsets.insertDateTime >> 3)];
+    }
+    public void setOrderNumber(int slot, long value) {
+        int entry = orderNumberIndex.find(value);
+        if (entry != -1 && orderNumberIndex.getValue(entry) != slot) {
+            throw new IllegalStateException("Duplicate orderNumber: " + value);
+        }
+        unindexOrderNumber(slot);
+        putOrderNumber(slot, value);
+        if (value != 0) {
+            orderNumberIndex.insert(value, slot);
+        }
+    }
+    private void putOrderNumber(int slot, long value) {
+        this.longs[slot*(RecordOffsets.end >> 3) + (RecordOffsets.orderNumber >> 3)] = value;
+    }
+    private void unindexOrderNumber(int slot) {
+        long value = getOrderNumber(slot);
+        int entry = orderNumberIndex.find(value);
+        if (entry != -1 && orderNumberIndex.getValue(entry) == slot) {
+            orderNumberIndex.remove(value);
+        }
+    }
+    /** @return the slot with the orderNumber or -1 if there is none, 0 is not indexed. */
+    public int findByOrderNumber(long value) {
+        int entry = orderNumberIndex.find(value);
+        return entry == -1 ? -1 : orderNumberIndex.getValue(entry);
+    }
+    public long getOrderNumber(int slot) {
+        return this.longs[slot*(RecordOffsets.end >> 3) + (RecordOffsets.orderNumber >> 3)];
+    }
+    public void setPrice(int slot, long value) {
+        unindexPrice(slot);
+        putPrice(slot, value);
+        int entry = priceIndex.insertMulti(value);
+        priceIndex.setSlot(entry, slot);
+        priceEntries[slot] = entry;
+    }
+    private void putPrice(int slot, long value) {
+        this.longs[slot*(RecordOffsets.end >> 3) + (RecordOffsets.Price >> 3)] = value;
+    }
+    private void unindexPrice(int slot) {
+        int entry = priceEntries[slot];
+        if (entry != -1) {
+            priceIndex.removeEntry(entry);
+            priceEntries[slot] = -1;
+        }
+    }
+    /** @return the first slot with the Price or -1 if there is none, the next ones follow in the index. */
+    public int findFirstByPrice(long value) {
+        int entry = priceIndex.findFirst(value);
+        return entry == -1 ? -1 : priceIndex.getSlot(entry);
+    }
+    public PriceIndex getPriceIndex() {
+        return priceIndex;
+    }
+    public long getPrice(int slot) {
+        return this.longs[slot*(RecordOffsets.end >> 3) + (RecordOffsets.Price >> 3)];
+    }
+    public void setInstrument(int slot, int value) {
+        unindexInstrument(slot);
+        putInstrument(slot, value);
+        int entry = instrumentIndex.insertMulti(value);
+        instrumentIndex.setSlot(entry, slot);
+        instrumentEntries[slot] = entry;
+    }
+    private void putInstrument(int slot, int value) {
+        int index = slot*(RecordOffsets.end >> 3) + (RecordOffsets.instrument >> 3);
+        this.longs[index] = (this.longs[index] & ~(0xFFFFFFFFL << ((RecordOffsets.instrument & 7) << 3))) | ((value & 0xFFFFFFFFL) << ((RecordOffsets.instrument & 7) << 3));
+    }
+    private void unindexInstrument(int slot) {
+        int entry = instrumentEntries[slot];
+        if (entry != -1) {
+            instrumentIndex.removeEntry(entry);
+            instrumentEntries[slot] = -1;
+        }
+    }
+    /** @return the first slot with the instrument or -1 if there is none, the next ones follow in the index. */
+    public int findFirstByInstrument(int value) {
+        int entry = instrumentIndex.findFirst(value);
+        return entry == -1 ? -1 : instrumentIndex.getSlot(entry);
+    }
+    public InstrumentIndex getInstrumentIndex() {
+        return instrumentIndex;
+    }
+    public int getInstrument(int slot) {
+        return (int)(this.longs[slot*(RecordOffsets.end >> 3) + (RecordOffsets.instrument >> 3)] >> ((RecordOffsets.instrument & 7) << 3));
+    }
+    public void setQuantity(int slot, int value) {
+        int index = slot*(RecordOffsets.end >> 3) + (RecordOffsets.quantity >> 3);
+        this.longs[index] = (this.longs[index] & ~(0xFFFFFFFFL << ((RecordOffsets.quantity & 7) << 3))) | ((value & 0xFFFFFFFFL) << ((RecordOffsets.quantity & 7) << 3));
+    }
+    public int getQuantity(int slot) {
+        return (int)(this.longs[slot*(RecordOffsets.end >> 3) + (RecordOffsets.quantity >> 3)] >> ((RecordOffsets.quantity & 7) << 3));
+    }
+    public void setSide(int slot, byte value) {
+        int index = slot*(RecordOffsets.end >> 3) + (RecordOffsets.side >> 3);
+        this.longs[index] = (this.longs[index] & ~(0xFFL << ((RecordOffsets.side & 7) << 3))) | ((value & 0xFFL) << ((RecordOffsets.side & 7) << 3));
+    }
+    public byte getSide(int slot) {
+        return (byte)(this.longs[slot*(RecordOffsets.end >> 3) + (RecordOffsets.side >> 3)] >> ((RecordOffsets.side & 7) << 3));
+    }
+
+    public void clear(int slot) {
+        setInsertDateTime(slot, 0);
+        unindexOrderNumber(slot);
+        putOrderNumber(slot, 0);
+        unindexPrice(slot);
+        putPrice(slot, 0);
+        unindexInstrument(slot);
+        putInstrument(slot, 0);
+        setQuantity(slot, 0);
+        setSide(slot, (byte)0);
+    }
+
+
+    public ByteStringBuilder toString(ByteStringBuilder sb, int slot) {
+        sb.append("TestOrderRowStore");
+        sb.append("[insertDateTime=").append(getInsertDateTime(slot)).append(']');
+        sb.append("[orderNumber=").append(getOrderNumber(slot)).append(']');
+        sb.append("[Price=").append(getPrice(slot)).append(']');
+        sb.append("[instrument=").append(getInstrument(slot)).append(']');
+        sb.append("[quantity=").append(getQuantity(slot)).append(']');
+        sb.append("[side=").append(getSide(slot)).append(']');
+        sb.append("\n");
+        return sb;
+    }
+}
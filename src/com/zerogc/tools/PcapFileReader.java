@@ -28,6 +28,7 @@ public class PcapFileReader implements MessageSource {
     private byte[] srcAddrBytes = new byte[4];
     private byte[] dstAddrBytes = new byte[4];
     private long captureTime;
+    private long captureTimeNanos;
     private int srcPort;
     private int dstPort;
 
@@ -40,6 +41,10 @@ public class PcapFileReader implements MessageSource {
         return this.captureTime;
     }
     @Override
+    public long getCaptureTimeNanos() {
+        return this.captureTimeNanos;
+    }
+    @Override
     public byte[] getSrcAddrBytes() {
         return srcAddrBytes;
     }
@@ -85,6 +90,7 @@ public class PcapFileReader implements MessageSource {
                 int tv_sec = this.inBuffer.getInt();
                 int tv_usec = this.inBuffer.getInt();
                 this.captureTime = tv_sec*1000L + tv_usec/1000;
+                this.captureTimeNanos = tv_sec*1000000000L + tv_usec*1000L;
                 int caplen = this.inBuffer.getInt();
                 int len = this.inBuffer.getInt();
                 if (this.inBuffer.remaining() < len) {
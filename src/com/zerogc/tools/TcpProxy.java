@@ -18,6 +18,7 @@ package com.zerogc.tools;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
+import java.nio.channels.Pipe;
 import java.nio.channels.SelectableChannel;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.ServerSocketChannel;
@@ -25,11 +26,11 @@ import java.nio.channels.SocketChannel;
 
 import com.zerogc.core.EPollEventLoop;
 import com.zerogc.core.EventLoop;
+import com.zerogc.core.Native;
 import com.zerogc.core.PollEventLoop;
 import com.zerogc.core.SelectorEventLoop;
 import com.zerogc.core.EventLoop.EventLoopListener;
 import com.zerogc.core.EventLoop.EventLoopSelectionKey;
-import com.zerogc.core.EventLoop.TimerListener;
 import com.zerogc.logging.Level;
 import com.zerogc.logging.LogManager;
 import com.zerogc.logging.Logger;
@@ -39,41 +40,528 @@ import com.zerogc.logging.Logger;
  HEAPTRACKER="-agentpath:$DEVELOP/zerogc/native/libheapTracker.so -Xbootclasspath/a:$DEVELOP/zerogc/native/heapTracker.jar"
  DEBUG=" -Xdebug -agentlib:jdwp=transport=dt_socket,server=y,address=36000,suspend=y"
 
- java -Djava.library.path=$DEVELOP/zerogc/native -cp $DEVELOP/zerogc/dist/ZeroGC-0.0.0.0.jar com.zerogc.util.TcpProxy -l 36000 -d localhost:36001
+ java -Djava.library.path=$DEVELOP/zerogc/native -cp $DEVELOP/zerogc/dist/ZeroGC-0.0.0.0.jar com.zerogc.util.TcpProxy -l 36000 -d localhost:36001 -l 36002 -d localhost:36003
  java -Xbootclasspath/a:$DEVELOP/zerogc/dist/ZeroGC-0.0.0.0.jar com.zerogc.util.TcpProxy -l 36000 -d localhost:36001
 */
 
-public class TcpProxy implements EventLoopListener, TimerListener {
+/**
+ * Forward the connections accepted on a set of listen ports, each mapped to its own destination.
+ * Sessions are taken from a pool allocated upfront with their buffers, the pipes of the splice mode are opened on first
+ * use and kept. A session is registered as the listener of both its sockets so that events reach the session state
+ * without any lookup. Accepting a connection allocates nothing beyond the channels of the JDK, the selection keys are
+ * recycled by the event loop, connections exceeding the pool are refused.
+ * Listeners drain the sockets and re-arm their keys so the proxy also runs on edge triggered and one shot loops.
+ */
+public class TcpProxy {
     private static final Logger log = LogManager.getLogger(TcpProxy.class.getSimpleName());
+    public static final int BUFFER_SIZE = 32*1024;
+    public static final int MAX_SESSIONS = 256;
+    // Default capacity of a pipe on Linux
+    public static final int PIPE_SIZE = 64*1024;
+
+    private final EventLoop eventLoop;
+
+    private Forward[] forwards = new Forward[0];
+
+    private int bufferSize = BUFFER_SIZE;
+    private int maxSessions = MAX_SESSIONS;
+    // Forward pass-through sessions inside the kernel through a pipe per direction
+    private boolean splice = false;
+
+    private Session[] sessions = null;
+    private int freeSession = -1;
+    private int sessionCount = 0;
+
+    /** Listen port and the destination its connections are forwarded to. */
+    private final class Forward implements EventLoopListener {
+        private final InetSocketAddress sourceInetSocketAddress;
+        private final InetSocketAddress destInetSocketAddress;
+        private ServerSocketChannel serverSocketChannel = null;
+        private EventLoopSelectionKey selectionKey = null;
+
+        Forward(InetSocketAddress sourceInetSocketAddress, InetSocketAddress destInetSocketAddress) {
+            this.sourceInetSocketAddress = sourceInetSocketAddress;
+            this.destInetSocketAddress = destInetSocketAddress;
+        }
+
+        void open() {
+            try {
+                this.serverSocketChannel = ServerSocketChannel.open();
+                this.serverSocketChannel.configureBlocking(false);
+                this.serverSocketChannel.socket().setReuseAddress(true);
+
+                this.serverSocketChannel.socket().bind(this.sourceInetSocketAddress);
+                this.selectionKey = eventLoop.register(this.serverSocketChannel, SelectionKey.OP_ACCEPT, this);
+            } catch (IOException e) {
+                log.log(Level.INFO, log.getSB().append("Could not listen for connection on ").append(this.sourceInetSocketAddress.getAddress().getHostAddress()).append(":").append(this.sourceInetSocketAddress.getPort()));
+            }
+        }
+
+        void close() {
+            if (this.selectionKey != null) {
+                this.selectionKey.cancel();
+                this.selectionKey = null;
+            }
+            if (this.serverSocketChannel != null) {
+                try {
+                    this.serverSocketChannel.close();
+                } catch (IOException e) {
+                    log.log(Level.INFO, "IOException", e);
+                }
+                this.serverSocketChannel = null;
+            }
+        }
+
+        @Override
+        public void onAccept(SelectableChannel selectableChannel) {
+            log.log(Level.INFO, "onAccept()");
+            // Edge triggered loops only report new connections, accept until the backlog is empty
+            while (accept()) {
+            }
+            // One shot loops disarm the listen socket after each event
+            if (this.selectionKey != null) {
+                this.selectionKey.interestOps(SelectionKey.OP_ACCEPT);
+            }
+        }
+
+        /** Returns false once there is no connection left to accept. */
+        private boolean accept() {
+            Session session = allocateSession();
+            if (session != null) {
+                return session.forward(this.serverSocketChannel, this.destInetSocketAddress);
+            }
+            try {
+                SocketChannel socketChannel = this.serverSocketChannel.accept();
+                if (socketChannel == null) {
+                    return false;
+                }
+                log.log(Level.WARN, log.getSB().append("Refuse connection on ").append(this.sourceInetSocketAddress).append(", all ").append(maxSessions).append(" sessions in use"));
+                socketChannel.close();
+                return true;
+            } catch (IOException e) {
+                log.log(Level.INFO, "IOException", e);
+                return false;
+            }
+        }
+
+        @Override
+        public void onClose(SelectableChannel selectableChannel) {
+        }
+        @Override
+        public void onConnect(SelectableChannel selectableChannel) {
+        }
+        @Override
+        public void onRead(SelectableChannel selectableChannel) {
+        }
+        @Override
+        public void onWrite(SelectableChannel selectableChannel) {
+        }
+        @Override
+        public void onSelect() {
+        }
+    }
+
+    /** Moves the bytes read from one socket to the other one through a pipe, nothing is copied to user space. */
+    private static final class Splicer {
+        private Pipe pipe = null;
+        private int readFd;
+        private int writeFd;
+        private int pipeReadFd;
+        private int pipeWriteFd;
+        // Bytes in the pipe not yet written to the socket
+        private int pending = 0;
+
+        /** Open the pipe on first use, it is kept for the next sessions as long as it is left empty. */
+        void open(SocketChannel readSocketChannel, SocketChannel writeSocketChannel) throws IOException {
+            if (this.pipe == null) {
+                this.pipe = Pipe.open();
+                this.pipeReadFd = Native.getFdVal_SourceChannel(this.pipe.source());
+                this.pipeWriteFd = Native.getFdVal_SinkChannel(this.pipe.sink());
+            }
+            this.readFd = Native.getFdVal_SocketChannel(readSocketChannel);
+            this.writeFd = Native.getFdVal_SocketChannel(writeSocketChannel);
+        }
+
+        /** Returns the number of bytes moved from the socket to the pipe, -1 at end of stream or on error. */
+        int read() {
+            int len = Native.splice(this.readFd, this.pipeWriteFd, PIPE_SIZE - this.pending, Native.SPLICE_F_MOVE | Native.SPLICE_F_NONBLOCK);
+            if (len > 0) {
+                this.pending += len;
+            }
+            return len;
+        }
+
+        /** Returns the number of bytes moved from the pipe to the socket, -1 on error. */
+        int write() {
+            if (this.pending == 0) {
+                return 0;
+            }
+            int len = Native.splice(this.pipeReadFd, this.writeFd, this.pending, Native.SPLICE_F_MOVE | Native.SPLICE_F_NONBLOCK);
+            if (len > 0) {
+                this.pending -= len;
+            }
+            return len;
+        }
+
+        boolean isFull() {
+            return this.pending >= PIPE_SIZE;
+        }
+
+        boolean isEmpty() {
+            return this.pending == 0;
+        }
+
+        /** Release the pipe at the end of a session, a pipe with bytes left in it can't be reused. */
+        void release() {
+            if (this.pending != 0) {
+                close();
+            }
+        }
+
+        void close() {
+            if (this.pipe != null) {
+                try {
+                    this.pipe.source().close();
+                    this.pipe.sink().close();
+                } catch (IOException e) {
+                    log.log(Level.INFO, "IOException", e);
+                }
+                this.pipe = null;
+            }
+            this.pending = 0;
+        }
+    }
+
+    /** Pair of connections forwarded to each other, pooled and reused across connections. */
+    private final class Session implements EventLoopListener {
+        private final int index;
+        private int nextFree = -1;
+        private boolean active = false;
+
+        private InetSocketAddress destInetSocketAddress = null;
+        private SocketChannel sourceSocketChannel = null;
+        private EventLoopSelectionKey sourceSelectionKey = null;
+        private SocketChannel destSocketChannel = null;
+        private EventLoopSelectionKey destSelectionKey = null;
+
+        private final ByteBuffer sourceBuffer;
+        private final ByteBuffer destBuffer;
+
+        private final Splicer sourceSplicer = new Splicer();
+        private final Splicer destSplicer = new Splicer();
+        private boolean spliced = false;
+
+        Session(int index) {
+            this.index = index;
+            this.sourceBuffer = ByteBuffer.allocateDirect(bufferSize);
+            this.destBuffer = ByteBuffer.allocateDirect(bufferSize);
+        }
+
+        /** Returns false if there was no connection to accept or accept() failed. */
+        boolean forward(ServerSocketChannel serverSocketChannel, InetSocketAddress destInetSocketAddress) {
+            try {
+                this.destInetSocketAddress = destInetSocketAddress;
+                this.sourceBuffer.clear();
+                this.destBuffer.clear();
+
+                this.sourceSocketChannel = serverSocketChannel.accept();
+                if (this.sourceSocketChannel == null) {
+                    close();
+                    return false;
+                }
+                this.sourceSocketChannel.configureBlocking(false);
+                configureTcpChannel(this.sourceSocketChannel);
+
+                log.log(Level.INFO, log.getSB().append("Open connection to ").append(this.destInetSocketAddress).append(" for session ").append(this.index));
 
-    private EventLoop eventLoop;
-    private ServerSocketChannel serverSocketChannel = null;
+                this.destSocketChannel = SocketChannel.open();
+                this.destSocketChannel.configureBlocking(false);
+                configureTcpChannel(this.destSocketChannel);
+                if (splice) {
+                    openSplicers();
+                }
+                if (this.destSocketChannel.connect(this.destInetSocketAddress)) {
+                    onConnect(this.destSocketChannel);
+                } else {
+                    this.destSelectionKey = eventLoop.register(this.destSocketChannel, SelectionKey.OP_CONNECT, this);
+                }
+                return true;
+            } catch (Throwable t) {
+                log.log(Level.ERROR, log.getSB().append("Failed to accept connection for ").append(this.destInetSocketAddress), t);
+                boolean accepted = this.sourceSocketChannel != null;
+                close();
+                return accepted;
+            }
+        }
+
+        private void openSplicers() {
+            try {
+                this.sourceSplicer.open(this.sourceSocketChannel, this.destSocketChannel);
+                this.destSplicer.open(this.destSocketChannel, this.sourceSocketChannel);
+                this.spliced = true;
+            } catch (Throwable t) {
+                log.log(Level.WARN, "Failed to open pipes, fall back to copying through buffers: ", t);
+            }
+        }
+
+        void close() {
+            if (!this.active) {
+                return;
+            }
+            if (this.sourceSelectionKey != null) {
+                this.sourceSelectionKey.cancel();
+                this.sourceSelectionKey = null;
+            }
+            if (this.sourceSocketChannel != null) {
+                log.log(Level.INFO, log.getSB().append("Close source connection of session ").append(this.index));
+                try {
+                    this.sourceSocketChannel.close();
+                } catch (IOException e) {
+                    log.log(Level.INFO, "IOException", e);
+                }
+                this.sourceSocketChannel = null;
+            }
+            if (this.destSelectionKey != null) {
+                this.destSelectionKey.cancel();
+                this.destSelectionKey = null;
+            }
+            if (this.destSocketChannel != null) {
+                log.log(Level.INFO, log.getSB().append("Close connection to ").append(this.destInetSocketAddress).append(" of session ").append(this.index));
+                try {
+                    this.destSocketChannel.close();
+                } catch (IOException e) {
+                    log.log(Level.INFO, "IOException", e);
+                }
+                this.destSocketChannel = null;
+            }
+            if (this.spliced) {
+                this.sourceSplicer.release();
+                this.destSplicer.release();
+                this.spliced = false;
+            }
+            releaseSession(this);
+        }
+
+        @Override
+        public void onAccept(SelectableChannel selectableChannel) {
+            log.log(Level.ERROR, "Unexpected Accept");
+        }
+
+        @Override
+        public void onConnect(SelectableChannel selectableChannel) {
+            log.log(Level.INFO, "onConnect()");
+            try {
+                if (this.destSelectionKey == null) {
+                    this.destSelectionKey = eventLoop.register(this.destSocketChannel, SelectionKey.OP_READ, this);
+                } else {
+                    if (this.destSocketChannel.finishConnect()) {
+                        log.log(Level.INFO, log.getSB().append("Established connection to ").append(this.destInetSocketAddress));
+                    } else {
+                        log.log(Level.INFO, "onConnect() failed: ");
+                    }
+                    int ops = (this.destSelectionKey.interestOps() & ~SelectionKey.OP_CONNECT) | SelectionKey.OP_READ;
+                    this.destSelectionKey.interestOps(ops);
+                }
+                this.sourceSelectionKey = eventLoop.register(this.sourceSocketChannel, SelectionKey.OP_READ, this);
+            } catch (Throwable t) {
+                log.log(Level.ERROR, log.getSB().append("Failed to connect to: ").append(this.destInetSocketAddress), t);
+                close();
+            }
+        }
+
+        @Override
+        public void onRead(SelectableChannel socketChannel) {
+            log.log(Level.DEBUG, "onRead()");
+            if (this.spliced) {
+                onReadSplice(socketChannel);
+                return;
+            }
+            try {
+                SocketChannel readSocketChannel;
+                EventLoopSelectionKey readSelectionKey;
+                EventLoopSelectionKey writeSelectionKey;
+                ByteBuffer buffer;
+                if (socketChannel == this.sourceSocketChannel) {
+                    readSocketChannel = this.sourceSocketChannel;
+                    readSelectionKey = this.sourceSelectionKey;
+                    writeSelectionKey = this.destSelectionKey;
+                    buffer = this.sourceBuffer;
+                } else {
+                    readSocketChannel = this.destSocketChannel;
+                    readSelectionKey = this.destSelectionKey;
+                    writeSelectionKey = this.sourceSelectionKey;
+                    buffer = this.destBuffer;
+                }
+                // A short read drained the socket, a full buffer drops OP_READ and adding it back reports the bytes left
+                int len = readSocketChannel.read(buffer);
+                if (len < 0) {
+                    log.log(Level.ERROR, log.getSB().append("Detected failure of session ").append(this.index));
+                    close();
+                    return;
+                } else {
+                    log.log(Level.DEBUG, log.getSB().append("Read ").append(len).append(" bytes"));
+                }
+                updateInterestOps(readSelectionKey, writeSelectionKey, buffer.hasRemaining(), buffer.position() > 0);
+            } catch (Throwable e) {
+                log.log(Level.ERROR, log.getSB().append("onRead() caught: "), e);
+                close();
+            }
+        }
+
+        private void onReadSplice(SelectableChannel socketChannel) {
+            Splicer splicer;
+            EventLoopSelectionKey readSelectionKey;
+            EventLoopSelectionKey writeSelectionKey;
+            if (socketChannel == this.sourceSocketChannel) {
+                splicer = this.sourceSplicer;
+                readSelectionKey = this.sourceSelectionKey;
+                writeSelectionKey = this.destSelectionKey;
+            } else {
+                splicer = this.destSplicer;
+                readSelectionKey = this.destSelectionKey;
+                writeSelectionKey = this.sourceSelectionKey;
+            }
+            // Splice until EAGAIN, a short splice may only mean the pipe ran out of buffers
+            int len;
+            do {
+                len = splicer.read();
+                if (len < 0) {
+                    log.log(Level.ERROR, log.getSB().append("Detected failure of session ").append(this.index));
+                    close();
+                    return;
+                }
+                log.log(Level.DEBUG, log.getSB().append("Spliced ").append(len).append(" bytes in"));
+                // Write right away rather than waiting for the next OP_WRITE
+                if (splicer.write() < 0) {
+                    log.log(Level.ERROR, log.getSB().append("Detected failure of session ").append(this.index));
+                    close();
+                    return;
+                }
+            } while (len > 0 && !splicer.isFull());
+            // Nothing moved while bytes are pending, the pipe may be out of buffers before reaching PIPE_SIZE
+            boolean blocked = len == 0 && !splicer.isEmpty();
+            updateInterestOps(readSelectionKey, writeSelectionKey, !blocked && !splicer.isFull(), !splicer.isEmpty());
+        }
+
+        @Override
+        public void onWrite(SelectableChannel socketChannel) {
+            log.log(Level.DEBUG, "onWrite()");
+            if (this.spliced) {
+                onWriteSplice(socketChannel);
+                return;
+            }
+            try {
+                SocketChannel writeSocketChannel;
+                EventLoopSelectionKey readSelectionKey;
+                EventLoopSelectionKey writeSelectionKey;
+                ByteBuffer buffer;
+                if (socketChannel == this.sourceSocketChannel) {
+                    readSelectionKey = this.destSelectionKey;
+                    writeSocketChannel = this.sourceSocketChannel;
+                    writeSelectionKey = this.sourceSelectionKey;
+                    buffer = this.destBuffer;
+                } else {
+                    readSelectionKey = this.sourceSelectionKey;
+                    writeSocketChannel = this.destSocketChannel;
+                    writeSelectionKey = this.destSelectionKey;
+                    buffer = this.sourceBuffer;
+                }
+                buffer.flip();
+                int len = writeSocketChannel.write(buffer);
+                if (len < 0) {
+                    log.log(Level.ERROR, log.getSB().append("Detected failure of session ").append(this.index));
+                    close();
+                    return;
+                } else {
+                    log.log(Level.DEBUG, log.getSB().append("Written ").append(len).append(" bytes"));
+                }
+                buffer.compact();
+                updateInterestOps(readSelectionKey, writeSelectionKey, buffer.hasRemaining(), buffer.position() > 0);
+            } catch (Throwable t) {
+                log.log(Level.INFO, "onWrite() caught: ", t);
+                close();
+            }
+        }
 
-    private InetSocketAddress sourceInetSocketAddress = null;
-    private SocketChannel sourceSocketChannel = null;
-    private EventLoopSelectionKey sourceSelectionKey = null;
+        private void onWriteSplice(SelectableChannel socketChannel) {
+            Splicer splicer;
+            EventLoopSelectionKey readSelectionKey;
+            EventLoopSelectionKey writeSelectionKey;
+            if (socketChannel == this.sourceSocketChannel) {
+                splicer = this.destSplicer;
+                readSelectionKey = this.destSelectionKey;
+                writeSelectionKey = this.sourceSelectionKey;
+            } else {
+                splicer = this.sourceSplicer;
+                readSelectionKey = this.sourceSelectionKey;
+                writeSelectionKey = this.destSelectionKey;
+            }
+            int len = splicer.write();
+            if (len < 0) {
+                log.log(Level.ERROR, log.getSB().append("Detected failure of session ").append(this.index));
+                close();
+                return;
+            }
+            log.log(Level.DEBUG, log.getSB().append("Spliced ").append(len).append(" bytes out"));
+            updateInterestOps(readSelectionKey, writeSelectionKey, !splicer.isFull(), !splicer.isEmpty());
+        }
 
-    private InetSocketAddress destInetSocketAddress = null;
-    private SocketChannel destSocketChannel = null;
-    private EventLoopSelectionKey destSelectionKey = null;
+        @Override
+        public void onSelect() {
+        }
 
-    private final ByteBuffer sourceBuffer;
-    private final ByteBuffer destBuffer;
+        @Override
+        public void onClose(SelectableChannel selectableChannel) {
+            log.log(Level.INFO, "onClose");
+            close();
+        }
+    }
 
     public TcpProxy(EventLoop eventLoop) {
         log.log(Level.INFO, log.getSB().append("Creating ").append(this.getClass().getSimpleName()));
         this.eventLoop = eventLoop;
-        this.sourceBuffer = ByteBuffer.allocateDirect(32*1024);
-        this.destBuffer = ByteBuffer.allocateDirect(32*1024);
     }
 
-    public TcpProxy(TcpProxy tcpProxy) {
-        this(tcpProxy.eventLoop);
-        this.destInetSocketAddress = tcpProxy.destInetSocketAddress;
+    public int getBufferSize() {
+        return bufferSize;
+    }
+    /** Size of the direct buffers of each session, set before open(). */
+    public void setBufferSize(int bufferSize) {
+        this.bufferSize = bufferSize;
+    }
+
+    public int getMaxSessions() {
+        return maxSessions;
+    }
+    /** Number of sessions allocated by open(), connections beyond it are refused. */
+    public void setMaxSessions(int maxSessions) {
+        this.maxSessions = maxSessions;
+    }
+
+    public boolean isSplice() {
+        return splice;
+    }
+    /** Forward with splice(), sessions fall back to copying through the buffers when the pipes cannot be set up. */
+    public void setSplice(boolean splice) {
+        this.splice = splice;
+    }
+
+    /** Forward the connections accepted on the source address to the destination address. */
+    public void addForward(InetSocketAddress sourceInetSocketAddress, InetSocketAddress destInetSocketAddress) {
+        Forward[] newForwards = new Forward[this.forwards.length + 1];
+        System.arraycopy(this.forwards, 0, newForwards, 0, this.forwards.length);
+        newForwards[this.forwards.length] = new Forward(sourceInetSocketAddress, destInetSocketAddress);
+        this.forwards = newForwards;
+    }
+
+    /** Returns the number of sessions in use. */
+    public int getSessionCount() {
+        return sessionCount;
     }
 
     public void initialize(Logger log, String[] args) throws Exception {
         boolean error = false;
+        InetSocketAddress sourceInetSocketAddress = null;
 
         for (int i=0; i < args.length && args[i].startsWith("-");) {
             String arg = args[i++];
@@ -85,18 +573,23 @@ public class TcpProxy implements EventLoopListener, TimerListener {
                     if (pos != -1) {
                         int port = Integer.parseInt(host.substring(pos+1));
                         host = host.substring(0, pos);
-                        this.sourceInetSocketAddress = new InetSocketAddress(host, port);
+                        sourceInetSocketAddress = new InetSocketAddress(host, port);
                     } else {
                         int port = Integer.parseInt(host);
-                        this.sourceInetSocketAddress = new InetSocketAddress(port);
+                        sourceInetSocketAddress = new InetSocketAddress(port);
                     }
-                    log.log(Level.INFO, log.getSB().append("Listen for connections on ").append(this.sourceInetSocketAddress));
+                    log.log(Level.INFO, log.getSB().append("Listen for connections on ").append(sourceInetSocketAddress));
                 } else {
                     log.log(Level.ERROR, " -l requires a TCP port");
                     error = true;
                     break;
                 }
             } else if (arg.equals("-d")) {
+                if (sourceInetSocketAddress == null) {
+                    log.log(Level.ERROR, "-d must follow the -l it forwards");
+                    error = true;
+                    break;
+                }
                 if (i < args.length && !args[i].startsWith("-")) {
                     String host = args[i++];
                     int port = -1;
@@ -104,8 +597,10 @@ public class TcpProxy implements EventLoopListener, TimerListener {
                     if (pos != -1) {
                         port = Integer.parseInt(host.substring(pos+1));
                         host = host.substring(0, pos);
-                        this.destInetSocketAddress = new InetSocketAddress(host, port);
-                        log.log(Level.INFO, log.getSB().append("Forward connection to ").append(this.destInetSocketAddress));
+                        InetSocketAddress destInetSocketAddress = new InetSocketAddress(host, port);
+                        log.log(Level.INFO, log.getSB().append("Forward connection to ").append(destInetSocketAddress));
+                        addForward(sourceInetSocketAddress, destInetSocketAddress);
+                        sourceInetSocketAddress = null;
                     } else {
                         log.log(Level.ERROR, "Unexpected destination format <address:port>");                        
                     }
@@ -114,16 +609,40 @@ public class TcpProxy implements EventLoopListener, TimerListener {
                     error = true;
                     break;
                 }
+            } else if (arg.equals("-b")) {
+                if (i < args.length && !args[i].startsWith("-")) {
+                    this.bufferSize = Integer.parseInt(args[i++]);
+                    log.log(Level.INFO, log.getSB().append("Forward through buffers of ").append(this.bufferSize).append(" bytes"));
+                } else {
+                    log.log(Level.ERROR, "-b requires a buffer size");
+                    error = true;
+                    break;
+                }
+            } else if (arg.equals("-n")) {
+                if (i < args.length && !args[i].startsWith("-")) {
+                    this.maxSessions = Integer.parseInt(args[i++]);
+                    log.log(Level.INFO, log.getSB().append("Allocate ").append(this.maxSessions).append(" sessions"));
+                } else {
+                    log.log(Level.ERROR, "-n requires a number of sessions");
+                    error = true;
+                    break;
+                }
+            } else if (arg.equals("-s")) {
+                this.splice = true;
+                log.log(Level.INFO, "Forward with splice()");
             } else {
                 log.log(Level.ERROR, "Unknown parmeter: " + arg);
                 error = true;
             }
         }
 
-        if (error || args.length == 0 || this.destInetSocketAddress == null || this.sourceInetSocketAddress == null) {
-            log.log(Level.ERROR, log.getSB().append("usage: ").append(this.getClass().getSimpleName()).append(" -l <local_port> -d <address:port>"));
+        if (error || args.length == 0 || this.forwards.length == 0 || sourceInetSocketAddress != null) {
+            log.log(Level.ERROR, log.getSB().append("usage: ").append(this.getClass().getSimpleName()).append(" -l <local_port> -d <address:port> [-l <local_port> -d <address:port> ...] [-b <bytes>] [-n <sessions>] [-s]"));
             log.log(Level.ERROR, " -l <localport>: Listen for incoming connections on <local_port>");
-            log.log(Level.ERROR, " -d <address:port>: destinations to connect to");
+            log.log(Level.ERROR, " -d <address:port>: destination the connections of the preceding -l are forwarded to");
+            log.log(Level.ERROR, " -b <bytes>: size of the direct buffers of each session, default 32768");
+            log.log(Level.ERROR, " -n <sessions>: maximum number of concurrent sessions, default 256");
+            log.log(Level.ERROR, " -s: forward inside the kernel with splice()");
             System.exit(1);
         }
    }
@@ -136,195 +655,64 @@ public class TcpProxy implements EventLoopListener, TimerListener {
     }
 
     public void open() {
-        try {
-            this.serverSocketChannel = ServerSocketChannel.open();
-            this.serverSocketChannel.configureBlocking(false);
-            this.serverSocketChannel.socket().setReuseAddress(true);
-
-            this.serverSocketChannel.socket().bind(this.sourceInetSocketAddress);
-            this.eventLoop.register(this.serverSocketChannel, SelectionKey.OP_ACCEPT, this);
-        } catch (IOException e) {
-            log.log(Level.INFO, log.getSB().append("Could not listen for connection on ").append(this.sourceInetSocketAddress.getAddress().getHostAddress()).append(":").append(this.sourceInetSocketAddress.getPort()));
-        }
-    }
-
-    public void close() {
-        if (this.sourceSelectionKey != null) {
-            this.sourceSelectionKey.cancel();
-            this.sourceSelectionKey = null;
-        }
-        if (this.sourceSocketChannel.isOpen()) {
-            log.log(Level.INFO, "Close connection to " + this.sourceInetSocketAddress);
-            try {
-                this.sourceSocketChannel.close();
-            } catch (IOException e) {
-                log.log(Level.INFO, "IOException", e);
+        if (this.sessions == null) {
+            this.sessions = new Session[this.maxSessions];
+            for (int i=this.maxSessions-1; i >= 0; i--) {
+                this.sessions[i] = new Session(i);
+                this.sessions[i].nextFree = this.freeSession;
+                this.freeSession = i;
             }
         }
-        if (this.destSelectionKey != null) {
-            this.destSelectionKey.cancel();
-            this.destSelectionKey = null;
-        }
-        if (this.destSocketChannel.isOpen()) {
-            log.log(Level.INFO, "Close connection to " + this.destInetSocketAddress);
-            try {
-                this.destSocketChannel.close();
-            } catch (IOException e) {
-                log.log(Level.INFO, "IOException", e);
-            }
+        for (int i=0; i < this.forwards.length; i++) {
+            this.forwards[i].open();
         }
     }
 
-    // --------------------- IOHandler ---------------------
-
-    public void onAccept(SelectableChannel selectableChannel) {
-        log.log(Level.INFO, "onAccept()");
-        TcpProxy tcpProxy = new TcpProxy(this);
-        tcpProxy.forward(selectableChannel);
-    }
-
-    public void forward(SelectableChannel selectableChannel) {
-        try {
-            this.sourceBuffer.clear();
-            this.destBuffer.clear();
-
-            this.serverSocketChannel = (ServerSocketChannel)selectableChannel;
-            this.sourceSocketChannel = serverSocketChannel.accept();
-            this.sourceSocketChannel.configureBlocking(false);
-            configureTcpChannel(this.sourceSocketChannel);
-
-            log.log(Level.INFO, log.getSB().append("Open connection to ").append(this.destInetSocketAddress));
-
-            this.destSocketChannel = SocketChannel.open();
-            this.destSocketChannel.configureBlocking(false);
-            configureTcpChannel(this.destSocketChannel);
-            if (this.destSocketChannel.connect(this.destInetSocketAddress)) {
-                onConnect(this.destSocketChannel);
-            } else {
-                this.destSelectionKey = this.eventLoop.register(this.destSocketChannel, SelectionKey.OP_CONNECT, this);
+    public void close() {
+        for (int i=0; i < this.forwards.length; i++) {
+            this.forwards[i].close();
+        }
+        if (this.sessions != null) {
+            for (int i=0; i < this.sessions.length; i++) {
+                this.sessions[i].close();
+                this.sessions[i].sourceSplicer.close();
+                this.sessions[i].destSplicer.close();
             }
-        } catch (Throwable t) {
-            log.log(Level.ERROR, log.getSB().append("Failed to accept connetion on ").append(this.sourceInetSocketAddress), t);
-            close();
         }
     }
 
-    public void onConnect(SelectableChannel selectableChannel) {
-        log.log(Level.INFO, "onConnect()");
-        try {
-            if (this.destSelectionKey == null) {
-                this.destSelectionKey = this.eventLoop.register(this.destSocketChannel, SelectionKey.OP_READ, this);
-            } else {
-                if (this.destSocketChannel.finishConnect()) {
-                    log.log(Level.INFO, log.getSB().append("Established connection to ").append(this.destInetSocketAddress));
-                } else {
-                    log.log(Level.INFO, "onConnect() failed: ");
-                }
-                int ops = (this.destSelectionKey.interestOps() & ~SelectionKey.OP_CONNECT) | SelectionKey.OP_READ;
-                this.destSelectionKey.interestOps(ops);
-            }
-            this.sourceSelectionKey = this.eventLoop.register(this.sourceSocketChannel, SelectionKey.OP_READ, this);
-        } catch (Throwable t) {
-            log.log(Level.ERROR, log.getSB().append("Failed to connect to: ").append(this.destInetSocketAddress), t);
-            close();
+    private Session allocateSession() {
+        if (this.freeSession == -1) {
+            return null;
         }
+        Session session = this.sessions[this.freeSession];
+        this.freeSession = session.nextFree;
+        session.nextFree = -1;
+        session.active = true;
+        this.sessionCount++;
+        return session;
     }
 
-    public void onRead(SelectableChannel socketChannel) {
-        log.log(Level.DEBUG, "onRead()");
-        try {
-            SocketChannel readSocketChannel;
-            EventLoopSelectionKey readSelectionKey;
-            EventLoopSelectionKey writeSelectionKey;
-            ByteBuffer buffer;
-            if (socketChannel == this.sourceSocketChannel) {
-                readSocketChannel = this.sourceSocketChannel;
-                readSelectionKey = this.sourceSelectionKey;
-                writeSelectionKey = this.destSelectionKey;
-                buffer = this.sourceBuffer;
-            } else {
-                readSocketChannel = this.destSocketChannel;
-                readSelectionKey = this.destSelectionKey;
-                writeSelectionKey = this.sourceSelectionKey;
-                buffer = this.destBuffer;
-            }
-            int len = readSocketChannel.read(buffer);
-            if (len < 0) {
-                log.log(Level.ERROR, log.getSB().append("Detected failure of session"));
-                close();
-                return;
-            } else {
-                log.log(Level.DEBUG, log.getSB().append("Read ").append(len).append(" bytes"));
-            }
-            updateInterestOps(readSelectionKey, writeSelectionKey, buffer);
-        } catch (Throwable e) {
-            log.log(Level.ERROR, log.getSB().append("onRead() caught: "), e);
-            close();
-        }
+    private void releaseSession(Session session) {
+        session.active = false;
+        session.nextFree = this.freeSession;
+        this.freeSession = session.index;
+        this.sessionCount--;
     }
 
-    private void updateInterestOps(EventLoopSelectionKey readSelectionKey, EventLoopSelectionKey writeSelectionKey, ByteBuffer buffer) {
-        if (buffer.hasRemaining()) {
+    private static void updateInterestOps(EventLoopSelectionKey readSelectionKey, EventLoopSelectionKey writeSelectionKey, boolean read, boolean write) {
+        if (read) {
             readSelectionKey.interestOps(readSelectionKey.interestOps() | SelectionKey.OP_READ);
         } else {
             readSelectionKey.interestOps(readSelectionKey.interestOps() & ~SelectionKey.OP_READ);
         }
-        if (buffer.position() > 0) {
+        if (write) {
             writeSelectionKey.interestOps(writeSelectionKey.interestOps() | SelectionKey.OP_WRITE);
         } else {
             writeSelectionKey.interestOps(writeSelectionKey.interestOps() & ~SelectionKey.OP_WRITE);
         }
     }
 
-    public void onWrite(SelectableChannel socketChannel) {
-        log.log(Level.DEBUG, "onWrite()");
-        try {
-            SocketChannel writeSocketChannel;
-            EventLoopSelectionKey readSelectionKey;
-            EventLoopSelectionKey writeSelectionKey;
-            ByteBuffer buffer;
-            if (socketChannel == this.sourceSocketChannel) {
-                readSelectionKey = this.destSelectionKey;
-                writeSocketChannel = this.sourceSocketChannel;
-                writeSelectionKey = this.sourceSelectionKey;
-                buffer = this.destBuffer;
-            } else {
-                readSelectionKey = this.sourceSelectionKey;
-                writeSocketChannel = this.destSocketChannel;
-                writeSelectionKey = this.destSelectionKey;
-                buffer = this.sourceBuffer;
-            }
-            buffer.flip();
-            int len = writeSocketChannel.write(buffer);
-            if (len < 0) {
-                log.log(Level.ERROR, log.getSB().append("Detected failure of session"));
-                close();
-                return;
-            } else {
-                log.log(Level.DEBUG, log.getSB().append("Written ").append(len).append(" bytes"));
-            }
-            buffer.compact();
-            updateInterestOps(readSelectionKey, writeSelectionKey, buffer);
-        } catch (Throwable t) {
-            log.log(Level.INFO, "onWrite() caught: ", t);
-            close();
-        }
-    }
-
-    @Override
-    public void onTimer(int entry, long expiry) {
-        log.log(Level.ERROR, "Timer expired");
-    }
-
-    @Override
-    public void onSelect() {
-    }
-
-    public void onClose(SelectableChannel selectableChannel) {
-        log.log(Level.INFO, "onClose");
-        close();
-    }
-
     public static void main(String[] args) {
         log.setLevel(Level.INFO);
 
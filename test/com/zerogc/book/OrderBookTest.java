@@ -0,0 +1,145 @@
+package com.zerogc.book;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import com.zerogc.collections.LongTreeSet;
+import com.zerogc.constants.TestSide;
+import com.zerogc.constants.TestType;
+import com.zerogc.messages.TestEnterOrderRequest;
+
+public class OrderBookTest extends TestCase {
+    public void testPriority() {
+        OrderBook book = new OrderBook("test", 4);
+        book.add(1, TestSide.BUY, 100, 10);
+        book.add(2, TestSide.BUY, 101, 20);
+        book.add(3, TestSide.BUY, 101, 30);
+        book.add(4, TestSide.SELL, 103, 40);
+        book.add(5, TestSide.SELL, 102, 50);
+
+        int bestBid = book.getBids().firstEntry();
+        assertEquals(101, book.getPrice(bestBid));
+        assertEquals(50, book.getLevel(bestBid).getQuantity());
+        assertEquals(100, book.getPrice(book.getBids().nextEntry(bestBid)));
+        assertEquals(102, book.getPrice(book.getAsks().firstEntry()));
+
+        OrderBook.PriceLevel level = book.getLevel(bestBid);
+        assertEquals(2, book.getOrderNumber(level.firstEntry()));
+        assertEquals(3, book.getOrderNumber(level.lastEntry()));
+
+        // Decreasing the quantity keeps the priority
+        assertTrue(book.modify(2, 101, 5));
+        assertEquals(2, book.getOrderNumber(level.firstEntry()));
+        assertEquals(35, level.getQuantity());
+        // Increasing it loses the priority
+        assertTrue(book.modify(2, 101, 15));
+        assertEquals(3, book.getOrderNumber(level.firstEntry()));
+        assertEquals(2, book.getOrderNumber(level.lastEntry()));
+        assertEquals(45, level.getQuantity());
+
+        assertTrue(book.execute(3, 10));
+        assertEquals(20, book.getOrderQuantity(book.findOrder(3)));
+        assertTrue(book.execute(3, 20));
+        assertEquals(-1, book.findOrder(3));
+        assertTrue(book.cancel(2));
+        assertFalse(book.cancel(2));
+        assertFalse(book.execute(2, 1));
+        assertEquals(100, book.getPrice(book.getBids().firstEntry()));
+
+        // Moving the last order of a level removes the level
+        assertTrue(book.modify(5, 104, 50));
+        assertEquals(103, book.getPrice(book.getAsks().firstEntry()));
+        assertEquals(2, book.getAsks().size());
+        assertEquals(3, book.size());
+
+        try {
+            book.add(1, TestSide.SELL, 100, 10);
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            // Expected
+        }
+        try {
+            book.execute(1, 11);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+
+    public void testEnterOrder() {
+        OrderBook book = new OrderBook("test");
+        ByteBuffer buffer = ByteBuffer.allocate(1024);
+        TestEnterOrderRequest enterOrder = new TestEnterOrderRequest();
+        for (int i=0; i < 10; i++) {
+            buffer.clear();
+            enterOrder.setBuffer(buffer);
+            enterOrder.create(TestType.ENTER_ORDER, i, "REF".getBytes(), i % 2 == 0 ? TestSide.BUY : TestSide.SELL, 100, 1, 1000 + i, 0);
+            book.onEnterOrder(enterOrder);
+        }
+        assertEquals(10, book.size());
+        assertEquals(1008, book.getPrice(book.getBids().firstEntry()));
+        assertEquals(1001, book.getPrice(book.getAsks().firstEntry()));
+    }
+
+    public void testRandom() {
+        OrderBook book = new OrderBook("test", 4);
+        HashMap<Long, long[]> reference = new HashMap<Long, long[]>();
+        Random random = new Random(21);
+        for (int i=0; i < 100000; i++) {
+            long orderNumber = random.nextInt(2000);
+            long[] order = reference.get(orderNumber);
+            long price = 100 + random.nextInt(20);
+            int quantity = 1 + random.nextInt(100);
+            if (order == null) {
+                byte side = random.nextBoolean() ? TestSide.BUY : TestSide.SELL;
+                book.add(orderNumber, side, price, quantity);
+                reference.put(orderNumber, new long[] { side, price, quantity });
+            } else {
+                switch (random.nextInt(3)) {
+                case 0:
+                    assertTrue(book.modify(orderNumber, price, quantity));
+                    order[1] = price;
+                    order[2] = quantity;
+                    break;
+                case 1:
+                    assertTrue(book.cancel(orderNumber));
+                    reference.remove(orderNumber);
+                    break;
+                default:
+                    quantity = 1 + random.nextInt((int)order[2]);
+                    assertTrue(book.execute(orderNumber, quantity));
+                    order[2] -= quantity;
+                    if (order[2] == 0) {
+                        reference.remove(orderNumber);
+                    }
+                }
+            }
+        }
+        assertEquals(reference.size(), book.size());
+        checkSide(book, book.getBids(), reference, TestSide.BUY);
+        checkSide(book, book.getAsks(), reference, TestSide.SELL);
+    }
+
+    private void checkSide(OrderBook book, LongTreeSet tree, HashMap<Long, long[]> reference, byte side) {
+        long previousPrice = side == TestSide.BUY ? Long.MAX_VALUE : Long.MIN_VALUE;
+        for (int levelEntry = tree.firstEntry(); levelEntry != -1; levelEntry = tree.nextEntry(levelEntry)) {
+            long price = book.getPrice(levelEntry);
+            assertTrue(side == TestSide.BUY ? price < previousPrice : price > previousPrice);
+            previousPrice = price;
+            OrderBook.PriceLevel level = book.getLevel(levelEntry);
+            assertFalse(level.isEmpty());
+            long quantity = 0;
+            for (int orderEntry = level.firstEntry(); orderEntry != -1; orderEntry = level.nextEntry(orderEntry)) {
+                long[] order = reference.get(book.getOrderNumber(orderEntry));
+                assertEquals(side, order[0]);
+                assertEquals(price, order[1]);
+                assertEquals(order[2], book.getOrderQuantity(orderEntry));
+                quantity += order[2];
+            }
+            assertEquals(quantity, level.getQuantity());
+        }
+    }
+}
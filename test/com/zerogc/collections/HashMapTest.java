@@ -0,0 +1,61 @@
+package com.zerogc.collections;
+
+import java.util.HashMap;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class HashMapTest extends TestCase {
+    private void checkRandom(LongLongHashMap map) {
+        Random random = new Random(3);
+        HashMap<Long, Long> reference = new HashMap<Long, Long>();
+        for (int i=0; i < 20000; i++) {
+            long key = random.nextInt(4096);
+            if (random.nextInt(4) != 0) {
+                map.insert(key, i);
+                reference.put(key, (long)i);
+            } else {
+                assertEquals(reference.remove(key) != null, map.remove(key) != -1);
+            }
+            assertEquals(reference.size(), map.size());
+            Long value = reference.get(key);
+            int entry = map.find(key);
+            assertEquals(value != null, entry != -1);
+            if (value != null) {
+                assertEquals(value.longValue(), map.getValue(entry));
+            }
+        }
+        for (long key=0; key < 4096; key++) {
+            assertEquals(reference.containsKey(key), map.find(key) != -1);
+        }
+    }
+
+    public void testRandom() {
+        checkRandom(new LongLongHashMap("test", 4));
+    }
+
+    public void testIncrementalRehash() {
+        LongLongHashMap map = new LongLongHashMap("test", 4);
+        map.setIncrementalRehash(true);
+        checkRandom(map);
+    }
+
+    public void testIncrementalRehashIterator() {
+        LongLongHashMap map = new LongLongHashMap("test", 16);
+        map.setIncrementalRehash(true);
+        long sum = 0;
+        for (long key=1; !map.isRehashing() || map.size() < 16; key++) {
+            map.insert(key, key);
+            sum += key;
+        }
+        assertTrue(map.isRehashing());
+        LongHashSet.EntryIterator iterator = map.entryIterator(new LongHashSet.EntryIterator());
+        assertFalse(map.isRehashing());
+        while (iterator.hasNext()) {
+            int entry = iterator.nextEntry();
+            assertEquals(map.getKey(entry), map.getValue(entry));
+            sum -= map.getKey(entry);
+        }
+        assertEquals(0, sum);
+    }
+}
@@ -0,0 +1,126 @@
+package com.zerogc.collections;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class OffHeapTest extends TestCase {
+    public void testStorage() {
+        OffHeapStorage storage = new OffHeapStorage(12, 4);
+        storage.grow(5);
+        assertEquals(5, storage.capacity());
+        for (int i=0; i < 5; i++) {
+            storage.putInt(i, 0, i);
+            storage.putLong(i, 4, -i);
+        }
+        // Past the first page, records are kept in place and capacity is rounded to pages
+        assertEquals(48, storage.adjustCapacity(40));
+        storage.grow(40);
+        assertEquals(48, storage.capacity());
+        for (int i=5; i < 48; i++) {
+            storage.putInt(i, 0, i);
+            storage.putLong(i, 4, -i);
+        }
+        for (int i=0; i < 48; i++) {
+            assertEquals(i, storage.getInt(i, 0));
+            assertEquals(-i, storage.getLong(i, 4));
+        }
+    }
+
+    public void testRbTree() {
+        LongRbTree heapTree = new LongRbTree();
+        LongOffHeapRbTree offHeapTree = new LongOffHeapRbTree();
+        Random random = new Random(5);
+        // Past the first page of the storage
+        for (int i=0; i < 200000; i++) {
+            long key = random.nextInt(100000);
+            if (random.nextInt(3) != 0) {
+                assertEquals(heapTree.insert(key), offHeapTree.insert(key));
+            } else {
+                int entry = heapTree.find(key);
+                assertEquals(entry, offHeapTree.find(key));
+                if (entry != -1) {
+                    assertEquals(heapTree.removeEntry(entry), offHeapTree.removeEntry(entry));
+                }
+            }
+        }
+        assertEquals(heapTree.size(), offHeapTree.size());
+        int offHeapEntry = offHeapTree.firstEntry();
+        for (int entry = heapTree.firstEntry(); entry != -1; entry = heapTree.nextEntry(entry)) {
+            assertEquals(entry, offHeapEntry);
+            assertEquals(heapTree.getKey(entry), offHeapTree.getKey(offHeapEntry));
+            offHeapEntry = offHeapTree.nextEntry(offHeapEntry);
+        }
+        assertEquals(-1, offHeapEntry);
+    }
+
+    public void testHeap() {
+        IntHeap heap = new IntHeap();
+        IntOffHeapHeap offHeap = new IntOffHeapHeap();
+        Random random = new Random(7);
+        for (int i=0; i < 10000; i++) {
+            if (heap.isEmpty() || random.nextBoolean()) {
+                int key = random.nextInt(1000);
+                assertEquals(heap.insert(key), offHeap.insert(key));
+            } else {
+                int entry = heap.firstEntry();
+                assertEquals(entry, offHeap.firstEntry());
+                assertEquals(heap.getKey(entry), offHeap.getKey(entry));
+                heap.removeEntry(entry);
+                offHeap.removeEntry(entry);
+            }
+            assertEquals(heap.size(), offHeap.size());
+        }
+    }
+
+    public void testHashSet() {
+        LongHashSet hashSet = new LongHashSet("test", 4);
+        LongOffHeapHashSet offHeapHashSet = new LongOffHeapHashSet("test", 4);
+        offHeapHashSet.setIncrementalRehash(true);
+        Random random = new Random(9);
+        for (int i=0; i < 100000; i++) {
+            long key = random.nextInt(20000);
+            if (random.nextInt(3) != 0) {
+                hashSet.insert(key);
+                offHeapHashSet.insert(key);
+            } else {
+                assertEquals(hashSet.remove(key) != -1, offHeapHashSet.remove(key) != -1);
+            }
+            assertEquals(hashSet.size(), offHeapHashSet.size());
+        }
+        for (long key=0; key < 20000; key++) {
+            int entry = offHeapHashSet.find(key);
+            assertEquals(hashSet.find(key) != -1, entry != -1);
+            if (entry != -1) {
+                assertEquals(key, offHeapHashSet.getKey(entry));
+            }
+        }
+        int count = 0;
+        LongOffHeapHashSet.EntryIterator iterator = offHeapHashSet.entryIterator(new LongOffHeapHashSet.EntryIterator());
+        while (iterator.hasNext()) {
+            assertTrue(hashSet.find(offHeapHashSet.getKey(iterator.nextEntry())) != -1);
+            count++;
+        }
+        assertEquals(hashSet.size(), count);
+    }
+
+    public void testTreeSetSharedStore() {
+        DoubleOffHeapTreeSet.Store store = new DoubleOffHeapTreeSet.Store("test");
+        DoubleOffHeapTreeSet bids = new DoubleOffHeapTreeSet("bids", store);
+        DoubleOffHeapTreeSet asks = new DoubleOffHeapTreeSet("asks", store);
+        for (int i=0; i < 100; i++) {
+            bids.insert(100 - i * 0.5);
+            asks.insert(101 + i * 0.5);
+        }
+        assertEquals(200, store.size());
+        assertEquals(50.5, bids.getKey(bids.firstEntry()), 0);
+        assertEquals(100.0, bids.getKey(bids.lastEntry()), 0);
+        assertEquals(101.0, asks.getKey(asks.firstEntry()), 0);
+        bids.removeEntry(bids.find(75.0));
+        assertEquals(-1, bids.find(75.0));
+        assertEquals(199, store.size());
+        bids.clear();
+        assertEquals(100, store.size());
+        assertEquals(100, asks.size());
+    }
+}
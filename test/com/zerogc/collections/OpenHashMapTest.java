@@ -0,0 +1,95 @@
+package com.zerogc.collections;
+
+import java.util.HashMap;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class OpenHashMapTest extends TestCase {
+    public void testInsertFindRemove() {
+        LongLongOpenHashMap map = new LongLongOpenHashMap("test", 4);
+        assertEquals(-1, map.find(1));
+        int entry = map.insert(1, 10);
+        assertEquals(entry, map.find(1));
+        assertEquals(1, map.getKey(entry));
+        assertEquals(10, map.getValue(entry));
+        assertEquals(entry, map.insert(1, 11));
+        assertEquals(11, map.get(1));
+        assertEquals(1, map.size());
+
+        // The key 0 marks free slots and has its own entry
+        assertEquals(-1, map.find(0));
+        entry = map.insert(0, 20);
+        assertEquals(map.capacity(), entry);
+        assertEquals(20, map.get(0));
+        assertEquals(2, map.size());
+        assertEquals(entry, map.remove(0));
+        assertEquals(-1, map.find(0));
+
+        assertEquals(map.find(1), map.remove(1));
+        assertEquals(-1, map.remove(1));
+        assertTrue(map.isEmpty());
+    }
+
+    public void testRandom() {
+        // Few keys in a small table for long probe sequences, growth and shifts
+        Random random = new Random(7);
+        LongLongOpenHashMap map = new LongLongOpenHashMap("test", 2);
+        HashMap<Long, Long> reference = new HashMap<Long, Long>();
+        for (int i=0; i < 100000; i++) {
+            long key = random.nextInt(64) - 8;
+            if (random.nextBoolean()) {
+                map.insert(key, i);
+                reference.put(key, (long)i);
+            } else {
+                assertEquals(reference.remove(key) != null, map.remove(key) != -1);
+            }
+            assertEquals(reference.size(), map.size());
+            if (i % 100 == 0) {
+                for (long k=-8; k < 56; k++) {
+                    Long value = reference.get(k);
+                    int entry = map.find(k);
+                    assertEquals(value != null, entry != -1);
+                    if (value != null) {
+                        assertEquals(value.longValue(), map.getValue(entry));
+                    }
+                }
+            }
+        }
+    }
+
+    public void testIteratorRemove() {
+        Random random = new Random(11);
+        ObjectObjectOpenHashMap map = new ObjectObjectOpenHashMap("test", 64);
+        HashMap<Object, Object> reference = new HashMap<Object, Object>();
+        for (int i=0; i < 40; i++) {
+            Integer key = Integer.valueOf(random.nextInt(1000));
+            map.insert(key, key);
+            reference.put(key, key);
+        }
+        try {
+            map.insert(null, null);
+            fail();
+        } catch (IllegalArgumentException e) {
+        }
+        int size = map.size();
+        // Remove even keys while iterating, every key must be visited exactly once
+        HashMap<Object, Object> visited = new HashMap<Object, Object>();
+        ObjectObjectOpenHashMap.EntryIterator iterator = map.entryIterator(new ObjectObjectOpenHashMap.EntryIterator());
+        while (iterator.hasNext()) {
+            int entry = iterator.nextEntry();
+            Object key = map.getKey(entry);
+            assertNull(visited.put(key, key));
+            assertEquals(key, map.getValue(entry));
+            if (((Integer)key).intValue() % 2 == 0) {
+                iterator.remove();
+                reference.remove(key);
+            }
+        }
+        assertEquals(size, visited.size());
+        assertEquals(reference.size(), map.size());
+        for (Object key : visited.keySet()) {
+            assertEquals(reference.containsKey(key), map.find(key) != -1);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.zerogc.collections;
+
+import com.zerogc.core.ByteSlice;
+
+import junit.framework.TestCase;
+
+public class RingTest extends TestCase {
+    public void testLongSpscRing() {
+        LongSpscRing ring = new LongSpscRing(3);
+        assertEquals(4, ring.capacity());
+        assertTrue(ring.isEmpty());
+        for (int lap=0; lap < 3; lap++) {
+            for (long i=0; i < 4; i++) {
+                assertTrue(ring.offer(lap*10 + i));
+            }
+            assertFalse(ring.offer(-1));
+            assertEquals(4, ring.size());
+            for (long i=0; i < 4; i++) {
+                assertFalse(ring.isEmpty());
+                assertEquals(lap*10 + i, ring.peek());
+                assertEquals(lap*10 + i, ring.poll());
+            }
+            assertTrue(ring.isEmpty());
+        }
+    }
+
+    public void testObjectMpscRing() throws InterruptedException {
+        final ObjectMpscRing ring = new ObjectMpscRing(16);
+        assertNull(ring.poll());
+        final int producers = 3;
+        final int count = 100000;
+        Thread[] threads = new Thread[producers];
+        for (int i=0; i < producers; i++) {
+            final Integer producer = Integer.valueOf(i);
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j=0; j < count; j++) {
+                        while (!ring.offer(producer)) {
+                            Thread.yield();
+                        }
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        int[] received = new int[producers];
+        for (int total=0; total < producers*count; ) {
+            Object value = ring.poll();
+            if (value == null) {
+                Thread.yield();
+                continue;
+            }
+            received[((Integer)value).intValue()]++;
+            total++;
+        }
+        for (int i=0; i < producers; i++) {
+            threads[i].join();
+            assertEquals(count, received[i]);
+        }
+        assertTrue(ring.isEmpty());
+    }
+
+    public void testMessageSpscRing() {
+        MessageSpscRing ring = new MessageSpscRing(64);
+        assertEquals(28, ring.maxLength());
+        ByteSlice slice = new ByteSlice();
+        assertFalse(ring.read(slice));
+
+        byte[] message = new byte[ring.maxLength()];
+        for (int i=0; i < message.length; i++) {
+            message[i] = (byte)i;
+        }
+        // Odd lengths exercise the alignment and the padding at the end of the buffer
+        for (int length=0; length <= ring.maxLength(); length++) {
+            assertTrue(ring.write(message, 0, length));
+            assertTrue(ring.read(slice));
+            assertEquals(length, slice.getLength());
+            for (int i=0; i < length; i++) {
+                assertEquals(message[i], slice.getBuffer()[slice.getOffset() + i]);
+            }
+            ring.release();
+            assertFalse(ring.read(slice));
+        }
+
+        // Several messages in flight
+        for (int lap=0; lap < 10; lap++) {
+            for (int i=0; i < 3; i++) {
+                assertTrue(ring.write(message, i, 7));
+            }
+            for (int i=0; i < 3; i++) {
+                assertTrue(ring.read(slice));
+                assertEquals(7, slice.getLength());
+                assertEquals(message[i], slice.getBuffer()[slice.getOffset()]);
+                ring.release();
+            }
+            assertFalse(ring.read(slice));
+        }
+
+        // Full
+        while (ring.write(message, 0, 12)) {
+        }
+        while (ring.read(slice)) {
+            ring.release();
+        }
+        assertTrue(ring.write(message, 0, ring.maxLength()));
+    }
+}
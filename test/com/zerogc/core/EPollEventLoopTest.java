@@ -0,0 +1,136 @@
+package com.zerogc.core;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Pipe;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+import com.zerogc.core.EventLoop.EventLoopListener;
+import com.zerogc.core.EventLoop.EventLoopSelectionKey;
+import com.zerogc.core.EventLoop.TimerListener;
+import com.zerogc.logging.ConsoleLogWriter;
+import com.zerogc.logging.LogManager;
+import com.zerogc.net.BaseTcpClient;
+import com.zerogc.net.MessageListener;
+import com.zerogc.net.MessageSource;
+
+import junit.framework.TestCase;
+
+public class EPollEventLoopTest extends TestCase {
+    private static final int LENGTH = 64*1024;
+
+    private EPollEventLoop eventLoop;
+    private int reads = 0;
+    private long received = 0;
+
+    private EventLoopListener readCounter = new EventLoopListener() {
+        @Override
+        public void onRead(SelectableChannel selectableChannel) {
+            // Leave the bytes in the channel
+            reads++;
+        }
+        @Override
+        public void onWrite(SelectableChannel selectableChannel) {
+        }
+        @Override
+        public void onAccept(SelectableChannel selectableChannel) {
+        }
+        @Override
+        public void onConnect(SelectableChannel selectableChannel) {
+        }
+        @Override
+        public void onClose(SelectableChannel selectableChannel) {
+        }
+        @Override
+        public void onSelect() {
+        }
+    };
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        LogManager.initialize(new ConsoleLogWriter()).open();
+        eventLoop = new EPollEventLoop();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        eventLoop.close();
+        super.tearDown();
+    }
+
+    private void runFor(long millis) {
+        eventLoop.addTimer(eventLoop.currentMillis() + millis, new TimerListener() {
+            @Override
+            public void onTimer(int entry, long expiry) {
+                eventLoop.close();
+            }
+        });
+        eventLoop.open();
+        eventLoop.run();
+    }
+
+    public void testEdgeTriggeredRead() throws Exception {
+        eventLoop.setTriggerMode(EPollEventLoop.EDGE_TRIGGERED);
+        ServerSocketChannel serverSocketChannel = ServerSocketChannel.open();
+        serverSocketChannel.bind(new InetSocketAddress("127.0.0.1", 0));
+        BaseTcpClient client = new BaseTcpClient(eventLoop, "test".getBytes(), 4096, true) {
+            @Override
+            public void onRead(SelectableChannel selectableChannel) {
+                reads++;
+                super.onRead(selectableChannel);
+            }
+        };
+        client.setDestInetSocketAddress(new InetSocketAddress[] { (InetSocketAddress)serverSocketChannel.getLocalAddress() });
+        client.setMessageListener(new MessageListener() {
+            @Override
+            public void onMessage(MessageSource messageSource, ByteBuffer buffer) {
+                received += buffer.remaining();
+                buffer.position(buffer.limit());
+            }
+        });
+        client.open();
+        // The connection completes in the backlog, queue many times the receive buffer of the client at once
+        SocketChannel socketChannel = serverSocketChannel.accept();
+        socketChannel.write(ByteBuffer.allocate(LENGTH));
+
+        // A single edge, the client reads until EAGAIN or the bytes left would never be reported
+        runFor(200);
+        assertEquals(1, reads);
+        assertEquals(LENGTH, received);
+
+        socketChannel.write(ByteBuffer.allocate(LENGTH));
+        runFor(200);
+        assertEquals(2, reads);
+        assertEquals(2*LENGTH, received);
+
+        client.close();
+        socketChannel.close();
+        serverSocketChannel.close();
+    }
+
+    public void testOneShotRearm() throws Exception {
+        eventLoop.setTriggerMode(EPollEventLoop.ONE_SHOT);
+        Pipe pipe = Pipe.open();
+        pipe.source().configureBlocking(false);
+        EventLoopSelectionKey selectionKey = eventLoop.register(pipe.source(), SelectionKey.OP_READ, readCounter);
+        pipe.sink().write(ByteBuffer.allocate(16));
+
+        // The bytes are left in the pipe, the key is disarmed after the first event
+        runFor(100);
+        assertEquals(1, reads);
+        runFor(100);
+        assertEquals(1, reads);
+
+        selectionKey.interestOps(SelectionKey.OP_READ);
+        runFor(100);
+        assertEquals(2, reads);
+
+        selectionKey.cancel();
+        pipe.source().close();
+        pipe.sink().close();
+    }
+}
@@ -0,0 +1,90 @@
+package com.zerogc.core;
+
+import junit.framework.TestCase;
+
+public class TaskQueueTest extends TestCase {
+    private static class Counter implements Runnable {
+        int count = 0;
+        @Override
+        public void run() {
+            count++;
+        }
+    }
+
+    public void testCapacity() {
+        assertEquals(1, new TaskQueue(1, -1).capacity());
+        assertEquals(8, new TaskQueue(5, -1).capacity());
+        assertEquals(1024, new TaskQueue(1024, -1).capacity());
+    }
+
+    public void testOfferPoll() {
+        TaskQueue taskQueue = new TaskQueue(4, -1);
+        Counter[] counters = new Counter[4];
+        assertTrue(taskQueue.isEmpty());
+        assertNull(taskQueue.poll());
+        for (int i=0; i < 4; i++) {
+            counters[i] = new Counter();
+            assertTrue(taskQueue.offer(counters[i]));
+        }
+        // Full
+        assertFalse(taskQueue.offer(new Counter()));
+        assertFalse(taskQueue.isEmpty());
+        assertSame(counters[0], taskQueue.poll());
+        assertTrue(taskQueue.offer(counters[0]));
+        for (int i=1; i < 4; i++) {
+            assertSame(counters[i], taskQueue.poll());
+        }
+        assertSame(counters[0], taskQueue.poll());
+        assertTrue(taskQueue.isEmpty());
+        assertNull(taskQueue.poll());
+    }
+
+    public void testRunAndPark() {
+        TaskQueue taskQueue = new TaskQueue(8, -1);
+        Counter counter = new Counter();
+        assertTrue(taskQueue.park());
+        taskQueue.unpark();
+        taskQueue.offer(counter);
+        taskQueue.offer(counter);
+        // Tasks pending, the loop must not block
+        assertFalse(taskQueue.park());
+        assertEquals(2, taskQueue.run());
+        assertEquals(2, counter.count);
+        assertEquals(0, taskQueue.run());
+        assertTrue(taskQueue.park());
+    }
+
+    public void testMultipleProducers() throws InterruptedException {
+        final TaskQueue taskQueue = new TaskQueue(64, -1);
+        final Counter counter = new Counter();
+        final int producers = 4;
+        final int tasks = 100000;
+        Thread[] threads = new Thread[producers];
+        for (int i=0; i < producers; i++) {
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j=0; j < tasks; j++) {
+                        while (!taskQueue.offer(counter)) {
+                            Thread.yield();
+                        }
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        int count = 0;
+        while (count < producers*tasks) {
+            int run = taskQueue.run();
+            if (run == 0) {
+                Thread.yield();
+            }
+            count += run;
+        }
+        for (int i=0; i < producers; i++) {
+            threads[i].join();
+        }
+        assertEquals(producers*tasks, counter.count);
+        assertTrue(taskQueue.isEmpty());
+    }
+}
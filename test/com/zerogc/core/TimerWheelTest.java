@@ -0,0 +1,129 @@
+package com.zerogc.core;
+
+import java.util.Random;
+
+import com.zerogc.core.EventLoop.TimerListener;
+import com.zerogc.logging.ConsoleLogWriter;
+import com.zerogc.logging.LogManager;
+
+import junit.framework.TestCase;
+
+public class TimerWheelTest extends TestCase {
+    private static final long START = 1000000;
+
+    private TimerWheel timerWheel;
+    private TimerListener timerListener = new TimerListener() {
+        @Override
+        public void onTimer(int entry, long expiry) {
+        }
+    };
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        LogManager.initialize(new ConsoleLogWriter()).open();
+        timerWheel = new TimerWheel();
+        timerWheel.advance(START);
+    }
+
+    private int expire(long now) {
+        int count = 0;
+        timerWheel.advance(now);
+        for (int entry = timerWheel.firstExpiredEntry(); entry != -1; entry = timerWheel.firstExpiredEntry()) {
+            assertTrue(timerWheel.getKey(entry) <= now);
+            timerWheel.removeEntry(entry);
+            count++;
+        }
+        return count;
+    }
+
+    public void testExpiry() {
+        long[] delays = new long[] { 1, 255, 256, 257, 1000, 65535, 65536, 70000, 16777216, 20000000, 5000000000L };
+        for (int i=0; i < delays.length; i++) {
+            timerWheel.insert(START + delays[i], timerListener);
+        }
+        assertEquals(delays.length, timerWheel.size());
+
+        for (int i=0; i < delays.length; i++) {
+            assertEquals(0, expire(START + delays[i] - 1));
+            assertTrue(timerWheel.nextExpiry() <= START + delays[i]);
+            assertEquals(1, expire(START + delays[i]));
+        }
+        assertTrue(timerWheel.isEmpty());
+        assertEquals(Long.MIN_VALUE, timerWheel.nextExpiry());
+    }
+
+    public void testExpiryOrder() {
+        timerWheel.insert(START + 300, timerListener);
+        timerWheel.insert(START + 100, timerListener);
+        timerWheel.insert(START + 200, timerListener);
+        timerWheel.insert(START - 10, timerListener);
+
+        timerWheel.advance(START + 1000);
+        long previous = Long.MIN_VALUE;
+        for (int entry = timerWheel.firstExpiredEntry(); entry != -1; entry = timerWheel.firstExpiredEntry()) {
+            assertTrue(timerWheel.getKey(entry) >= previous);
+            previous = timerWheel.getKey(entry);
+            timerWheel.removeEntry(entry);
+        }
+        assertEquals(START + 300, previous);
+    }
+
+    public void testSameTickOrder() {
+        TimerWheel wheel = new TimerWheel("test", 16, 2.0f, 10);
+        wheel.advance(START);
+        // Timers sharing a 10ms tick expire in insertion order, directly from level 0 or cascaded from level 1
+        long[] delays = new long[] { 100, 5000 };
+        for (int i=0; i < delays.length; i++) {
+            long when = START + delays[i];
+            int first = wheel.insert(when + 5, timerListener);
+            int second = wheel.insert(when + 1, timerListener);
+            int third = wheel.insert(when + 9, timerListener);
+
+            wheel.advance(when + 10);
+            assertEquals(first, wheel.firstExpiredEntry());
+            wheel.removeEntry(first);
+            assertEquals(second, wheel.firstExpiredEntry());
+            wheel.removeEntry(second);
+            assertEquals(third, wheel.firstExpiredEntry());
+            wheel.removeEntry(third);
+            assertEquals(-1, wheel.firstExpiredEntry());
+        }
+    }
+
+    public void testCancel() {
+        int first = timerWheel.insert(START + 10, timerListener);
+        int second = timerWheel.insert(START + 100000, timerListener);
+        timerWheel.removeEntry(first);
+        assertEquals(0, expire(START + 50));
+        timerWheel.removeEntry(second);
+        assertEquals(0, expire(START + 200000));
+        assertTrue(timerWheel.isEmpty());
+
+        // Entries are recycled
+        assertEquals(second, timerWheel.insert(START + 200010, timerListener));
+        assertEquals(first, timerWheel.insert(START + 200020, timerListener));
+        assertEquals(2, expire(START + 200020));
+    }
+
+    public void testRandom() {
+        Random random = new Random(0);
+        int count = 10000;
+        long[] expiry = new long[count];
+        for (int i=0; i < count; i++) {
+            expiry[i] = START + random.nextInt(1 << 20);
+            timerWheel.insert(expiry[i], timerListener);
+        }
+        int expired = 0;
+        for (long now = START; now < START + (1 << 20); now += random.nextInt(5000)) {
+            int due = 0;
+            for (int i=0; i < count; i++) {
+                if (expiry[i] <= now) {
+                    due++;
+                }
+            }
+            expired += expire(now);
+            assertEquals(due, expired);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.zerogc.net;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class FramerTest extends TestCase {
+    private final List<String> frames = new ArrayList<String>();
+
+    private BaseTcpClient newClient(Framer framer) {
+        BaseTcpClient client = new BaseTcpClient(null, "test".getBytes());
+        client.setFramer(framer);
+        client.setMessageListener(new MessageListener() {
+            @Override
+            public void onMessage(MessageSource source, ByteBuffer buffer) {
+                byte[] bytes = new byte[buffer.remaining()];
+                buffer.get(bytes);
+                frames.add(new String(bytes));
+            }
+        });
+        return client;
+    }
+
+    private void read(BaseTcpClient client, byte[] bytes) {
+        client.getBufferIn().put(bytes);
+        client.dispatch();
+    }
+
+    public void testLengthPrefix() {
+        Framer bigEndian = new Framer.LengthPrefix(2, ByteOrder.BIG_ENDIAN, false);
+        Framer littleEndian = new Framer.LengthPrefix(4, ByteOrder.LITTLE_ENDIAN, true);
+        ByteBuffer buffer = ByteBuffer.wrap(new byte[] { 1, 2, 0, 0, 0, 9 });
+        assertEquals(258 + 2, bigEndian.frameLength(buffer, 0, 300));
+        assertEquals(-1, bigEndian.frameLength(buffer, 0, 259));
+        assertEquals(-1, bigEndian.frameLength(buffer, 0, 1));
+        assertEquals(513, littleEndian.frameLength(buffer, 0, 513));
+        try {
+            littleEndian.frameLength(buffer, 1, 5);
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            // Expected
+        }
+    }
+
+    public void testSoupBinTcp() {
+        BaseTcpClient client = newClient(new Framer.SoupBinTcp());
+        read(client, new byte[] { 0, 3, 'S', 'a', 'b', 0, 1, 'H', 0 });
+        assertEquals(2, frames.size());
+        assertEquals("\0\3Sab", frames.get(0));
+        assertEquals("\0\1H", frames.get(1));
+        // The partial frame is kept at the start of the buffer
+        assertEquals(1, client.getBufferIn().position());
+        read(client, new byte[] { 2, 'U', 'x', 0 });
+        assertEquals(3, frames.size());
+        assertEquals("\0\2Ux", frames.get(2));
+        assertEquals(1, client.getBufferIn().position());
+    }
+
+    public void testFixedLengthAndDelimiter() {
+        BaseTcpClient client = newClient(new Framer.FixedLength(3));
+        read(client, "abcdefgh".getBytes());
+        assertEquals(2, frames.size());
+        assertEquals("def", frames.get(1));
+        read(client, "i".getBytes());
+        assertEquals("ghi", frames.get(2));
+        assertEquals(0, client.getBufferIn().position());
+
+        frames.clear();
+        client = newClient(new Framer.Delimiter((byte)'\n'));
+        read(client, "one\ntwo\nthr".getBytes());
+        read(client, "ee\n".getBytes());
+        assertEquals(3, frames.size());
+        assertEquals("three\n", frames.get(2));
+    }
+
+    public void testFrameTooLarge() {
+        BaseTcpClient client = newClient(new Framer.Delimiter((byte)'\n'));
+        try {
+            read(client, new byte[client.getBufferIn().capacity()]);
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            // Expected
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.zerogc.stores;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class AllocatorTest extends TestCase {
+    public void testReuse() {
+        TestOrderStore store = new TestOrderStore("test", 0);
+        Random random = new Random(13);
+        ArrayList<Integer> allocated = new ArrayList<Integer>();
+        boolean[] used = new boolean[10000];
+        for (int i=0; i < 10000; i++) {
+            if (allocated.isEmpty() || random.nextInt(3) != 0) {
+                int slot = store.allocate();
+                assertFalse(used[slot]);
+                // Freed slots are cleared before being handed out again
+                assertEquals(0, store.getOrderNumber(slot));
+                used[slot] = true;
+                allocated.add(slot);
+                store.setOrderNumber(slot, i);
+            } else {
+                int slot = allocated.remove(random.nextInt(allocated.size()));
+                used[slot] = false;
+                store.setOrderNumber(slot, 0);
+                store.free(slot);
+            }
+            assertEquals(allocated.size(), store.size());
+        }
+        // Slots are reused before the high mark is raised
+        assertTrue(store.getHighMark() < 2*store.size());
+    }
+
+    public void testRowStore() {
+        TestOrderRowStore store = new TestOrderRowStore("test", 2);
+        for (int i=0; i < 5; i++) {
+            assertEquals(i, store.allocate());
+            store.setPrice(i, i);
+        }
+        assertEquals(8, store.getCapacity());
+        store.free(1);
+        store.free(4);
+        assertEquals(3, store.size());
+        assertEquals(4, store.allocate());
+        assertEquals(0, store.getPrice(4));
+        assertEquals(1, store.allocate());
+        assertEquals(5, store.allocate());
+        assertEquals(2, store.getPrice(2));
+    }
+
+    public void testStaleHandle() {
+        TestOrderStore store = new TestOrderStore("test", 4);
+        int slot = store.allocate();
+        long handle = store.getHandle(slot);
+        assertEquals(slot, store.getSlot(handle));
+        store.free(slot);
+        assertFalse(store.isValid(handle));
+        assertEquals(slot, store.allocate());
+        assertFalse(store.isValid(handle));
+        assertTrue(store.isValid(store.getHandle(slot)));
+        try {
+            store.getSlot(handle);
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            // Expected
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.zerogc.stores;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class IndexTest extends TestCase {
+    public void testUnique() {
+        TestOrderStore store = new TestOrderStore("test", 4);
+        for (int i=0; i < 100; i++) {
+            int slot = store.allocate();
+            store.setOrderNumber(slot, 1000 + i);
+        }
+        assertEquals(42, store.findByOrderNumber(1042));
+        assertEquals(-1, store.findByOrderNumber(42));
+        store.setOrderNumber(42, 42);
+        assertEquals(-1, store.findByOrderNumber(1042));
+        assertEquals(42, store.findByOrderNumber(42));
+        try {
+            store.setOrderNumber(43, 42);
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            // Expected
+        }
+        assertEquals(1043, store.getOrderNumber(43));
+        store.free(42);
+        assertEquals(-1, store.findByOrderNumber(42));
+        // The slot is reused and cleared, the order number can be set again
+        int slot = store.allocate();
+        assertEquals(42, slot);
+        store.setOrderNumber(slot, 1042);
+        assertEquals(42, store.findByOrderNumber(1042));
+
+        // 0 is the unset value, it is not indexed and several slots can hold it
+        store.setOrderNumber(10, 0);
+        store.setOrderNumber(11, 0);
+        assertEquals(-1, store.findByOrderNumber(0));
+        assertEquals(-1, store.findByOrderNumber(1010));
+        store.setOrderNumber(11, 1010);
+        assertEquals(11, store.findByOrderNumber(1010));
+    }
+
+    public void testOrdered() {
+        TestOrderRowStore store = new TestOrderRowStore("test", 4);
+        Random random = new Random(17);
+        int[] prices = new int[1000];
+        for (int i=0; i < prices.length; i++) {
+            int slot = store.allocate();
+            prices[slot] = random.nextInt(50);
+            store.setPrice(slot, prices[slot]);
+        }
+        for (int slot=0; slot < prices.length; slot += 3) {
+            store.free(slot);
+            prices[slot] = -1;
+        }
+        for (int slot=1; slot < prices.length; slot += 3) {
+            prices[slot] = random.nextInt(50);
+            store.setPrice(slot, prices[slot]);
+        }
+
+        TestOrderRowStore.PriceIndex index = store.getPriceIndex();
+        int count = 0;
+        long price = Long.MIN_VALUE;
+        for (int entry = index.firstEntry(); entry != -1; entry = index.nextEntry(entry)) {
+            int slot = index.getSlot(entry);
+            assertTrue(store.getPrice(slot) >= price);
+            price = store.getPrice(slot);
+            assertEquals(prices[slot], price);
+            count++;
+        }
+        assertEquals(store.size(), count);
+
+        int slot = store.findFirstByPrice(7);
+        assertEquals(7, store.getPrice(slot));
+        assertEquals(-1, store.findFirstByPrice(50));
+    }
+}
@@ -0,0 +1,77 @@
+package com.zerogc.stores;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import junit.framework.TestCase;
+
+public class MappedStoreTest extends TestCase {
+    private File file;
+
+    @Override
+    protected void setUp() throws IOException {
+        file = File.createTempFile("TestOrderMappedStore", ".dat");
+        file.delete();
+    }
+
+    @Override
+    protected void tearDown() {
+        file.delete();
+    }
+
+    public void testReattach() throws IOException {
+        TestOrderMappedStore store = new TestOrderMappedStore("test", file.getPath(), 4);
+        assertEquals(4, store.getCapacity());
+        assertEquals(0, store.getHighMark());
+        for (int i=0; i < 10; i++) {
+            int slot = store.allocate();
+            assertEquals(i, slot);
+            store.setOrderNumber(slot, 1000 + slot);
+            store.setSide(slot, (byte)'B');
+            store.setInstrument(slot, slot);
+            store.setQuantity(slot, 100*slot);
+            store.setPrice(slot, -slot);
+        }
+        store.free(3);
+        store.free(5);
+        store.close();
+
+        // A smaller initial capacity keeps the records of the previous run
+        store = new TestOrderMappedStore("test", file.getPath(), 4);
+        assertEquals(16, store.getCapacity());
+        assertEquals(10, store.getHighMark());
+        assertEquals(8, store.size());
+        for (int slot=0; slot < 10; slot++) {
+            if (slot == 3 || slot == 5) {
+                continue;
+            }
+            assertEquals(1000 + slot, store.getOrderNumber(slot));
+            assertEquals((byte)'B', store.getSide(slot));
+            assertEquals(slot, store.getInstrument(slot));
+            assertEquals(100*slot, store.getQuantity(slot));
+            assertEquals(-slot, store.getPrice(slot));
+        }
+        // The free list survives the restart
+        assertEquals(5, store.allocate());
+        assertEquals(0, store.getOrderNumber(5));
+        assertEquals(3, store.allocate());
+        assertEquals(10, store.allocate());
+        assertEquals(11, store.size());
+        store.close();
+    }
+
+    public void testSchemaMismatch() throws IOException {
+        new TestOrderMappedStore("test", file.getPath(), 4).close();
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.seek(TestOrderMappedStore.HeaderOffsets.schemaHash);
+        raf.writeLong(0);
+        raf.close();
+        try {
+            new TestOrderMappedStore("test", file.getPath(), 4);
+            fail("Expected IOException");
+        } catch (IOException e) {
+            // Expected
+        }
+    }
+}
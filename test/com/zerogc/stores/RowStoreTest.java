@@ -0,0 +1,47 @@
+package com.zerogc.stores;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class RowStoreTest extends TestCase {
+    public void testSameAsColumns() {
+        TestOrderStore columns = new TestOrderStore("columns", 4);
+        TestOrderRowStore rows = new TestOrderRowStore("rows", 4);
+        Random random = new Random(11);
+        for (int slot=0; slot < 100; slot++) {
+            if (slot == rows.getCapacity()) {
+                columns.grow(2*columns.getCapacity());
+                rows.grow(2*rows.getCapacity());
+            }
+            // Negative values check the sign of the columns packed in the same long
+            byte side = (byte)random.nextInt();
+            int instrument = random.nextInt();
+            int quantity = random.nextInt();
+            long price = random.nextLong();
+            columns.setSide(slot, side);
+            columns.setInstrument(slot, instrument);
+            columns.setQuantity(slot, quantity);
+            columns.setPrice(slot, price);
+            rows.setSide(slot, side);
+            rows.setInstrument(slot, instrument);
+            rows.setQuantity(slot, quantity);
+            rows.setPrice(slot, price);
+            rows.setOrderNumber(slot, slot);
+        }
+        for (int slot=0; slot < 100; slot++) {
+            assertEquals(columns.getSide(slot), rows.getSide(slot));
+            assertEquals(columns.getInstrument(slot), rows.getInstrument(slot));
+            assertEquals(columns.getQuantity(slot), rows.getQuantity(slot));
+            assertEquals(columns.getPrice(slot), rows.getPrice(slot));
+            assertEquals(slot, rows.getOrderNumber(slot));
+        }
+        rows.setQuantity(7, 0);
+        assertEquals(columns.getInstrument(7), rows.getInstrument(7));
+        assertEquals(columns.getSide(7), rows.getSide(7));
+        rows.clear(8);
+        assertEquals(0, rows.getSide(8));
+        assertEquals(0, rows.getPrice(8));
+        assertEquals(9, rows.getOrderNumber(9));
+    }
+}
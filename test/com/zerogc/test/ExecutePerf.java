@@ -0,0 +1,117 @@
+package com.zerogc.test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.zerogc.core.EPollEventLoop;
+import com.zerogc.core.EventLoop;
+import com.zerogc.core.EventLoop.TimerListener;
+import com.zerogc.core.IoUringEventLoop;
+import com.zerogc.logging.ConsoleLogWriter;
+import com.zerogc.logging.Level;
+import com.zerogc.logging.LogManager;
+import com.zerogc.logging.Logger;
+
+/**
+ * Measure the latency of tasks handed to a blocked event loop with execute():
+ * a thread queues a pre-allocated task stamped with System.nanoTime() at a fixed pace
+ * and the event loop reports the average and maximum delay until the task runs every second.
+ */
+
+// java -cp ${DEVELOP}/zerogc/dist/ZeroGC-0.0.0.0.jar com.zerogc.test.ExecutePerf [epoll|uring] [intervalMicros]
+public class ExecutePerf {
+    static Logger log;
+    static final int INTERVAL_MICROS = 100;
+    static final int TASKS = 64;
+
+    private static long count = 0;
+    private static long total = 0;
+    private static long max = 0;
+    private static int rejected = 0;
+
+    static class Task implements Runnable {
+        long timestamp;
+        final AtomicInteger free;
+
+        Task(AtomicInteger free) {
+            this.free = free;
+        }
+
+        @Override
+        public void run() {
+            long latency = System.nanoTime() - this.timestamp;
+            total += latency;
+            if (latency > max) {
+                max = latency;
+            }
+            count++;
+            this.free.incrementAndGet();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        LogManager.initialize(new ConsoleLogWriter()).open();
+        log = LogManager.getLogger(ExecutePerf.class.getSimpleName());
+
+        final String type = args.length > 0 ? args[0] : "epoll";
+        final long intervalNanos = (args.length > 1 ? Integer.parseInt(args[1]) : INTERVAL_MICROS) * 1000L;
+
+        final EventLoop eventLoop;
+        final EPollEventLoop epollEventLoop;
+        final IoUringEventLoop ioUringEventLoop;
+        if (type.equals("uring")) {
+            epollEventLoop = null;
+            eventLoop = ioUringEventLoop = new IoUringEventLoop();
+        } else {
+            ioUringEventLoop = null;
+            eventLoop = epollEventLoop = new EPollEventLoop();
+        }
+        eventLoop.open();
+
+        eventLoop.addTimer(eventLoop.currentMillis() + 1000, new TimerListener() {
+            @Override
+            public void onTimer(int entry, long expiry) {
+                log.log(Level.INFO, log.getSB().append(type).append(" count: ").append(count)
+                        .append(", avg: ").append(count > 0 ? total / count / 1000.0 : 0).append("us")
+                        .append(", max: ").append(max / 1000.0).append("us, rejected: ").append(rejected));
+                count = total = max = 0;
+                rejected = 0;
+                eventLoop.addTimer(expiry + 1000, this);
+            }
+        });
+
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                // Tasks are recycled in turn, a task is reused once the loop ran it
+                AtomicInteger free = new AtomicInteger(TASKS);
+                Task[] tasks = new Task[TASKS];
+                for (int i=0; i < TASKS; i++) {
+                    tasks[i] = new Task(free);
+                }
+                long next = System.nanoTime();
+                for (int i=0; ; ) {
+                    next += intervalNanos;
+                    while (System.nanoTime() < next) {
+                    }
+                    if (free.get() == 0) {
+                        rejected++;
+                        continue;
+                    }
+                    free.decrementAndGet();
+                    Task task = tasks[i];
+                    task.timestamp = System.nanoTime();
+                    if (epollEventLoop != null ? epollEventLoop.execute(task) : ioUringEventLoop.execute(task)) {
+                        i = (i + 1) % TASKS;
+                    } else {
+                        free.incrementAndGet();
+                        rejected++;
+                    }
+                }
+            }
+        }).start();
+        log.log(Level.INFO, log.getSB().append("Start the execute latency test with ").append(type)
+                .append(", one task every ").append(intervalNanos / 1000).append("us"));
+
+        eventLoop.run();
+    }
+}
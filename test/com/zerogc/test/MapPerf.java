@@ -1,26 +1,37 @@
 package com.zerogc.test;
 
+import java.io.IOException;
+import java.util.HashMap;
 import java.util.Random;
 import java.util.TreeMap;
 
 import com.zerogc.collections.LongAvlTree;
+import com.zerogc.collections.LongLongHashMap;
+import com.zerogc.collections.LongLongOpenHashMap;
 import com.zerogc.collections.LongLongTreeMap;
 import com.zerogc.collections.LongRbTree;
+import com.zerogc.logging.ConsoleLogWriter;
 import com.zerogc.logging.Level;
 import com.zerogc.logging.LogManager;
 import com.zerogc.logging.Logger;
 
 /**
+ * Compare the tree maps, or the chained hash map against the open addressing hash map and java.util.HashMap
+ * with lookups only or with every key removed and inserted again.
+ * The grow test fills a chained hash map from its default capacity and reports the worst insert latency,
+ * with the whole table rehashed in the insert triggering the resize or incrementally.
  * @author Benoit Jardin
  */
 
-// java -Djava.library.path=${DEVELOP}/zerogc/native -cp ${DEVELOP}/zerogc/dist/ZeroGC-0.0.0.0.jar com.zerogc.test.MapPerf
+// java -Djava.library.path=${DEVELOP}/zerogc/native -cp ${DEVELOP}/zerogc/dist/ZeroGC-0.0.0.0.jar com.zerogc.test.MapPerf [tree|chained|open|jdk|incremental] [find|update|grow]
 public class MapPerf {
-    static final Logger log = LogManager.getLogger(MapPerf.class.getSimpleName());
+    static Logger log;
     static final int SIZE = 10000;
+    static final int GROW_SIZE = 1000000;
     
     private static int count = 0;
     private static long sum = 0;
+    private static volatile long maxLatency = 0;
 
     // Multimap between timer expiry and EventHandler
     static class LongLongRbMap extends LongRbTree {
@@ -89,8 +100,13 @@ public class MapPerf {
         return (m_z << 16) + m_w;  /* 32-bit result */
     }
 
-    public static void main(String[] args) {
-        
+    public static void main(String[] args) throws IOException {
+        LogManager.initialize(new ConsoleLogWriter()).open();
+        log = LogManager.getLogger(MapPerf.class.getSimpleName());
+        final String mode = args.length > 0 ? args[0] : "tree";
+        final String op = args.length > 1 ? args[1] : "find";
+        final boolean update = op.equals("update");
+
         new Thread(new Runnable() {
             @Override
             public void run() {
@@ -104,14 +120,14 @@ public class MapPerf {
                         prevCount = count;
                         log.log(Level.INFO, log.getSB().append("Iterations: ").append(iterations).append(" in ").append(end-start).append("ms, ")
                                 .append(iterations*1000.0/(end-start)).append(" iterartions/sec")
-                                .append(", sum: ").append(sum));
+                                .append(", sum: ").append(sum).append(", max insert latency: ").append(maxLatency).append("ns"));
                         start = end;
                     } catch (InterruptedException e) {
                     }
                 }
             }
         }).start();
-        log.log(Level.INFO, log.getSB().append("Start the performance test loop"));
+        log.log(Level.INFO, log.getSB().append("Start the ").append(mode).append(' ').append(op).append(" performance test loop"));
 
         int x = 0x80000000;
         x = x>>31;
@@ -129,6 +145,9 @@ public class MapPerf {
         TreeMap<Long, Long> longTreeMap = new TreeMap<Long, Long>();
         LongLongTreeMap longLongTreeMap = new LongLongTreeMap();
         //LongLongTreeMap longLongTreeMap = new LongLongTreeMap();
+        LongLongHashMap longLongHashMap = new LongLongHashMap("chained", 2*SIZE);
+        LongLongOpenHashMap longLongOpenHashMap = new LongLongOpenHashMap("open", 2*SIZE);
+        HashMap<Long, Long> longHashMap = new HashMap<Long, Long>(2*SIZE);
         
         for (int i = 0; i < values.length; ++i) {
             longLongRbMap.insert(values[i], values[i]);
@@ -136,6 +155,73 @@ public class MapPerf {
             longLongAvlMap.insert(values[i], values[i]);
             longTreeMap.put(values[i], values[i]);
             //longLongTreeMap.put(values[i], values[i]);
+            longLongHashMap.insert(values[i], values[i]);
+            longLongOpenHashMap.insert(values[i], values[i]);
+            longHashMap.put(values[i], values[i]);
+        }
+
+        if (op.equals("grow")) {
+            while (true) {
+                LongLongHashMap map = new LongLongHashMap(mode);
+                map.setIncrementalRehash(mode.equals("incremental"));
+                long max = 0;
+                for (int i = 0; i < GROW_SIZE; ++i) {
+                    long key = nextRadomInt();
+                    long start = System.nanoTime();
+                    map.insert(key, key);
+                    long latency = System.nanoTime() - start;
+                    if (latency > max) {
+                        max = latency;
+                    }
+                }
+                maxLatency = max;
+                ++count;
+            }
+        } else if (mode.equals("chained")) {
+            while (true) {
+                for (int i = 0; i < SIZE; ++i) {
+                    sum += longLongHashMap.getValue(longLongHashMap.find(values[i]));
+                }
+                if (update) {
+                    for (int i = 0; i < SIZE; ++i) {
+                        longLongHashMap.remove(values[i]);
+                    }
+                    for (int i = 0; i < SIZE; ++i) {
+                        longLongHashMap.insert(values[i], values[i]);
+                    }
+                }
+                ++count;
+            }
+        } else if (mode.equals("open")) {
+            while (true) {
+                for (int i = 0; i < SIZE; ++i) {
+                    sum += longLongOpenHashMap.getValue(longLongOpenHashMap.find(values[i]));
+                }
+                if (update) {
+                    for (int i = 0; i < SIZE; ++i) {
+                        longLongOpenHashMap.remove(values[i]);
+                    }
+                    for (int i = 0; i < SIZE; ++i) {
+                        longLongOpenHashMap.insert(values[i], values[i]);
+                    }
+                }
+                ++count;
+            }
+        } else if (mode.equals("jdk")) {
+            while (true) {
+                for (int i = 0; i < SIZE; ++i) {
+                    sum += longHashMap.get(values[i]);
+                }
+                if (update) {
+                    for (int i = 0; i < SIZE; ++i) {
+                        longHashMap.remove(values[i]);
+                    }
+                    for (int i = 0; i < SIZE; ++i) {
+                        longHashMap.put(values[i], values[i]);
+                    }
+                }
+                ++count;
+            }
         }
 
         while (true) {
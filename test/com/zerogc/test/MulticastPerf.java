@@ -0,0 +1,123 @@
+package com.zerogc.test;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectableChannel;
+
+import com.zerogc.core.EPollEventLoop;
+import com.zerogc.core.EventLoop.EventLoopListener;
+import com.zerogc.core.SpinPolicy;
+import com.zerogc.logging.ConsoleLogWriter;
+import com.zerogc.logging.Level;
+import com.zerogc.logging.LogManager;
+import com.zerogc.logging.Logger;
+import com.zerogc.net.MessageListener;
+import com.zerogc.net.MessageSource;
+import com.zerogc.net.MulticastPublisher;
+import com.zerogc.net.MulticastReceiver;
+
+/**
+ * Publish bursts of small datagrams every event loop iteration and receive them back,
+ * a batch size of 1 costs one system call per datagram on both sides.
+ */
+
+// java -cp ${DEVELOP}/zerogc/dist/ZeroGC-0.0.0.0.jar com.zerogc.test.MulticastPerf [batchSize] [burst] [group] [port]
+public class MulticastPerf {
+    static Logger log;
+    static final int BATCH_SIZE = 64;
+    static final int BURST = 64;
+    static final int MESSAGE_SIZE = 64;
+
+    private static int sent = 0;
+    private static int received = 0;
+
+    public static void main(String[] args) throws Exception {
+        LogManager.initialize(new ConsoleLogWriter()).open();
+        log = LogManager.getLogger(MulticastPerf.class.getSimpleName());
+
+        int batchSize = args.length > 0 ? Integer.parseInt(args[0]) : BATCH_SIZE;
+        final int burst = args.length > 1 ? Integer.parseInt(args[1]) : BURST;
+        String group = args.length > 2 ? args[2] : "239.255.0.1";
+        int port = args.length > 3 ? Integer.parseInt(args[3]) : 45001;
+
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                long start = System.currentTimeMillis();
+                int prevSent = sent;
+                int prevReceived = received;
+                while (true) {
+                    try {
+                        Thread.sleep(1000);
+                        long end = System.currentTimeMillis();
+                        int sentCount = sent - prevSent;
+                        int receivedCount = received - prevReceived;
+                        prevSent = sent;
+                        prevReceived = received;
+                        log.log(Level.INFO, log.getSB().append("Sent: ").append(sentCount).append(" in ").append(end-start).append("ms, ")
+                                .append(sentCount*1000.0/(end-start)).append(" datagrams/sec")
+                                .append(", received: ").append(receivedCount*1000.0/(end-start)).append(" datagrams/sec"));
+                        start = end;
+                    } catch (InterruptedException e) {
+                    }
+                }
+            }
+        }).start();
+
+        EPollEventLoop eventLoop = new EPollEventLoop();
+        // Nothing ever blocks the loop, the bursts are published from onSelect()
+        eventLoop.setSpinPolicy(new SpinPolicy(SpinPolicy.BUSY_SPIN, false));
+        eventLoop.open();
+
+        MulticastReceiver receiver = new MulticastReceiver(eventLoop, "Receiver".getBytes(), Math.min(batchSize, MulticastReceiver.BATCH_SIZE), MulticastReceiver.PACKET_SIZE);
+        receiver.setGroupInetSocketAddress(new InetSocketAddress(group, port));
+        receiver.setMessageListener(new MessageListener() {
+            @Override
+            public void onMessage(MessageSource source, ByteBuffer buffer) {
+                received++;
+            }
+        });
+        receiver.open();
+
+        final MulticastPublisher publisher = new MulticastPublisher(eventLoop, "Publisher".getBytes(), batchSize, MulticastPublisher.PACKET_SIZE);
+        publisher.setGroupInetSocketAddress(new InetSocketAddress(group, port));
+        publisher.open();
+
+        // Registered after the publisher to queue the burst before it gets flushed
+        eventLoop.registerSelect(new EventLoopListener() {
+            @Override
+            public void onSelect() {
+                for (int i=0; i < burst; i++) {
+                    ByteBuffer message = publisher.beginMessage();
+                    if (message == null) {
+                        break;
+                    }
+                    message.putInt(sent);
+                    message.position(message.position() + MESSAGE_SIZE - 4);
+                    publisher.endMessage();
+                    sent++;
+                }
+                publisher.onSelect();
+            }
+            @Override
+            public void onRead(SelectableChannel selectableChannel) {
+            }
+            @Override
+            public void onWrite(SelectableChannel selectableChannel) {
+            }
+            @Override
+            public void onConnect(SelectableChannel selectableChannel) {
+            }
+            @Override
+            public void onClose(SelectableChannel selectableChannel) {
+            }
+            @Override
+            public void onAccept(SelectableChannel selectableChannel) {
+            }
+        });
+        log.log(Level.INFO, log.getSB().append("Start the performance test loop with batches of ").append(batchSize)
+                .append(" and bursts of ").append(burst).append(" datagrams"));
+
+        eventLoop.run();
+    }
+}
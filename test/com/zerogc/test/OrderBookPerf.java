@@ -0,0 +1,125 @@
+package com.zerogc.test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import com.zerogc.book.OrderBook;
+import com.zerogc.constants.TestSide;
+import com.zerogc.constants.TestType;
+import com.zerogc.logging.ConsoleLogWriter;
+import com.zerogc.logging.Level;
+import com.zerogc.logging.LogManager;
+import com.zerogc.logging.Logger;
+import com.zerogc.messages.TestEnterOrderRequest;
+
+/**
+ * Throughput of the order book operations.
+ * Each round decodes and adds a batch of orders from enter order messages, modifies every order (half of them keep
+ * their priority, the other half move to another level), partially executes every order and finally cancels them,
+ * leaving the book empty for the next round. Every phase is timed separately and reported in ns per operation.
+ * Once the first round has grown the stores nothing is allocated anymore, run with -verbose:gc to check.
+ * @author Benoit Jardin
+ */
+
+// java -cp ${DEVELOP}/zerogc/dist/ZeroGC-0.0.0.0.jar com.zerogc.test.OrderBookPerf [orders] [levels]
+public class OrderBookPerf {
+    static Logger log;
+
+    private static volatile int count = 0;
+    private static long addNanos = 0;
+    private static long modifyNanos = 0;
+    private static long executeNanos = 0;
+    private static long cancelNanos = 0;
+
+    public static void main(String[] args) throws IOException {
+        LogManager.initialize(new ConsoleLogWriter()).open();
+        log = LogManager.getLogger(OrderBookPerf.class.getSimpleName());
+        final int orders = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        final int levels = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                int prevCount = count;
+                long prevAdd = 0, prevModify = 0, prevExecute = 0, prevCancel = 0;
+                while (true) {
+                    try {
+                        Thread.sleep(1000);
+                        int rounds = count - prevCount;
+                        if (rounds == 0) {
+                            continue;
+                        }
+                        double operations = (double)rounds*orders;
+                        log.log(Level.INFO, log.getSB().append("Rounds: ").append(rounds)
+                                .append(", add: ").append((addNanos - prevAdd)/operations)
+                                .append(" ns, modify: ").append((modifyNanos - prevModify)/operations)
+                                .append(" ns, execute: ").append((executeNanos - prevExecute)/operations)
+                                .append(" ns, cancel: ").append((cancelNanos - prevCancel)/operations).append(" ns"));
+                        prevCount += rounds;
+                        prevAdd = addNanos;
+                        prevModify = modifyNanos;
+                        prevExecute = executeNanos;
+                        prevCancel = cancelNanos;
+                    } catch (InterruptedException e) {
+                    }
+                }
+            }
+        }).start();
+        log.log(Level.INFO, log.getSB().append("Start ").append(orders).append(" orders on ").append(levels).append(" levels per side"));
+
+        // Enter order messages are encoded upfront, one after the other in a single buffer
+        ByteBuffer buffer = ByteBuffer.allocateDirect(orders * TestEnterOrderRequest.endOfAttributes);
+        TestEnterOrderRequest enterOrder = new TestEnterOrderRequest();
+        byte[] reference = "PERF".getBytes();
+        long[] prices = new long[orders];
+        long[] newPrices = new long[orders];
+        Random random = new Random(1);
+        for (int i=0; i < orders; i++) {
+            byte side = random.nextBoolean() ? TestSide.BUY : TestSide.SELL;
+            long price = side == TestSide.BUY ? 10000 - random.nextInt(levels) : 10001 + random.nextInt(levels);
+            enterOrder.setBuffer(buffer);
+            enterOrder.create(TestType.ENTER_ORDER, i, reference, side, 100 + random.nextInt(100), 1, price, 0);
+            prices[i] = price;
+            newPrices[i] = side == TestSide.BUY ? 10000 - random.nextInt(levels) : 10001 + random.nextInt(levels);
+        }
+
+        OrderBook book = new OrderBook("book");
+        while (true) {
+            long start = System.nanoTime();
+            buffer.clear();
+            for (int i=0; i < orders; i++) {
+                enterOrder.setBuffer(buffer);
+                book.onEnterOrder(enterOrder);
+            }
+            long end = System.nanoTime();
+            addNanos += end - start;
+
+            start = end;
+            for (int i=0; i < orders; i++) {
+                if ((i & 1) == 0) {
+                    book.modify(i, prices[i], 50);
+                } else {
+                    book.modify(i, newPrices[i], 200);
+                }
+            }
+            end = System.nanoTime();
+            modifyNanos += end - start;
+
+            start = end;
+            for (int i=0; i < orders; i++) {
+                book.execute(i, 10);
+            }
+            end = System.nanoTime();
+            executeNanos += end - start;
+
+            start = end;
+            for (int i=0; i < orders; i++) {
+                book.cancel(i);
+            }
+            end = System.nanoTime();
+            cancelNanos += end - start;
+            count++;
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package com.zerogc.test;
+
+import java.util.concurrent.ArrayBlockingQueue;
+
+import com.zerogc.collections.LongSpscRing;
+import com.zerogc.collections.MessageSpscRing;
+import com.zerogc.collections.ObjectMpscRing;
+import com.zerogc.core.ByteSlice;
+import com.zerogc.logging.ConsoleLogWriter;
+import com.zerogc.logging.Level;
+import com.zerogc.logging.LogManager;
+import com.zerogc.logging.Logger;
+
+/**
+ * Measure the throughput of the rings between threads, with ArrayBlockingQueue as a reference,
+ * and the round trip latency of a pair of LongSpscRing.
+ */
+
+// java -cp ${DEVELOP}/zerogc/dist/ZeroGC-0.0.0.0.jar com.zerogc.test.RingPerf [spsc|mpsc|message|abq|pingpong] [producers] [capacity]
+public class RingPerf {
+    static Logger log;
+    static final int CAPACITY = 1024;
+    static final int MESSAGE_SIZE = 64;
+
+    private static volatile long count = 0;
+
+    private static void share(int i) {
+        // Consumers and producers share the core on small machines
+        if ((i & 0xff) == 0) {
+            Thread.yield();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        LogManager.initialize(new ConsoleLogWriter()).open();
+        log = LogManager.getLogger(RingPerf.class.getSimpleName());
+
+        final String mode = args.length > 0 ? args[0] : "spsc";
+        final int producers = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+        final int capacity = args.length > 2 ? Integer.parseInt(args[2]) : CAPACITY;
+
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                long start = System.currentTimeMillis();
+                long prevCount = count;
+                while (true) {
+                    try {
+                        Thread.sleep(1000);
+                        long end = System.currentTimeMillis();
+                        long iterations = count - prevCount;
+                        prevCount += iterations;
+                        if (mode.equals("pingpong")) {
+                            log.log(Level.INFO, log.getSB().append(mode).append(" round trips: ").append(iterations).append(" in ").append(end-start).append("ms, ")
+                                    .append((end-start)*1000000.0/iterations).append("ns/round trip"));
+                        } else {
+                            log.log(Level.INFO, log.getSB().append(mode).append(" iterations: ").append(iterations).append(" in ").append(end-start).append("ms, ")
+                                    .append(iterations*1000.0/(end-start)).append(" messages/sec"));
+                        }
+                        start = end;
+                    } catch (InterruptedException e) {
+                    }
+                }
+            }
+        }).start();
+
+        log.log(Level.INFO, log.getSB().append("Start the ").append(mode).append(" performance test with ").append(producers)
+                .append(" producers and a capacity of ").append(capacity));
+        if (mode.equals("spsc")) {
+            final LongSpscRing ring = new LongSpscRing(capacity);
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i=0; ; i++) {
+                        while (!ring.offer(i)) {
+                            Thread.yield();
+                        }
+                    }
+                }
+            }).start();
+            for (long sum=0; ; ) {
+                if (ring.isEmpty()) {
+                    Thread.yield();
+                    continue;
+                }
+                while (!ring.isEmpty()) {
+                    sum += ring.poll();
+                    count++;
+                }
+            }
+        } else if (mode.equals("mpsc")) {
+            final ObjectMpscRing ring = new ObjectMpscRing(capacity);
+            for (int p=0; p < producers; p++) {
+                new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        for (int i=0; ; i++) {
+                            while (!ring.offer(this)) {
+                                Thread.yield();
+                            }
+                            share(i);
+                        }
+                    }
+                }).start();
+            }
+            while (true) {
+                if (ring.poll() == null) {
+                    Thread.yield();
+                    continue;
+                }
+                count++;
+            }
+        } else if (mode.equals("message")) {
+            final MessageSpscRing ring = new MessageSpscRing(capacity*MESSAGE_SIZE);
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    byte[] buffer = ring.buffer();
+                    for (int i=0; ; i++) {
+                        int position;
+                        while ((position = ring.claim(MESSAGE_SIZE)) == -1) {
+                            Thread.yield();
+                        }
+                        buffer[position] = (byte)i;
+                        ring.commit();
+                    }
+                }
+            }).start();
+            ByteSlice slice = new ByteSlice();
+            while (true) {
+                if (!ring.read(slice)) {
+                    Thread.yield();
+                    continue;
+                }
+                ring.release();
+                count++;
+            }
+        } else if (mode.equals("abq")) {
+            final ArrayBlockingQueue<Object> queue = new ArrayBlockingQueue<Object>(capacity);
+            for (int p=0; p < producers; p++) {
+                new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        for (int i=0; ; i++) {
+                            while (!queue.offer(this)) {
+                                Thread.yield();
+                            }
+                            share(i);
+                        }
+                    }
+                }).start();
+            }
+            while (true) {
+                if (queue.poll() == null) {
+                    Thread.yield();
+                    continue;
+                }
+                count++;
+            }
+        } else if (mode.equals("pingpong")) {
+            final LongSpscRing ping = new LongSpscRing(capacity);
+            final LongSpscRing pong = new LongSpscRing(capacity);
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    while (true) {
+                        if (ping.isEmpty()) {
+                            Thread.yield();
+                            continue;
+                        }
+                        pong.offer(ping.poll());
+                    }
+                }
+            }).start();
+            for (long i=0; ; i++) {
+                ping.offer(i);
+                while (pong.isEmpty()) {
+                    Thread.yield();
+                }
+                pong.poll();
+                count++;
+            }
+        } else {
+            log.log(Level.ERROR, log.getSB().append("Unknown mode: ").append(mode));
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package com.zerogc.test;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.Pipe;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+
+import com.zerogc.core.ByteStringBuilder;
+import com.zerogc.core.EPollEventLoop;
+import com.zerogc.core.EventLoop;
+import com.zerogc.core.EventLoop.EventLoopListener;
+import com.zerogc.core.EventLoop.TimerListener;
+import com.zerogc.core.IoUringEventLoop;
+import com.zerogc.core.PollEventLoop;
+import com.zerogc.core.SpinPolicy;
+import com.zerogc.logging.ConsoleLogWriter;
+import com.zerogc.logging.Level;
+import com.zerogc.logging.LogManager;
+import com.zerogc.logging.Logger;
+
+/**
+ * Measure the wakeup latency of the event loop for the different spin policies:
+ * a thread writes its System.nanoTime() to a pipe at a fixed pace and the event loop
+ * records the delay until the message is read in a histogram reported every second.
+ */
+
+// java -cp ${DEVELOP}/zerogc/dist/ZeroGC-0.0.0.0.jar com.zerogc.test.SpinPerf [epoll|poll|uring] [blocking|spin|hybrid] [spinIterations] [intervalMicros]
+public class SpinPerf {
+    static Logger log;
+    static final int SPIN_ITERATIONS = 10000;
+    static final int INTERVAL_MICROS = 100;
+
+    // 100ns buckets up to 1ms, the last bucket counts the outliers
+    static final int BUCKET_NANOS = 100;
+    static final int BUCKETS = 10000;
+    static final double[] PERCENTILES = new double[] { 50, 90, 99, 99.9, 99.99 };
+
+    private static long[] histogram = new long[BUCKETS + 1];
+    private static long count = 0;
+    private static long max = 0;
+
+    private static void record(long latency) {
+        long bucket = latency / BUCKET_NANOS;
+        histogram[bucket < BUCKETS ? (int)bucket : BUCKETS]++;
+        if (latency > max) {
+            max = latency;
+        }
+        count++;
+    }
+
+    private static void report(String mode) {
+        ByteStringBuilder sb = log.getSB().append(mode).append(" count: ").append(count);
+        int bucket = 0;
+        long cumulated = 0;
+        for (int i=0; i < PERCENTILES.length; i++) {
+            long threshold = (long)Math.ceil(count * PERCENTILES[i] / 100);
+            while (bucket < BUCKETS && cumulated + histogram[bucket] < threshold) {
+                cumulated += histogram[bucket++];
+            }
+            sb.append(", p").append(PERCENTILES[i]).append(": ");
+            if (bucket < BUCKETS) {
+                sb.append((bucket + 1) * BUCKET_NANOS / 1000.0).append("us");
+            } else {
+                sb.append(">").append(BUCKETS * BUCKET_NANOS / 1000).append("us");
+            }
+        }
+        log.log(Level.INFO, sb.append(", max: ").append(max / 1000.0).append("us"));
+
+        for (int i=0; i < histogram.length; i++) {
+            histogram[i] = 0;
+        }
+        count = 0;
+        max = 0;
+    }
+
+    public static void main(String[] args) throws Exception {
+        LogManager.initialize(new ConsoleLogWriter()).open();
+        log = LogManager.getLogger(SpinPerf.class.getSimpleName());
+
+        final String type = args.length > 0 ? args[0] : "epoll";
+        final String mode = args.length > 1 ? args[1] : "blocking";
+        int spinIterations = args.length > 2 ? Integer.parseInt(args[2]) : SPIN_ITERATIONS;
+        final long intervalNanos = (args.length > 3 ? Integer.parseInt(args[3]) : INTERVAL_MICROS) * 1000L;
+
+        SpinPolicy spinPolicy = null;
+        if (mode.equals("spin")) {
+            spinPolicy = new SpinPolicy(SpinPolicy.BUSY_SPIN, true);
+        } else if (mode.equals("hybrid")) {
+            spinPolicy = new SpinPolicy(spinIterations, true);
+        }
+        final EventLoop eventLoop;
+        if (type.equals("uring")) {
+            IoUringEventLoop ioUringEventLoop = new IoUringEventLoop();
+            ioUringEventLoop.setSpinPolicy(spinPolicy);
+            eventLoop = ioUringEventLoop;
+        } else if (type.equals("poll")) {
+            PollEventLoop pollEventLoop = new PollEventLoop();
+            pollEventLoop.setSpinPolicy(spinPolicy);
+            eventLoop = pollEventLoop;
+        } else {
+            EPollEventLoop epollEventLoop = new EPollEventLoop();
+            epollEventLoop.setSpinPolicy(spinPolicy);
+            eventLoop = epollEventLoop;
+        }
+        eventLoop.open();
+
+        final Pipe pipe = Pipe.open();
+        pipe.source().configureBlocking(false);
+        final ByteBuffer bufferIn = ByteBuffer.allocateDirect(8 * 1024);
+        eventLoop.register(pipe.source(), SelectionKey.OP_READ, new EventLoopListener() {
+            @Override
+            public void onRead(SelectableChannel selectableChannel) {
+                try {
+                    while (pipe.source().read(bufferIn) > 0) {
+                        long now = System.nanoTime();
+                        bufferIn.flip();
+                        while (bufferIn.remaining() >= 8) {
+                            record(now - bufferIn.getLong());
+                        }
+                        bufferIn.compact();
+                    }
+                } catch (Exception e) {
+                    log.log(Level.ERROR, log.getSB().append("Failed to read from pipe: ").append(e.getMessage()));
+                    eventLoop.close();
+                }
+            }
+            @Override
+            public void onWrite(SelectableChannel selectableChannel) {
+            }
+            @Override
+            public void onSelect() {
+            }
+            @Override
+            public void onConnect(SelectableChannel selectableChannel) {
+            }
+            @Override
+            public void onClose(SelectableChannel selectableChannel) {
+            }
+            @Override
+            public void onAccept(SelectableChannel selectableChannel) {
+            }
+        });
+
+        final String description = type + " " + mode;
+        eventLoop.addTimer(eventLoop.currentMillis() + 1000, new TimerListener() {
+            @Override
+            public void onTimer(int entry, long expiry) {
+                report(description);
+                eventLoop.addTimer(expiry + 1000, this);
+            }
+        });
+
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                ByteBuffer bufferOut = ByteBuffer.allocateDirect(8);
+                long next = System.nanoTime();
+                try {
+                    while (true) {
+                        next += intervalNanos;
+                        while (System.nanoTime() < next) {
+                        }
+                        bufferOut.clear();
+                        bufferOut.putLong(0, System.nanoTime());
+                        pipe.sink().write(bufferOut);
+                    }
+                } catch (Exception e) {
+                    log.log(Level.ERROR, log.getSB().append("Failed to write to pipe: ").append(e.getMessage()));
+                }
+            }
+        }).start();
+        log.log(Level.INFO, log.getSB().append("Start the latency test loop with ").append(description)
+                .append(" polling, one message every ").append(intervalNanos / 1000).append("us"));
+
+        eventLoop.run();
+    }
+}
@@ -0,0 +1,128 @@
+package com.zerogc.test;
+
+import java.io.IOException;
+import java.util.Random;
+
+import com.zerogc.logging.ConsoleLogWriter;
+import com.zerogc.logging.Level;
+import com.zerogc.logging.LogManager;
+import com.zerogc.logging.Logger;
+import com.zerogc.stores.TestOrderRowStore;
+import com.zerogc.stores.TestOrderStore;
+
+/**
+ * Compare the generated column store, one array per column type, against the generated row store
+ * with whole records packed in a single direct buffer.
+ * The record scan reads every column of every order, the field scan reads the quantity only.
+ * Orders are visited in slot order or in a random order, as when looking up orders by order number.
+ * @author Benoit Jardin
+ */
+
+// java -cp ${DEVELOP}/zerogc/dist/ZeroGC-0.0.0.0.jar com.zerogc.test.StorePerf [columns|rows] [record|field] [sequential|random] [size]
+public class StorePerf {
+    static Logger log;
+
+    private static volatile int count = 0;
+    private static long sum = 0;
+
+    public static void main(String[] args) throws IOException {
+        LogManager.initialize(new ConsoleLogWriter()).open();
+        log = LogManager.getLogger(StorePerf.class.getSimpleName());
+        final String layout = args.length > 0 ? args[0] : "columns";
+        final String scan = args.length > 1 ? args[1] : "record";
+        final String order = args.length > 2 ? args[2] : "sequential";
+        final int size = args.length > 3 ? Integer.parseInt(args[3]) : 1000000;
+
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                long start = System.currentTimeMillis();
+                int prevCount = count;
+                while (true) {
+                    try {
+                        Thread.sleep(1000);
+                        long end = System.currentTimeMillis();
+                        int iterations = count - prevCount;
+                        prevCount = count;
+                        log.log(Level.INFO, log.getSB().append("Scans: ").append(iterations).append(" in ").append(end-start).append("ms, ")
+                                .append((end-start)*1000000.0/((double)iterations*size)).append(" ns/record")
+                                .append(", sum: ").append(sum));
+                        start = end;
+                    } catch (InterruptedException e) {
+                    }
+                }
+            }
+        }).start();
+        log.log(Level.INFO, log.getSB().append("Start the ").append(layout).append(' ').append(scan).append(" scan in ").append(order).append(" order of ").append(size).append(" orders"));
+
+        TestOrderStore columns = new TestOrderStore("columns", size);
+        TestOrderRowStore rows = new TestOrderRowStore("rows", size);
+        for (int slot=0; slot < size; slot++) {
+            columns.setInsertDateTime(slot, slot);
+            columns.setOrderNumber(slot, slot);
+            columns.setSide(slot, (byte)(slot & 1));
+            columns.setInstrument(slot, slot & 0xFF);
+            columns.setQuantity(slot, slot & 0xFFF);
+            columns.setPrice(slot, slot);
+            rows.setInsertDateTime(slot, slot);
+            rows.setOrderNumber(slot, slot);
+            rows.setSide(slot, (byte)(slot & 1));
+            rows.setInstrument(slot, slot & 0xFF);
+            rows.setQuantity(slot, slot & 0xFFF);
+            rows.setPrice(slot, slot);
+        }
+
+        int[] slots = new int[size];
+        for (int i=0; i < size; i++) {
+            slots[i] = i;
+        }
+        if (order.equals("random")) {
+            Random random = new Random(1);
+            for (int i=size-1; i > 0; i--) {
+                int j = random.nextInt(i+1);
+                int slot = slots[i];
+                slots[i] = slots[j];
+                slots[j] = slot;
+            }
+        }
+
+        boolean record = scan.equals("record");
+        if (layout.equals("rows")) {
+            while (true) {
+                long total = 0;
+                if (record) {
+                    for (int i=0; i < size; i++) {
+                        int slot = slots[i];
+                        total += rows.getInsertDateTime(slot) + rows.getOrderNumber(slot) + rows.getSide(slot)
+                                + rows.getInstrument(slot) + rows.getQuantity(slot) + rows.getPrice(slot);
+                    }
+                } else {
+                    for (int i=0; i < size; i++) {
+                        int slot = slots[i];
+                        total += rows.getQuantity(slot);
+                    }
+                }
+                sum = total;
+                ++count;
+            }
+        } else {
+            while (true) {
+                long total = 0;
+                if (record) {
+                    for (int i=0; i < size; i++) {
+                        int slot = slots[i];
+                        total += columns.getInsertDateTime(slot) + columns.getOrderNumber(slot) + columns.getSide(slot)
+                                + columns.getInstrument(slot) + columns.getQuantity(slot) + columns.getPrice(slot);
+                    }
+                } else {
+                    for (int i=0; i < size; i++) {
+                        int slot = slots[i];
+                        total += columns.getQuantity(slot);
+                    }
+                }
+                sum = total;
+                ++count;
+            }
+        }
+    }
+}
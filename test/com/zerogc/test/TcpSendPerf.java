@@ -0,0 +1,182 @@
+package com.zerogc.test;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+import com.zerogc.core.EPollEventLoop;
+import com.zerogc.core.EventLoop.EventLoopListener;
+import com.zerogc.core.SpinPolicy;
+import com.zerogc.logging.ConsoleLogWriter;
+import com.zerogc.logging.Level;
+import com.zerogc.logging.LogManager;
+import com.zerogc.logging.Logger;
+import com.zerogc.net.BaseTcpClient;
+import com.zerogc.net.ConnectionListener;
+
+/**
+ * Send bursts of messages made of a header and a payload over loopback TCP to a thread draining the connection.
+ * The copy mode stages header and payload in bufferOut and writes them at once, the separate mode writes the header
+ * and the payload with one system call each and the gather mode sends both with a single gathering write.
+ * The batch mode queues the messages of a burst in bufferOut and writes them with a single system call on flush(),
+ * the cork mode does the same with TCP_CORK set while the batch is open.
+ * Heap buffers go through a temporary direct buffer of the JDK on every write, direct buffers do not.
+ * @author Benoit Jardin
+ */
+
+// java -Djava.library.path=${DEVELOP}/zerogc/native -cp ${DEVELOP}/zerogc/dist/ZeroGC-0.0.0.0.jar com.zerogc.test.TcpSendPerf [heap|direct] [copy|separate|gather|batch|cork] [payloadSize] [burst] [port]
+public class TcpSendPerf {
+    static Logger log;
+    static final int HEADER_SIZE = 16;
+
+    private static volatile long receivedBytes = 0;
+    private static int sent = 0;
+    private static int writes = 0;
+    private static boolean connected = false;
+
+    public static void main(String[] args) throws Exception {
+        LogManager.initialize(new ConsoleLogWriter()).open();
+        log = LogManager.getLogger(TcpSendPerf.class.getSimpleName());
+        final boolean direct = !(args.length > 0 && args[0].equals("heap"));
+        final String mode = args.length > 1 ? args[1] : "gather";
+        final int payloadSize = args.length > 2 ? Integer.parseInt(args[2]) : 256;
+        final int burst = args.length > 3 ? Integer.parseInt(args[3]) : 16;
+        int port = args.length > 4 ? Integer.parseInt(args[4]) : 45002;
+
+        final ServerSocketChannel serverSocketChannel = ServerSocketChannel.open();
+        serverSocketChannel.socket().setReuseAddress(true);
+        serverSocketChannel.socket().bind(new InetSocketAddress("127.0.0.1", port));
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    SocketChannel socketChannel = serverSocketChannel.accept();
+                    ByteBuffer buffer = ByteBuffer.allocateDirect(1024*1024);
+                    int len;
+                    while ((len = socketChannel.read(buffer)) >= 0) {
+                        receivedBytes += len;
+                        buffer.clear();
+                    }
+                } catch (Exception e) {
+                    log.log(Level.ERROR, "Drain caught: ", e);
+                }
+            }
+        }).start();
+
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                long start = System.currentTimeMillis();
+                long prevReceivedBytes = 0;
+                int prevSent = sent;
+                int prevWrites = writes;
+                while (true) {
+                    try {
+                        Thread.sleep(1000);
+                        long end = System.currentTimeMillis();
+                        long bytes = receivedBytes - prevReceivedBytes;
+                        int messages = sent - prevSent;
+                        int syscalls = writes - prevWrites;
+                        prevReceivedBytes += bytes;
+                        prevSent += messages;
+                        prevWrites += syscalls;
+                        log.log(Level.INFO, log.getSB().append("Sent: ").append(messages).append(" in ").append(end-start).append("ms, ")
+                                .append(bytes*1000.0/(end-start)/(1024*1024)).append(" MB/sec, ")
+                                .append((double)syscalls/messages).append(" writes/message"));
+                        start = end;
+                    } catch (InterruptedException e) {
+                    }
+                }
+            }
+        }).start();
+
+        EPollEventLoop eventLoop = new EPollEventLoop();
+        eventLoop.setSpinPolicy(new SpinPolicy(SpinPolicy.BUSY_SPIN, false));
+        eventLoop.open();
+
+        final BaseTcpClient client = new BaseTcpClient(eventLoop, "Sender".getBytes(), 256*1024, direct);
+        client.setCork(mode.equals("cork"));
+        final boolean batch = mode.equals("batch") || mode.equals("cork");
+        client.setDestInetSocketAddress(new InetSocketAddress[] { new InetSocketAddress("127.0.0.1", port) });
+        client.setConnectionListener(new ConnectionListener() {
+            @Override
+            public void onConnect(SelectableChannel selectableChannel) {
+                connected = true;
+            }
+            @Override
+            public void onAccept(SelectableChannel selectableChannel) {
+            }
+            @Override
+            public void onClose(SelectableChannel selectableChannel) {
+                connected = false;
+            }
+        });
+
+        final ByteBuffer header = direct ? ByteBuffer.allocateDirect(HEADER_SIZE) : ByteBuffer.allocate(HEADER_SIZE);
+        final ByteBuffer payload = direct ? ByteBuffer.allocateDirect(payloadSize) : ByteBuffer.allocate(payloadSize);
+        final ByteBuffer[] buffers = new ByteBuffer[] { header, payload };
+        final ByteBuffer bufferOut = client.getBufferOut();
+        eventLoop.registerSelect(new EventLoopListener() {
+            @Override
+            public void onSelect() {
+                // Stop sending while the socket does not keep up
+                if (!connected || bufferOut.position() != 0) {
+                    return;
+                }
+                if (batch) {
+                    client.beginBatch();
+                }
+                for (int i=0; i < burst; i++) {
+                    header.clear();
+                    header.putInt(HEADER_SIZE + payloadSize);
+                    header.putInt(sent);
+                    header.putLong(0);
+                    header.flip();
+                    payload.clear();
+                    if (mode.equals("gather")) {
+                        client.sendBuffers(buffers, 0, 2);
+                        writes++;
+                    } else if (mode.equals("separate")) {
+                        bufferOut.put(header);
+                        client.sendBufferOut();
+                        bufferOut.put(payload);
+                        client.sendBufferOut();
+                        writes += 2;
+                    } else {
+                        bufferOut.put(header);
+                        bufferOut.put(payload);
+                        if (client.sendBufferOut() != 0) {
+                            writes++;
+                        }
+                    }
+                    sent++;
+                }
+                if (batch && client.flush() > 0) {
+                    writes++;
+                }
+            }
+            @Override
+            public void onRead(SelectableChannel selectableChannel) {
+            }
+            @Override
+            public void onWrite(SelectableChannel selectableChannel) {
+            }
+            @Override
+            public void onConnect(SelectableChannel selectableChannel) {
+            }
+            @Override
+            public void onClose(SelectableChannel selectableChannel) {
+            }
+            @Override
+            public void onAccept(SelectableChannel selectableChannel) {
+            }
+        });
+        client.open();
+        log.log(Level.INFO, log.getSB().append("Start sending ").append(direct ? "direct" : "heap").append(" buffers in ").append(mode)
+                .append(" mode, bursts of ").append(burst).append(" messages of ").append(HEADER_SIZE + payloadSize).append(" bytes"));
+
+        eventLoop.run();
+    }
+}
@@ -5,7 +5,7 @@ import com.zerogc.logging.Level;
 import com.zerogc.logging.LogManager;
 import com.zerogc.logging.Logger;
 
-// java -Djava.library.path=${DEVELOP}/zerogc/native -cp ${DEVELOP}/zerogc/dist/ZeroGC-0.0.0.0.jar com.zerogc.test.Time
+// java -Djava.library.path=${DEVELOP}/zerogc/native -cp ${DEVELOP}/zerogc/dist/ZeroGC-0.0.0.0.jar com.zerogc.test.Time [micros|monotonic|realtime]
 
 public class Time {
     static final Logger log = LogManager.getLogger("Time");
@@ -33,11 +33,24 @@ public class Time {
                 }
             }
         }).start();
-        log.log(Level.INFO, log.getSB().append("Start the performance test loop"));
+        String clock = args.length > 0 ? args[0] : "micros";
+        log.log(Level.INFO, log.getSB().append("Start the performance test loop with the ").append(clock).append(" clock"));
 
-        while (true) {
-            long micros = Native.currentTimeMicros();
-            ++count;
+        if (clock.equals("monotonic")) {
+            while (true) {
+                sum += Native.currentMonotonicNanos() & 1;
+                ++count;
+            }
+        } else if (clock.equals("realtime")) {
+            while (true) {
+                sum += Native.currentRealtimeNanos() & 1;
+                ++count;
+            }
+        } else {
+            while (true) {
+                long micros = Native.currentTimeMicros();
+                ++count;
+            }
         }
     }
 }
@@ -0,0 +1,116 @@
+package com.zerogc.test;
+
+import com.zerogc.collections.LongObjectHeap;
+import com.zerogc.core.EventLoop.TimerListener;
+import com.zerogc.core.TimerWheel;
+import com.zerogc.logging.ConsoleLogWriter;
+import com.zerogc.logging.Level;
+import com.zerogc.logging.LogManager;
+import com.zerogc.logging.Logger;
+
+/**
+ * Compare the heap and the timing wheel on a heartbeat like workload:
+ * every iteration a timer expires and is re-armed while another one is cancelled and re-armed.
+ */
+
+// java -cp ${DEVELOP}/zerogc/dist/ZeroGC-0.0.0.0.jar com.zerogc.test.TimerPerf [heap|wheel] [timers]
+public class TimerPerf {
+    static Logger log;
+    static final int SIZE = 50000;
+    static final int PERIOD = 30000;
+
+    private static int count = 0;
+    private static long sum = 0;
+
+    static int m_w = 36;    /* must not be zero */
+    static int m_z = 23;    /* must not be zero */
+    private static int nextRadomInt() {
+        m_z = 36969 * (m_z & 65535) + (m_z >> 16);
+        m_w = 18000 * (m_w & 65535) + (m_w >> 16);
+        return (m_z << 16) + m_w;  /* 32-bit result */
+    }
+
+    public static void main(String[] args) throws Exception {
+        LogManager.initialize(new ConsoleLogWriter()).open();
+        log = LogManager.getLogger(TimerPerf.class.getSimpleName());
+
+        boolean wheel = args.length == 0 || args[0].equals("wheel");
+        int size = args.length > 1 ? Integer.parseInt(args[1]) : SIZE;
+
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                long start = System.currentTimeMillis();
+                int prevCount = count;
+                while (true) {
+                    try {
+                        Thread.sleep(1000);
+                        long end = System.currentTimeMillis();
+                        int iterations = count - prevCount;
+                        prevCount = count;
+                        log.log(Level.INFO, log.getSB().append("Iterations: ").append(iterations).append(" in ").append(end-start).append("ms, ")
+                                .append(iterations*1000.0/(end-start)).append(" iterartions/sec")
+                                .append(", sum: ").append(sum));
+                        start = end;
+                    } catch (InterruptedException e) {
+                    }
+                }
+            }
+        }).start();
+        log.log(Level.INFO, log.getSB().append("Start the performance test loop with ").append(size).append(wheel ? " wheel" : " heap").append(" timers"));
+
+        TimerListener timerListener = new TimerListener() {
+            @Override
+            public void onTimer(int entry, long expiry) {
+                sum++;
+            }
+        };
+
+        // Timer ids to cancel, re-armed timers reuse the id just released
+        int[] entries = new int[size];
+        long now = 0;
+        if (wheel) {
+            TimerWheel timerWheel = new TimerWheel(TimerWheel.class.getSimpleName(), size);
+            timerWheel.advance(now);
+            for (int i = 0; i < size; ++i) {
+                entries[i] = timerWheel.insert(now + (nextRadomInt() & 0x7FFFFFFF) % PERIOD, timerListener);
+            }
+            while (true) {
+                now++;
+                timerWheel.advance(now);
+                for (int entry = timerWheel.firstExpiredEntry(); entry != -1; entry = timerWheel.firstExpiredEntry()) {
+                    TimerListener listener = timerWheel.getValue(entry);
+                    timerWheel.removeEntry(entry);
+                    listener.onTimer(entry, now);
+                    timerWheel.insert(now + PERIOD, timerListener);
+                }
+                int i = (nextRadomInt() & 0x7FFFFFFF) % size;
+                timerWheel.removeEntry(entries[i]);
+                entries[i] = timerWheel.insert(now + PERIOD, timerListener);
+                ++count;
+            }
+        } else {
+            LongObjectHeap timers = new LongObjectHeap(LongObjectHeap.class.getSimpleName(), size);
+            for (int i = 0; i < size; ++i) {
+                entries[i] = timers.insert(now + (nextRadomInt() & 0x7FFFFFFF) % PERIOD, timerListener);
+            }
+            while (true) {
+                now++;
+                while (!timers.isEmpty()) {
+                    int entry = timers.firstEntry();
+                    if (timers.getKey(entry) > now) {
+                        break;
+                    }
+                    TimerListener listener = (TimerListener)timers.getValue(entry);
+                    timers.removeEntry(entry);
+                    listener.onTimer(entry, now);
+                    timers.insert(now + PERIOD, timerListener);
+                }
+                int i = (nextRadomInt() & 0x7FFFFFFF) % size;
+                timers.removeEntry(entries[i]);
+                entries[i] = timers.insert(now + PERIOD, timerListener);
+                ++count;
+            }
+        }
+    }
+}
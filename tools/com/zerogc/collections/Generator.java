@@ -38,6 +38,8 @@ public class Generator {
     private static final String VALUE_NAME = "_ValueName_";
     private static final String KEY_TYPE = "_KeyType_";
     private static final String VALUE_TYPE = "_ValueType_";
+    // Templates of collections stored off-heap, only generated for primitive keys
+    private static final String OFF_HEAP = "OffHeap";
 
     public static String[][] map = new String[][] {
         //{"_KeyName_", "_KeyType_", "_ValueName_", "_ValueType_" },
@@ -53,6 +55,10 @@ public class Generator {
         //{"Long", "long", "ByteArray", "byte[]" },
     };
 
+    private static boolean isPrimitive(String type) {
+        return type.equals("int") || type.equals("long") || type.equals("double");
+    }
+
     public static void main(String[] args) {
         System.out.println("Hello world!");
 
@@ -95,6 +101,9 @@ public class Generator {
                 if (!hasKeyName && !hasValueName) {
                     continue;
                 }
+                if (name.contains(OFF_HEAP) && !isPrimitive(keyType)) {
+                    continue;
+                }
                 System.out.println(newValueName);
                 try {
                     BufferedReader reader = new BufferedReader(new FileReader(file));
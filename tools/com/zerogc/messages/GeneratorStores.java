@@ -17,7 +17,15 @@ package com.zerogc.messages;
 
 import java.io.IOException;
 import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
 
+import org.xml.sax.Attributes;
 import org.xml.sax.SAXException;
 
 
@@ -27,12 +35,29 @@ import org.xml.sax.SAXException;
 public class GeneratorStores extends GeneratorBase {
     static final String PACKAGE = "com.zerogc.generated.stores";
 
+    // Also generate stores backed by a memory mapped file
+    protected boolean mapped = false;
+    // Also generate stores with whole records packed in a single long array
+    protected boolean rows = false;
+    // Count the reuse of slots to detect stale handles
+    protected boolean generations = false;
+
+    protected static final String UNIQUE = "unique";
+    protected static final String ORDERED = "ordered";
+    // Index kind of the columns of the current element from their dc:index attribute
+    protected Map<String, String> columnIndexes = new HashMap<String, String>();
+    // Indexed columns of the current element and the name of their key in the generated collections
+    protected Map<String, String> indexKeyNames = new LinkedHashMap<String, String>();
+
     protected GeneratorStores(String pkg) {
         super(pkg);
     }
 
     protected GeneratorStores(GeneratorStores generator) {
         super(generator);
+        this.mapped = generator.mapped;
+        this.rows = generator.rows;
+        this.generations = generator.generations;
     }
 
     @Override
@@ -40,11 +65,27 @@ public class GeneratorStores extends GeneratorBase {
         return new GeneratorStores(this);
     }
 
+    @Override
+    public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException
+    {
+        super.startElement(uri, localName, qName, attributes);
+        if (location.equals("/xs:schema/xs:element")) {
+            columnIndexes.clear();
+        } else if (location.equals("/xs:schema/xs:element/xs:complexType/xs:attribute")) {
+            String index = attributes.getValue("dc:index");
+            if (index != null) {
+                columnIndexes.put(attributes.getValue("name"), index);
+            }
+        }
+    }
+
     @Override
     public void endElement(String uri, String localName, String qName) throws SAXException
     {
         if (location.equals("/xs:schema/xs:element")) {
             try {
+                resolveIndexes();
+
                 StringBuilder gettersAndSetterStringBuilder = new StringBuilder();
                 StringBuilder byteOffsetStringBuilder = new StringBuilder();
                 StringBuilder byteLengthStringBuilder = new StringBuilder();
@@ -88,8 +129,9 @@ public class GeneratorStores extends GeneratorBase {
                         getString = "this.bytes[slot*ByteOffsets.end + ByteOffsets." + columnName + "]";
                         setString = "this.bytes[slot*ByteOffsets.end + ByteOffsets." + columnName + "] = value";
                     } else if (columnType.javaName.equals("short")) {
-                        getString = "this.shorts[slot*IntOffsets.end + ShortOffsets." + columnName + "]";
-                        setString = "this.shorts[slot*IntOffsets.end + ShortOffsets." + columnName + "] = value";
+                        clear = indent + "set" + pascal(columnName) + "(slot, (short)0);\n";
+                        getString = "this.shorts[slot*ShortOffsets.end + ShortOffsets." + columnName + "]";
+                        setString = "this.shorts[slot*ShortOffsets.end + ShortOffsets." + columnName + "] = value";
                     } else if (columnType.javaName.equals("int")) {
                         getString = "this.ints[slot*IntOffsets.end + IntOffsets." + columnName + "]";
                         setString = "this.ints[slot*IntOffsets.end + IntOffsets." + columnName + "] = value";
@@ -146,9 +188,14 @@ public class GeneratorStores extends GeneratorBase {
                             doubleLengthStringBuilder.append("        public static final int " + columnName + " = " + columnType.maxLength/8 + ";\n");
                             doubleOffset += columnType.maxLength/8;
                         }
-                        gettersAndSetterStringBuilder.append("    public void set" + pascal(columnName) + "(int slot, " + getSetType + " value) {\n");
-                        gettersAndSetterStringBuilder.append("        " + setString + ";\n");
-                        gettersAndSetterStringBuilder.append("    }\n");
+                        if (indexKeyNames.containsKey(columnName)) {
+                            clear = indent + "unindex" + pascal(columnName) + "(slot);\n" + clear.replace("set" + pascal(columnName) + "(", "put" + pascal(columnName) + "(");
+                            appendIndexedSetter(gettersAndSetterStringBuilder, columnName, getSetType, setString);
+                        } else {
+                            gettersAndSetterStringBuilder.append("    public void set" + pascal(columnName) + "(int slot, " + getSetType + " value) {\n");
+                            gettersAndSetterStringBuilder.append("        " + setString + ";\n");
+                            gettersAndSetterStringBuilder.append("    }\n");
+                        }
                         gettersAndSetterStringBuilder.append("    public " + getSetType + " get" + pascal(columnName) + "(int slot) {\n");
                         gettersAndSetterStringBuilder.append("        return " + getString + ";\n");
                         gettersAndSetterStringBuilder.append("    }\n");
@@ -170,9 +217,10 @@ public class GeneratorStores extends GeneratorBase {
                 printStream.println("package " + getPackage() + ";");
                 printStream.println();
 
-                printStream.println("import com.zerogc.core.ByteUtils;");
+                printIndexImports(printStream);
                 printStream.println("import com.zerogc.core.ByteSlice;");
                 printStream.println("import com.zerogc.core.ByteStringBuilder;");
+                printStream.println("import com.zerogc.core.ByteUtils;");
                 printStream.println("import com.zerogc.logging.Level;");
                 printStream.println("import com.zerogc.logging.LogManager;");
                 printStream.println("import com.zerogc.logging.Logger;");
@@ -237,6 +285,7 @@ public class GeneratorStores extends GeneratorBase {
                     printStream.println("    }");
                     printStream.println();
                 }
+                printIndexClasses(printStream);
                 if (byteLengthStringBuilder.length() > 0) {
                     printStream.println("    private byte[] bytes;");
                 }
@@ -252,14 +301,28 @@ public class GeneratorStores extends GeneratorBase {
                 if (doubleLengthStringBuilder.length() > 0) {
                     printStream.println("    private double[] doubles;");
                 }
+                // Freed slots are chained through their first long or int column
+                String link = null;
+                if (longLengthStringBuilder.length() > 0) {
+                    link = "this.longs[slot*LongOffsets.end]";
+                } else if (intLengthStringBuilder.length() > 0) {
+                    link = "this.ints[slot*IntOffsets.end]";
+                } else {
+                    System.out.println("No long nor int column to link free slots of " + pascal(prefix) + pascal(complexTypeName) + "Store");
+                }
                 printStream.println();
                 printStream.println("    protected int capacity = 0;");
+                if (link != null) {
+                    printAllocatorFields(printStream);
+                }
+                printIndexFields(printStream);
                 printStream.println();
                 printStream.println("    private final ByteSlice emptySlice = new ByteSlice(new byte[0], 0, 0);");
                 printStream.println("    private final ByteSlice slice = new ByteSlice();");
                 printStream.println();
                 printStream.println("    public " + pascal(prefix)+pascal(complexTypeName) + "Store(String name, int initialCapacity) {");
                 printStream.println("        log = LogManager.getLogger(name);");
+                printIndexConstructors(printStream);
                 printStream.println("        grow(initialCapacity);");
                 printStream.println("    }");
                 printStream.println();
@@ -269,9 +332,9 @@ public class GeneratorStores extends GeneratorBase {
                 printStream.println();
                 printStream.println("    protected void grow(int newCapacity) {");
                 printStream.println("        if (capacity > 0) {");
-                printStream.println("           log.log(Level.WARN, log.getSB().append(\"Resizing "+pascal(prefix)+pascal(complexTypeName)+"Store from \").append(capacity).append(\" to \").append(newCapacity));");
+                printStream.println("            log.log(Level.WARN, log.getSB().append(\"Resizing "+pascal(prefix)+pascal(complexTypeName)+"Store from \").append(capacity).append(\" to \").append(newCapacity));");
                 printStream.println("        }");
-                printStream.println("        ");
+                printStream.println();
                 if (byteLengthStringBuilder.length() > 0) {
                     printStream.println("        byte[] newBytes = new byte[newCapacity*ByteOffsets.end];");
                 }
@@ -287,7 +350,7 @@ public class GeneratorStores extends GeneratorBase {
                 if (doubleLengthStringBuilder.length() > 0) {
                     printStream.println("        double[] newDoubles = new double[newCapacity*DoubleOffsets.end];");
                 }
-                printStream.println("        ");
+                printStream.println();
                 printStream.println("        if (capacity > 0) {");
                 if (byteLengthStringBuilder.length() > 0) {
                     printStream.println("            System.arraycopy(bytes, 0, newBytes, 0, capacity*ByteOffsets.end);");
@@ -320,9 +383,17 @@ public class GeneratorStores extends GeneratorBase {
                 if (doubleLengthStringBuilder.length() > 0) {
                     printStream.println("        doubles = newDoubles;");
                 }
+                if (link != null && generations) {
+                    printGenerationsGrow(printStream);
+                }
+                printIndexGrow(printStream);
                 printStream.println("        capacity = newCapacity;");
                 printStream.println("    }");
                 printStream.println();
+                if (link != null) {
+                    printAllocator(printStream, "(int)" + link, link + " = next", false);
+                    printStream.println();
+                }
 
                 printStream.print(gettersAndSetterStringBuilder);
 
@@ -341,6 +412,12 @@ public class GeneratorStores extends GeneratorBase {
                 printStream.println("}");
                 printStream.close();
 
+                if (rows) {
+                    generateRowStore(false);
+                }
+                if (mapped) {
+                    generateRowStore(true);
+                }
             } catch (IOException e) {
                 System.out.println("IOException: " + e.getMessage());
             }
@@ -349,6 +426,727 @@ public class GeneratorStores extends GeneratorBase {
         super.endElement(uri, localName, qName);
     }
 
+    /**
+     * Records are laid out in rows, the widest columns first so that every column is naturally aligned.
+     * Rows are kept in a direct buffer, or in a memory mapped file behind a header when mapped.
+     */
+    protected void generateRowStore(boolean mapped) throws IOException {
+        String className = pascal(prefix) + pascal(complexTypeName) + (mapped ? "MappedStore" : "RowStore");
+
+        StringBuilder gettersAndSetterStringBuilder = new StringBuilder();
+        StringBuilder recordOffsetStringBuilder = new StringBuilder();
+        StringBuilder recordLengthStringBuilder = new StringBuilder();
+        StringBuilder bytesStringBuilder = new StringBuilder();
+        StringBuilder toStringStringBuilder = new StringBuilder();
+        StringBuilder clearStringBuilder = new StringBuilder();
+
+        // FNV-1a hash of the record layout, a mapped file written with another layout is refused
+        long schemaHash = 0xcbf29ce484222325L;
+        String schema = className;
+
+        int recordOffset = 0;
+        String indent = "        ";
+        for (int size = 8; size > 0; size /= 2) {
+            for (Pair<String, String> column : tableColumns) {
+                String columnName = column.getFirst();
+                String columnTypeName = column.getSecond();
+                Type columnType = simpleTypeHashtable.get(columnTypeName);
+
+                if (columnType == null) {
+                    columnType = Type.create(columnTypeName);
+                }
+                boolean isString = columnType.xsdTypeName.equals("xs:string") && columnType.maxLength > 1;
+                // Strings are byte aligned
+                if ((isString ? 1 : columnType.maxLength) != size) {
+                    continue;
+                }
+                schema += ";" + columnName + ":" + columnType.javaName + ":" + columnType.maxLength;
+
+                String position = (mapped ? "HeaderOffsets.end + " : "") + "slot*RecordOffsets.end + RecordOffsets." + columnName;
+                String toString = indent + "sb.append(\"[" + columnName + "=\").append(get" + pascal(columnName) + "(slot)).append(']');\n";
+                String clear = indent + "set" + pascal(columnName) + "(slot, 0);\n";
+
+                String getString = null; // Get as native type
+                String setString = null; // Set as native type
+                String getSetType = columnType.javaName;
+
+                if (mapped) {
+                    if (columnType.javaName.equals("byte")) {
+                        clear = indent + "set" + pascal(columnName) + "(slot, (byte)0);\n";
+                        getString = "this.buffer.get(" + position + ")";
+                        setString = "this.buffer.put(" + position + ", value)";
+                    } else if (columnType.javaName.equals("short")) {
+                        clear = indent + "set" + pascal(columnName) + "(slot, (short)0);\n";
+                        getString = "this.buffer.getShort(" + position + ")";
+                        setString = "this.buffer.putShort(" + position + ", value)";
+                    } else if (columnType.javaName.equals("int")) {
+                        getString = "this.buffer.getInt(" + position + ")";
+                        setString = "this.buffer.putInt(" + position + ", value)";
+                    } else if (columnType.javaName.equals("long")) {
+                        getString = "this.buffer.getLong(" + position + ")";
+                        setString = "this.buffer.putLong(" + position + ", value)";
+                    } else if (columnType.javaName.equals("double")) {
+                        getString = "this.buffer.getDouble(" + position + ")";
+                        setString = "this.buffer.putDouble(" + position + ", value)";
+                    } else {
+                        if (columnType.maxLength == 1) {
+                            getString = "this.buffer.get(" + position + ")&0xFF";
+                            setString = "this.buffer.put(" + position + ", (byte)value)";
+                        }
+                    }
+                } else {
+                    // Columns narrower than a long are shifted in and out of the long holding them
+                    String index = "slot*(RecordOffsets.end >> 3) + (RecordOffsets." + columnName + " >> 3)";
+                    String shift = "((RecordOffsets." + columnName + " & 7) << 3)";
+                    String mask = null;
+                    if (columnType.javaName.equals("byte")) {
+                        clear = indent + "set" + pascal(columnName) + "(slot, (byte)0);\n";
+                        mask = "0xFFL";
+                    } else if (columnType.javaName.equals("short")) {
+                        clear = indent + "set" + pascal(columnName) + "(slot, (short)0);\n";
+                        mask = "0xFFFFL";
+                    } else if (columnType.javaName.equals("int")) {
+                        mask = "0xFFFFFFFFL";
+                    } else if (columnType.javaName.equals("long")) {
+                        getString = "this.longs[" + index + "]";
+                        setString = "this.longs[" + index + "] = value";
+                    } else if (columnType.javaName.equals("double")) {
+                        getString = "Double.longBitsToDouble(this.longs[" + index + "])";
+                        setString = "this.longs[" + index + "] = Double.doubleToRawLongBits(value)";
+                    } else {
+                        if (columnType.maxLength == 1) {
+                            getString = "(this.longs[" + index + "] >> " + shift + ")&0xFF";
+                            setString = "int index = " + index + ";\n" + indent + "this.longs[index] = (this.longs[index] & ~(0xFFL << " + shift + ")) | ((value & 0xFFL) << " + shift + ")";
+                        }
+                    }
+                    if (mask != null) {
+                        getString = "(" + getSetType + ")(this.longs[" + index + "] >> " + shift + ")";
+                        setString = "int index = " + index + ";\n" + indent + "this.longs[index] = (this.longs[index] & ~(" + mask + " << " + shift + ")) | ((value & " + mask + ") << " + shift + ")";
+                    }
+                }
+
+                recordOffsetStringBuilder.append("        public static final int " + columnName + " = " + recordOffset + ";\n");
+                recordLengthStringBuilder.append("        public static final int " + columnName + " = " + columnType.maxLength + ";\n");
+                recordOffset += columnType.maxLength;
+
+                if (isString) {
+                    clear = indent + "set" + pascal(columnName) + "(slot, emptySlice);\n";
+                    bytesStringBuilder.append("    private final byte[] " + columnName + "Bytes = new byte[RecordLengths." + columnName + "];\n");
+                    gettersAndSetterStringBuilder.append("    public void set" + pascal(columnName) + "(int slot, ByteSlice byteSlice) {\n");
+                    if (mapped) {
+                        gettersAndSetterStringBuilder.append("        ByteUtils.copySpacePadded(byteSlice.getBuffer(), byteSlice.getOffset(), byteSlice.getLength(), this.buffer, " + position + ", RecordLengths." + columnName + ");\n");
+                    } else {
+                        gettersAndSetterStringBuilder.append("        for (int i=0; i < RecordLengths." + columnName + "; i++) {\n");
+                        gettersAndSetterStringBuilder.append("            putByte(" + position + " + i, i < byteSlice.getLength() ? byteSlice.getBuffer()[byteSlice.getOffset() + i] : (byte)' ');\n");
+                        gettersAndSetterStringBuilder.append("        }\n");
+                    }
+                    gettersAndSetterStringBuilder.append("    }\n");
+                    gettersAndSetterStringBuilder.append("    /** The returned slice is valid until the next get" + pascal(columnName) + "() */\n");
+                    gettersAndSetterStringBuilder.append("    public ByteSlice get" + pascal(columnName) + "(int slot, ByteSlice byteSlice) {\n");
+                    if (mapped) {
+                        gettersAndSetterStringBuilder.append("        ByteUtils.putBuffer(this." + columnName + "Bytes, 0, RecordLengths." + columnName + ", this.buffer, " + position + ", RecordLengths." + columnName + ");\n");
+                    } else {
+                        gettersAndSetterStringBuilder.append("        for (int i=0; i < RecordLengths." + columnName + "; i++) {\n");
+                        gettersAndSetterStringBuilder.append("            this." + columnName + "Bytes[i] = getByte(" + position + " + i);\n");
+                        gettersAndSetterStringBuilder.append("        }\n");
+                    }
+                    gettersAndSetterStringBuilder.append("        byteSlice.setBuffer(this." + columnName + "Bytes);\n");
+                    gettersAndSetterStringBuilder.append("        byteSlice.setOffset(0);\n");
+                    gettersAndSetterStringBuilder.append("        byteSlice.setLength(RecordLengths." + columnName + ");\n");
+                    gettersAndSetterStringBuilder.append("        return byteSlice;\n");
+                    gettersAndSetterStringBuilder.append("    }\n");
+                    gettersAndSetterStringBuilder.append("    @Deprecated\n");
+                    gettersAndSetterStringBuilder.append("    public ByteSlice get" + pascal(columnName) + "(int slot) {\n");
+                    gettersAndSetterStringBuilder.append("        return get" + pascal(columnName) + "(slot, slice);\n");
+                    gettersAndSetterStringBuilder.append("    }\n");
+                } else {
+                    if (!mapped && indexKeyNames.containsKey(columnName)) {
+                        clear = indent + "unindex" + pascal(columnName) + "(slot);\n" + clear.replace("set" + pascal(columnName) + "(", "put" + pascal(columnName) + "(");
+                        appendIndexedSetter(gettersAndSetterStringBuilder, columnName, getSetType, setString);
+                    } else {
+                        gettersAndSetterStringBuilder.append("    public void set" + pascal(columnName) + "(int slot, " + getSetType + " value) {\n");
+                        gettersAndSetterStringBuilder.append("        " + setString + ";\n");
+                        gettersAndSetterStringBuilder.append("    }\n");
+                    }
+                    gettersAndSetterStringBuilder.append("    public " + getSetType + " get" + pascal(columnName) + "(int slot) {\n");
+                    gettersAndSetterStringBuilder.append("        return " + getString + ";\n");
+                    gettersAndSetterStringBuilder.append("    }\n");
+
+                    if (columnType.fractionDigits > 0) {
+                        toString =  indent + "sb.append(\"[" + columnName + "=\").append(get" + pascal(columnName) + "(slot), " + columnType.fractionDigits + ", 0).append(']');\n";
+                    }
+                }
+
+                toStringStringBuilder.append(toString);
+                clearStringBuilder.append(clear);
+            }
+        }
+        // Keep records 8 bytes aligned
+        recordOffset = (recordOffset + 7) & ~7;
+        for (int i=0; i < schema.length(); i++) {
+            schemaHash ^= schema.charAt(i);
+            schemaHash *= 0x100000001b3L;
+        }
+
+        System.out.println("Generate: " + className + ".java");
+        PrintStream printStream = new PrintStream(generatedDir + "/" + className + ".java");
+
+        printStream.println(comment);
+        printStream.println();
+        printStream.println("package " + getPackage() + ";");
+        printStream.println();
+
+        if (mapped) {
+            printStream.println("import java.io.IOException;");
+            printStream.println("import java.io.RandomAccessFile;");
+            printStream.println("import java.nio.ByteOrder;");
+            printStream.println("import java.nio.MappedByteBuffer;");
+            printStream.println("import java.nio.channels.FileChannel;");
+            printStream.println();
+        }
+        if (!mapped) {
+            printIndexImports(printStream);
+        }
+        printStream.println("import com.zerogc.core.ByteSlice;");
+        printStream.println("import com.zerogc.core.ByteStringBuilder;");
+        printStream.println("import com.zerogc.core.ByteUtils;");
+        printStream.println("import com.zerogc.logging.Level;");
+        printStream.println("import com.zerogc.logging.LogManager;");
+        printStream.println("import com.zerogc.logging.Logger;");
+        printStream.println();
+
+        printStream.println("/**");
+        if (mapped) {
+            printStream.println(" * " + pascal(complexTypeName) + " records kept in a memory mapped file.");
+            printStream.println(" * A restarted process re-attaches to the records of the previous run instead of rebuilding them,");
+            printStream.println(" * the header records the capacity, the high mark and a hash of the record layout.");
+        } else {
+            printStream.println(" * " + pascal(complexTypeName) + " records packed in rows of a single long array.");
+            printStream.println(" * Reading a whole record touches one cache line rather than one per column type array.");
+        }
+        printStream.println(" */");
+        printStream.println("public class " + className + " {");
+        printStream.println("    protected final Logger log;");
+        printStream.println();
+        if (mapped) {
+            printStream.println("    public static final long MAGIC = 0x5A65726F47435354L;");
+            printStream.println("    public static final long SCHEMA_HASH = 0x" + Long.toHexString(schemaHash).toUpperCase() + "L;");
+            printStream.println();
+            printStream.println("    public static class HeaderOffsets {");
+            printStream.println("        public static final int magic = 0;");
+            printStream.println("        public static final int schemaHash = 8;");
+            printStream.println("        public static final int capacity = 16;");
+            printStream.println("        public static final int highMark = 20;");
+            printStream.println("        // First free slot plus one so that a new file starts with no free slot");
+            printStream.println("        public static final int freeSlot = 24;");
+            printStream.println("        public static final int size = 28;");
+            printStream.println("        public static final int end = 64;");
+            printStream.println("    }");
+            printStream.println();
+        }
+        printStream.println("    public static class RecordLengths {");
+        printStream.print(recordLengthStringBuilder);
+        printStream.println("    }");
+        printStream.println();
+        printStream.println("    public static class RecordOffsets {");
+        printStream.print(recordOffsetStringBuilder);
+        printStream.println("        public static final int end = " + recordOffset + ";");
+        printStream.println("    }");
+        printStream.println();
+        if (!mapped) {
+            printIndexClasses(printStream);
+        }
+        if (mapped) {
+            printStream.println("    private final String path;");
+            printStream.println("    private final RandomAccessFile file;");
+            printStream.println("    private final FileChannel channel;");
+            printStream.println("    private MappedByteBuffer buffer;");
+        } else {
+            printStream.println("    private long[] longs;");
+        }
+        printStream.println();
+        printStream.println("    protected int capacity = 0;");
+        if (!mapped) {
+            printAllocatorFields(printStream);
+            printIndexFields(printStream);
+        } else if (generations) {
+            printStream.println("    private int[] generations;");
+        }
+        printStream.println();
+        printStream.print(bytesStringBuilder);
+        printStream.println("    private final ByteSlice emptySlice = new ByteSlice(new byte[0], 0, 0);");
+        printStream.println("    private final ByteSlice slice = new ByteSlice();");
+        printStream.println();
+        if (mapped) {
+            printStream.println("    /**");
+            printStream.println("     * Attach to the records in path, the file is created if it does not exist.");
+            printStream.println("     * @throws IOException if the file was written with another record layout.");
+            printStream.println("     */");
+            printStream.println("    public " + className + "(String name, String path, int initialCapacity) throws IOException {");
+            printStream.println("        log = LogManager.getLogger(name);");
+            printStream.println("        this.path = path;");
+            printStream.println("        this.file = new RandomAccessFile(path, \"rw\");");
+            printStream.println("        this.channel = file.getChannel();");
+            printStream.println("        if (channel.size() >= HeaderOffsets.end) {");
+            printStream.println("            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HeaderOffsets.end);");
+            printStream.println("            buffer.order(ByteOrder.nativeOrder());");
+            printStream.println("            if (buffer.getLong(HeaderOffsets.magic) != MAGIC || buffer.getLong(HeaderOffsets.schemaHash) != SCHEMA_HASH) {");
+            printStream.println("                channel.close();");
+            printStream.println("                file.close();");
+            printStream.println("                throw new IOException(\"Incompatible " + className + " in \" + path);");
+            printStream.println("            }");
+            printStream.println("            capacity = buffer.getInt(HeaderOffsets.capacity);");
+            printStream.println("            map(capacity);");
+            printStream.println("            log.log(Level.INFO, log.getSB().append(\"Attached " + className + " to \").append(path).append(\" with high mark \").append(getHighMark()));");
+            printStream.println("        }");
+            printStream.println("        if (capacity < initialCapacity) {");
+            printStream.println("            grow(initialCapacity);");
+            printStream.println("        }");
+            printStream.println("    }");
+            printStream.println();
+            printStream.println("    public String getPath() {");
+            printStream.println("       return path;");
+            printStream.println("    }");
+            printStream.println();
+            printStream.println("    public int getCapacity() {");
+            printStream.println("       return capacity;");
+            printStream.println("    }");
+            printStream.println();
+            printStream.println("    private void map(int capacity) throws IOException {");
+            printStream.println("        if ((long)capacity*RecordOffsets.end + HeaderOffsets.end > Integer.MAX_VALUE) {");
+            printStream.println("            throw new IllegalArgumentException(\"Illegal Capacity: \" + capacity);");
+            printStream.println("        }");
+            printStream.println("        // Mapping past the end extends the file with zeros");
+            printStream.println("        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HeaderOffsets.end + capacity*RecordOffsets.end);");
+            printStream.println("        buffer.order(ByteOrder.nativeOrder());");
+            if (generations) {
+                printStream.println();
+                printStream.println("        int[] newGenerations = new int[capacity];");
+                printStream.println("        if (generations != null) {");
+                printStream.println("            System.arraycopy(generations, 0, newGenerations, 0, generations.length);");
+                printStream.println("        }");
+                printStream.println("        generations = newGenerations;");
+            }
+            printStream.println("    }");
+            printStream.println();
+            printStream.println("    protected void grow(int newCapacity) throws IOException {");
+            printStream.println("        if (capacity > 0) {");
+            printStream.println("            log.log(Level.WARN, log.getSB().append(\"Resizing " + className + " from \").append(capacity).append(\" to \").append(newCapacity));");
+            printStream.println("        }");
+            printStream.println("        map(newCapacity);");
+            printStream.println("        buffer.putLong(HeaderOffsets.schemaHash, SCHEMA_HASH);");
+            printStream.println("        buffer.putInt(HeaderOffsets.capacity, newCapacity);");
+            printStream.println("        buffer.putLong(HeaderOffsets.magic, MAGIC);");
+            printStream.println("        capacity = newCapacity;");
+            printStream.println("    }");
+            printStream.println();
+            printStream.println("    /** Write the records through to the file, the OS does it anyway unless the machine itself goes down. */");
+            printStream.println("    public void force() {");
+            printStream.println("        buffer.force();");
+            printStream.println("    }");
+            printStream.println();
+            printStream.println("    public void close() throws IOException {");
+            printStream.println("        force();");
+            printStream.println("        channel.close();");
+            printStream.println("        file.close();");
+            printStream.println("    }");
+            printStream.println();
+            printAllocator(printStream, "this.buffer.getInt(HeaderOffsets.end + slot*RecordOffsets.end)", "this.buffer.putInt(HeaderOffsets.end + slot*RecordOffsets.end, next)", true);
+        } else {
+            printStream.println("    public " + className + "(String name, int initialCapacity) {");
+            printStream.println("        log = LogManager.getLogger(name);");
+            printIndexConstructors(printStream);
+            printStream.println("        grow(initialCapacity);");
+            printStream.println("    }");
+            printStream.println();
+            printStream.println("    public int getCapacity() {");
+            printStream.println("       return capacity;");
+            printStream.println("    }");
+            printStream.println();
+            printStream.println("    protected void grow(int newCapacity) {");
+            printStream.println("        if (capacity > 0) {");
+            printStream.println("            log.log(Level.WARN, log.getSB().append(\"Resizing " + className + " from \").append(capacity).append(\" to \").append(newCapacity));");
+            printStream.println("        }");
+            printStream.println("        long[] newLongs = new long[newCapacity*(RecordOffsets.end >> 3)];");
+            printStream.println("        if (capacity > 0) {");
+            printStream.println("            System.arraycopy(longs, 0, newLongs, 0, capacity*(RecordOffsets.end >> 3));");
+            printStream.println("        }");
+            printStream.println("        longs = newLongs;");
+            if (generations) {
+                printGenerationsGrow(printStream);
+            }
+            printIndexGrow(printStream);
+            printStream.println("        capacity = newCapacity;");
+            printStream.println("    }");
+            printStream.println();
+            printAllocator(printStream, "(int)this.longs[slot*(RecordOffsets.end >> 3)]", "this.longs[slot*(RecordOffsets.end >> 3)] = next", false);
+            if (bytesStringBuilder.length() > 0) {
+                printStream.println();
+                printStream.println("    private byte getByte(int position) {");
+                printStream.println("        return (byte)(this.longs[position >> 3] >> ((position & 7) << 3));");
+                printStream.println("    }");
+                printStream.println();
+                printStream.println("    private void putByte(int position, byte value) {");
+                printStream.println("        int index = position >> 3;");
+                printStream.println("        int shift = (position & 7) << 3;");
+                printStream.println("        this.longs[index] = (this.longs[index] & ~(0xFFL << shift)) | ((value & 0xFFL) << shift);");
+                printStream.println("    }");
+            }
+        }
+        printStream.println();
+
+        printStream.print(gettersAndSetterStringBuilder);
+
+        printStream.println();
+        printStream.println("    public void clear(int slot) {");
+        printStream.print(clearStringBuilder);
+        printStream.println("    }");
+        printStream.println();
+        printStream.println();
+        printStream.println("    public ByteStringBuilder toString(ByteStringBuilder sb, int slot) {");
+        printStream.println("        sb.append(\"" + className + "\");");
+        printStream.print(toStringStringBuilder);
+        printStream.println("        sb.append(\"\\n\");");
+        printStream.println("        return sb;");
+        printStream.println("    }");
+        printStream.println("}");
+        printStream.close();
+    }
+
+    protected void resolveIndexes() {
+        indexKeyNames.clear();
+        for (Pair<String, String> column : tableColumns) {
+            String columnName = column.getFirst();
+            String index = columnIndexes.get(columnName);
+            if (index == null) {
+                continue;
+            }
+            Type columnType = simpleTypeHashtable.get(column.getSecond());
+            if (columnType == null) {
+                columnType = Type.create(column.getSecond());
+            }
+            String keyName = null;
+            if (columnType.xsdTypeName.equals("xs:string") && columnType.maxLength > 1) {
+                // Space padded strings are not indexed
+            } else if (columnType.javaName.equals("long")) {
+                keyName = "Long";
+            } else if (columnType.javaName.equals("int") || columnType.javaName.equals("short") || columnType.javaName.equals("byte")) {
+                keyName = "Int";
+            } else if (columnType.javaName.equals("double") && index.equals(ORDERED)) {
+                keyName = "Double";
+            }
+            if (keyName == null || !(index.equals(UNIQUE) || index.equals(ORDERED))) {
+                System.out.println("Unsupported " + index + " index on " + complexTypeName + "." + columnName);
+            } else {
+                indexKeyNames.put(columnName, keyName);
+            }
+        }
+    }
+
+    protected boolean isUnique(String columnName) {
+        return columnIndexes.get(columnName).equals(UNIQUE);
+    }
+
+    protected void printIndexImports(PrintStream printStream) {
+        boolean ordered = false;
+        for (String columnName : indexKeyNames.keySet()) {
+            ordered |= !isUnique(columnName);
+        }
+        if (ordered) {
+            printStream.println("import java.util.Arrays;");
+            printStream.println();
+        }
+        Set<String> imports = new TreeSet<String>();
+        for (Map.Entry<String, String> index : indexKeyNames.entrySet()) {
+            imports.add(index.getValue() + (isUnique(index.getKey()) ? "IntHashMap" : "RbTree"));
+        }
+        for (String className : imports) {
+            printStream.println("import com.zerogc.collections." + className + ";");
+        }
+    }
+
+    /**
+     * Ordered indexes are multi trees holding the slot of each entry, slots with the same key are kept in the order they were set.
+     */
+    protected void printIndexClasses(PrintStream printStream) {
+        for (Map.Entry<String, String> index : indexKeyNames.entrySet()) {
+            if (isUnique(index.getKey())) {
+                continue;
+            }
+            String className = pascal(index.getKey()) + "Index";
+            printStream.println("    public static class " + className + " extends " + index.getValue() + "RbTree {");
+            printStream.println("        private int[] slot;");
+            printStream.println();
+            printStream.println("        public " + className + "(String name) {");
+            printStream.println("            super(name);");
+            printStream.println("        }");
+            printStream.println();
+            printStream.println("        @Override");
+            printStream.println("        protected void grow(int capacity, int newCapacity) {");
+            printStream.println("            super.grow(capacity, newCapacity);");
+            printStream.println();
+            printStream.println("            int[] newSlot = new int[newCapacity];");
+            printStream.println("            if (capacity > 0) {");
+            printStream.println("                System.arraycopy(this.slot, 0, newSlot, 0, capacity);");
+            printStream.println("            }");
+            printStream.println("            this.slot = newSlot;");
+            printStream.println("        }");
+            printStream.println();
+            printStream.println("        public int getSlot(int entry) {");
+            printStream.println("            return this.slot[entry];");
+            printStream.println("        }");
+            printStream.println();
+            printStream.println("        void setSlot(int entry, int slot) {");
+            printStream.println("            this.slot[entry] = slot;");
+            printStream.println("        }");
+            printStream.println("    }");
+            printStream.println();
+        }
+    }
+
+    protected void printIndexFields(PrintStream printStream) {
+        for (Map.Entry<String, String> index : indexKeyNames.entrySet()) {
+            String columnName = index.getKey();
+            if (isUnique(columnName)) {
+                printStream.println("    private final " + index.getValue() + "IntHashMap " + camel(columnName) + "Index;");
+            } else {
+                printStream.println("    private final " + pascal(columnName) + "Index " + camel(columnName) + "Index;");
+                // Entry of each slot in the ordered index, -1 when not indexed
+                printStream.println("    private int[] " + camel(columnName) + "Entries;");
+            }
+        }
+    }
+
+    protected void printIndexConstructors(PrintStream printStream) {
+        for (Map.Entry<String, String> index : indexKeyNames.entrySet()) {
+            String columnName = index.getKey();
+            String className = isUnique(columnName) ? index.getValue() + "IntHashMap" : pascal(columnName) + "Index";
+            printStream.println("        " + camel(columnName) + "Index = new " + className + "(name + \"." + columnName + "\");");
+        }
+    }
+
+    protected void printIndexGrow(PrintStream printStream) {
+        for (String columnName : indexKeyNames.keySet()) {
+            if (isUnique(columnName)) {
+                continue;
+            }
+            String entries = camel(columnName) + "Entries";
+            String newEntries = "new" + pascal(columnName) + "Entries";
+            printStream.println("        int[] " + newEntries + " = new int[newCapacity];");
+            printStream.println("        Arrays.fill(" + newEntries + ", capacity, newCapacity, -1);");
+            printStream.println("        if (capacity > 0) {");
+            printStream.println("            System.arraycopy(" + entries + ", 0, " + newEntries + ", 0, capacity);");
+            printStream.println("        }");
+            printStream.println("        " + entries + " = " + newEntries + ";");
+        }
+    }
+
+    /**
+     * The setter of an indexed column moves the slot in the index, a unique index refuses a key already set in another slot.
+     * A unique index leaves out 0, the value of unset and cleared slots, so that any number of slots can hold it.
+     */
+    protected void appendIndexedSetter(StringBuilder sb, String columnName, String getSetType, String setString) {
+        String name = pascal(columnName);
+        String index = camel(columnName) + "Index";
+        String entries = camel(columnName) + "Entries";
+        boolean unique = isUnique(columnName);
+
+        sb.append("    public void set" + name + "(int slot, " + getSetType + " value) {\n");
+        if (unique) {
+            sb.append("        int entry = " + index + ".find(value);\n");
+            sb.append("        if (entry != -1 && " + index + ".getValue(entry) != slot) {\n");
+            sb.append("            throw new IllegalStateException(\"Duplicate " + columnName + ": \" + value);\n");
+            sb.append("        }\n");
+        }
+        sb.append("        unindex" + name + "(slot);\n");
+        sb.append("        put" + name + "(slot, value);\n");
+        if (unique) {
+            sb.append("        if (value != 0) {\n");
+            sb.append("            " + index + ".insert(value, slot);\n");
+            sb.append("        }\n");
+        } else {
+            sb.append("        int entry = " + index + ".insertMulti(value);\n");
+            sb.append("        " + index + ".setSlot(entry, slot);\n");
+            sb.append("        " + entries + "[slot] = entry;\n");
+        }
+        sb.append("    }\n");
+        sb.append("    private void put" + name + "(int slot, " + getSetType + " value) {\n");
+        sb.append("        " + setString + ";\n");
+        sb.append("    }\n");
+        sb.append("    private void unindex" + name + "(int slot) {\n");
+        if (unique) {
+            sb.append("        " + getSetType + " value = get" + name + "(slot);\n");
+            sb.append("        int entry = " + index + ".find(value);\n");
+            sb.append("        if (entry != -1 && " + index + ".getValue(entry) == slot) {\n");
+            sb.append("            " + index + ".remove(value);\n");
+            sb.append("        }\n");
+        } else {
+            sb.append("        int entry = " + entries + "[slot];\n");
+            sb.append("        if (entry != -1) {\n");
+            sb.append("            " + index + ".removeEntry(entry);\n");
+            sb.append("            " + entries + "[slot] = -1;\n");
+            sb.append("        }\n");
+        }
+        sb.append("    }\n");
+        if (unique) {
+            sb.append("    /** @return the slot with the " + columnName + " or -1 if there is none, 0 is not indexed. */\n");
+            sb.append("    public int findBy" + name + "(" + getSetType + " value) {\n");
+            sb.append("        int entry = " + index + ".find(value);\n");
+            sb.append("        return entry == -1 ? -1 : " + index + ".getValue(entry);\n");
+            sb.append("    }\n");
+        } else {
+            sb.append("    /** @return the first slot with the " + columnName + " or -1 if there is none, the next ones follow in the index. */\n");
+            sb.append("    public int findFirstBy" + name + "(" + getSetType + " value) {\n");
+            sb.append("        int entry = " + index + ".findFirst(value);\n");
+            sb.append("        return entry == -1 ? -1 : " + index + ".getSlot(entry);\n");
+            sb.append("    }\n");
+            sb.append("    public " + name + "Index get" + name + "Index() {\n");
+            sb.append("        return " + index + ";\n");
+            sb.append("    }\n");
+        }
+    }
+
+    protected void printAllocatorFields(PrintStream printStream) {
+        printStream.println("    protected int highMark = 0;");
+        printStream.println("    protected int size = 0;");
+        printStream.println("    private int freeSlot = -1;");
+        if (generations) {
+            printStream.println("    private int[] generations;");
+        }
+    }
+
+    protected void printGenerationsGrow(PrintStream printStream) {
+        printStream.println("        int[] newGenerations = new int[newCapacity];");
+        printStream.println("        if (capacity > 0) {");
+        printStream.println("            System.arraycopy(generations, 0, newGenerations, 0, capacity);");
+        printStream.println("        }");
+        printStream.println("        generations = newGenerations;");
+    }
+
+    /**
+     * Freed slots are chained through the link column and handed out again before the high mark is raised.
+     * The state of the allocator of mapped stores is kept in the header.
+     */
+    protected void printAllocator(PrintStream printStream, String getLink, String setLink, boolean mapped) {
+        String throwsIOException = mapped ? " throws IOException" : "";
+        String highMark = mapped ? "buffer.getInt(HeaderOffsets.highMark)" : "highMark";
+        String size = mapped ? "buffer.getInt(HeaderOffsets.size)" : "size";
+
+        printStream.println("    /** @return the number of slots used so far" + (mapped ? ", persisted with the records." : ".") + " */");
+        printStream.println("    public int getHighMark() {");
+        printStream.println("        return " + highMark + ";");
+        printStream.println("    }");
+        printStream.println();
+        printStream.println("    /** @return the number of allocated slots. */");
+        printStream.println("    public int size() {");
+        printStream.println("        return " + size + ";");
+        printStream.println("    }");
+        printStream.println();
+        printStream.println("    /** @return a cleared slot, growing the store when every slot up to the capacity is allocated. */");
+        printStream.println("    public int allocate()" + throwsIOException + " {");
+        if (mapped) {
+            printStream.println("        int slot = buffer.getInt(HeaderOffsets.freeSlot) - 1;");
+            printStream.println("        if (slot != -1) {");
+            printStream.println("            buffer.putInt(HeaderOffsets.freeSlot, getLink(slot) + 1);");
+        } else {
+            printStream.println("        int slot = freeSlot;");
+            printStream.println("        if (slot != -1) {");
+            printStream.println("            freeSlot = getLink(slot);");
+        }
+        printStream.println("            clear(slot);");
+        printStream.println("        } else {");
+        if (mapped) {
+            printStream.println("            slot = buffer.getInt(HeaderOffsets.highMark);");
+        } else {
+            printStream.println("            slot = highMark;");
+        }
+        printStream.println("            if (slot == capacity) {");
+        printStream.println("                grow(capacity == 0 ? 16 : 2*capacity);");
+        printStream.println("            }");
+        if (mapped) {
+            printStream.println("            buffer.putInt(HeaderOffsets.highMark, slot + 1);");
+        } else {
+            printStream.println("            highMark++;");
+        }
+        printStream.println("        }");
+        if (mapped) {
+            printStream.println("        buffer.putInt(HeaderOffsets.size, buffer.getInt(HeaderOffsets.size) + 1);");
+        } else {
+            printStream.println("        size++;");
+        }
+        printStream.println("        return slot;");
+        printStream.println("    }");
+        printStream.println();
+        printStream.println("    /** Return the slot to the free list, its first long or int is overwritten with the link to the next free slot. */");
+        printStream.println("    public void free(int slot) {");
+        if (!mapped) {
+            for (String columnName : indexKeyNames.keySet()) {
+                printStream.println("        unindex" + pascal(columnName) + "(slot);");
+            }
+        }
+        if (generations) {
+            printStream.println("        generations[slot]++;");
+        }
+        if (mapped) {
+            printStream.println("        setLink(slot, buffer.getInt(HeaderOffsets.freeSlot) - 1);");
+            printStream.println("        buffer.putInt(HeaderOffsets.freeSlot, slot + 1);");
+            printStream.println("        buffer.putInt(HeaderOffsets.size, buffer.getInt(HeaderOffsets.size) - 1);");
+        } else {
+            printStream.println("        setLink(slot, freeSlot);");
+            printStream.println("        freeSlot = slot;");
+            printStream.println("        size--;");
+        }
+        printStream.println("    }");
+        printStream.println();
+        printStream.println("    private int getLink(int slot) {");
+        printStream.println("        return " + getLink + ";");
+        printStream.println("    }");
+        printStream.println();
+        printStream.println("    private void setLink(int slot, int next) {");
+        printStream.println("        " + setLink + ";");
+        printStream.println("    }");
+        if (generations) {
+            printStream.println();
+            printStream.println("    /** @return a handle to the slot which turns stale once the slot is freed. */");
+            printStream.println("    public long getHandle(int slot) {");
+            printStream.println("        return ((long)generations[slot] << 32) | slot;");
+            printStream.println("    }");
+            printStream.println();
+            printStream.println("    public boolean isValid(long handle) {");
+            printStream.println("        int slot = (int)handle;");
+            printStream.println("        return slot >= 0 && slot < " + highMark + " && generations[slot] == (int)(handle >>> 32);");
+            printStream.println("    }");
+            printStream.println();
+            printStream.println("    /** @throws IllegalStateException if the slot was freed since the handle was taken. */");
+            printStream.println("    public int getSlot(long handle) {");
+            printStream.println("        if (!isValid(handle)) {");
+            printStream.println("            throw new IllegalStateException(\"Stale handle: \" + handle);");
+            printStream.println("        }");
+            printStream.println("        return (int)handle;");
+            printStream.println("    }");
+        }
+    }
+
+    @Override
+    protected void parseArgs(String[] args) {
+        List<String> baseArgs = new ArrayList<String>();
+        for (String arg : args) {
+            if (arg.equalsIgnoreCase("-mapped")) {
+                this.mapped = true;
+                System.err.println("Generate memory mapped stores");
+            } else if (arg.equalsIgnoreCase("-rows")) {
+                this.rows = true;
+                System.err.println("Generate row stores");
+            } else if (arg.equalsIgnoreCase("-generations")) {
+                this.generations = true;
+                System.err.println("Generate generation counters");
+            } else {
+                baseArgs.add(arg);
+            }
+        }
+        super.parseArgs(baseArgs.toArray(new String[baseArgs.size()]));
+    }
+
     public static void main(String[] args) {
         GeneratorStores generator = new GeneratorStores(PACKAGE);
         generator.parseArgs(args);